@@ -117,4 +117,16 @@
     public static ** valueOf(java.lang.String);
     **[] $VALUES;
     public *;
-}
\ No newline at end of file
+}
+# Logging - release xoá hẳn log DEBUG/VERBOSE (cả việc dựng tham số)
+# Cần proguard-android-optimize.txt (đã dùng ở buildTypes.release)
+-assumenosideeffects class com.phicomm.r1.xiaozhi.platform.XLog {
+    public static void d(...);
+}
+-assumenosideeffects class com.phicomm.r1.xiaozhi.platform.Log {
+    public static void d(...);
+}
+-assumenosideeffects class android.util.Log {
+    public static int v(...);
+    public static int d(...);
+}
@@ -2,9 +2,13 @@ package com.phicomm.r1.xiaozhi;
 
 import android.app.Application;
 import android.content.Context;
+import android.content.pm.ApplicationInfo;
 import android.util.Log;
 
+import com.phicomm.r1.xiaozhi.core.BootTimeline;
 import com.phicomm.r1.xiaozhi.core.XiaozhiCore;
+import com.phicomm.r1.xiaozhi.platform.AndroidPlatform;
+import com.phicomm.r1.xiaozhi.util.BufferPool;
 
 /**
  * Application class - Khởi tạo XiaozhiCore và global configurations
@@ -24,6 +28,12 @@ public class XiaozhiApplication extends Application {
     @Override
     public void onCreate() {
         super.onCreate();
+        // Log / clock / main looper cho xiaozhi-core - trước mọi thứ khác
+        AndroidPlatform.install();
+        BootTimeline.getInstance().mark(BootTimeline.APP_CREATE);
+        // Leak detection của buffer pool chỉ ở debug build (mỗi acquire tạo một stack trace)
+        BufferPool.getInstance().setLeakDetection(
+            (getApplicationInfo().flags & ApplicationInfo.FLAG_DEBUGGABLE) != 0);
 
         Log.i(TAG, "===========================================");
         Log.i(TAG, "Xiaozhi Application started");
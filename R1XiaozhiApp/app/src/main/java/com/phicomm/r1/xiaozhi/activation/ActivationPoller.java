@@ -0,0 +1,349 @@
+package com.phicomm.r1.xiaozhi.activation;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.google.gson.JsonObject;
+import com.phicomm.r1.xiaozhi.core.XiaozhiCore;
+import com.phicomm.r1.xiaozhi.network.HttpClientProvider;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * Non-blocking activation polling
+ *
+ * Thay cho vòng lặp Thread.sleep(5000) x 60:
+ * - Interval thích ứng: bắt đầu nhanh (user vừa thấy code), tăng dần khi chờ lâu, chậm hơn khi lỗi
+ * - Jitter ±20% để các thiết bị trong cùng đợt rollout không poll cùng nhịp
+ * - Server hints: Retry-After header, "retry_after" / "poll_interval" trong body
+ * - Long-poll: gửi "Prefer: wait=N" (RFC 7240); nếu server trả "Preference-Applied: wait"
+ *   thì poll lại ngay, server giữ request tới khi có kết quả
+ * - Không giữ thread nào khi chờ: delay qua tier network của XiaozhiCore scheduler,
+ *   request qua OkHttp async dispatcher
+ * - cancel() huỷ cả scheduled poll lẫn in-flight HTTP call
+ */
+public class ActivationPoller {
+
+    private static final String TAG = "ActivationPoller";
+
+    private static final long INITIAL_INTERVAL_MS = 2000;
+    private static final long MAX_INTERVAL_MS = 15000;
+    private static final long ERROR_INTERVAL_MS = 5000;
+    private static final long MAX_ERROR_INTERVAL_MS = 60000;
+    private static final double BACKOFF_FACTOR = 1.5;
+    private static final double JITTER = 0.2;
+
+    private static final int LONG_POLL_WAIT_SECONDS = 25;
+    private static final long LONG_POLL_RESPONSE_SLACK_MS = 10000;
+
+    private static final Pattern WAIT_PATTERN = Pattern.compile("wait\\s*=\\s*(\\d+)");
+
+    private static OkHttpClient longPollClient;
+
+    /**
+     * Tạo request cho mỗi lần poll (HMAC có thể thay đổi theo lần gửi)
+     */
+    public interface RequestFactory {
+        Request create() throws Exception;
+    }
+
+    /**
+     * Kết quả một lần poll
+     */
+    public enum Outcome {
+        DONE,       // Activated hoặc lỗi vĩnh viễn - dừng poll
+        PENDING,    // Server vẫn chờ user nhập code
+        ERROR       // Lỗi tạm thời - retry với backoff
+    }
+
+    public interface Listener {
+        /**
+         * Xử lý response (chạy trên OkHttp dispatcher thread)
+         */
+        Outcome onResponse(Response response, int attempt) throws IOException;
+
+        void onAttempt(int attempt, long elapsedMs, long deadlineMs);
+
+        /**
+         * Dừng poll mà chưa activate (hết deadline hoặc không tạo được request)
+         */
+        void onGiveUp(String reason);
+    }
+
+    private final RequestFactory requestFactory;
+    private final Listener listener;
+    private final long deadlineMs;
+    private final Random random = new Random();
+
+    private final Object lock = new Object();
+    private ScheduledFuture<?> scheduled;
+    private Call inFlight;
+    private boolean cancelled = false;
+
+    private long startedAt;
+    private int attempt = 0;
+    private long interval = INITIAL_INTERVAL_MS;
+    // Server đã chỉ định poll_interval: giữ nguyên, không backoff
+    private boolean intervalFromServer = false;
+    // retry_after trong body của response hiện tại (ms), dùng như Retry-After header
+    private long bodyHintMs = -1;
+    private int consecutiveErrors = 0;
+    private boolean longPollSupported = false;
+    private boolean finalPollScheduled = false;
+
+    /**
+     * @param timeoutSeconds Thời gian sống của activation code (OTA activation.timeout)
+     */
+    public ActivationPoller(int timeoutSeconds, RequestFactory requestFactory, Listener listener) {
+        this.deadlineMs = Math.max(30, timeoutSeconds) * 1000L;
+        this.requestFactory = requestFactory;
+        this.listener = listener;
+    }
+
+    public void start() {
+        synchronized (lock) {
+            startedAt = SystemClock.elapsedRealtime();
+        }
+        Log.i(TAG, "Activation polling started (deadline " + deadlineMs / 1000 + "s)");
+        scheduleNext(0);
+    }
+
+    /**
+     * Huỷ poll đang chờ và HTTP call đang chạy
+     */
+    public void cancel() {
+        synchronized (lock) {
+            cancelled = true;
+            if (scheduled != null) {
+                scheduled.cancel(false);
+                scheduled = null;
+            }
+            if (inFlight != null) {
+                inFlight.cancel();
+                inFlight = null;
+            }
+        }
+        Log.i(TAG, "Activation polling cancelled after " + attempt + " attempts");
+    }
+
+    public boolean isCancelled() {
+        synchronized (lock) {
+            return cancelled;
+        }
+    }
+
+    private void scheduleNext(long delayMs) {
+        synchronized (lock) {
+            if (cancelled) {
+                return;
+            }
+            long elapsed = SystemClock.elapsedRealtime() - startedAt;
+            if (elapsed + delayMs >= deadlineMs) {
+                if (elapsed >= deadlineMs || finalPollScheduled) {
+                    cancelled = true;
+                    Log.w(TAG, "Activation deadline reached after " + attempt + " attempts");
+                    listener.onGiveUp("Activation timeout after " + attempt + " attempts");
+                    return;
+                }
+                // Poll lần cuối sát deadline thay vì bỏ qua - chỉ một lần
+                // (còn < 1s thì max(0, ...) = 0 mỗi lần -> poll dồn dập tới deadline)
+                finalPollScheduled = true;
+                delayMs = Math.max(0, deadlineMs - elapsed - 1000);
+            }
+            // Hẹn giờ trên tier network; poll() chỉ enqueue call OkHttp, không block thread
+            scheduled = XiaozhiCore.getInstance().getScheduler().network().schedule("activation-poll",
+                new Runnable() {
+                    @Override
+                    public void run() {
+                        poll();
+                    }
+                }, delayMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void poll() {
+        final Call call;
+        final int currentAttempt;
+        final long elapsed;
+        synchronized (lock) {
+            scheduled = null;
+            if (cancelled) {
+                return;
+            }
+            attempt++;
+            currentAttempt = attempt;
+            elapsed = SystemClock.elapsedRealtime() - startedAt;
+
+            Request request;
+            try {
+                // Luôn đề nghị long-poll; server không hỗ trợ sẽ bỏ qua header và trả ngay
+                request = requestFactory.create().newBuilder()
+                    .header("Prefer", "wait=" + LONG_POLL_WAIT_SECONDS)
+                    .build();
+            } catch (Exception e) {
+                Log.e(TAG, "Failed to build activation request", e);
+                cancelled = true;
+                listener.onGiveUp("Failed to build activation request: " + e.getMessage());
+                return;
+            }
+
+            call = longPollClient().newCall(request);
+            inFlight = call;
+        }
+
+        listener.onAttempt(currentAttempt, elapsed, deadlineMs);
+
+        call.enqueue(new Callback() {
+            @Override
+            public void onFailure(Call call, IOException e) {
+                if (call.isCanceled()) {
+                    return;
+                }
+                Log.w(TAG, "Poll #" + currentAttempt + " failed: " + e.getMessage());
+                onPollFinished(Outcome.ERROR, -1);
+            }
+
+            @Override
+            public void onResponse(Call call, Response response) {
+                Outcome outcome;
+                long hintMs = -1;
+                try {
+                    hintMs = parseHints(response);
+                    outcome = listener.onResponse(response, currentAttempt);
+                } catch (Exception e) {
+                    Log.w(TAG, "Poll #" + currentAttempt + " response error: " + e.getMessage());
+                    outcome = Outcome.ERROR;
+                } finally {
+                    response.close();
+                }
+                onPollFinished(outcome, hintMs);
+            }
+        });
+    }
+
+    private void onPollFinished(Outcome outcome, long hintMs) {
+        long delay;
+        synchronized (lock) {
+            inFlight = null;
+            if (cancelled) {
+                return;
+            }
+            if (outcome == Outcome.DONE) {
+                cancelled = true;
+                Log.i(TAG, "Activation polling finished after " + attempt + " attempts");
+                return;
+            }
+
+            if (outcome == Outcome.ERROR) {
+                consecutiveErrors++;
+                long errorDelay = ERROR_INTERVAL_MS << Math.min(consecutiveErrors - 1, 4);
+                delay = Math.min(MAX_ERROR_INTERVAL_MS, errorDelay);
+            } else {
+                consecutiveErrors = 0;
+                if (longPollSupported) {
+                    // Server đã giữ request - poll lại gần như ngay
+                    delay = 0;
+                } else {
+                    delay = interval;
+                    if (!intervalFromServer) {
+                        interval = Math.min(MAX_INTERVAL_MS, (long) (interval * BACKOFF_FACTOR));
+                    }
+                }
+            }
+
+            // Header và body cùng có hint thì lấy giá trị lớn hơn
+            hintMs = Math.max(hintMs, bodyHintMs);
+            bodyHintMs = -1;
+            if (hintMs >= 0) {
+                delay = hintMs;
+            }
+        }
+
+        scheduleNext(jitter(delay));
+    }
+
+    /**
+     * Đọc server hints từ headers (body hints: applyBodyHints)
+     *
+     * @return delay server yêu cầu (ms), hoặc -1
+     */
+    private long parseHints(Response response) {
+        String applied = response.header("Preference-Applied");
+        if (applied != null && WAIT_PATTERN.matcher(applied).find()) {
+            synchronized (lock) {
+                if (!longPollSupported) {
+                    Log.i(TAG, "Server supports long-poll activation");
+                }
+                longPollSupported = true;
+            }
+        }
+
+        String retryAfter = response.header("Retry-After");
+        if (retryAfter != null) {
+            try {
+                return Long.parseLong(retryAfter.trim()) * 1000;
+            } catch (NumberFormatException e) {
+                // HTTP-date format - bỏ qua, dùng interval mặc định
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Áp dụng "retry_after" / "poll_interval" (giây) từ JSON body của response
+     * Listener gọi khi đã parse body (kể cả body lỗi non-2xx)
+     * - retry_after: delay cho lần poll kế tiếp, kể cả khi outcome là ERROR
+     * - poll_interval: interval cố định cho các lần PENDING sau
+     */
+    public void applyBodyHints(JsonObject json) {
+        if (json == null) {
+            return;
+        }
+        int pollInterval = HttpClientProvider.optInt(json, "poll_interval", -1);
+        int retryAfter = HttpClientProvider.optInt(json, "retry_after", -1);
+        synchronized (lock) {
+            if (pollInterval > 0) {
+                interval = Math.min(MAX_ERROR_INTERVAL_MS, pollInterval * 1000L);
+                intervalFromServer = true;
+            }
+            if (retryAfter > 0) {
+                bodyHintMs = Math.min(MAX_ERROR_INTERVAL_MS, retryAfter * 1000L);
+            }
+        }
+    }
+
+    /**
+     * Shared client với read timeout dài hơn thời gian server giữ request
+     * (newBuilder() vẫn dùng chung connection pool và dispatcher)
+     */
+    private static OkHttpClient longPollClient() {
+        synchronized (ActivationPoller.class) {
+            if (longPollClient == null) {
+                longPollClient = HttpClientProvider.get().newBuilder()
+                    .readTimeout(LONG_POLL_WAIT_SECONDS * 1000L + LONG_POLL_RESPONSE_SLACK_MS,
+                        TimeUnit.MILLISECONDS)
+                    .build();
+            }
+            return longPollClient;
+        }
+    }
+
+    private long jitter(long delayMs) {
+        if (delayMs <= 0) {
+            // Long-poll: vẫn trải nhẹ để tránh đồng loạt khi server trả về cùng lúc
+            return (long) (random.nextDouble() * 250);
+        }
+        double factor = 1 - JITTER + random.nextDouble() * 2 * JITTER;
+        return (long) (delayMs * factor);
+    }
+}
@@ -5,17 +5,21 @@ import android.os.Handler;
 import android.os.Looper;
 import android.util.Log;
 
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.phicomm.r1.xiaozhi.config.XiaozhiConfig;
+import com.phicomm.r1.xiaozhi.network.HttpClientProvider;
+
 import org.json.JSONObject;
 
-import java.io.BufferedReader;
-import java.io.InputStreamReader;
-import java.io.OutputStream;
-import java.net.HttpURLConnection;
-import java.net.URL;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.io.IOException;
+import java.util.UUID;
 import java.util.concurrent.atomic.AtomicBoolean;
 
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+
 /**
  * Device Activator - Handle device activation flow
  * Based on py-xiaozhi/src/utils/device_activator.py
@@ -23,16 +27,14 @@ import java.util.concurrent.atomic.AtomicBoolean;
 public class DeviceActivator {
     
     private static final String TAG = "DeviceActivator";
-    private static final String ACTIVATION_URL = "https://api.tenclass.net/xiaozhi/ota/activate";
-    private static final int MAX_RETRIES = 60; // 5 minutes max
-    private static final int RETRY_INTERVAL_MS = 5000; // 5 seconds
     
     private final Context context;
     private final DeviceFingerprint fingerprint;
     private final OTAConfigManager otaManager;
-    private final ExecutorService executor;
     private final Handler mainHandler;
     private final AtomicBoolean isActivating = new AtomicBoolean(false);
+    private final String clientId = UUID.randomUUID().toString();
+    private volatile ActivationPoller poller;
     
     // Activation data from server
     private String serverChallenge;
@@ -42,7 +44,11 @@ public class DeviceActivator {
     
     public interface ActivationListener {
         void onActivationStarted(String verificationCode);
-        void onActivationProgress(int attempt, int maxAttempts);
+        /**
+         * @param elapsedSeconds Số giây đã chờ
+         * @param timeoutSeconds Thời gian sống của code (giây)
+         */
+        void onActivationProgress(int elapsedSeconds, int timeoutSeconds);
         void onActivationSuccess(String accessToken);
         void onActivationFailed(String error);
     }
@@ -51,7 +57,6 @@ public class DeviceActivator {
         this.context = context.getApplicationContext();
         this.fingerprint = DeviceFingerprint.getInstance(context);
         this.otaManager = new OTAConfigManager(context);
-        this.executor = Executors.newSingleThreadExecutor();
         this.mainHandler = new Handler(Looper.getMainLooper());
     }
     
@@ -110,13 +115,8 @@ public class DeviceActivator {
             // Notify UI to display code
             notifyVerificationCode(verificationCode);
             
-            // STEP 3: Start polling activation API
-            executor.execute(new Runnable() {
-                @Override
-                public void run() {
-                    performActivationPolling();
-                }
-            });
+            // STEP 3: Start polling activation API (deadline = code lifetime từ server)
+            startActivationPolling(response.activation.timeout);
             
         } else {
             // No activation data - device already activated on server
@@ -128,103 +128,123 @@ public class DeviceActivator {
     }
     
     /**
-     * Cancel activation
+     * Cancel activation - huỷ cả poll đang chờ và HTTP request đang chạy
      */
     public void cancelActivation() {
         isActivating.set(false);
+        ActivationPoller current = poller;
+        if (current != null) {
+            current.cancel();
+            poller = null;
+        }
         Log.i(TAG, "Activation cancelled");
     }
     
     /**
-     * Perform activation polling
-     * STEP 3: Poll activation API with server challenge
+     * Start activation polling
+     * STEP 3: Poll activation API with server challenge (non-blocking, adaptive interval)
      */
-    private void performActivationPolling() {
-        try {
-            String serialNumber = fingerprint.getSerialNumber();
-            String deviceId = fingerprint.getMacAddress();
-            
-            if (serialNumber == null || deviceId == null) {
-                notifyError("Device identity not found");
-                return;
-            }
-            
-            if (serverChallenge == null) {
-                notifyError("Server challenge not received");
-                return;
-            }
-            
-            Log.i(TAG, "Starting activation polling with server challenge");
-            
-            // Retry loop
-            for (int attempt = 1; attempt <= MAX_RETRIES && isActivating.get(); attempt++) {
-                
-                notifyProgress(attempt, MAX_RETRIES);
+    private void startActivationPolling(int timeoutSeconds) {
+        final String serialNumber = fingerprint.getSerialNumber();
+        final String deviceId = fingerprint.getMacAddress();
+        
+        if (serialNumber == null || deviceId == null) {
+            notifyError("Device identity not found");
+            isActivating.set(false);
+            return;
+        }
+        
+        if (serverChallenge == null) {
+            notifyError("Server challenge not received");
+            isActivating.set(false);
+            return;
+        }
+        
+        Log.i(TAG, "Starting activation polling with server challenge");
+        
+        final String challenge = serverChallenge;
+        final ActivationPoller[] self = new ActivationPoller[1];
+        self[0] = new ActivationPoller(timeoutSeconds,
+            new ActivationPoller.RequestFactory() {
+                @Override
+                public Request create() throws Exception {
+                    return buildActivationRequest(serialNumber, deviceId, challenge);
+                }
+            },
+            new ActivationPoller.Listener() {
+                @Override
+                public void onAttempt(int attempt, long elapsedMs, long deadlineMs) {
+                    // Progress theo thời gian (giây) vì số lần poll không còn cố định
+                    notifyProgress((int) (elapsedMs / 1000), (int) (deadlineMs / 1000));
+                }
                 
-                try {
-                    ActivationResponse response = sendActivationRequest(
-                        serialNumber, deviceId, serverChallenge
-                    );
+                @Override
+                public ActivationPoller.Outcome onResponse(Response httpResponse, int attempt)
+                        throws IOException {
+                    if (!isActivating.get()) {
+                        return ActivationPoller.Outcome.DONE;
+                    }
+                    
+                    ActivationResponse response = parseActivationResponse(httpResponse, self[0]);
                     
                     if (response.success) {
-                        // Activation successful - user entered code on website
-                        Log.i(TAG, "Activation successful!");
-                        fingerprint.setActivationStatus(true);
-                        
-                        // Get or generate access token
-                        String accessToken = response.accessToken;
-                        if (accessToken == null || accessToken.isEmpty()) {
-                            // Generate token from device ID if server doesn't provide one
-                            Log.i(TAG, "Server didn't provide token, generating from device ID");
-                            accessToken = generateAccessToken(deviceId, serialNumber);
-                        }
-                        
-                        // Save access token
-                        fingerprint.setAccessToken(accessToken);
-                        Log.i(TAG, "Access token saved: " + (accessToken != null ? accessToken.substring(0, Math.min(30, accessToken.length())) + "..." : "null"));
-                        
-                        notifySuccess(accessToken);
-                        isActivating.set(false);
-                        return;
+                        handleActivationSuccess(response, deviceId, serialNumber);
+                        return ActivationPoller.Outcome.DONE;
                         
                     } else if (response.statusCode == 202) {
                         // Still waiting for user input
                         Log.i(TAG, "Waiting for user to enter verification code on website...");
-                        Thread.sleep(RETRY_INTERVAL_MS);
+                        return ActivationPoller.Outcome.PENDING;
                         
                     } else {
                         // Other errors - log but continue retrying
                         Log.w(TAG, "Activation attempt " + attempt + " failed: " + response.error);
-                        Thread.sleep(RETRY_INTERVAL_MS);
+                        return ActivationPoller.Outcome.ERROR;
                     }
-                    
-                } catch (InterruptedException e) {
-                    Log.i(TAG, "Activation interrupted");
-                    break;
-                } catch (Exception e) {
-                    Log.e(TAG, "Activation request failed", e);
-                    Thread.sleep(RETRY_INTERVAL_MS);
                 }
-            }
-            
-            // Max retries reached
-            if (isActivating.get()) {
-                notifyError("Activation timeout - max retries reached");
-            }
-            
-        } catch (Exception e) {
-            Log.e(TAG, "Activation polling failed", e);
-            notifyError("Activation failed: " + e.getMessage());
-        } finally {
-            isActivating.set(false);
+                
+                @Override
+                public void onGiveUp(String reason) {
+                    if (isActivating.getAndSet(false)) {
+                        notifyError(reason);
+                    }
+                    poller = null;
+                }
+            });
+        
+        poller = self[0];
+        poller.start();
+    }
+    
+    /**
+     * Activation thành công - user đã nhập code trên website
+     */
+    private void handleActivationSuccess(ActivationResponse response, String deviceId, String serialNumber) {
+        Log.i(TAG, "Activation successful!");
+        fingerprint.setActivationStatus(true);
+        
+        // Get or generate access token
+        String accessToken = response.accessToken;
+        if (accessToken == null || accessToken.isEmpty()) {
+            // Generate token from device ID if server doesn't provide one
+            Log.i(TAG, "Server didn't provide token, generating from device ID");
+            accessToken = generateAccessToken(deviceId, serialNumber);
         }
+        
+        // Save access token
+        fingerprint.setAccessToken(accessToken);
+        Log.i(TAG, "Access token saved: " + (accessToken != null ? accessToken.substring(0, Math.min(30, accessToken.length())) + "..." : "null"));
+        
+        poller = null;
+        isActivating.set(false);
+        notifySuccess(accessToken);
     }
     
     /**
-     * Send activation request to server
+     * Build activation request
      * STEP 4: POST activation with server challenge + HMAC
      */
-    private ActivationResponse sendActivationRequest(
+    private Request buildActivationRequest(
         String serialNumber, String deviceId, String challenge
     ) throws Exception {
         
@@ -254,86 +274,65 @@ public class DeviceActivator {
         Log.d(TAG, "Request Payload: " + payload.toString());
         Log.d(TAG, "==========================");
         
-        // Send HTTP request
-        URL url = new URL(ACTIVATION_URL);
-        HttpURLConnection conn = (HttpURLConnection) url.openConnection();
+        // Shared OkHttp client - reuses the warm TLS connection between polls
+        return new Request.Builder()
+            .url(new XiaozhiConfig(context).getActivationUrl())
+            .header("Activation-Version", "2")
+            .header("Device-Id", deviceId)
+            .header("Client-Id", clientId)
+            .post(RequestBody.create(HttpClientProvider.JSON, payload.toString()))
+            .build();
+    }
+    
+    /**
+     * Parse activation response (body hints như poll_interval được chuyển cho poller)
+     */
+    private ActivationResponse parseActivationResponse(Response httpResponse, ActivationPoller owner)
+            throws IOException {
+        int statusCode = httpResponse.code();
         
-        try {
-            conn.setRequestMethod("POST");
-            conn.setRequestProperty("Content-Type", "application/json");
-            conn.setRequestProperty("Activation-Version", "2");
-            conn.setRequestProperty("Device-Id", deviceId);
-            conn.setRequestProperty("Client-Id", java.util.UUID.randomUUID().toString());
-            conn.setDoOutput(true);
-            conn.setConnectTimeout(10000);
-            conn.setReadTimeout(10000);
-            
-            // Write payload
-            OutputStream os = conn.getOutputStream();
-            os.write(payload.toString().getBytes());
-            os.flush();
-            os.close();
-            
-            // Read response
-            int statusCode = conn.getResponseCode();
-            
-            BufferedReader reader;
-            if (statusCode >= 200 && statusCode < 300) {
-                reader = new BufferedReader(new InputStreamReader(conn.getInputStream()));
-            } else {
-                reader = new BufferedReader(new InputStreamReader(conn.getErrorStream()));
+        ActivationResponse result = new ActivationResponse();
+        result.statusCode = statusCode;
+        
+        if (statusCode == 200) {
+            // Success
+            result.success = true;
+            try {
+                JsonObject json = HttpClientProvider.readJson(httpResponse.body());
+                result.accessToken = HttpClientProvider.optString(json, "access_token", null);
+            } catch (Exception e) {
+                Log.w(TAG, "Failed to parse success response", e);
             }
             
-            StringBuilder response = new StringBuilder();
-            String line;
-            while ((line = reader.readLine()) != null) {
-                response.append(line);
+        } else if (statusCode == 202) {
+            // Waiting for verification
+            result.success = false;
+            try {
+                JsonObject json = HttpClientProvider.readJson(httpResponse.body());
+                result.verificationCode = HttpClientProvider.optString(json, "code", null);
+                result.message = HttpClientProvider.optString(json, "message", "Please enter verification code");
+                owner.applyBodyHints(json);
+            } catch (Exception e) {
+                Log.w(TAG, "Failed to parse 202 response", e);
             }
-            reader.close();
-            
-            Log.d(TAG, "Response (" + statusCode + "): " + response);
             
-            // Parse response
-            ActivationResponse result = new ActivationResponse();
-            result.statusCode = statusCode;
-            
-            if (statusCode == 200) {
-                // Success
-                result.success = true;
-                try {
-                    JSONObject json = new JSONObject(response.toString());
-                    result.accessToken = json.optString("access_token", null);
-                } catch (Exception e) {
-                    Log.w(TAG, "Failed to parse success response", e);
-                }
-                
-            } else if (statusCode == 202) {
-                // Waiting for verification
-                result.success = false;
-                try {
-                    JSONObject json = new JSONObject(response.toString());
-                    result.verificationCode = json.optString("code", null);
-                    result.message = json.optString("message", "Please enter verification code");
-                } catch (Exception e) {
-                    Log.w(TAG, "Failed to parse 202 response", e);
-                }
-                
-            } else {
-                // Error
-                result.success = false;
-                try {
-                    JSONObject json = new JSONObject(response.toString());
-                    result.error = json.optString("error", "Unknown error");
-                } catch (Exception e) {
-                    result.error = "HTTP " + statusCode + ": " + response;
-                }
+        } else {
+            // Error
+            result.success = false;
+            String body = httpResponse.body() != null ? httpResponse.body().string() : "";
+            try {
+                JsonObject json = new JsonParser().parse(body).getAsJsonObject();
+                result.error = HttpClientProvider.optString(json, "error", "Unknown error");
+                owner.applyBodyHints(json);
+            } catch (Exception e) {
+                result.error = "HTTP " + statusCode + ": " + body;
             }
-            
-            return result;
-            
-        } finally {
-            conn.disconnect();
         }
+        
+        Log.d(TAG, "Response (" + statusCode + ", " + httpResponse.protocol() + "): " +
+              (result.success ? "activated" : result.error != null ? result.error : result.message));
+        
+        return result;
     }
     
     // Notification helpers (main thread)
@@ -349,12 +348,12 @@ public class DeviceActivator {
         }
     }
     
-    private void notifyProgress(final int attempt, final int max) {
+    private void notifyProgress(final int elapsedSeconds, final int timeoutSeconds) {
         if (listener != null) {
             mainHandler.post(new Runnable() {
                 @Override
                 public void run() {
-                    listener.onActivationProgress(attempt, max);
+                    listener.onActivationProgress(elapsedSeconds, timeoutSeconds);
                 }
             });
         }
@@ -396,11 +395,19 @@ public class DeviceActivator {
         return fingerprint.getAccessToken();
     }
     
+    /**
+     * Get OTA config manager (cached config + background refresh)
+     */
+    public OTAConfigManager getOTAConfigManager() {
+        return otaManager;
+    }
+    
     /**
      * Reset activation (for testing)
      */
     public void resetActivation() {
         fingerprint.resetIdentity();
+        otaManager.clearCache();
         Log.i(TAG, "Activation reset");
     }
     
@@ -8,11 +8,10 @@ import android.os.Build;
 import android.provider.Settings;
 import android.util.Log;
 
-import java.security.MessageDigest;
-import java.util.UUID;
+import com.phicomm.r1.xiaozhi.util.CryptoUtils;
+import com.phicomm.r1.xiaozhi.util.CryptoUtils.HmacSigner;
 
-import javax.crypto.Mac;
-import javax.crypto.spec.SecretKeySpec;
+import java.util.UUID;
 
 /**
  * Device Fingerprint - Generate unique device identity
@@ -36,6 +35,10 @@ public class DeviceFingerprint {
     private final Context context;
     private final SharedPreferences prefs;
     
+    // Pre-keyed HMAC engine (tạo lazy từ hmac_key trong prefs)
+    private volatile HmacSigner hmacSigner;
+    private volatile String hmacSignerKey;
+    
     private DeviceFingerprint(Context context) {
         this.context = context.getApplicationContext();
         this.prefs = this.context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
@@ -185,13 +188,8 @@ public class DeviceFingerprint {
             // Remove colons for serial number (match py-xiaozhi line 226)
             String macClean = macAddress.replace(":", "").toLowerCase();
             
-            MessageDigest md = MessageDigest.getInstance("MD5");
-            byte[] hash = md.digest(macClean.getBytes());
-            
-            StringBuilder shortHash = new StringBuilder();
-            for (int i = 0; i < 4; i++) {
-                shortHash.append(String.format("%02X", hash[i]));
-            }
+            byte[] hash = CryptoUtils.md5(macClean);
+            String shortHash = CryptoUtils.toHex(hash, 0, 4, true);
             
             return "SN-" + shortHash + "-" + macClean;
             
@@ -218,17 +216,8 @@ public class DeviceFingerprint {
             identifiers.append("||");
             identifiers.append(Build.DEVICE);
             
-            // SHA-256 hash
-            MessageDigest digest = MessageDigest.getInstance("SHA-256");
-            byte[] hash = digest.digest(identifiers.toString().getBytes());
-            
-            // Convert to hex string
-            StringBuilder hexString = new StringBuilder();
-            for (byte b : hash) {
-                hexString.append(String.format("%02x", b));
-            }
-            
-            return hexString.toString();
+            // SHA-256 hash -> hex string
+            return CryptoUtils.sha256Hex(identifiers.toString());
             
         } catch (Exception e) {
             Log.e(TAG, "Failed to generate hardware hash", e);
@@ -238,39 +227,18 @@ public class DeviceFingerprint {
     
     /**
      * Generate HMAC signature for challenge
+     * Dùng HmacSigner đã init sẵn với key, chỉ tạo lại khi key đổi
      */
     public String generateHmac(String challenge) {
-        String hmacKey = getHmacKey();
-        if (hmacKey == null) {
+        HmacSigner signer = getHmacSigner();
+        if (signer == null) {
             Log.e(TAG, "HMAC key not found");
             return null;
         }
 
-        // Enhanced logging for HMAC generation
-        Log.d(TAG, "=== HMAC GENERATION ===");
-        Log.d(TAG, "Challenge: " + challenge);
-        Log.d(TAG, "HMAC Key (first 16 chars): " + (hmacKey.length() > 16 ? hmacKey.substring(0, 16) + "..." : hmacKey));
-
         try {
-            Mac mac = Mac.getInstance("HmacSHA256");
-            SecretKeySpec secretKey = new SecretKeySpec(
-                hmacKey.getBytes(),
-                "HmacSHA256"
-            );
-            mac.init(secretKey);
-
-            byte[] hmacBytes = mac.doFinal(challenge.getBytes());
-
-            // Convert to hex
-            StringBuilder hexString = new StringBuilder();
-            for (byte b : hmacBytes) {
-                hexString.append(String.format("%02x", b));
-            }
-
-            String hmacResult = hexString.toString();
-            Log.d(TAG, "HMAC Result (first 30 chars): " + (hmacResult.length() > 30 ? hmacResult.substring(0, 30) + "..." : hmacResult));
-            Log.d(TAG, "======================");
-
+            String hmacResult = signer.signHex(challenge);
+            Log.d(TAG, "HMAC generated for challenge (" + challenge.length() + " chars)");
             return hmacResult;
 
         } catch (Exception e) {
@@ -279,6 +247,20 @@ public class DeviceFingerprint {
         }
     }
     
+    private HmacSigner getHmacSigner() {
+        String hmacKey = getHmacKey();
+        if (hmacKey == null) {
+            return null;
+        }
+        HmacSigner signer = hmacSigner;
+        if (signer == null || !hmacKey.equals(hmacSignerKey)) {
+            signer = new HmacSigner(hmacKey);
+            hmacSigner = signer;
+            hmacSignerKey = hmacKey;
+        }
+        return signer;
+    }
+    
     // Getters
     
     public String getMacAddress() {
@@ -361,6 +343,8 @@ public class DeviceFingerprint {
      */
     public void resetIdentity() {
         prefs.edit().clear().apply();
+        hmacSigner = null;
+        hmacSignerKey = null;
         Log.i(TAG, "Device identity reset");
         ensureDeviceIdentity();
     }
@@ -0,0 +1,145 @@
+package com.phicomm.r1.xiaozhi.activation;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Log;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Persisted cache cho OTA config response
+ *
+ * Lưu raw JSON body + validators (ETag, config version) + thời điểm fetch.
+ * - Fresh: dùng trực tiếp, không cần network round-trip
+ * - Stale: revalidate với If-None-Match / Config-Version (server trả 304 nếu không đổi)
+ * - Network lỗi: vẫn dùng bản stale (stale-if-error)
+ *
+ * Response có activation data KHÔNG được cache (challenge chỉ dùng một lần)
+ */
+public class OTAConfigCache {
+
+    private static final String TAG = "OTAConfigCache";
+    private static final String PREFS_NAME = "xiaozhi_ota";
+    private static final String KEY_BODY = "cache_body";
+    private static final String KEY_ETAG = "cache_etag";
+    private static final String KEY_VERSION = "cache_version";
+    private static final String KEY_FETCHED_AT = "cache_fetched_at";
+    private static final String KEY_MAX_AGE = "cache_max_age";
+
+    // Default expiry nếu server không gửi Cache-Control: max-age
+    public static final long DEFAULT_MAX_AGE_MS = 6 * 60 * 60 * 1000L;
+
+    private static final Pattern MAX_AGE_PATTERN = Pattern.compile("max-age\\s*=\\s*(\\d+)");
+
+    private final SharedPreferences prefs;
+
+    public OTAConfigCache(Context context) {
+        this.prefs = context.getApplicationContext()
+            .getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    }
+
+    /**
+     * Cached raw JSON body, hoặc null nếu chưa có
+     */
+    public String getBody() {
+        return prefs.getString(KEY_BODY, null);
+    }
+
+    public String getETag() {
+        return prefs.getString(KEY_ETAG, null);
+    }
+
+    public String getVersion() {
+        return prefs.getString(KEY_VERSION, null);
+    }
+
+    public boolean hasEntry() {
+        return getBody() != null;
+    }
+
+    /**
+     * Tuổi của cache entry (ms), Long.MAX_VALUE nếu chưa có
+     */
+    public long getAgeMs() {
+        long fetchedAt = prefs.getLong(KEY_FETCHED_AT, 0);
+        if (fetchedAt == 0 || !hasEntry()) {
+            return Long.MAX_VALUE;
+        }
+        // Clock bị chỉnh lùi -> coi như vừa fetch
+        return Math.max(0, System.currentTimeMillis() - fetchedAt);
+    }
+
+    public long getMaxAgeMs() {
+        return prefs.getLong(KEY_MAX_AGE, DEFAULT_MAX_AGE_MS);
+    }
+
+    public boolean isFresh() {
+        return hasEntry() && getAgeMs() < getMaxAgeMs();
+    }
+
+    /**
+     * Nên refresh trong background khi đã qua nửa thời gian sống
+     */
+    public boolean shouldRefresh() {
+        return !hasEntry() || getAgeMs() > getMaxAgeMs() / 2;
+    }
+
+    /**
+     * Lưu response mới (HTTP 200)
+     *
+     * @param body Raw JSON body
+     * @param etag ETag header (có thể null)
+     * @param version Config version field trong body (có thể null)
+     * @param cacheControl Cache-Control header (có thể null)
+     */
+    public void store(String body, String etag, String version, String cacheControl) {
+        prefs.edit()
+            .putString(KEY_BODY, body)
+            .putString(KEY_ETAG, etag)
+            .putString(KEY_VERSION, version)
+            .putLong(KEY_FETCHED_AT, System.currentTimeMillis())
+            .putLong(KEY_MAX_AGE, parseMaxAge(cacheControl))
+            .apply();
+        Log.i(TAG, "OTA config cached (etag=" + etag + ", version=" + version + ")");
+    }
+
+    /**
+     * Server xác nhận cache còn hợp lệ (HTTP 304) - chỉ cập nhật thời điểm fetch
+     */
+    public void markRevalidated(String cacheControl) {
+        prefs.edit()
+            .putLong(KEY_FETCHED_AT, System.currentTimeMillis())
+            .putLong(KEY_MAX_AGE, parseMaxAge(cacheControl))
+            .apply();
+        Log.i(TAG, "OTA config revalidated (304 Not Modified)");
+    }
+
+    /**
+     * Xoá cache (vd: khi reset activation)
+     */
+    public void clear() {
+        prefs.edit()
+            .remove(KEY_BODY)
+            .remove(KEY_ETAG)
+            .remove(KEY_VERSION)
+            .remove(KEY_FETCHED_AT)
+            .remove(KEY_MAX_AGE)
+            .apply();
+        Log.i(TAG, "OTA config cache cleared");
+    }
+
+    private long parseMaxAge(String cacheControl) {
+        if (cacheControl != null) {
+            Matcher matcher = MAX_AGE_PATTERN.matcher(cacheControl);
+            if (matcher.find()) {
+                try {
+                    return Long.parseLong(matcher.group(1)) * 1000;
+                } catch (NumberFormatException e) {
+                    // fall through
+                }
+            }
+        }
+        return DEFAULT_MAX_AGE_MS;
+    }
+}
@@ -5,16 +5,26 @@ import android.os.Handler;
 import android.os.Looper;
 import android.util.Log;
 
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.phicomm.r1.xiaozhi.config.XiaozhiConfig;
+import com.phicomm.r1.xiaozhi.core.XiaozhiCore;
+import com.phicomm.r1.xiaozhi.network.EndpointSelector;
+import com.phicomm.r1.xiaozhi.network.HttpClientProvider;
+import com.phicomm.r1.xiaozhi.platform.ManagedExecutor;
+
 import org.json.JSONObject;
 
-import java.io.BufferedReader;
-import java.io.InputStreamReader;
-import java.io.OutputStream;
-import java.net.HttpURLConnection;
-import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.UUID;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import okhttp3.HttpUrl;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
 
 /**
  * OTA Config Manager - Fetch device configuration from server
@@ -24,19 +34,21 @@ import java.util.concurrent.Executors;
  * 1. Fetching WebSocket and MQTT configurations
  * 2. Getting activation data (challenge + code) if device not activated
  * 3. Updating local configuration with server response
+ * 4. Caching the config (ETag / version revalidation) so boot does not wait on the network
  */
 public class OTAConfigManager {
     
     private static final String TAG = "OTAConfigManager";
-    private static final String OTA_URL = "https://api.tenclass.net/xiaozhi/ota/";
     private static final String APP_VERSION = "1.0.0";
     private static final String BOARD_TYPE = "android";
     private static final String APP_NAME = "xiaozhi-android";
     
     private final Context context;
     private final DeviceFingerprint fingerprint;
-    private final ExecutorService executor;
+    private final ManagedExecutor executor;
     private final Handler mainHandler;
+    private final OTAConfigCache cache;
+    private final AtomicBoolean refreshInFlight = new AtomicBoolean(false);
     
     /**
      * OTA Response model
@@ -45,9 +57,18 @@ public class OTAConfigManager {
         public boolean success;
         public String error;
         
-        // WebSocket config
+        // True nếu response lấy từ cache (không có network round-trip)
+        public boolean fromCache;
+        
+        // Config version (top-level "config_version" hoặc firmware.version)
+        public String configVersion;
+        
+        // WebSocket config (primary endpoint)
         public WebSocketConfig websocket;
         
+        // All server-provided endpoints, primary first (for RTT selection + failover)
+        public List<WebSocketConfig> websocketEndpoints = new ArrayList<>();
+        
         // Activation data (only present if device not activated)
         public ActivationData activation;
         
@@ -76,31 +97,108 @@ public class OTAConfigManager {
     public OTAConfigManager(Context context) {
         this.context = context.getApplicationContext();
         this.fingerprint = DeviceFingerprint.getInstance(context);
-        this.executor = Executors.newSingleThreadExecutor();
+        this.executor = XiaozhiCore.getInstance().getScheduler().network();
         this.mainHandler = new Handler(Looper.getMainLooper());
+        this.cache = new OTAConfigCache(context);
     }
     
     /**
      * Fetch OTA configuration from server
      * Based on ota.py get_ota_config() - line 120-164
+     *
+     * Fresh cache -> trả về ngay, refresh trong background nếu đã quá nửa tuổi.
+     * Stale cache -> conditional request; nếu network lỗi vẫn dùng bản stale.
      */
     public void fetchOTAConfig(final OTACallback callback) {
-        executor.execute(new Runnable() {
+        executor.execute("ota-fetch", new Runnable() {
             @Override
             public void run() {
+                if (cache.isFresh()) {
+                    OTAResponse cached = getCachedConfig();
+                    if (cached != null) {
+                        Log.i(TAG, "Using cached OTA config (age " + cache.getAgeMs() / 1000 + "s)");
+                        notifySuccess(callback, cached);
+                        if (cache.shouldRefresh()) {
+                            refreshInBackground();
+                        }
+                        return;
+                    }
+                }
+                
                 try {
                     OTAResponse response = performOTARequest();
                     notifySuccess(callback, response);
                 } catch (Exception e) {
                     Log.e(TAG, "OTA request failed", e);
-                    notifyError(callback, e.getMessage());
+                    
+                    OTAResponse stale = getCachedConfig();
+                    if (stale != null) {
+                        Log.w(TAG, "Falling back to stale OTA config (age " + cache.getAgeMs() / 1000 + "s)");
+                        notifySuccess(callback, stale);
+                    } else {
+                        notifyError(callback, e.getMessage());
+                    }
                 }
             }
         });
     }
     
     /**
-     * Perform OTA HTTP request
+     * Get cached OTA config (synchronous, không network)
+     * Dùng khi boot để connect ngay từ config đã biết
+     *
+     * @return Cached response hoặc null nếu chưa có cache
+     */
+    public OTAResponse getCachedConfig() {
+        String body = cache.getBody();
+        if (body == null) {
+            return null;
+        }
+        try {
+            OTAResponse response = parseOTAResponse(new JsonParser().parse(body).getAsJsonObject());
+            response.fromCache = true;
+            return response;
+        } catch (Exception e) {
+            Log.w(TAG, "Cached OTA config is corrupt - clearing", e);
+            cache.clear();
+            return null;
+        }
+    }
+    
+    /**
+     * Revalidate cache trong background nếu cần (không block caller)
+     * Kết quả mới được lưu vào cache và EndpointSelector
+     */
+    public void refreshInBackground() {
+        if (!cache.shouldRefresh()) {
+            return;
+        }
+        if (refreshInFlight.getAndSet(true)) {
+            return;
+        }
+        executor.execute("ota-refresh", new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    performOTARequest();
+                } catch (Exception e) {
+                    Log.w(TAG, "Background OTA refresh failed: " + e.getMessage());
+                } finally {
+                    refreshInFlight.set(false);
+                }
+            }
+        });
+    }
+    
+    /**
+     * Xoá cached config (vd: khi reset activation)
+     */
+    public void clearCache() {
+        cache.clear();
+    }
+    
+    /**
+     * Perform OTA HTTP request (shared OkHttp client, response streamed into Gson)
      */
     private OTAResponse performOTARequest() throws Exception {
         
@@ -114,68 +212,76 @@ public class OTAConfigManager {
         
         // Build request URL with query parameters
         String clientId = getClientId();
-        String requestUrl = OTA_URL + 
-            "?device_id=" + deviceId +
-            "&client_id=" + clientId;
+        HttpUrl requestUrl = HttpUrl.parse(new XiaozhiConfig(context).getOtaUrl()).newBuilder()
+            .addQueryParameter("device_id", deviceId)
+            .addQueryParameter("client_id", clientId)
+            .build();
         
         Log.i(TAG, "Fetching OTA config from: " + requestUrl);
         
+        // Build payload (based on ota.py build_payload() - line 68-87)
+        JSONObject payload = buildPayload(deviceId);
+        
         // Build headers (based on ota.py build_headers() - line 89-118)
-        URL url = new URL(requestUrl);
-        HttpURLConnection conn = (HttpURLConnection) url.openConnection();
+        Request.Builder builder = new Request.Builder()
+            .url(requestUrl)
+            .header("Device-Id", deviceId)
+            .header("Client-Id", clientId)
+            .header("User-Agent", BOARD_TYPE + "/" + APP_NAME + "-" + APP_VERSION)
+            .header("Accept-Language", "zh-CN")
+            // Add Activation-Version header for v2 protocol
+            .header("Activation-Version", APP_VERSION)
+            .post(RequestBody.create(HttpClientProvider.JSON, payload.toString()));
         
+        // Conditional revalidation của cached config
+        if (cache.hasEntry()) {
+            if (cache.getETag() != null) {
+                builder.header("If-None-Match", cache.getETag());
+            }
+            if (cache.getVersion() != null) {
+                builder.header("Config-Version", cache.getVersion());
+            }
+        }
+        
+        Response httpResponse = HttpClientProvider.get().newCall(builder.build()).execute();
         try {
-            conn.setRequestMethod("POST");
-            conn.setRequestProperty("Content-Type", "application/json");
-            conn.setRequestProperty("Device-Id", deviceId);
-            conn.setRequestProperty("Client-Id", clientId);
-            conn.setRequestProperty("User-Agent", BOARD_TYPE + "/" + APP_NAME + "-" + APP_VERSION);
-            conn.setRequestProperty("Accept-Language", "zh-CN");
-            
-            // Add Activation-Version header for v2 protocol
-            conn.setRequestProperty("Activation-Version", APP_VERSION);
-            
-            conn.setDoOutput(true);
-            conn.setConnectTimeout(10000);
-            conn.setReadTimeout(10000);
-            
-            // Build payload (based on ota.py build_payload() - line 68-87)
-            JSONObject payload = buildPayload(deviceId);
-            
-            // Write payload
-            OutputStream os = conn.getOutputStream();
-            os.write(payload.toString().getBytes());
-            os.flush();
-            os.close();
+            int statusCode = httpResponse.code();
+            String cacheControl = httpResponse.header("Cache-Control");
             
-            // Read response
-            int statusCode = conn.getResponseCode();
-            
-            BufferedReader reader;
-            if (statusCode >= 200 && statusCode < 300) {
-                reader = new BufferedReader(new InputStreamReader(conn.getInputStream()));
-            } else {
-                reader = new BufferedReader(new InputStreamReader(conn.getErrorStream()));
+            if (statusCode == 304) {
+                OTAResponse cached = getCachedConfig();
+                if (cached != null) {
+                    cache.markRevalidated(cacheControl);
+                    return cached;
+                }
+                throw new Exception("HTTP 304 without cached config");
             }
             
-            StringBuilder responseBody = new StringBuilder();
-            String line;
-            while ((line = reader.readLine()) != null) {
-                responseBody.append(line);
+            if (statusCode != 200) {
+                String errorBody = httpResponse.body() != null ? httpResponse.body().string() : "";
+                Log.d(TAG, "OTA Response (" + statusCode + "): " + errorBody);
+                throw new Exception("HTTP " + statusCode + ": " + errorBody);
             }
-            reader.close();
             
-            Log.d(TAG, "OTA Response (" + statusCode + "): " + responseBody);
+            // Parse response
+            JsonObject json = HttpClientProvider.readJson(httpResponse.body());
+            Log.d(TAG, "OTA Response (" + statusCode + ", " + httpResponse.protocol() + ")");
+            OTAResponse response = parseOTAResponse(json);
             
-            if (statusCode != 200) {
-                throw new Exception("HTTP " + statusCode + ": " + responseBody);
+            // Activation challenge chỉ dùng một lần - không cache
+            if (response.activation == null) {
+                cache.store(json.toString(), httpResponse.header("ETag"), response.configVersion, cacheControl);
+            } else {
+                cache.clear();
             }
             
-            // Parse response
-            return parseOTAResponse(responseBody.toString());
+            // Cache server-directed endpoints cho lần connect tiếp theo
+            EndpointSelector.getInstance(context).updateFromOTA(response.websocketEndpoints);
+            
+            return response;
             
         } finally {
-            conn.disconnect();
+            httpResponse.close();
         }
     }
     
@@ -209,33 +315,63 @@ public class OTAConfigManager {
      * Parse OTA response
      * Based on system_initializer.py stage_3_ota_config() - line 161-209
      */
-    private OTAResponse parseOTAResponse(String jsonString) throws Exception {
-        JSONObject json = new JSONObject(jsonString);
-        
+    private OTAResponse parseOTAResponse(JsonObject json) {
         OTAResponse response = new OTAResponse();
         response.success = true;
         
+        // Config version cho revalidation (server không hỗ trợ ETag)
+        response.configVersion = HttpClientProvider.optString(json, "config_version", null);
+        JsonElement firmware = json.get("firmware");
+        if (response.configVersion == null && firmware != null && firmware.isJsonObject()) {
+            response.configVersion = HttpClientProvider.optString(firmware.getAsJsonObject(), "version", null);
+        }
+        
         // Parse WebSocket config
-        if (json.has("websocket")) {
-            JSONObject wsJson = json.getJSONObject("websocket");
-            OTAResponse.WebSocketConfig wsConfig = new OTAResponse.WebSocketConfig();
-            wsConfig.url = wsJson.optString("url", null);
-            wsConfig.token = wsJson.optString("token", null);
-            wsConfig.protocol = wsJson.optString("protocol", "v1");
-            response.websocket = wsConfig;
+        // Supports {"websocket": {...}}, {"websocket": {..., "endpoints": [...]}}
+        // and {"websocket": [...]} (regional servers)
+        JsonElement wsValue = json.get("websocket");
+        if (wsValue != null && wsValue.isJsonObject()) {
+            JsonObject wsJson = wsValue.getAsJsonObject();
+            response.websocket = parseWebSocketConfig(wsJson, null);
+            if (response.websocket.url != null) {
+                response.websocketEndpoints.add(response.websocket);
+            }
             
-            Log.i(TAG, "WebSocket config received: " + wsConfig.url);
+            JsonElement extra = wsJson.get("endpoints");
+            if (extra != null && extra.isJsonArray()) {
+                for (JsonElement endpointJson : extra.getAsJsonArray()) {
+                    if (endpointJson.isJsonObject()) {
+                        response.websocketEndpoints.add(
+                            parseWebSocketConfig(endpointJson.getAsJsonObject(), response.websocket));
+                    }
+                }
+            }
+        } else if (wsValue != null && wsValue.isJsonArray()) {
+            for (JsonElement endpointJson : wsValue.getAsJsonArray()) {
+                if (endpointJson.isJsonObject()) {
+                    response.websocketEndpoints.add(parseWebSocketConfig(endpointJson.getAsJsonObject(), null));
+                }
+            }
+            if (!response.websocketEndpoints.isEmpty()) {
+                response.websocket = response.websocketEndpoints.get(0);
+            }
+        }
+        
+        if (response.websocket != null) {
+            Log.i(TAG, "WebSocket config received: " + response.websocket.url +
+                  " (" + response.websocketEndpoints.size() + " endpoints)");
         }
         
         // Parse activation data
         // Based on system_initializer.py line 193-203
-        if (json.has("activation")) {
-            JSONObject activationJson = json.getJSONObject("activation");
+        JsonElement activationValue = json.get("activation");
+        if (activationValue != null && activationValue.isJsonObject()) {
+            JsonObject activationJson = activationValue.getAsJsonObject();
             OTAResponse.ActivationData activationData = new OTAResponse.ActivationData();
-            activationData.challenge = activationJson.optString("challenge", null);
-            activationData.code = activationJson.optString("code", null);
-            activationData.url = activationJson.optString("url", null);
-            activationData.timeout = activationJson.optInt("timeout", 300);
+            activationData.challenge = HttpClientProvider.optString(activationJson, "challenge", null);
+            activationData.code = HttpClientProvider.optString(activationJson, "code", null);
+            activationData.url = HttpClientProvider.optString(activationJson, "url", null);
+            activationData.timeout = HttpClientProvider.optInt(activationJson, "timeout", 300);
             response.activation = activationData;
             
             Log.i(TAG, "Activation data received - Device needs activation");
@@ -247,6 +383,18 @@ public class OTAConfigManager {
         return response;
     }
     
+    /**
+     * Parse một WebSocket endpoint, kế thừa token/protocol từ primary nếu thiếu
+     */
+    private OTAResponse.WebSocketConfig parseWebSocketConfig(JsonObject wsJson,
+                                                             OTAResponse.WebSocketConfig parent) {
+        OTAResponse.WebSocketConfig wsConfig = new OTAResponse.WebSocketConfig();
+        wsConfig.url = HttpClientProvider.optString(wsJson, "url", null);
+        wsConfig.token = HttpClientProvider.optString(wsJson, "token", parent != null ? parent.token : null);
+        wsConfig.protocol = HttpClientProvider.optString(wsJson, "protocol", parent != null ? parent.protocol : "v1");
+        return wsConfig;
+    }
+    
     /**
      * Get or generate client ID
      */
@@ -2,28 +2,30 @@ package com.phicomm.r1.xiaozhi.api;
 
 import android.util.Log;
 
+import com.google.gson.JsonObject;
 import com.phicomm.r1.xiaozhi.api.model.DeviceStatus;
 import com.phicomm.r1.xiaozhi.api.model.PairingResponse;
+import com.phicomm.r1.xiaozhi.network.HttpClientProvider;
 
 import org.json.JSONObject;
 
-import java.io.BufferedReader;
-import java.io.InputStreamReader;
-import java.io.OutputStream;
-import java.net.HttpURLConnection;
-import java.net.URL;
+import okhttp3.HttpUrl;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
 
 /**
  * HTTP Client để tương tác với Xiaozhi API
  * Endpoints:
  * - POST /api/device/register - Register device và nhận pairing code
  * - GET /api/device/status - Check pairing status và nhận token
+ *
+ * Dùng shared OkHttp client (HttpClientProvider)
  */
 public class XiaozhiApiClient {
     
     private static final String TAG = "XiaozhiApiClient";
     private static final String BASE_URL = "https://xiaozhi.me/api";
-    private static final int TIMEOUT = 10000; // 10 seconds
     
     /**
      * Register device với Xiaozhi server và nhận pairing code
@@ -43,13 +45,12 @@ public class XiaozhiApiClient {
         Log.d(TAG, "Registering device: " + deviceId);
         
         // Make HTTP POST request
-        String response = post(endpoint, requestBody.toString());
+        JsonObject json = post(endpoint, requestBody.toString());
         
         // Parse response
-        JSONObject json = new JSONObject(response);
-        String code = json.getString("code");
-        String returnedDeviceId = json.getString("device_id");
-        long expiresAt = json.getLong("expires_at");
+        String code = json.get("code").getAsString();
+        String returnedDeviceId = json.get("device_id").getAsString();
+        long expiresAt = json.get("expires_at").getAsLong();
         
         Log.i(TAG, "Device registered successfully. Code: " + code);
         
@@ -63,18 +64,19 @@ public class XiaozhiApiClient {
      * @return DeviceStatus với status và token (nếu paired)
      */
     public DeviceStatus checkPairingStatus(String deviceId) throws Exception {
-        String endpoint = BASE_URL + "/device/status?device_id=" + deviceId;
+        HttpUrl endpoint = HttpUrl.parse(BASE_URL + "/device/status").newBuilder()
+            .addQueryParameter("device_id", deviceId)
+            .build();
         
         Log.d(TAG, "Checking pairing status for: " + deviceId);
         
         // Make HTTP GET request
-        String response = get(endpoint);
+        JsonObject json = get(endpoint);
         
         // Parse response
-        JSONObject json = new JSONObject(response);
-        String status = json.getString("status");
-        String token = json.optString("token", null);
-        String returnedDeviceId = json.getString("device_id");
+        String status = json.get("status").getAsString();
+        String token = HttpClientProvider.optString(json, "token", null);
+        String returnedDeviceId = json.get("device_id").getAsString();
         
         Log.d(TAG, "Status: " + status + (token != null ? ", Token received" : ""));
         
@@ -84,79 +86,40 @@ public class XiaozhiApiClient {
     /**
      * Make HTTP POST request
      */
-    private String post(String urlString, String body) throws Exception {
-        URL url = new URL(urlString);
-        HttpURLConnection conn = (HttpURLConnection) url.openConnection();
-        
-        try {
-            conn.setRequestMethod("POST");
-            conn.setRequestProperty("Content-Type", "application/json");
-            conn.setRequestProperty("Accept", "application/json");
-            conn.setConnectTimeout(TIMEOUT);
-            conn.setReadTimeout(TIMEOUT);
-            conn.setDoOutput(true);
-            
-            // Write body
-            OutputStream os = conn.getOutputStream();
-            os.write(body.getBytes("UTF-8"));
-            os.flush();
-            os.close();
-            
-            // Read response
-            int responseCode = conn.getResponseCode();
-            if (responseCode != HttpURLConnection.HTTP_OK && 
-                responseCode != HttpURLConnection.HTTP_CREATED) {
-                throw new Exception("HTTP error code: " + responseCode);
-            }
-            
-            BufferedReader br = new BufferedReader(
-                new InputStreamReader(conn.getInputStream(), "UTF-8"));
-            StringBuilder response = new StringBuilder();
-            String line;
-            while ((line = br.readLine()) != null) {
-                response.append(line);
-            }
-            br.close();
-            
-            return response.toString();
-            
-        } finally {
-            conn.disconnect();
-        }
+    private JsonObject post(String urlString, String body) throws Exception {
+        Request request = new Request.Builder()
+            .url(urlString)
+            .header("Accept", "application/json")
+            .post(RequestBody.create(HttpClientProvider.JSON, body))
+            .build();
+        return execute(request, true);
     }
     
     /**
      * Make HTTP GET request
      */
-    private String get(String urlString) throws Exception {
-        URL url = new URL(urlString);
-        HttpURLConnection conn = (HttpURLConnection) url.openConnection();
-        
+    private JsonObject get(HttpUrl url) throws Exception {
+        Request request = new Request.Builder()
+            .url(url)
+            .header("Accept", "application/json")
+            .get()
+            .build();
+        return execute(request, false);
+    }
+    
+    /**
+     * Execute trên shared client và stream body vào Gson
+     */
+    private JsonObject execute(Request request, boolean allowCreated) throws Exception {
+        Response response = HttpClientProvider.get().newCall(request).execute();
         try {
-            conn.setRequestMethod("GET");
-            conn.setRequestProperty("Accept", "application/json");
-            conn.setConnectTimeout(TIMEOUT);
-            conn.setReadTimeout(TIMEOUT);
-            
-            // Read response
-            int responseCode = conn.getResponseCode();
-            if (responseCode != HttpURLConnection.HTTP_OK) {
+            int responseCode = response.code();
+            if (responseCode != 200 && !(allowCreated && responseCode == 201)) {
                 throw new Exception("HTTP error code: " + responseCode);
             }
-            
-            BufferedReader br = new BufferedReader(
-                new InputStreamReader(conn.getInputStream(), "UTF-8"));
-            StringBuilder response = new StringBuilder();
-            String line;
-            while ((line = br.readLine()) != null) {
-                response.append(line);
-            }
-            br.close();
-            
-            return response.toString();
-            
+            return HttpClientProvider.readJson(response.body());
         } finally {
-            conn.disconnect();
+            response.close();
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,90 @@
+package com.phicomm.r1.xiaozhi.audio;
+
+import android.media.AudioFormat;
+import android.media.AudioRecord;
+import android.util.Log;
+
+import java.io.IOException;
+
+/**
+ * AudioSource trên AudioRecord (mic thật)
+ *
+ * captureNanos = System.nanoTime() ngay sau read(). Sample cuối thực ra đã vào mic sớm hơn
+ * (HAL giao theo period, read() trả ngay nếu dữ liệu nằm sẵn trong buffer) - độ trễ này
+ * ước lượng bằng getCaptureLatencyMs() và được trừ ở EchoReference (setExtraDelayMs)
+ */
+public class MicAudioSource implements AudioSource {
+
+    private static final String TAG = "MicAudioSource";
+
+    private final AudioRecord record;
+    private long captureNanos;
+
+    /**
+     * @param record AudioRecord đã STATE_INITIALIZED - source sở hữu và release nó
+     */
+    public MicAudioSource(AudioRecord record) {
+        this.record = record;
+    }
+
+    @Override
+    public int getSampleRate() {
+        return record.getSampleRate();
+    }
+
+    @Override
+    public int getChannels() {
+        return record.getChannelCount();
+    }
+
+    @Override
+    public void start() throws IOException {
+        try {
+            record.startRecording();
+        } catch (IllegalStateException e) {
+            throw new IOException("AudioRecord start failed: " + e.getMessage());
+        }
+        if (record.getRecordingState() != AudioRecord.RECORDSTATE_RECORDING) {
+            throw new IOException("AudioRecord not recording (mic busy?)");
+        }
+    }
+
+    @Override
+    public int read(short[] buffer, int offset, int length) {
+        int read = record.read(buffer, offset, length);
+        captureNanos = System.nanoTime();
+        return read;
+    }
+
+    @Override
+    public long getCaptureNanos() {
+        return captureNanos;
+    }
+
+    /**
+     * Ước lượng capture latency: một frame + nửa min buffer của AudioRecord (HAL period, trung bình)
+     *
+     * @param frameSamples Số sample mỗi lần read()
+     */
+    public int getCaptureLatencyMs(int frameSamples) {
+        int sampleRate = record.getSampleRate();
+        int channels = record.getChannelCount();
+        int minBuffer = AudioRecord.getMinBufferSize(sampleRate, record.getChannelConfiguration(),
+            AudioFormat.ENCODING_PCM_16BIT);
+        int frameMs = frameSamples * 1000 / sampleRate;
+        int bufferMs = minBuffer > 0 ? minBuffer / (2 * channels) * 1000 / sampleRate : 0;
+        return frameMs + bufferMs / 2;
+    }
+
+    @Override
+    public void release() {
+        try {
+            if (record.getRecordingState() == AudioRecord.RECORDSTATE_RECORDING) {
+                record.stop();
+            }
+            record.release();
+        } catch (Exception e) {
+            Log.e(TAG, "Error releasing AudioRecord", e);
+        }
+    }
+}
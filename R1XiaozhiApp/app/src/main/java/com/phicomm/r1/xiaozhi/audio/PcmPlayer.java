@@ -0,0 +1,341 @@
+package com.phicomm.r1.xiaozhi.audio;
+
+import android.media.AudioFormat;
+import android.media.AudioManager;
+import android.media.AudioTimestamp;
+import android.media.AudioTrack;
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.phicomm.r1.xiaozhi.core.XiaozhiCore;
+import com.phicomm.r1.xiaozhi.util.PooledBuffer;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Phát PCM 16-bit qua AudioTrack (MODE_STREAM)
+ *
+ * Nhận ByteBuffer trực tiếp - memory-mapped file từ TtsCache, heap buffer, hoặc PcmStream
+ * gồm các direct buffer từ BufferPool (TTS stream qua WebSocket) - và ghi từng chunk 20ms
+ * bằng AudioTrack.write(ByteBuffer) (API 21), không copy sang short[] và không qua temp file / MediaPlayer.
+ *
+ * AudioTrack được giữ lại giữa các lần phát nếu cùng format
+ *
+ * Mọi chunk cũng được ghi vào EchoReference kèm (frame position, nanoTime)
+ * từ AudioTrack.getTimestamp() để echo canceller align được với mic
+ *
+ * Write loop chạy trên tier audio của XiaozhiCore scheduler (thread được dùng lại giữa các câu).
+ * Mỗi lần play() là một Session riêng: stop chỉ đánh dấu session đó, write loop cũ còn kẹt trong
+ * AudioTrack.write() không thể tiếp tục ghi vào lần phát mới.
+ */
+public class PcmPlayer {
+
+    private static final String TAG = "PcmPlayer";
+
+    private static final int CHUNK_MS = 20;
+    private static final long DRAIN_POLL_MS = 10;
+    // Stream không có chunk mới trong khoảng này -> log stall (vẫn chờ tới finish / close)
+    private static final long STREAM_STALL_MS = 3000;
+
+    public interface Listener {
+        void onStarted();
+
+        void onCompleted();
+
+        void onError(String error);
+    }
+
+    private final Object lock = new Object();
+    private final EchoReference echoReference = EchoReference.getInstance();
+    private Listener listener;
+
+    private AudioTrack track;
+    private int trackSampleRate;
+    private int trackChannels;
+
+    private Future<?> playTask;
+    private PcmStream stream;
+    private Session session;
+    private volatile boolean playing = false;
+
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Phát PCM buffer (position -> limit), dừng playback hiện tại nếu có
+     */
+    public void play(ByteBuffer pcm, int sampleRate, int channels) {
+        play(PcmStream.of(PooledBuffer.wrap(pcm.duplicate())), sampleRate, channels);
+    }
+
+    /**
+     * Phát PCM đang stream về (bắt đầu ngay khi có chunk đầu), dừng playback hiện tại nếu có.
+     * Player close() stream khi phát xong / bị stop.
+     */
+    public void play(final PcmStream pcm, final int sampleRate, final int channels) {
+        synchronized (lock) {
+            stopLocked(true);
+
+            final AudioTrack audioTrack;
+            try {
+                audioTrack = obtainTrack(sampleRate, channels);
+            } catch (RuntimeException e) {
+                pcm.close();
+                Log.e(TAG, "Failed to create AudioTrack", e);
+                notifyError("AudioTrack init failed: " + e.getMessage());
+                return;
+            }
+
+            final Session current = new Session();
+            session = current;
+            playing = true;
+            stream = pcm;
+            try {
+                playTask = XiaozhiCore.getInstance().getScheduler().audio().submit("pcm-player", new Runnable() {
+                    @Override
+                    public void run() {
+                        // Thread của tier audio được dùng lại -> trả priority khi xong
+                        int previousPriority = Process.getThreadPriority(Process.myTid());
+                        Process.setThreadPriority(Process.THREAD_PRIORITY_URGENT_AUDIO);
+                        try {
+                            writeLoop(current, audioTrack, pcm, sampleRate, channels);
+                        } finally {
+                            Process.setThreadPriority(previousPriority);
+                        }
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                playing = false;
+                stream = null;
+                pcm.close();
+                Log.e(TAG, "No audio thread for playback", e);
+                notifyError("Playback rejected: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Dừng ngay và flush dữ liệu còn trong AudioTrack buffer
+     * Loa im lặng khi hàm trả về; không chờ write thread kết thúc (an toàn cho barge-in path)
+     */
+    public void stop() {
+        synchronized (lock) {
+            stopLocked(false);
+        }
+    }
+
+    public boolean isPlaying() {
+        return playing;
+    }
+
+    /**
+     * Release AudioTrack (gọi khi service destroy)
+     */
+    public void release() {
+        synchronized (lock) {
+            stopLocked(true);
+            if (track != null) {
+                track.release();
+                track = null;
+            }
+        }
+    }
+
+    private void stopLocked(boolean join) {
+        if (session != null) {
+            session.stopped = true;
+            session = null;
+        }
+        echoReference.stop();
+        if (stream != null) {
+            // Đánh thức write loop nếu đang chờ chunk
+            stream.close();
+            stream = null;
+        }
+        if (track != null && track.getState() == AudioTrack.STATE_INITIALIZED) {
+            try {
+                track.pause();
+                track.flush();
+            } catch (IllegalStateException e) {
+                Log.w(TAG, "stop: " + e.getMessage());
+            }
+        }
+        if (playTask != null && join) {
+            try {
+                playTask.get(200, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException e) {
+                Log.w(TAG, "stop: write loop failed: " + e);
+            } catch (TimeoutException e) {
+                // Write loop cũ vẫn kẹt trong write(): bỏ track này (release làm write() trả lỗi),
+                // lần phát sau tạo track mới thay vì dùng chung
+                Log.w(TAG, "stop: write loop did not finish, abandoning AudioTrack");
+                if (track != null) {
+                    track.release();
+                    track = null;
+                }
+            }
+            playTask = null;
+        }
+        playing = false;
+    }
+
+    private AudioTrack obtainTrack(int sampleRate, int channels) {
+        if (track != null && trackSampleRate == sampleRate && trackChannels == channels) {
+            return track;
+        }
+        if (track != null) {
+            track.release();
+        }
+
+        int channelConfig = channels == 2 ? AudioFormat.CHANNEL_OUT_STEREO : AudioFormat.CHANNEL_OUT_MONO;
+        int minBuffer = AudioTrack.getMinBufferSize(sampleRate, channelConfig, AudioFormat.ENCODING_PCM_16BIT);
+        track = new AudioTrack(
+            AudioManager.STREAM_MUSIC,
+            sampleRate,
+            channelConfig,
+            AudioFormat.ENCODING_PCM_16BIT,
+            Math.max(minBuffer, bytesPerChunk(sampleRate, channels) * 4),
+            AudioTrack.MODE_STREAM
+        );
+        if (track.getState() != AudioTrack.STATE_INITIALIZED) {
+            track.release();
+            track = null;
+            throw new IllegalStateException("AudioTrack not initialized");
+        }
+        trackSampleRate = sampleRate;
+        trackChannels = channels;
+        Log.i(TAG, "AudioTrack created: " + sampleRate + "Hz, " + channels + "ch, buffer " + minBuffer);
+        return track;
+    }
+
+    private void writeLoop(Session current, AudioTrack audioTrack, PcmStream pcm, int sampleRate, int channels) {
+        int frameBytes = 2 * channels;
+        int chunkBytes = bytesPerChunk(sampleRate, channels);
+        long writtenBytes = 0;
+        long startHead = audioTrack.getPlaybackHeadPosition() & 0xFFFFFFFFL;
+        AudioTimestamp timestamp = new AudioTimestamp();
+        echoReference.start(sampleRate, startHead);
+
+        try {
+            audioTrack.play();
+            Listener l = listener;
+            if (l != null) {
+                l.onStarted();
+            }
+
+            boolean stalled = false;
+            while (!current.stopped) {
+                PooledBuffer buffer = pcm.take(STREAM_STALL_MS);
+                if (buffer == null) {
+                    if (pcm.isEnded()) {
+                        break;
+                    }
+                    // Network chậm giữa các câu: coi như pause, stream vẫn thuộc về câu trả lời này.
+                    // Mất kết nối / câu mới / stop đều close() stream nên vòng này không chờ mãi
+                    if (!stalled) {
+                        stalled = true;
+                        Log.w(TAG, "PCM stream stalled after " + writtenBytes + " bytes, waiting");
+                    }
+                    continue;
+                }
+                stalled = false;
+                try {
+                    ByteBuffer data = buffer.buffer().duplicate();
+                    while (!current.stopped && data.hasRemaining()) {
+                        int size = Math.min(chunkBytes, data.remaining());
+                        ByteBuffer chunk = data.duplicate();
+                        chunk.limit(chunk.position() + size);
+                        echoReference.write(chunk, channels);
+
+                        int written = audioTrack.write(data, size, AudioTrack.WRITE_BLOCKING);
+                        if (written < 0) {
+                            if (!current.stopped) {
+                                notifyError("AudioTrack write error: " + written);
+                            }
+                            return;
+                        }
+                        writtenBytes += written;
+                        updateEchoTimestamp(audioTrack, timestamp);
+                    }
+                } finally {
+                    buffer.release();
+                }
+            }
+
+            // Chờ AudioTrack phát hết phần còn trong buffer
+            long totalFrames = writtenBytes / frameBytes;
+            long deadline = SystemClock.elapsedRealtime() + 1000 + totalFrames * 1000 / sampleRate;
+            while (!current.stopped && SystemClock.elapsedRealtime() < deadline) {
+                long played = (audioTrack.getPlaybackHeadPosition() & 0xFFFFFFFFL) - startHead;
+                if (played >= totalFrames) {
+                    break;
+                }
+                updateEchoTimestamp(audioTrack, timestamp);
+                SystemClock.sleep(DRAIN_POLL_MS);
+            }
+
+            if (!current.stopped) {
+                audioTrack.stop();
+                playing = false;
+                l = listener;
+                if (l != null) {
+                    l.onCompleted();
+                }
+            }
+        } catch (IllegalStateException e) {
+            if (!current.stopped) {
+                Log.e(TAG, "Playback failed", e);
+                notifyError(e.getMessage());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            pcm.close();
+            playing = false;
+            if (!current.stopped) {
+                echoReference.stop();
+            }
+        }
+    }
+
+    /**
+     * Anchor frame position <-> System.nanoTime() cho EchoReference
+     * getTimestamp() cho biết frame nào thực sự ra DAC lúc nào (đã tính output latency);
+     * fallback về playback head nếu HAL chưa có timestamp
+     */
+    private void updateEchoTimestamp(AudioTrack audioTrack, AudioTimestamp timestamp) {
+        if (audioTrack.getTimestamp(timestamp)) {
+            echoReference.updateTimestamp(timestamp.framePosition, timestamp.nanoTime);
+        } else {
+            echoReference.updateTimestamp(audioTrack.getPlaybackHeadPosition() & 0xFFFFFFFFL, System.nanoTime());
+        }
+    }
+
+    /**
+     * Một lần play(); stopped chỉ chuyển false -> true
+     */
+    private static final class Session {
+        volatile boolean stopped;
+    }
+
+    private void notifyError(String error) {
+        playing = false;
+        Listener l = listener;
+        if (l != null) {
+            l.onError(error);
+        }
+    }
+
+    private static int bytesPerChunk(int sampleRate, int channels) {
+        return sampleRate * CHUNK_MS / 1000 * channels * 2;
+    }
+}
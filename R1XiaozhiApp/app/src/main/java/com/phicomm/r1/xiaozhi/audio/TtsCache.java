@@ -0,0 +1,386 @@
+package com.phicomm.r1.xiaozhi.audio;
+
+import android.content.Context;
+import android.util.Log;
+
+import com.phicomm.r1.xiaozhi.core.XiaozhiCore;
+import com.phicomm.r1.xiaozhi.platform.ManagedExecutor;
+import com.phicomm.r1.xiaozhi.util.CryptoUtils;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * LRU cache cho TTS audio (hai tầng: memory + disk, mỗi tầng có byte budget riêng)
+ *
+ * Key: text do server cung cấp (keyForText) hoặc hash của audio (keyForAudio).
+ * Tên file = SHA-256 của key, nên key dài / có ký tự lạ vẫn an toàn.
+ *
+ * - PCM entries: memory tier (nếu nhỏ) + disk; disk hit được memory-map để phát trực tiếp
+ * - Encoded entries (mp3/opus từ URL): chỉ disk, MediaPlayer phát từ file
+ *
+ * Ghi disk chạy trên background executor, không block playback path
+ */
+public class TtsCache {
+
+    private static final String TAG = "TtsCache";
+
+    private static final String DIR_NAME = "tts";
+    private static final String SUFFIX = ".tts";
+
+    public static final long DEFAULT_MEMORY_BUDGET = 2 * 1024 * 1024;   // 2 MB
+    public static final long DEFAULT_DISK_BUDGET = 32 * 1024 * 1024;    // 32 MB
+
+    /**
+     * Cached audio - hoặc trong memory (data), hoặc trên disk (file)
+     */
+    public static class Entry {
+        public final String key;
+        public final int sampleRate;     // 0 = encoded audio
+        public final int channels;
+        final byte[] data;
+        final File file;
+
+        Entry(String key, int sampleRate, int channels, byte[] data, File file) {
+            this.key = key;
+            this.sampleRate = sampleRate;
+            this.channels = channels;
+            this.data = data;
+            this.file = file;
+        }
+
+        public boolean isPcm() {
+            return sampleRate > 0;
+        }
+
+        public boolean isInMemory() {
+            return data != null;
+        }
+
+        public File getFile() {
+            return file;
+        }
+
+        public long size() {
+            return data != null ? data.length : file.length();
+        }
+    }
+
+    private static TtsCache instance;
+
+    private final File dir;
+    private final long memoryBudget;
+    private final long diskBudget;
+    private final ManagedExecutor diskExecutor = XiaozhiCore.getInstance().getScheduler().background();
+
+    // Access-ordered -> iteration bắt đầu từ entry ít dùng nhất
+    private final LinkedHashMap<String, Entry> memory = new LinkedHashMap<>(16, 0.75f, true);
+    private final LinkedHashMap<String, File> disk = new LinkedHashMap<>(64, 0.75f, true);
+    private long memoryBytes = 0;
+    private long diskBytes = 0;
+
+    private int hits = 0;
+    private int memoryHits = 0;
+    private int misses = 0;
+
+    public static synchronized TtsCache getInstance(Context context) {
+        if (instance == null) {
+            instance = new TtsCache(
+                new File(context.getApplicationContext().getCacheDir(), DIR_NAME),
+                DEFAULT_MEMORY_BUDGET,
+                DEFAULT_DISK_BUDGET
+            );
+        }
+        return instance;
+    }
+
+    public TtsCache(File dir, long memoryBudget, long diskBudget) {
+        this.dir = dir;
+        this.memoryBudget = memoryBudget;
+        this.diskBudget = diskBudget;
+        loadIndex();
+    }
+
+    // ==================== Keys ====================
+
+    /**
+     * Key từ text do server gửi (normalize whitespace + lowercase)
+     */
+    public static String keyForText(String text) {
+        return "text:" + text.trim().replaceAll("\\s+", " ").toLowerCase(Locale.US);
+    }
+
+    /**
+     * Key từ nội dung audio (hoặc audio hash server gửi sẵn)
+     */
+    public static String keyForAudio(byte[] audio) {
+        return "audio:" + CryptoUtils.toHex(CryptoUtils.sha256(audio));
+    }
+
+    public static String keyForUrl(String url) {
+        return "url:" + url;
+    }
+
+    // ==================== Lookup ====================
+
+    /**
+     * @return Entry hoặc null nếu miss
+     */
+    public synchronized Entry get(String key) {
+        if (key == null) {
+            return null;
+        }
+        String hash = hash(key);
+
+        Entry entry = memory.get(hash);
+        if (entry != null) {
+            hits++;
+            memoryHits++;
+            return entry;
+        }
+
+        File file = disk.get(hash);
+        if (file != null && file.exists()) {
+            hits++;
+            file.setLastModified(System.currentTimeMillis());
+            int[] format = parseFormat(file.getName());
+            return new Entry(key, format[0], format[1], null, file);
+        }
+        if (file != null) {
+            // File bị xoá từ bên ngoài (clear cache)
+            disk.remove(hash);
+        }
+
+        misses++;
+        return null;
+    }
+
+    /**
+     * Memory-map disk entry để phát (không copy vào heap)
+     * Memory entry được wrap trực tiếp (AudioTrack cần heap buffer có backing array)
+     */
+    public ByteBuffer open(Entry entry) throws IOException {
+        if (entry.data != null) {
+            return ByteBuffer.wrap(entry.data);
+        }
+        RandomAccessFile raf = new RandomAccessFile(entry.file, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            mapped.load();
+            return mapped;
+        } finally {
+            // Mapping vẫn hợp lệ sau khi đóng channel
+            raf.close();
+        }
+    }
+
+    // ==================== Insert ====================
+
+    /**
+     * Cache PCM 16-bit audio
+     */
+    public void putPcm(String key, byte[] pcm, int sampleRate, int channels) {
+        put(key, pcm, sampleRate, channels);
+    }
+
+    /**
+     * Cache encoded audio (chỉ disk)
+     */
+    public void putEncoded(String key, byte[] audio) {
+        put(key, audio, 0, 0);
+    }
+
+    /**
+     * Cache encoded audio từ stream (download) - chạy trên thread của caller
+     */
+    public void putEncoded(String key, InputStream in) throws IOException {
+        String hash = hash(key);
+        File target = new File(dir, fileName(hash, 0, 0));
+        writeAtomically(target, in, null);
+        synchronized (this) {
+            addToDiskIndex(hash, target);
+            trimDisk();
+        }
+    }
+
+    private void put(String key, final byte[] data, int sampleRate, int channels) {
+        if (key == null || data == null || data.length == 0 || data.length > diskBudget) {
+            return;
+        }
+        final String hash = hash(key);
+
+        synchronized (this) {
+            if (sampleRate > 0 && data.length <= memoryBudget / 4) {
+                Entry previous = memory.put(hash, new Entry(key, sampleRate, channels, data, null));
+                memoryBytes += data.length - (previous != null ? previous.data.length : 0);
+                trimMemory();
+            }
+        }
+
+        final File target = new File(dir, fileName(hash, sampleRate, channels));
+        diskExecutor.execute("tts-cache-write", new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    writeAtomically(target, null, data);
+                    synchronized (TtsCache.this) {
+                        addToDiskIndex(hash, target);
+                        trimDisk();
+                    }
+                } catch (IOException e) {
+                    Log.w(TAG, "Failed to write cache entry: " + e.getMessage());
+                }
+            }
+        });
+    }
+
+    public synchronized void clear() {
+        memory.clear();
+        memoryBytes = 0;
+        for (File file : disk.values()) {
+            file.delete();
+        }
+        disk.clear();
+        diskBytes = 0;
+        Log.i(TAG, "TTS cache cleared");
+    }
+
+    public synchronized JSONObject getStats() throws JSONException {
+        JSONObject json = new JSONObject();
+        json.put("hits", hits);
+        json.put("memory_hits", memoryHits);
+        json.put("misses", misses);
+        json.put("memory_entries", memory.size());
+        json.put("memory_bytes", memoryBytes);
+        json.put("memory_budget", memoryBudget);
+        json.put("disk_entries", disk.size());
+        json.put("disk_bytes", diskBytes);
+        json.put("disk_budget", diskBudget);
+        return json;
+    }
+
+    // ==================== Internals ====================
+
+    private void trimMemory() {
+        Iterator<Map.Entry<String, Entry>> it = memory.entrySet().iterator();
+        while (memoryBytes > memoryBudget && it.hasNext()) {
+            memoryBytes -= it.next().getValue().data.length;
+            it.remove();
+        }
+    }
+
+    private void trimDisk() {
+        Iterator<Map.Entry<String, File>> it = disk.entrySet().iterator();
+        while (diskBytes > diskBudget && it.hasNext()) {
+            File file = it.next().getValue();
+            diskBytes -= file.length();
+            file.delete();
+            it.remove();
+        }
+    }
+
+    private void addToDiskIndex(String hash, File file) {
+        File previous = disk.put(hash, file);
+        if (previous != null) {
+            diskBytes -= previous.length();
+            if (!previous.equals(file)) {
+                previous.delete();
+            }
+        }
+        diskBytes += file.length();
+    }
+
+    /**
+     * Build LRU index từ các file có sẵn (oldest lastModified trước)
+     */
+    private void loadIndex() {
+        if (!dir.exists() && !dir.mkdirs()) {
+            Log.w(TAG, "Cannot create cache dir: " + dir);
+            return;
+        }
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return;
+        }
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File a, File b) {
+                long diff = a.lastModified() - b.lastModified();
+                return diff < 0 ? -1 : (diff > 0 ? 1 : 0);
+            }
+        });
+        for (File file : files) {
+            String name = file.getName();
+            if (!name.endsWith(SUFFIX)) {
+                // File .tmp dở dang từ lần crash trước
+                file.delete();
+                continue;
+            }
+            addToDiskIndex(name.substring(0, name.indexOf('-')), file);
+        }
+        trimDisk();
+        Log.i(TAG, "TTS cache loaded: " + disk.size() + " entries, " + diskBytes + " bytes");
+    }
+
+    private void writeAtomically(File target, InputStream in, byte[] data) throws IOException {
+        if (!dir.exists()) {
+            dir.mkdirs();
+        }
+        File tmp = new File(dir, target.getName() + ".tmp");
+        OutputStream out = new FileOutputStream(tmp);
+        try {
+            if (data != null) {
+                out.write(data);
+            } else {
+                byte[] buffer = new byte[8192];
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    out.write(buffer, 0, read);
+                }
+            }
+        } finally {
+            out.close();
+        }
+        if (!tmp.renameTo(target)) {
+            tmp.delete();
+            throw new IOException("Rename failed: " + target);
+        }
+    }
+
+    private static String hash(String key) {
+        return CryptoUtils.sha256Hex(key);
+    }
+
+    /**
+     * Format được encode trong tên file: {hash}-{sampleRate}-{channels}.tts
+     */
+    private static String fileName(String hash, int sampleRate, int channels) {
+        return hash + "-" + sampleRate + "-" + channels + SUFFIX;
+    }
+
+    private static int[] parseFormat(String name) {
+        try {
+            String[] parts = name.substring(0, name.length() - SUFFIX.length()).split("-");
+            return new int[] {Integer.parseInt(parts[1]), Integer.parseInt(parts[2])};
+        } catch (RuntimeException e) {
+            return new int[] {0, 0};
+        }
+    }
+}
@@ -27,6 +27,9 @@ public class XiaozhiConfig {
     private static final String KEY_AUTO_START = "auto_start";
     private static final String KEY_LED_ENABLED = "led_enabled";
     private static final String KEY_HTTP_SERVER_PORT = "http_server_port";
+    private static final String KEY_MIC_CHANNELS = "mic_channels";
+    private static final String KEY_MIC_SPACING_MM = "mic_spacing_mm";
+    private static final String KEY_OTA_URL = "ota_url";
     
     // Default values
     // ✅ Using wss:// with SSL trust manager
@@ -34,6 +37,10 @@ public class XiaozhiConfig {
     public static final String DEFAULT_SELF_HOSTED_URL = "ws://192.168.1.100:8080/websocket";
     public static final String DEFAULT_WAKE_WORD = "小智";
     public static final int DEFAULT_HTTP_PORT = 8088;
+    public static final int DEFAULT_MIC_CHANNELS = 1;
+    public static final int DEFAULT_MIC_SPACING_MM = 70;
+    // Đổi sang fake server (R1XiaozhiApp/fake-server) để test không cần mạng
+    public static final String DEFAULT_OTA_URL = "https://api.tenclass.net/xiaozhi/ota/";
     
     private SharedPreferences prefs;
     
@@ -118,6 +125,38 @@ public class XiaozhiConfig {
         prefs.edit().putInt(KEY_HTTP_SERVER_PORT, port).apply();
     }
     
+    // Mic capture: 1 = mono, 2 = stereo + beamforming
+    public int getMicChannels() {
+        return prefs.getInt(KEY_MIC_CHANNELS, DEFAULT_MIC_CHANNELS);
+    }
+    
+    public void setMicChannels(int channels) {
+        prefs.edit().putInt(KEY_MIC_CHANNELS, channels).apply();
+    }
+    
+    // Khoảng cách giữa hai mic liền kề (mm) - dùng cho beamformer
+    public int getMicSpacingMm() {
+        return prefs.getInt(KEY_MIC_SPACING_MM, DEFAULT_MIC_SPACING_MM);
+    }
+    
+    public void setMicSpacingMm(int spacingMm) {
+        prefs.edit().putInt(KEY_MIC_SPACING_MM, spacingMm).apply();
+    }
+    
+    // OTA server (activation endpoint = OTA URL + "activate")
+    public String getOtaUrl() {
+        String url = prefs.getString(KEY_OTA_URL, DEFAULT_OTA_URL);
+        return url.endsWith("/") ? url : url + "/";
+    }
+    
+    public void setOtaUrl(String url) {
+        prefs.edit().putString(KEY_OTA_URL, url).apply();
+    }
+    
+    public String getActivationUrl() {
+        return getOtaUrl() + "activate";
+    }
+    
     // Reset to defaults
     public void resetToDefaults() {
         prefs.edit().clear().apply();
@@ -126,14 +165,17 @@ public class XiaozhiConfig {
     // Export config as JSON string
     public String exportConfig() {
         return String.format(
-            "{\"use_cloud\":%b,\"cloud_url\":\"%s\",\"self_hosted_url\":\"%s\",\"wake_word\":\"%s\",\"auto_start\":%b,\"led_enabled\":%b,\"http_port\":%d}",
+            "{\"use_cloud\":%b,\"cloud_url\":\"%s\",\"self_hosted_url\":\"%s\",\"wake_word\":\"%s\",\"auto_start\":%b,\"led_enabled\":%b,\"http_port\":%d,\"mic_channels\":%d,\"mic_spacing_mm\":%d,\"ota_url\":\"%s\"}",
             isUseCloud(),
             getCloudUrl(),
             getSelfHostedUrl(),
             getWakeWord(),
             isAutoStart(),
             isLedEnabled(),
-            getHttpServerPort()
+            getHttpServerPort(),
+            getMicChannels(),
+            getMicSpacingMm(),
+            getOtaUrl()
         );
     }
 }
\ No newline at end of file
@@ -0,0 +1,104 @@
+package com.phicomm.r1.xiaozhi.core;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Boot timeline - ghi lại các mốc khởi động (ms kể từ khi thiết bị boot)
+ *
+ * Dùng SystemClock.elapsedRealtime() nên mọi mốc đều là "time since boot".
+ * Mỗi mốc chỉ ghi lần đầu tiên (reconnect / restart service không ghi đè).
+ *
+ * Key metric: WAKE_WORD_READY - thời điểm mic bắt đầu nghe wake word.
+ * Expose qua HTTPServerService GET /metrics
+ */
+public class BootTimeline {
+
+    private static final String TAG = "BootTimeline";
+
+    // Standard marks
+    public static final String APP_CREATE = "app_create";
+    public static final String BOOT_RECEIVED = "boot_received";
+    public static final String FINGERPRINT_LOADED = "fingerprint_loaded";
+    public static final String ROOT_SETUP_DONE = "root_setup_done";
+    public static final String WS_CONNECT_START = "ws_connect_start";
+    public static final String WS_OPEN = "ws_open";
+    public static final String WAKE_WORD_READY = "wake_word_ready";
+    public static final String STARTUP_COMPLETE = "startup_complete";
+
+    private static volatile BootTimeline instance;
+
+    private final Map<String, Long> marks = new LinkedHashMap<>();
+
+    private BootTimeline() {
+    }
+
+    public static BootTimeline getInstance() {
+        if (instance == null) {
+            synchronized (BootTimeline.class) {
+                if (instance == null) {
+                    instance = new BootTimeline();
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * Ghi một mốc (chỉ lần đầu)
+     */
+    public void mark(String name) {
+        long now = SystemClock.elapsedRealtime();
+        synchronized (marks) {
+            if (marks.containsKey(name)) {
+                return;
+            }
+            marks.put(name, now);
+        }
+        Log.i(TAG, name + " @ " + now + "ms since boot");
+    }
+
+    /**
+     * @return ms since boot của mốc, hoặc -1 nếu chưa có
+     */
+    public long get(String name) {
+        synchronized (marks) {
+            Long value = marks.get(name);
+            return value != null ? value : -1;
+        }
+    }
+
+    /**
+     * Khoảng thời gian giữa hai mốc, -1 nếu thiếu mốc
+     */
+    public long between(String from, String to) {
+        long start = get(from);
+        long end = get(to);
+        return start >= 0 && end >= 0 ? end - start : -1;
+    }
+
+    /**
+     * Snapshot JSON cho /metrics
+     */
+    public JSONObject toJson() throws JSONException {
+        JSONObject json = new JSONObject();
+        JSONObject markJson = new JSONObject();
+        synchronized (marks) {
+            for (Map.Entry<String, Long> entry : marks.entrySet()) {
+                markJson.put(entry.getKey(), entry.getValue());
+            }
+        }
+        json.put("now_ms", SystemClock.elapsedRealtime());
+        json.put("marks", markJson);
+        json.put("boot_to_wake_word_ready_ms", get(WAKE_WORD_READY));
+        json.put("app_to_wake_word_ready_ms", between(APP_CREATE, WAKE_WORD_READY));
+        json.put("app_to_ws_open_ms", between(APP_CREATE, WS_OPEN));
+        return json;
+    }
+}
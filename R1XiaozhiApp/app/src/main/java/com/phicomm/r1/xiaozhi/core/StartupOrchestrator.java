@@ -0,0 +1,193 @@
+package com.phicomm.r1.xiaozhi.core;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.phicomm.r1.xiaozhi.platform.ManagedExecutor;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Startup orchestrator - chạy các bước khởi động theo dependency graph
+ *
+ * - Bước không phụ thuộc nhau chạy song song trên tier network của XiaozhiCore scheduler
+ * - Bước chỉ bắt đầu khi tất cả dependencies đã xong (kể cả khi dependency lỗi -
+ *   mỗi service tự xử lý trường hợp thiếu root / thiếu identity)
+ * - Thời gian bắt đầu / kết thúc từng bước được ghi vào BootTimeline
+ *
+ * Usage:
+ * new StartupOrchestrator()
+ *     .add("fingerprint", loadFingerprint)
+ *     .add("connection", startConnection, "fingerprint")
+ *     .start(onComplete);
+ */
+public class StartupOrchestrator {
+
+    private static final String TAG = "StartupOrchestrator";
+
+    /**
+     * Một bước khởi động
+     */
+    public interface Step {
+        void run() throws Exception;
+    }
+
+    private static class Task {
+        final String name;
+        final Step step;
+        final String[] dependsOn;
+        final List<Task> dependents = new ArrayList<>();
+        int remaining;
+
+        Task(String name, Step step, String[] dependsOn) {
+            this.name = name;
+            this.step = step;
+            this.dependsOn = dependsOn;
+        }
+    }
+
+    private final Map<String, Task> tasks = new LinkedHashMap<>();
+    private final BootTimeline timeline = BootTimeline.getInstance();
+    private final AtomicInteger pendingCount = new AtomicInteger();
+    private ManagedExecutor executor;
+    private Runnable onComplete;
+    private boolean started = false;
+
+    /**
+     * Thêm một bước
+     *
+     * @param name Tên bước (cũng là tên mốc trong BootTimeline)
+     * @param step Công việc
+     * @param dependsOn Các bước phải xong trước
+     */
+    public synchronized StartupOrchestrator add(String name, Step step, String... dependsOn) {
+        if (started) {
+            throw new IllegalStateException("Orchestrator already started");
+        }
+        if (tasks.containsKey(name)) {
+            throw new IllegalArgumentException("Duplicate startup step: " + name);
+        }
+        tasks.put(name, new Task(name, step, dependsOn));
+        return this;
+    }
+
+    /**
+     * Validate graph và bắt đầu chạy
+     *
+     * @param onComplete Gọi (trên worker thread) khi tất cả các bước đã xong, có thể null
+     */
+    public synchronized void start(Runnable onComplete) {
+        if (started) {
+            throw new IllegalStateException("Orchestrator already started");
+        }
+        started = true;
+        this.onComplete = onComplete;
+
+        List<Task> roots = new ArrayList<>();
+        for (Task task : tasks.values()) {
+            task.remaining = task.dependsOn.length;
+            for (String dep : task.dependsOn) {
+                Task parent = tasks.get(dep);
+                if (parent == null) {
+                    throw new IllegalArgumentException(task.name + " depends on unknown step " + dep);
+                }
+                parent.dependents.add(task);
+            }
+            if (task.remaining == 0) {
+                roots.add(task);
+            }
+        }
+        checkAcyclic();
+
+        pendingCount.set(tasks.size());
+        if (tasks.isEmpty()) {
+            finish();
+            return;
+        }
+
+        // Tier network: các bước chạy song song tối đa bằng số thread của tier
+        executor = XiaozhiCore.getInstance().getScheduler().network();
+
+        Log.i(TAG, "Starting " + tasks.size() + " steps, " + roots.size() + " in parallel");
+        for (Task root : roots) {
+            submit(root);
+        }
+    }
+
+    private void submit(final Task task) {
+        executor.execute("startup-" + task.name, new Runnable() {
+            @Override
+            public void run() {
+                runTask(task);
+            }
+        });
+    }
+
+    private void runTask(Task task) {
+        long start = SystemClock.elapsedRealtime();
+        try {
+            task.step.run();
+            Log.i(TAG, "Step " + task.name + " done in " + (SystemClock.elapsedRealtime() - start) + "ms");
+        } catch (Exception e) {
+            Log.e(TAG, "Step " + task.name + " failed after " +
+                (SystemClock.elapsedRealtime() - start) + "ms", e);
+        }
+        timeline.mark(task.name);
+
+        List<Task> ready = new ArrayList<>();
+        synchronized (this) {
+            for (Task dependent : task.dependents) {
+                if (--dependent.remaining == 0) {
+                    ready.add(dependent);
+                }
+            }
+        }
+        for (Task next : ready) {
+            submit(next);
+        }
+
+        if (pendingCount.decrementAndGet() == 0) {
+            finish();
+        }
+    }
+
+    private void finish() {
+        timeline.mark(BootTimeline.STARTUP_COMPLETE);
+        if (onComplete != null) {
+            onComplete.run();
+        }
+    }
+
+    /**
+     * Kahn's algorithm - đảm bảo graph không có cycle (nếu có, startup sẽ treo)
+     */
+    private void checkAcyclic() {
+        Map<String, Integer> inDegree = new LinkedHashMap<>();
+        List<Task> queue = new ArrayList<>();
+        for (Task task : tasks.values()) {
+            inDegree.put(task.name, task.remaining);
+            if (task.remaining == 0) {
+                queue.add(task);
+            }
+        }
+        int visited = 0;
+        while (!queue.isEmpty()) {
+            Task task = queue.remove(queue.size() - 1);
+            visited++;
+            for (Task dependent : task.dependents) {
+                int degree = inDegree.get(dependent.name) - 1;
+                inDegree.put(dependent.name, degree);
+                if (degree == 0) {
+                    queue.add(dependent);
+                }
+            }
+        }
+        if (visited != tasks.size()) {
+            throw new IllegalArgumentException("Startup graph has a dependency cycle");
+        }
+    }
+}
@@ -3,12 +3,16 @@ package com.phicomm.r1.xiaozhi.core;
 import android.content.Context;
 import android.util.Log;
 
+import com.phicomm.r1.xiaozhi.diagnostics.FlightRecorder;
 import com.phicomm.r1.xiaozhi.events.StateChangedEvent;
+import com.phicomm.r1.xiaozhi.platform.TaskScheduler;
 import com.phicomm.r1.xiaozhi.service.AudioPlaybackService;
 import com.phicomm.r1.xiaozhi.service.LEDControlService;
 import com.phicomm.r1.xiaozhi.service.VoiceRecognitionService;
 import com.phicomm.r1.xiaozhi.service.XiaozhiConnectionService;
 
+import java.io.File;
+
 /**
  * Core singleton theo mô hình py-xiaozhi Application class
  * Quản lý centralized state và coordination giữa các services
@@ -23,6 +27,7 @@ import com.phicomm.r1.xiaozhi.service.XiaozhiConnectionService;
 public class XiaozhiCore {
     
     private static final String TAG = "XiaozhiCore";
+    private static final long SHUTDOWN_TIMEOUT_MS = 2000;
     
     // Thread-safe singleton
     private static volatile XiaozhiCore instance;
@@ -31,6 +36,9 @@ public class XiaozhiCore {
     // Event bus
     private final EventBus eventBus;
     
+    // Thread pool theo tier (audio / network / background) cho mọi service
+    private final TaskScheduler scheduler;
+    
     // Device state (volatile cho visibility across threads)
     private volatile DeviceState deviceState = DeviceState.IDLE;
     private volatile ListeningMode listeningMode = ListeningMode.AUTO_STOP;
@@ -51,6 +59,7 @@ public class XiaozhiCore {
      */
     private XiaozhiCore() {
         this.eventBus = new EventBus();
+        this.scheduler = new TaskScheduler();
         Log.i(TAG, "XiaozhiCore instance created");
     }
     
@@ -79,6 +88,11 @@ public class XiaozhiCore {
     public void initialize(Context context) {
         if (this.applicationContext == null) {
             this.applicationContext = context.getApplicationContext();
+            // Flight recorder: timeline EventBus + dump vào cacheDir/flight
+            FlightRecorder flightRecorder = FlightRecorder.getInstance();
+            flightRecorder.setDumpDirectory(new File(applicationContext.getCacheDir(), "flight"));
+            flightRecorder.attach(eventBus);
+            flightRecorder.setDumpExecutor(scheduler.background());
             Log.i(TAG, "XiaozhiCore initialized with context");
             Log.i(TAG, "Initial state: " + getStateSnapshot());
         }
@@ -103,6 +117,8 @@ public class XiaozhiCore {
             this.deviceState = newState;
             
             Log.i(TAG, "State changed: " + oldState + " -> " + newState);
+            FlightRecorder.getInstance().recordEvent(FlightRecorder.KIND_STATE, oldState.getValue(),
+                newState.getValue());
             
             // Broadcast event (trên main thread)
             eventBus.post(new StateChangedEvent(oldState, newState));
@@ -293,6 +309,15 @@ public class XiaozhiCore {
         return eventBus;
     }
     
+    /**
+     * Scheduler trung tâm - dùng thay cho new Thread / Executors.newXxx trong service
+     * 
+     * @return TaskScheduler instance
+     */
+    public TaskScheduler getScheduler() {
+        return scheduler;
+    }
+    
     // ==================== Context Access ====================
     
     /**
@@ -344,6 +369,9 @@ public class XiaozhiCore {
         // Clear event bus
         eventBus.clear();
         
+        // Dừng mọi thread nền (chờ tối đa 2s)
+        scheduler.shutdown(SHUTDOWN_TIMEOUT_MS);
+        
         // Clear service references
         connectionService = null;
         audioService = null;
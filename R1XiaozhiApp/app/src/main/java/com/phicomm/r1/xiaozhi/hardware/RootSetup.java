@@ -0,0 +1,84 @@
+package com.phicomm.r1.xiaozhi.hardware;
+
+import android.util.Log;
+
+import com.phicomm.r1.xiaozhi.core.BootTimeline;
+import com.phicomm.r1.xiaozhi.core.XiaozhiCore;
+
+/**
+ * Root / SELinux setup cho LED hardware access
+ *
+ * "su -c setenforce 0" có thể mất hàng trăm ms (su daemon, có khi chờ prompt),
+ * nên KHÔNG được gọi trên main thread. Chỉ chạy một lần mỗi process;
+ * các caller gọi lại sẽ chờ kết quả của lần đầu.
+ *
+ * Based on r1-helper BackgroundService implementation.
+ */
+public final class RootSetup {
+
+    private static final String TAG = "RootSetup";
+
+    private static final Object lock = new Object();
+    private static boolean done = false;
+    private static boolean permissive = false;
+
+    private RootSetup() {
+    }
+
+    /**
+     * Set SELinux to permissive mode (blocking - gọi từ background thread)
+     *
+     * @return true nếu setenforce thành công
+     */
+    public static boolean ensureSELinuxPermissive() {
+        synchronized (lock) {
+            if (done) {
+                return permissive;
+            }
+            permissive = runSetenforce();
+            done = true;
+            BootTimeline.getInstance().mark(BootTimeline.ROOT_SETUP_DONE);
+            return permissive;
+        }
+    }
+
+    /**
+     * Chạy setup trên tier background, callback (trên thread đó) khi xong
+     */
+    public static void ensureSELinuxPermissiveAsync(final Runnable onDone) {
+        XiaozhiCore.getInstance().getScheduler().background().execute("root-setup", new Runnable() {
+            @Override
+            public void run() {
+                ensureSELinuxPermissive();
+                if (onDone != null) {
+                    onDone.run();
+                }
+            }
+        });
+    }
+
+    public static boolean isDone() {
+        synchronized (lock) {
+            return done;
+        }
+    }
+
+    private static boolean runSetenforce() {
+        try {
+            String[] cmd = {"su", "-c", "setenforce", "0"};
+            Process process = Runtime.getRuntime().exec(cmd);
+            int exitCode = process.waitFor();
+
+            if (exitCode == 0) {
+                Log.i(TAG, "✅ SELinux set to permissive mode");
+                return true;
+            }
+            Log.w(TAG, "⚠️ Failed to set SELinux permissive (exit code: " + exitCode + ")");
+            Log.w(TAG, "LED control may not work - requires root access");
+        } catch (Exception e) {
+            Log.w(TAG, "⚠️ Failed to set SELinux permissive: " + e.getMessage());
+            Log.w(TAG, "LED control may not work - requires root access");
+        }
+        return false;
+    }
+}
@@ -0,0 +1,342 @@
+package com.phicomm.r1.xiaozhi.network;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.phicomm.r1.xiaozhi.activation.OTAConfigManager;
+import com.phicomm.r1.xiaozhi.config.XiaozhiConfig;
+import com.phicomm.r1.xiaozhi.core.XiaozhiCore;
+import com.phicomm.r1.xiaozhi.platform.ManagedExecutor;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Server-directed WebSocket endpoint selection
+ *
+ * - Cache danh sách endpoint (url, token, protocol) từ OTA response vào SharedPreferences
+ * - Đo RTT (TCP connect time) tới từng endpoint trong background
+ * - Chọn endpoint healthy có RTT thấp nhất
+ * - Failover: endpoint lỗi bị quarantine với backoff, lần connect sau chọn endpoint khác
+ * - Token OTA bị server từ chối (handshake 401/403) thì bỏ qua, dùng access token activation
+ *
+ * Nếu server không gửi endpoint nào, fallback về XiaozhiConfig.WEBSOCKET_URL
+ */
+public class EndpointSelector {
+
+    private static final String TAG = "EndpointSelector";
+    private static final String PREFS_NAME = "xiaozhi_endpoints";
+    private static final String KEY_ENDPOINTS = "endpoints";
+
+    private static final int PROBE_TIMEOUT_MS = 2000;
+    private static final long PROBE_MAX_AGE_MS = 10 * 60 * 1000;   // Re-probe sau 10 phút
+    private static final long QUARANTINE_BASE_MS = 30 * 1000;
+    private static final long QUARANTINE_MAX_MS = 5 * 60 * 1000;
+    private static final long UNKNOWN_RTT_MS = Long.MAX_VALUE / 4;
+
+    /**
+     * Một WebSocket endpoint do server chỉ định
+     */
+    public static class Endpoint {
+        public final String url;
+        public final String token;
+        public final String protocol;
+
+        // Runtime stats (không persist)
+        long rttMs = -1;
+        long probedAt = 0;
+        int failures = 0;
+        long quarantinedUntil = 0;
+        volatile boolean tokenRejected = false;
+
+        Endpoint(String url, String token, String protocol) {
+            this.url = url;
+            this.token = token;
+            this.protocol = protocol;
+        }
+
+        public long getRttMs() {
+            return rttMs;
+        }
+
+        /**
+         * Token OTA còn dùng được, hoặc null (không có / đã bị server từ chối)
+         */
+        public String getToken() {
+            return token == null || token.isEmpty() || tokenRejected ? null : token;
+        }
+
+        @Override
+        public String toString() {
+            return url + " (rtt=" + rttMs + "ms, failures=" + failures + ")";
+        }
+    }
+
+    private static EndpointSelector instance;
+
+    private final SharedPreferences prefs;
+    private final ManagedExecutor probeExecutor;
+    private final List<Endpoint> endpoints = new ArrayList<>();
+    private final Endpoint defaultEndpoint;
+
+    private EndpointSelector(Context context) {
+        this.prefs = context.getApplicationContext()
+            .getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        this.probeExecutor = XiaozhiCore.getInstance().getScheduler().network();
+        this.defaultEndpoint = new Endpoint(XiaozhiConfig.WEBSOCKET_URL, null, "v1");
+        loadCachedEndpoints();
+    }
+
+    public static synchronized EndpointSelector getInstance(Context context) {
+        if (instance == null) {
+            instance = new EndpointSelector(context);
+        }
+        return instance;
+    }
+
+    /**
+     * Cập nhật danh sách endpoint từ OTA response và persist
+     * Giữ lại stats (RTT, failures) của những endpoint không đổi
+     */
+    public void updateFromOTA(List<OTAConfigManager.OTAResponse.WebSocketConfig> configs) {
+        if (configs == null || configs.isEmpty()) {
+            return;
+        }
+
+        synchronized (this) {
+            List<Endpoint> updated = new ArrayList<>();
+            for (OTAConfigManager.OTAResponse.WebSocketConfig config : configs) {
+                if (config.url == null || config.url.isEmpty()) {
+                    continue;
+                }
+                Endpoint endpoint = new Endpoint(config.url, config.token, config.protocol);
+                Endpoint previous = find(config.url);
+                if (previous != null) {
+                    endpoint.rttMs = previous.rttMs;
+                    endpoint.probedAt = previous.probedAt;
+                    endpoint.failures = previous.failures;
+                    endpoint.quarantinedUntil = previous.quarantinedUntil;
+                    // OTA gửi token mới thì thử lại, cùng token cũ thì vẫn bỏ qua
+                    endpoint.tokenRejected = previous.tokenRejected
+                        && config.token != null && config.token.equals(previous.token);
+                }
+                updated.add(endpoint);
+            }
+
+            if (updated.isEmpty()) {
+                return;
+            }
+
+            endpoints.clear();
+            endpoints.addAll(updated);
+            saveEndpoints();
+            Log.i(TAG, "Endpoints updated from OTA: " + endpoints.size());
+        }
+
+        probeAsync();
+    }
+
+    /**
+     * Chọn endpoint tốt nhất: không bị quarantine, RTT thấp nhất
+     * Nếu tất cả đều bị quarantine, chọn endpoint hết quarantine sớm nhất
+     */
+    public synchronized Endpoint select() {
+        if (endpoints.isEmpty()) {
+            return defaultEndpoint;
+        }
+
+        long now = SystemClock.elapsedRealtime();
+        Endpoint best = null;
+        Endpoint leastQuarantined = null;
+
+        for (Endpoint endpoint : endpoints) {
+            if (endpoint.quarantinedUntil > now) {
+                if (leastQuarantined == null ||
+                    endpoint.quarantinedUntil < leastQuarantined.quarantinedUntil) {
+                    leastQuarantined = endpoint;
+                }
+                continue;
+            }
+            if (best == null || effectiveRtt(endpoint) < effectiveRtt(best)) {
+                best = endpoint;
+            }
+        }
+
+        if (needsProbe(now)) {
+            probeAsync();
+        }
+
+        Endpoint selected = best != null ? best : leastQuarantined;
+        Log.i(TAG, "Selected endpoint: " + selected);
+        return selected;
+    }
+
+    /**
+     * Báo endpoint kết nối thành công
+     */
+    public synchronized void reportSuccess(Endpoint endpoint) {
+        if (endpoint == null) {
+            return;
+        }
+        endpoint.failures = 0;
+        endpoint.quarantinedUntil = 0;
+    }
+
+    /**
+     * Báo endpoint lỗi - quarantine với exponential backoff để failover sang endpoint khác
+     */
+    public synchronized void reportFailure(Endpoint endpoint) {
+        if (endpoint == null || endpoint == defaultEndpoint) {
+            return;
+        }
+        endpoint.failures++;
+        long quarantine = Math.min(QUARANTINE_MAX_MS,
+            QUARANTINE_BASE_MS << Math.min(endpoint.failures - 1, 4));
+        endpoint.quarantinedUntil = SystemClock.elapsedRealtime() + quarantine;
+        Log.w(TAG, "Endpoint failed, quarantined for " + quarantine + "ms: " + endpoint);
+    }
+
+    /**
+     * Báo server từ chối token OTA của endpoint (handshake 401/403)
+     * Endpoint vẫn reachable nên không quarantine; lần connect sau dùng access token activation
+     */
+    public synchronized void reportAuthFailure(Endpoint endpoint) {
+        if (endpoint == null || endpoint == defaultEndpoint) {
+            return;
+        }
+        endpoint.tokenRejected = true;
+        Log.w(TAG, "Endpoint token rejected, falling back to activation token: " + endpoint.url);
+    }
+
+    /**
+     * Đo RTT tới tất cả endpoints trong background
+     */
+    public void probeAsync() {
+        final List<Endpoint> snapshot;
+        synchronized (this) {
+            if (endpoints.isEmpty()) {
+                return;
+            }
+            snapshot = new ArrayList<>(endpoints);
+        }
+
+        probeExecutor.execute("endpoint-probe", new Runnable() {
+            @Override
+            public void run() {
+                for (Endpoint endpoint : snapshot) {
+                    long rtt = measureRtt(endpoint.url);
+                    synchronized (EndpointSelector.this) {
+                        endpoint.probedAt = SystemClock.elapsedRealtime();
+                        if (rtt >= 0) {
+                            // EWMA để tránh nhảy endpoint vì một mẫu nhiễu
+                            endpoint.rttMs = endpoint.rttMs < 0 ? rtt : (endpoint.rttMs * 3 + rtt) / 4;
+                        }
+                    }
+                    Log.d(TAG, "Probe " + endpoint.url + ": " + rtt + "ms");
+                }
+            }
+        });
+    }
+
+    private boolean needsProbe(long now) {
+        for (Endpoint endpoint : endpoints) {
+            if (endpoint.probedAt == 0 || now - endpoint.probedAt > PROBE_MAX_AGE_MS) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private long effectiveRtt(Endpoint endpoint) {
+        return endpoint.rttMs < 0 ? UNKNOWN_RTT_MS : endpoint.rttMs;
+    }
+
+    /**
+     * RTT xấp xỉ = thời gian TCP connect (một round-trip SYN/SYN-ACK)
+     *
+     * @return RTT in ms, hoặc -1 nếu không kết nối được
+     */
+    private long measureRtt(String url) {
+        Socket socket = null;
+        try {
+            URI uri = new URI(url);
+            int port = uri.getPort();
+            if (port < 0) {
+                port = "wss".equalsIgnoreCase(uri.getScheme()) ? 443 : 80;
+            }
+
+            socket = new Socket();
+            long start = SystemClock.elapsedRealtime();
+            socket.connect(new InetSocketAddress(uri.getHost(), port), PROBE_TIMEOUT_MS);
+            return SystemClock.elapsedRealtime() - start;
+
+        } catch (Exception e) {
+            Log.w(TAG, "Probe failed for " + url + ": " + e.getMessage());
+            return -1;
+        } finally {
+            if (socket != null) {
+                try {
+                    socket.close();
+                } catch (Exception ignored) {
+                }
+            }
+        }
+    }
+
+    private Endpoint find(String url) {
+        for (Endpoint endpoint : endpoints) {
+            if (endpoint.url.equals(url)) {
+                return endpoint;
+            }
+        }
+        return null;
+    }
+
+    private void loadCachedEndpoints() {
+        String cached = prefs.getString(KEY_ENDPOINTS, null);
+        if (cached == null) {
+            return;
+        }
+        try {
+            JSONArray array = new JSONArray(cached);
+            for (int i = 0; i < array.length(); i++) {
+                JSONObject json = array.getJSONObject(i);
+                endpoints.add(new Endpoint(
+                    json.getString("url"),
+                    json.optString("token", null),
+                    json.optString("protocol", "v1")
+                ));
+            }
+            Log.i(TAG, "Loaded " + endpoints.size() + " cached endpoints");
+        } catch (Exception e) {
+            Log.w(TAG, "Failed to load cached endpoints: " + e.getMessage());
+            endpoints.clear();
+        }
+    }
+
+    private void saveEndpoints() {
+        try {
+            JSONArray array = new JSONArray();
+            for (Endpoint endpoint : endpoints) {
+                JSONObject json = new JSONObject();
+                json.put("url", endpoint.url);
+                if (endpoint.token != null) {
+                    json.put("token", endpoint.token);
+                }
+                json.put("protocol", endpoint.protocol);
+                array.put(json);
+            }
+            prefs.edit().putString(KEY_ENDPOINTS, array.toString()).apply();
+        } catch (Exception e) {
+            Log.w(TAG, "Failed to save endpoints: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package com.phicomm.r1.xiaozhi.network;
+
+import android.util.Log;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.ResponseBody;
+
+/**
+ * Networking layer dùng chung cho toàn app
+ *
+ * Một OkHttpClient duy nhất:
+ * - Connection pool chung -> activation polling / OTA / API tái sử dụng một kết nối TLS "warm"
+ *   thay vì handshake lại mỗi request
+ * - Dispatcher chung cho async calls (giới hạn số request đồng thời)
+ * - HTTP/2 qua ALPN khi server hỗ trợ, gzip response trong suốt (OkHttp tự thêm Accept-Encoding)
+ * - Response được stream thẳng vào Gson, không đọc từng dòng vào StringBuilder
+ */
+public final class HttpClientProvider {
+
+    private static final String TAG = "HttpClientProvider";
+
+    public static final MediaType JSON = MediaType.parse("application/json; charset=utf-8");
+
+    private static final int TIMEOUT_SECONDS = 10;
+    private static final int MAX_IDLE_CONNECTIONS = 4;
+    private static final long KEEP_ALIVE_MINUTES = 5;
+    private static final int MAX_REQUESTS = 16;
+    private static final int MAX_REQUESTS_PER_HOST = 4;
+
+    private static volatile OkHttpClient client;
+
+    private HttpClientProvider() {
+    }
+
+    /**
+     * Get shared OkHttpClient (lazy, thread-safe)
+     * Dùng client.newBuilder() nếu cần timeout khác - vẫn chia sẻ pool và dispatcher
+     */
+    public static OkHttpClient get() {
+        if (client == null) {
+            synchronized (HttpClientProvider.class) {
+                if (client == null) {
+                    client = create();
+                }
+            }
+        }
+        return client;
+    }
+
+    private static OkHttpClient create() {
+        Dispatcher dispatcher = new Dispatcher();
+        dispatcher.setMaxRequests(MAX_REQUESTS);
+        dispatcher.setMaxRequestsPerHost(MAX_REQUESTS_PER_HOST);
+
+        OkHttpClient.Builder builder = new OkHttpClient.Builder()
+            .connectionPool(new ConnectionPool(MAX_IDLE_CONNECTIONS, KEEP_ALIVE_MINUTES, TimeUnit.MINUTES))
+            .dispatcher(dispatcher)
+            .connectTimeout(TIMEOUT_SECONDS, TimeUnit.SECONDS)
+            .readTimeout(TIMEOUT_SECONDS, TimeUnit.SECONDS)
+            .writeTimeout(TIMEOUT_SECONDS, TimeUnit.SECONDS)
+            .retryOnConnectionFailure(true);
+
+        // Luôn validate certificate + hostname: OTA trả về endpoint WebSocket và token,
+        // activation gửi HMAC challenge. BYPASS_SSL_VALIDATION chỉ áp dụng cho WebSocket.
+
+        Log.i(TAG, "Shared OkHttpClient created");
+        return builder.build();
+    }
+
+    /**
+     * Stream response body thẳng vào Gson tree
+     *
+     * @return JsonObject, hoặc empty JsonObject nếu body rỗng / không phải object
+     */
+    public static JsonObject readJson(ResponseBody body) throws IOException {
+        if (body == null) {
+            return new JsonObject();
+        }
+        Reader reader = body.charStream();
+        try {
+            JsonElement element = new JsonParser().parse(reader);
+            return element != null && element.isJsonObject() ? element.getAsJsonObject() : new JsonObject();
+        } catch (RuntimeException e) {
+            // JsonSyntaxException / JsonIOException
+            throw new IOException("Invalid JSON response: " + e.getMessage(), e);
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Get optional string member (null nếu thiếu hoặc JSON null)
+     */
+    public static String optString(JsonObject json, String name, String fallback) {
+        JsonElement element = json != null ? json.get(name) : null;
+        if (element == null || element.isJsonNull() || !element.isJsonPrimitive()) {
+            return fallback;
+        }
+        return element.getAsString();
+    }
+
+    /**
+     * Get optional int member
+     */
+    public static int optInt(JsonObject json, String name, int fallback) {
+        JsonElement element = json != null ? json.get(name) : null;
+        if (element == null || element.isJsonNull() || !element.isJsonPrimitive()) {
+            return fallback;
+        }
+        try {
+            return element.getAsInt();
+        } catch (NumberFormatException e) {
+            return fallback;
+        }
+    }
+}
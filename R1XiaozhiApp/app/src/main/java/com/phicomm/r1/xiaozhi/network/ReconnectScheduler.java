@@ -0,0 +1,326 @@
+package com.phicomm.r1.xiaozhi.network;
+
+import android.content.Context;
+import android.net.ConnectivityManager;
+import android.net.Network;
+import android.net.NetworkCapabilities;
+import android.net.NetworkInfo;
+import android.net.NetworkRequest;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import com.phicomm.r1.xiaozhi.util.ErrorCodes;
+
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Reconnect engine cho WebSocket connection
+ *
+ * - Decorrelated jitter backoff: delay = min(cap, random(base, prev * 3))
+ *   nên khi access point reboot, các R1 trong cùng site không reconnect cùng lúc
+ * - Không bao giờ bỏ cuộc: delay được cap ở MAX_DELAY_MS và tiếp tục retry
+ * - Tạm dừng khi mất mạng, trigger lại qua ConnectivityManager network callback;
+ *   kèm timer an toàn (OFFLINE_RECHECK_MS, có jitter) tự kiểm tra lại mạng phòng khi
+ *   callback không đăng ký được hoặc bị lỡ
+ * - Hỗ trợ retry-after hint từ server (close reason hoặc message)
+ *
+ * Tất cả callbacks chạy trên main looper (một Handler duy nhất)
+ */
+public class ReconnectScheduler {
+
+    private static final String TAG = "ReconnectScheduler";
+
+    private static final long MAX_DELAY_MS = 60000;       // Cap 60 seconds
+    private static final long NETWORK_RESTORE_SPREAD_MS = 3000; // Spread sau khi có mạng lại
+    private static final long RETRY_AFTER_SPREAD_PERCENT = 20;  // Jitter thêm cho retry-after hint
+    private static final long OFFLINE_RECHECK_MS = 30000;       // Kiểm tra lại mạng khi đang chờ (+ jitter)
+
+    // "retry-after=30", "retry_after: 30", "Retry-After 30"
+    private static final Pattern RETRY_AFTER_PATTERN =
+        Pattern.compile("retry[-_ ]after\\s*[:=]?\\s*(\\d+)", Pattern.CASE_INSENSITIVE);
+
+    public interface Callback {
+        /**
+         * Được gọi trên main thread khi đến lúc thử kết nối lại
+         *
+         * @param attempt Số thứ tự lần thử (bắt đầu từ 1)
+         */
+        void onReconnect(int attempt);
+    }
+
+    private final Context context;
+    private final Handler handler;
+    private final Random random = new Random();
+    private final Callback callback;
+
+    private ConnectivityManager connectivityManager;
+    private ConnectivityManager.NetworkCallback networkCallback;
+
+    private int attempt = 0;
+    private long previousDelay = 0;
+    private long retryAfterHintMs = -1;
+    private boolean pending = false;
+    private boolean waitingForNetwork = false;
+
+    private final Runnable reconnectRunnable = new Runnable() {
+        @Override
+        public void run() {
+            synchronized (ReconnectScheduler.this) {
+                pending = false;
+            }
+            Log.i(TAG, "Reconnect attempt #" + attempt);
+            callback.onReconnect(attempt);
+        }
+    };
+
+    // Đang chờ mạng: tự kiểm tra lại, không phụ thuộc hoàn toàn vào network callback
+    private final Runnable offlineRecheckRunnable = new Runnable() {
+        @Override
+        public void run() {
+            synchronized (ReconnectScheduler.this) {
+                if (!pending || !waitingForNetwork) {
+                    return;
+                }
+                if (!isNetworkAvailable()) {
+                    armOfflineRecheck();
+                    return;
+                }
+            }
+            Log.i(TAG, "Network back (recheck timer)");
+            onNetworkAvailable();
+        }
+    };
+
+    public ReconnectScheduler(Context context, Callback callback) {
+        this.context = context.getApplicationContext();
+        this.callback = callback;
+        this.handler = new Handler(Looper.getMainLooper());
+    }
+
+    /**
+     * Bắt đầu theo dõi network để reconnect ngay khi mạng trở lại
+     */
+    public void start() {
+        if (networkCallback != null) {
+            return;
+        }
+
+        connectivityManager = (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
+        if (connectivityManager == null) {
+            Log.w(TAG, "ConnectivityManager not available - network trigger disabled");
+            return;
+        }
+
+        networkCallback = new ConnectivityManager.NetworkCallback() {
+            @Override
+            public void onAvailable(Network network) {
+                handler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        onNetworkAvailable();
+                    }
+                });
+            }
+
+            @Override
+            public void onLost(Network network) {
+                handler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        onNetworkLost();
+                    }
+                });
+            }
+        };
+
+        try {
+            NetworkRequest request = new NetworkRequest.Builder()
+                .addCapability(NetworkCapabilities.NET_CAPABILITY_INTERNET)
+                .build();
+            connectivityManager.registerNetworkCallback(request, networkCallback);
+            Log.d(TAG, "Network callback registered");
+        } catch (Exception e) {
+            Log.w(TAG, "Failed to register network callback: " + e.getMessage());
+            networkCallback = null;
+        }
+    }
+
+    /**
+     * Dừng theo dõi network và huỷ mọi reconnect đang chờ
+     */
+    public void stop() {
+        cancel();
+        if (connectivityManager != null && networkCallback != null) {
+            try {
+                connectivityManager.unregisterNetworkCallback(networkCallback);
+            } catch (Exception e) {
+                Log.w(TAG, "Failed to unregister network callback: " + e.getMessage());
+            }
+        }
+        networkCallback = null;
+    }
+
+    /**
+     * Schedule một lần reconnect sau lỗi
+     * Bỏ qua nếu đã có reconnect đang chờ (onError + onClose chỉ tính một lần)
+     *
+     * @param errorCode Mã lỗi từ ErrorCodes
+     */
+    public synchronized void schedule(int errorCode) {
+        if (pending) {
+            Log.d(TAG, "Reconnect already pending - ignoring");
+            return;
+        }
+
+        pending = true;
+        attempt++;
+
+        if (!isNetworkAvailable()) {
+            // Không đốt attempts khi đang offline - chờ network callback
+            waitingForNetwork = true;
+            armOfflineRecheck();
+            Log.i(TAG, "No network - reconnect #" + attempt + " waits for connectivity");
+            return;
+        }
+
+        long delay = nextDelay(errorCode);
+        Log.i(TAG, "Scheduling reconnect #" + attempt + " in " + delay + "ms");
+        handler.postDelayed(reconnectRunnable, delay);
+    }
+
+    /**
+     * Gọi khi kết nối thành công - reset backoff
+     */
+    public synchronized void onConnected() {
+        cancel();
+        attempt = 0;
+        previousDelay = 0;
+        retryAfterHintMs = -1;
+    }
+
+    /**
+     * Huỷ reconnect đang chờ (vd: disconnect thủ công)
+     */
+    public synchronized void cancel() {
+        handler.removeCallbacks(reconnectRunnable);
+        handler.removeCallbacks(offlineRecheckRunnable);
+        pending = false;
+        waitingForNetwork = false;
+    }
+
+    /**
+     * Server-driven retry-after hint, áp dụng cho lần reconnect tiếp theo
+     *
+     * @param delayMs Thời gian tối thiểu trước khi reconnect (ms)
+     */
+    public synchronized void setRetryAfterHint(long delayMs) {
+        if (delayMs <= 0) {
+            return;
+        }
+        retryAfterHintMs = delayMs;
+        Log.i(TAG, "Server retry-after hint: " + delayMs + "ms");
+    }
+
+    public synchronized boolean isPending() {
+        return pending;
+    }
+
+    public synchronized int getAttempt() {
+        return attempt;
+    }
+
+    /**
+     * Tính delay tiếp theo (decorrelated jitter, AWS Architecture Blog)
+     */
+    private long nextDelay(int errorCode) {
+        long base = ErrorCodes.getBaseRetryDelay(errorCode);
+
+        long upper = Math.max(base, previousDelay * 3);
+        long delay = base + (long) (random.nextDouble() * (upper - base));
+        delay = Math.min(MAX_DELAY_MS, delay);
+        previousDelay = delay;
+
+        if (retryAfterHintMs > 0) {
+            // Server yêu cầu chờ - vẫn thêm jitter để tránh thundering herd
+            long spread = retryAfterHintMs * RETRY_AFTER_SPREAD_PERCENT / 100;
+            delay = Math.max(delay, retryAfterHintMs + (long) (random.nextDouble() * spread));
+            retryAfterHintMs = -1;
+        }
+
+        return delay;
+    }
+
+    private void onNetworkAvailable() {
+        synchronized (this) {
+            if (!pending) {
+                return;
+            }
+            // Reconnect sớm nhưng vẫn trải đều trong vài giây
+            handler.removeCallbacks(reconnectRunnable);
+            handler.removeCallbacks(offlineRecheckRunnable);
+            waitingForNetwork = false;
+            long delay = (long) (random.nextDouble() * NETWORK_RESTORE_SPREAD_MS);
+            if (retryAfterHintMs > 0) {
+                delay = Math.max(delay, retryAfterHintMs);
+                retryAfterHintMs = -1;
+            }
+            Log.i(TAG, "Network available - reconnect #" + attempt + " in " + delay + "ms");
+            handler.postDelayed(reconnectRunnable, delay);
+        }
+    }
+
+    private void onNetworkLost() {
+        synchronized (this) {
+            if (pending && !waitingForNetwork) {
+                handler.removeCallbacks(reconnectRunnable);
+                waitingForNetwork = true;
+                armOfflineRecheck();
+                Log.i(TAG, "Network lost - pausing reconnect until connectivity returns");
+            }
+        }
+    }
+
+    /**
+     * Timer an toàn khi chờ mạng (jitter để các R1 cùng site không dậy cùng lúc)
+     */
+    private void armOfflineRecheck() {
+        handler.removeCallbacks(offlineRecheckRunnable);
+        long delay = OFFLINE_RECHECK_MS + (long) (random.nextDouble() * OFFLINE_RECHECK_MS / 2);
+        handler.postDelayed(offlineRecheckRunnable, delay);
+    }
+
+    private boolean isNetworkAvailable() {
+        if (connectivityManager == null) {
+            return true;
+        }
+        try {
+            NetworkInfo info = connectivityManager.getActiveNetworkInfo();
+            return info != null && info.isConnected();
+        } catch (Exception e) {
+            return true;
+        }
+    }
+
+    /**
+     * Parse retry-after hint từ close reason hoặc text
+     *
+     * @return delay tính bằng ms, hoặc -1 nếu không có
+     */
+    public static long parseRetryAfter(String text) {
+        if (text == null || text.isEmpty()) {
+            return -1;
+        }
+        Matcher matcher = RETRY_AFTER_PATTERN.matcher(text);
+        if (matcher.find()) {
+            try {
+                return Long.parseLong(matcher.group(1)) * 1000;
+            } catch (NumberFormatException e) {
+                return -1;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,84 @@
+package com.phicomm.r1.xiaozhi.platform;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+
+import timber.log.Timber;
+
+/**
+ * Bản Android của Logger / Clock / Dispatcher cho xiaozhi-core
+ *
+ * Gọi install() đầu tiên trong Application.onCreate()
+ * Logger là đích của XLog drain thread -> Timber (tag tường minh, không dò stack trace)
+ */
+public final class AndroidPlatform {
+
+    private AndroidPlatform() {
+    }
+
+    public static void install() {
+        if (Timber.treeCount() == 0) {
+            // R1 không có màn hình - logcat là đầu ra duy nhất, release cũng giữ DebugTree
+            // (XLog.d / Log.d đã bị ProGuard xoá trong release)
+            Timber.plant(new Timber.DebugTree());
+        }
+        Platform.install(new TimberLogger(), new AndroidClock(), new MainLooperDispatcher());
+    }
+
+    static final class TimberLogger implements Logger {
+
+        @Override
+        public void d(String tag, String message) {
+            Timber.tag(tag).d(message);
+        }
+
+        @Override
+        public void i(String tag, String message) {
+            Timber.tag(tag).i(message);
+        }
+
+        @Override
+        public void w(String tag, String message, Throwable error) {
+            Timber.tag(tag).w(error, message);
+        }
+
+        @Override
+        public void e(String tag, String message, Throwable error) {
+            Timber.tag(tag).e(error, message);
+        }
+    }
+
+    static final class AndroidClock implements Clock {
+
+        @Override
+        public long elapsedMillis() {
+            return SystemClock.elapsedRealtime();
+        }
+
+        @Override
+        public long nanoTime() {
+            return System.nanoTime();
+        }
+    }
+
+    static final class MainLooperDispatcher implements Dispatcher {
+
+        private final Handler handler = new Handler(Looper.getMainLooper());
+
+        @Override
+        public void post(Runnable task) {
+            handler.post(task);
+        }
+
+        @Override
+        public void postDelayed(Runnable task, long delayMillis) {
+            handler.postDelayed(task, delayMillis);
+        }
+
+        @Override
+        public boolean isCurrentThread() {
+            return Looper.myLooper() == Looper.getMainLooper();
+        }
+    }
+}
@@ -5,7 +5,13 @@ import android.content.Context;
 import android.content.Intent;
 import android.util.Log;
 
+import com.phicomm.r1.xiaozhi.activation.DeviceFingerprint;
 import com.phicomm.r1.xiaozhi.config.XiaozhiConfig;
+import com.phicomm.r1.xiaozhi.core.BootTimeline;
+import com.phicomm.r1.xiaozhi.core.StartupOrchestrator;
+import com.phicomm.r1.xiaozhi.hardware.RootSetup;
+import com.phicomm.r1.xiaozhi.service.AudioPlaybackService;
+import com.phicomm.r1.xiaozhi.service.HTTPServerService;
 import com.phicomm.r1.xiaozhi.service.VoiceRecognitionService;
 import com.phicomm.r1.xiaozhi.service.XiaozhiConnectionService;
 import com.phicomm.r1.xiaozhi.service.LEDControlService;
@@ -24,27 +30,85 @@ public class BootReceiver extends BroadcastReceiver {
             
             Log.d(TAG, "Boot completed, starting Xiaozhi services");
             
+            BootTimeline.getInstance().mark(BootTimeline.BOOT_RECEIVED);
+            
             XiaozhiConfig config = new XiaozhiConfig(context);
             
             // Chỉ tự động start nếu user đã enable
             if (config.isAutoStart()) {
-                // Start LED service first
-                Intent ledIntent = new Intent(context, LEDControlService.class);
-                ledIntent.setAction(LEDControlService.ACTION_SET_IDLE);
-                context.startService(ledIntent);
-                
-                // Start Xiaozhi connection service
-                Intent xiaozhiIntent = new Intent(context, XiaozhiConnectionService.class);
-                context.startService(xiaozhiIntent);
-                
-                // Start voice recognition service
-                Intent voiceIntent = new Intent(context, VoiceRecognitionService.class);
-                context.startService(voiceIntent);
-                
-                Log.d(TAG, "All services started successfully");
+                startServices(context.getApplicationContext());
             } else {
                 Log.d(TAG, "Auto-start disabled in config");
             }
         }
     }
+    
+    /**
+     * Khởi động services theo dependency graph:
+     * 
+     *   voice        (không phụ thuộc gì - wake word là metric quan trọng nhất)
+     *   fingerprint  -> connection (token có sẵn thì connect ngay)
+     *   playback     (TTS + barge-in stop cần AudioPlaybackService)
+     *   root_setup   -> led
+     *   http
+     * 
+     * Các bước độc lập chạy song song, setenforce / prefs I/O không chạy trên main thread
+     */
+    private void startServices(final Context context) {
+        final PendingResult pendingResult = goAsync();
+        
+        new StartupOrchestrator()
+            .add("voice", new StartupOrchestrator.Step() {
+                @Override
+                public void run() {
+                    context.startService(new Intent(context, VoiceRecognitionService.class));
+                }
+            })
+            .add(BootTimeline.FINGERPRINT_LOADED, new StartupOrchestrator.Step() {
+                @Override
+                public void run() {
+                    // Load identity + token từ prefs trước khi connection service cần tới
+                    DeviceFingerprint.getInstance(context).getValidAccessToken();
+                }
+            })
+            .add("connection", new StartupOrchestrator.Step() {
+                @Override
+                public void run() {
+                    context.startService(new Intent(context, XiaozhiConnectionService.class));
+                }
+            }, BootTimeline.FINGERPRINT_LOADED)
+            .add("playback", new StartupOrchestrator.Step() {
+                @Override
+                public void run() {
+                    context.startService(new Intent(context, AudioPlaybackService.class));
+                }
+            })
+            .add("root_setup", new StartupOrchestrator.Step() {
+                @Override
+                public void run() {
+                    RootSetup.ensureSELinuxPermissive();
+                }
+            })
+            .add("led", new StartupOrchestrator.Step() {
+                @Override
+                public void run() {
+                    Intent ledIntent = new Intent(context, LEDControlService.class);
+                    ledIntent.setAction(LEDControlService.ACTION_SET_IDLE);
+                    context.startService(ledIntent);
+                }
+            }, "root_setup")
+            .add("http", new StartupOrchestrator.Step() {
+                @Override
+                public void run() {
+                    context.startService(new Intent(context, HTTPServerService.class));
+                }
+            })
+            .start(new Runnable() {
+                @Override
+                public void run() {
+                    Log.d(TAG, "All services started successfully");
+                    pendingResult.finish();
+                }
+            });
+    }
 }
\ No newline at end of file
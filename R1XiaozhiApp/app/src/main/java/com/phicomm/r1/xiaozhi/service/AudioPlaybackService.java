@@ -6,17 +6,32 @@ import android.content.Intent;
 import android.media.AudioManager;
 import android.media.MediaPlayer;
 import android.os.Binder;
+import android.os.Handler;
 import android.os.IBinder;
 import android.os.PowerManager;
 import android.util.Log;
 
-import java.io.File;
-import java.io.FileOutputStream;
+import com.phicomm.r1.xiaozhi.audio.PcmPlayer;
+import com.phicomm.r1.xiaozhi.audio.PcmStream;
+import com.phicomm.r1.xiaozhi.audio.TtsCache;
+import com.phicomm.r1.xiaozhi.core.XiaozhiCore;
+import com.phicomm.r1.xiaozhi.network.HttpClientProvider;
+import com.phicomm.r1.xiaozhi.platform.ManagedExecutor;
+
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.RejectedExecutionException;
+
+import okhttp3.Request;
+import okhttp3.Response;
 
 /**
  * Service phát audio từ Xiaozhi (TTS responses)
  * Hỗ trợ phát từ URL hoặc raw audio data
+ *
+ * TTS cache: intent extra "cache_key" (text do server gửi) -> cache hit phát ngay,
+ * không cần network round-trip. PCM được phát qua PcmPlayer (AudioTrack),
+ * encoded audio (URL) qua MediaPlayer.
  */
 public class AudioPlaybackService extends Service implements 
     MediaPlayer.OnPreparedListener,
@@ -30,11 +45,24 @@ public class AudioPlaybackService extends Service implements
     public static final String ACTION_STOP = "com.phicomm.r1.xiaozhi.STOP";
     public static final String ACTION_PAUSE = "com.phicomm.r1.xiaozhi.PAUSE";
     public static final String ACTION_RESUME = "com.phicomm.r1.xiaozhi.RESUME";
+    public static final String ACTION_PLAY_CACHED = "com.phicomm.r1.xiaozhi.PLAY_CACHED";
+    
+    public static final String EXTRA_CACHE_KEY = "cache_key";
+    
+    private static final int DEFAULT_SAMPLE_RATE = 16000;
+    private static final int DEFAULT_CHANNELS = 1;
     
     private MediaPlayer mediaPlayer;
     private AudioManager audioManager;
     private boolean isPrepared = false;
     
+    private TtsCache ttsCache;
+    private PcmPlayer pcmPlayer;
+    private Handler mainHandler;
+    private ManagedExecutor downloadExecutor;
+    // Key của URL đang tải về cache để phát; stop / play khác -> null, bỏ phát khi tải xong
+    private volatile String pendingDownloadKey;
+    
     private PlaybackCallback callback;
     
     public interface PlaybackCallback {
@@ -55,7 +83,13 @@ public class AudioPlaybackService extends Service implements
     public void onCreate() {
         super.onCreate();
         audioManager = (AudioManager) getSystemService(Context.AUDIO_SERVICE);
+        mainHandler = new Handler();
+        downloadExecutor = XiaozhiCore.getInstance().getScheduler().network();
+        ttsCache = TtsCache.getInstance(this);
         initMediaPlayer();
+        initPcmPlayer();
+        
+        XiaozhiCore.getInstance().setAudioService(this);
         Log.d(TAG, "AudioPlaybackService created");
     }
     
@@ -68,14 +102,26 @@ public class AudioPlaybackService extends Service implements
                 case ACTION_PLAY_URL:
                     String audioUrl = intent.getStringExtra("audio_url");
                     if (audioUrl != null) {
-                        playFromUrl(audioUrl);
+                        playFromUrl(audioUrl, intent.getStringExtra(EXTRA_CACHE_KEY));
                     }
                     break;
                     
                 case ACTION_PLAY_DATA:
                     byte[] audioData = intent.getByteArrayExtra("audio_data");
                     if (audioData != null) {
-                        playFromData(audioData);
+                        playFromData(
+                            audioData,
+                            intent.getStringExtra(EXTRA_CACHE_KEY),
+                            intent.getIntExtra("sample_rate", DEFAULT_SAMPLE_RATE),
+                            intent.getIntExtra("channels", DEFAULT_CHANNELS)
+                        );
+                    }
+                    break;
+                    
+                case ACTION_PLAY_CACHED:
+                    String cacheKey = intent.getStringExtra(EXTRA_CACHE_KEY);
+                    if (cacheKey != null && !playCached(cacheKey)) {
+                        Log.d(TAG, "Cache miss for " + cacheKey);
                     }
                     break;
                     
@@ -123,34 +169,115 @@ public class AudioPlaybackService extends Service implements
         isPrepared = false;
     }
     
+    /**
+     * PcmPlayer callbacks được chuyển về main thread như MediaPlayer callbacks
+     */
+    private void initPcmPlayer() {
+        pcmPlayer = new PcmPlayer();
+        pcmPlayer.setListener(new PcmPlayer.Listener() {
+            @Override
+            public void onStarted() {
+                mainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        Log.d(TAG, "PCM playback started");
+                        if (callback != null) {
+                            callback.onPlaybackStarted();
+                        }
+                    }
+                });
+            }
+            
+            @Override
+            public void onCompleted() {
+                mainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        Log.d(TAG, "PCM playback completed");
+                        onPlaybackCompleted();
+                    }
+                });
+            }
+            
+            @Override
+            public void onError(final String error) {
+                mainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        Log.e(TAG, "PCM playback error: " + error);
+                        if (callback != null) {
+                            callback.onPlaybackError(error);
+                        }
+                        onPlaybackCompleted();
+                    }
+                });
+            }
+        });
+    }
+    
+    /**
+     * Request audio focus + LED speaking trước khi phát
+     */
+    private void beginPlayback() {
+        pendingDownloadKey = null;
+        
+        int result = audioManager.requestAudioFocus(
+            audioFocusChangeListener,
+            AudioManager.STREAM_MUSIC,
+            AudioManager.AUDIOFOCUS_GAIN
+        );
+        
+        if (result != AudioManager.AUDIOFOCUS_REQUEST_GRANTED) {
+            Log.w(TAG, "Audio focus not granted");
+        }
+        
+        // Notify LED service
+        Intent ledIntent = new Intent(this, LEDControlService.class);
+        ledIntent.setAction(LEDControlService.ACTION_SET_SPEAKING);
+        startService(ledIntent);
+        
+        // Stop current playback if any
+        if (mediaPlayer.isPlaying()) {
+            mediaPlayer.stop();
+        }
+        pcmPlayer.stop();
+    }
+    
     /**
      * Phát audio từ URL
      */
     public void playFromUrl(String url) {
+        playFromUrl(url, null);
+    }
+    
+    /**
+     * Phát audio từ URL, cache theo cacheKey (hoặc URL nếu null)
+     * Cache hit: phát từ file local ngay. Miss (http/https): tải một lần vào cache rồi phát file local;
+     * tải lỗi -> stream URL bằng MediaPlayer
+     */
+    public void playFromUrl(String url, String cacheKey) {
+        String key = cacheKey != null ? cacheKey : TtsCache.keyForUrl(url);
+        if (playCached(key)) {
+            return;
+        }
+        
+        beginPlayback();
+        if (url.startsWith("http://") || url.startsWith("https://")) {
+            Log.d(TAG, "Downloading TTS audio: " + url);
+            pendingDownloadKey = key;
+            downloadAndPlay(url, key);
+        } else {
+            streamFromUrl(url);
+        }
+    }
+    
+    /**
+     * Phát URL trực tiếp bằng MediaPlayer (không cache)
+     */
+    private void streamFromUrl(String url) {
         Log.d(TAG, "Playing from URL: " + url);
         
         try {
-            // Request audio focus
-            int result = audioManager.requestAudioFocus(
-                audioFocusChangeListener,
-                AudioManager.STREAM_MUSIC,
-                AudioManager.AUDIOFOCUS_GAIN
-            );
-            
-            if (result != AudioManager.AUDIOFOCUS_REQUEST_GRANTED) {
-                Log.w(TAG, "Audio focus not granted");
-            }
-            
-            // Notify LED service
-            Intent ledIntent = new Intent(this, LEDControlService.class);
-            ledIntent.setAction(LEDControlService.ACTION_SET_SPEAKING);
-            startService(ledIntent);
-            
-            // Stop current playback if any
-            if (mediaPlayer.isPlaying()) {
-                mediaPlayer.stop();
-            }
-            
             initMediaPlayer();
             mediaPlayer.setDataSource(url);
             mediaPlayer.prepareAsync();
@@ -168,26 +295,112 @@ public class AudioPlaybackService extends Service implements
      * Phát audio từ raw data (PCM)
      */
     public void playFromData(byte[] audioData) {
+        playFromData(audioData, null, DEFAULT_SAMPLE_RATE, DEFAULT_CHANNELS);
+    }
+    
+    /**
+     * Phát PCM 16-bit qua AudioTrack và cache theo cacheKey (nếu có)
+     */
+    public void playFromData(byte[] audioData, String cacheKey, int sampleRate, int channels) {
         Log.d(TAG, "Playing from data: " + audioData.length + " bytes");
         
+        if (cacheKey != null) {
+            ttsCache.putPcm(cacheKey, audioData, sampleRate, channels);
+        }
+        
+        beginPlayback();
+        pcmPlayer.play(ByteBuffer.wrap(audioData), sampleRate, channels);
+    }
+    
+    /**
+     * Phát TTS PCM đang stream về qua WebSocket (chunk từ BufferPool), bắt đầu ngay không chờ hết câu
+     */
+    public void playStream(PcmStream stream, int sampleRate, int channels) {
+        Log.d(TAG, "Playing PCM stream: " + sampleRate + "Hz, " + channels + "ch");
+        
+        beginPlayback();
+        pcmPlayer.play(stream, sampleRate, channels);
+    }
+    
+    /**
+     * Phát từ TTS cache
+     * 
+     * @return false nếu cache miss (caller cần lấy audio từ server)
+     */
+    public boolean playCached(String cacheKey) {
+        TtsCache.Entry entry = ttsCache.get(cacheKey);
+        if (entry == null) {
+            return false;
+        }
+        
+        Log.d(TAG, "TTS cache hit (" + (entry.isInMemory() ? "memory" : "disk") + ", "
+            + entry.size() + " bytes)");
+        
         try {
-            // Save to temp file
-            File tempFile = File.createTempFile("xiaozhi_audio_", ".pcm", getCacheDir());
-            FileOutputStream fos = new FileOutputStream(tempFile);
-            fos.write(audioData);
-            fos.close();
-            
-            // Play from file
-            playFromUrl(tempFile.getAbsolutePath());
-            
-            // Delete temp file after playback
-            tempFile.deleteOnExit();
+            beginPlayback();
+            if (entry.isPcm()) {
+                pcmPlayer.play(ttsCache.open(entry), entry.sampleRate, entry.channels);
+            } else {
+                initMediaPlayer();
+                mediaPlayer.setDataSource(entry.getFile().getAbsolutePath());
+                mediaPlayer.prepareAsync();
+            }
+            return true;
             
         } catch (IOException e) {
-            Log.e(TAG, "Error playing from data", e);
+            Log.e(TAG, "Error playing cached audio", e);
             if (callback != null) {
                 callback.onPlaybackError(e.getMessage());
             }
+            onPlaybackCompleted();
+            return true;
+        }
+    }
+    
+    /**
+     * Tải audio về TTS cache qua shared OkHttp client (background) rồi phát từ file local trên main thread
+     */
+    private void downloadAndPlay(final String url, final String cacheKey) {
+        Runnable download = new Runnable() {
+            @Override
+            public void run() {
+                boolean cached = false;
+                Request request = new Request.Builder().url(url).get().build();
+                try {
+                    Response response = HttpClientProvider.get().newCall(request).execute();
+                    try {
+                        if (response.isSuccessful() && response.body() != null) {
+                            ttsCache.putEncoded(cacheKey, response.body().byteStream());
+                            cached = true;
+                            Log.d(TAG, "Cached TTS audio from " + url);
+                        }
+                    } finally {
+                        response.close();
+                    }
+                } catch (IOException e) {
+                    Log.w(TAG, "Failed to cache TTS audio: " + e.getMessage());
+                }
+                
+                final boolean downloaded = cached;
+                mainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (!cacheKey.equals(pendingDownloadKey)) {
+                            return; // Đã stop hoặc đang phát thứ khác
+                        }
+                        pendingDownloadKey = null;
+                        if (!downloaded || !playCached(cacheKey)) {
+                            streamFromUrl(url);
+                        }
+                    }
+                });
+            }
+        };
+        try {
+            downloadExecutor.execute("tts-download", download);
+        } catch (RejectedExecutionException e) {
+            pendingDownloadKey = null;
+            streamFromUrl(url);
         }
     }
     
@@ -195,13 +408,62 @@ public class AudioPlaybackService extends Service implements
      * Dừng phát
      */
     public void stop() {
+        pendingDownloadKey = null;
         if (mediaPlayer != null && mediaPlayer.isPlaying()) {
             mediaPlayer.stop();
             Log.d(TAG, "Playback stopped");
         }
+        if (pcmPlayer != null && pcmPlayer.isPlaying()) {
+            pcmPlayer.stop();
+            Log.d(TAG, "PCM playback stopped");
+        }
         onPlaybackCompleted();
     }
     
+    /**
+     * Barge-in: dừng ngay từ bất kỳ thread nào (AudioTrack pause + flush)
+     * Cleanup (audio focus, LED, callback) được post về main thread
+     * 
+     * @return true nếu đang có audio phát
+     */
+    public boolean interrupt() {
+        boolean wasPlaying = pendingDownloadKey != null;
+        pendingDownloadKey = null;
+        
+        if (pcmPlayer != null && pcmPlayer.isPlaying()) {
+            pcmPlayer.stop();
+            wasPlaying = true;
+        }
+        
+        MediaPlayer player = mediaPlayer;
+        try {
+            if (player != null && player.isPlaying()) {
+                player.pause();
+                wasPlaying = true;
+            }
+        } catch (IllegalStateException e) {
+            Log.w(TAG, "interrupt: " + e.getMessage());
+        }
+        
+        if (wasPlaying) {
+            mainHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        if (mediaPlayer != null && isPrepared) {
+                            mediaPlayer.stop();
+                        }
+                    } catch (IllegalStateException e) {
+                        Log.w(TAG, "stop after interrupt: " + e.getMessage());
+                    }
+                    Log.d(TAG, "Playback interrupted (barge-in)");
+                    onPlaybackCompleted();
+                }
+            });
+        }
+        return wasPlaying;
+    }
+    
     /**
      * Tạm dừng
      */
@@ -329,12 +591,15 @@ public class AudioPlaybackService extends Service implements
     }
     
     public boolean isPlaying() {
-        return mediaPlayer != null && mediaPlayer.isPlaying();
+        return (mediaPlayer != null && mediaPlayer.isPlaying())
+            || (pcmPlayer != null && pcmPlayer.isPlaying());
     }
     
     @Override
     public void onDestroy() {
         releaseMediaPlayer();
+        pcmPlayer.release();
+        XiaozhiCore.getInstance().setAudioService(null);
         audioManager.abandonAudioFocus(audioFocusChangeListener);
         super.onDestroy();
         Log.d(TAG, "AudioPlaybackService destroyed");
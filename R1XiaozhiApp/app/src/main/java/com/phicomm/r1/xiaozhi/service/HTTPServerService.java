@@ -5,29 +5,51 @@ import android.content.Intent;
 import android.os.IBinder;
 import android.util.Log;
 
+import com.phicomm.r1.xiaozhi.BuildConfig;
+import com.phicomm.r1.xiaozhi.audio.Beamformer;
+import com.phicomm.r1.xiaozhi.audio.TtsCache;
+import com.phicomm.r1.xiaozhi.core.BootTimeline;
+import com.phicomm.r1.xiaozhi.core.XiaozhiCore;
+import com.phicomm.r1.xiaozhi.diagnostics.FlightRecorder;
+import com.phicomm.r1.xiaozhi.platform.XLog;
+import com.phicomm.r1.xiaozhi.util.BufferPool;
 import com.phicomm.r1.xiaozhi.util.PairingCodeGenerator;
 
 import org.json.JSONException;
 import org.json.JSONObject;
 
 import java.io.BufferedReader;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.PrintWriter;
+import java.io.StringWriter;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.nio.charset.Charset;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Future;
 
 /**
  * HTTP Server đơn giản để expose pairing code qua REST API
  * Theo ESP32: Code gen LOCAL, không có async API calls
+ *
+ * Server không có auth và chạy từ lúc boot: /logs và /debug/* (log, audio mic) chỉ mở
+ * cho debug build hoặc request từ loopback (adb forward / adb shell); /metrics mở cho LAN
  */
 public class HTTPServerService extends Service {
     
     private static final String TAG = "HTTPServer";
     private static final int PORT = 8080;
+    private static final int DEBUG_RECORD_MAX_SECONDS = 60;
+    private static final int LOGS_DEFAULT_COUNT = 1000;
     
     private ServerSocket serverSocket;
-    private Thread serverThread;
+    // Accept loop chạy trên tier network của XiaozhiCore scheduler
+    private Future<?> serverTask;
     private boolean isRunning = false;
     
     @Override
@@ -44,7 +66,10 @@ public class HTTPServerService extends Service {
     }
     
     private void startServer() {
-        serverThread = new Thread(new Runnable() {
+        if (serverTask != null && !serverTask.isDone()) {
+            return;
+        }
+        serverTask = XiaozhiCore.getInstance().getScheduler().network().submit("http-server", new Runnable() {
             @Override
             public void run() {
                 try {
@@ -70,7 +95,6 @@ public class HTTPServerService extends Service {
                 }
             }
         });
-        serverThread.start();
     }
     
     private void handleClient(Socket clientSocket) {
@@ -104,14 +128,33 @@ public class HTTPServerService extends Service {
             
             String method = parts[0];
             String path = parts[1];
+            String query = "";
+            int queryStart = path.indexOf('?');
+            if (queryStart >= 0) {
+                query = path.substring(queryStart + 1);
+                path = path.substring(0, queryStart);
+            }
             
             // Route request
-            if ("GET".equals(method) && "/pairing-code".equals(path)) {
+            if (isDiagnosticsPath(path) && !isDiagnosticsAllowed(clientSocket)) {
+                Log.w(TAG, "Rejected " + path + " from " + clientSocket.getInetAddress());
+                sendResponse(writer, 403, "Forbidden");
+            } else if ("GET".equals(method) && "/pairing-code".equals(path)) {
                 servePairingCode(writer);
             } else if ("GET".equals(method) && "/status".equals(path)) {
                 serveStatus(writer);
+            } else if ("GET".equals(method) && "/metrics".equals(path)) {
+                serveMetrics(writer);
+            } else if ("GET".equals(method) && "/logs".equals(path)) {
+                serveLogs(writer, query);
             } else if ("POST".equals(method) && "/reset".equals(path)) {
                 serveResetPairing(writer);
+            } else if ("POST".equals(method) && "/debug/record/start".equals(path)) {
+                serveDebugRecord(writer, true);
+            } else if ("POST".equals(method) && "/debug/record/stop".equals(path)) {
+                serveDebugRecord(writer, false);
+            } else if ("POST".equals(method) && "/debug/flight/dump".equals(path)) {
+                serveFlightDump(writer);
             } else {
                 sendResponse(writer, 404, "Not Found");
             }
@@ -123,6 +166,17 @@ public class HTTPServerService extends Service {
         }
     }
     
+    /**
+     * Route lộ log / audio mic ra ngoài
+     */
+    private static boolean isDiagnosticsPath(String path) {
+        return "/logs".equals(path) || path.startsWith("/debug/");
+    }
+    
+    private static boolean isDiagnosticsAllowed(Socket clientSocket) {
+        return BuildConfig.DEBUG || clientSocket.getInetAddress().isLoopbackAddress();
+    }
+    
     /**
      * GET /pairing-code
      * Trả về pairing code LOCAL (không API call)
@@ -170,6 +224,95 @@ public class HTTPServerService extends Service {
         }
     }
     
+    /**
+     * GET /metrics
+     * Trả về boot timeline (ms since boot của từng mốc khởi động)
+     */
+    private void serveMetrics(PrintWriter writer) {
+        try {
+            JSONObject response = new JSONObject();
+            response.put("boot", BootTimeline.getInstance().toJson());
+            response.put("tts_cache", TtsCache.getInstance(this).getStats());
+            response.put("flight_recorder", FlightRecorder.getInstance().getStats());
+            response.put("scheduler", XiaozhiCore.getInstance().getScheduler().getStats());
+            response.put("buffer_pool", BufferPool.getInstance().getStats());
+            
+            VoiceRecognitionService voiceService = XiaozhiCore.getInstance().getVoiceService();
+            if (voiceService != null) {
+                response.put("barge_in", voiceService.getBargeInDetector().getStats());
+                response.put("aec", voiceService.getEchoCanceller().getStats());
+                response.put("conditioner", voiceService.getConditioner().getStats());
+                response.put("pipeline", voiceService.getPipeline().getStats());
+                response.put("capture", voiceService.getCaptureStats());
+                Beamformer beamformer = voiceService.getBeamformer();
+                if (beamformer != null) {
+                    response.put("beamformer", beamformer.getStats());
+                }
+            }
+            
+            sendJsonResponse(writer, 200, response.toString());
+            Log.d(TAG, "Served metrics");
+            
+        } catch (JSONException e) {
+            Log.e(TAG, "Failed to create JSON response: " + e.getMessage());
+            sendResponse(writer, 500, "Internal Server Error");
+        }
+    }
+    
+    /**
+     * GET /logs?n=1000&level=d
+     * N record gần nhất từ ring của XLog (text, cũ trước); level lọc d / i / w / e
+     */
+    private void serveLogs(PrintWriter writer, String query) {
+        int count = LOGS_DEFAULT_COUNT;
+        int minLevel = XLog.DEBUG;
+        for (String param : query.split("&")) {
+            int eq = param.indexOf('=');
+            if (eq <= 0) {
+                continue;
+            }
+            String key = param.substring(0, eq);
+            String value = param.substring(eq + 1);
+            if ("n".equals(key)) {
+                try {
+                    count = Math.max(1, Integer.parseInt(value));
+                } catch (NumberFormatException e) {
+                    sendResponse(writer, 400, "Bad Request");
+                    return;
+                }
+            } else if ("level".equals(key)) {
+                minLevel = XLog.parseLevel(value, minLevel);
+            }
+        }
+        
+        List<XLog.Entry> entries = XLog.recent(count, minLevel);
+        SimpleDateFormat time = new SimpleDateFormat("MM-dd HH:mm:ss.SSS", Locale.US);
+        Date date = new Date();
+        StringBuilder body = new StringBuilder(entries.size() * 96);
+        body.append("# ").append(entries.size()).append(" records, written ").append(XLog.getWrittenCount())
+            .append(", dropped ").append(XLog.getDroppedCount()).append('\n');
+        for (XLog.Entry entry : entries) {
+            date.setTime(entry.wallMillis);
+            body.append(time.format(date)).append(' ')
+                .append(XLog.levelChar(entry.level)).append('/').append(entry.tag)
+                .append(" [").append(entry.threadName).append("]: ")
+                .append(entry.message).append('\n');
+            if (entry.error != null) {
+                StringWriter trace = new StringWriter();
+                entry.error.printStackTrace(new PrintWriter(trace));
+                body.append(trace);
+            }
+        }
+        
+        byte[] bytes = body.toString().getBytes(Charset.forName("UTF-8"));
+        writer.print("HTTP/1.1 200 OK\r\n");
+        writer.print("Content-Type: text/plain; charset=utf-8\r\n");
+        writer.print("Content-Length: " + bytes.length + "\r\n");
+        writer.print("Connection: close\r\n\r\n");
+        writer.print(body);
+        writer.flush();
+    }
+    
     /**
      * POST /reset
      * Reset pairing status - đơn giản, KHÔNG có async
@@ -191,6 +334,61 @@ public class HTTPServerService extends Service {
         }
     }
     
+    /**
+     * POST /debug/record/start, /debug/record/stop
+     * Ghi audio sau DSP ra WAV trong cache dir (tối đa 60s) để nghe lại
+     */
+    private void serveDebugRecord(PrintWriter writer, boolean start) {
+        VoiceRecognitionService voiceService = XiaozhiCore.getInstance().getVoiceService();
+        if (voiceService == null) {
+            sendResponse(writer, 503, "Service Unavailable");
+            return;
+        }
+        
+        try {
+            JSONObject response = new JSONObject();
+            File file = start ? voiceService.startDebugRecording(DEBUG_RECORD_MAX_SECONDS)
+                : voiceService.stopDebugRecording();
+            response.put("success", file != null);
+            response.put("recording", start);
+            if (file != null) {
+                response.put("file", file.getAbsolutePath());
+            }
+            sendJsonResponse(writer, 200, response.toString());
+            Log.i(TAG, "Debug recording " + (start ? "started" : "stopped") + " via HTTP");
+            
+        } catch (IOException e) {
+            Log.e(TAG, "Debug recording failed: " + e.getMessage());
+            sendResponse(writer, 500, "Internal Server Error");
+        } catch (JSONException e) {
+            Log.e(TAG, "Failed to create JSON response: " + e.getMessage());
+            sendResponse(writer, 500, "Internal Server Error");
+        }
+    }
+    
+    /**
+     * POST /debug/flight/dump
+     * Dump flight recorder (60s audio mic gần nhất + timeline event) ra cache dir
+     */
+    private void serveFlightDump(PrintWriter writer) {
+        try {
+            File[] files = FlightRecorder.getInstance().dump("http");
+            JSONObject response = new JSONObject();
+            response.put("success", true);
+            response.put("audio", files[0].getAbsolutePath());
+            response.put("events", files[1].getAbsolutePath());
+            sendJsonResponse(writer, 200, response.toString());
+            Log.i(TAG, "Flight recorder dumped via HTTP");
+            
+        } catch (IOException e) {
+            Log.e(TAG, "Flight recorder dump failed: " + e.getMessage());
+            sendResponse(writer, 500, "Internal Server Error");
+        } catch (JSONException e) {
+            Log.e(TAG, "Failed to create JSON response: " + e.getMessage());
+            sendResponse(writer, 500, "Internal Server Error");
+        }
+    }
+    
     private void sendResponse(PrintWriter writer, int statusCode, String statusMessage) {
         writer.println("HTTP/1.1 " + statusCode + " " + statusMessage);
         writer.println("Content-Type: text/plain");
@@ -225,8 +423,9 @@ public class HTTPServerService extends Service {
                 Log.e(TAG, "Error closing server socket: " + e.getMessage());
             }
         }
-        if (serverThread != null) {
-            serverThread.interrupt();
+        if (serverTask != null) {
+            serverTask.cancel(true);
+            serverTask = null;
         }
     }
 }
\ No newline at end of file
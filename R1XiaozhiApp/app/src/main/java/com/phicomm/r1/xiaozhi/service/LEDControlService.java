@@ -10,6 +10,7 @@ import android.util.Log;
 
 import com.phicomm.r1.xiaozhi.config.XiaozhiConfig;
 import com.phicomm.r1.xiaozhi.hardware.LedLight;
+import com.phicomm.r1.xiaozhi.hardware.RootSetup;
 
 /**
  * Service điều khiển LED strip của Phicomm R1
@@ -60,7 +61,19 @@ public class LEDControlService extends Service {
         animationHandler = new Handler();
 
         // Set SELinux to permissive mode (required for LED hardware access)
-        setSELinuxPermissive();
+        // Chạy trên background thread - su có thể block main thread hàng trăm ms
+        RootSetup.ensureSELinuxPermissiveAsync(new Runnable() {
+            @Override
+            public void run() {
+                animationHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        // Màu set trước khi setenforce xong có thể bị bỏ qua - set lại
+                        reapplyState();
+                    }
+                });
+            }
+        });
 
         // Check if native LED library loaded successfully
         checkNativeLibrary();
@@ -124,27 +137,25 @@ public class LEDControlService extends Service {
     }
     
     /**
-     * Set SELinux to permissive mode (required for LED hardware access)
-     *
-     * Based on r1-helper BackgroundService implementation.
-     * The native LED library requires SELinux permissive mode to access
-     * the LED hardware device file.
+     * Apply lại LED state hiện tại (sau khi root setup xong)
      */
-    private void setSELinuxPermissive() {
-        try {
-            String[] cmd = {"su", "-c", "setenforce", "0"};
-            Process process = Runtime.getRuntime().exec(cmd);
-            int exitCode = process.waitFor();
-
-            if (exitCode == 0) {
-                Log.i(TAG, "✅ SELinux set to permissive mode");
-            } else {
-                Log.w(TAG, "⚠️ Failed to set SELinux permissive (exit code: " + exitCode + ")");
-                Log.w(TAG, "LED control may not work - requires root access");
-            }
-        } catch (Exception e) {
-            Log.w(TAG, "⚠️ Failed to set SELinux permissive: " + e.getMessage());
-            Log.w(TAG, "LED control may not work - requires root access");
+    private void reapplyState() {
+        switch (currentState) {
+            case STATE_LISTENING:
+                setListeningState();
+                break;
+            case STATE_THINKING:
+                setThinkingState();
+                break;
+            case STATE_SPEAKING:
+                setSpeakingState();
+                break;
+            case STATE_ERROR:
+                setErrorState();
+                break;
+            default:
+                setIdleState();
+                break;
         }
     }
 
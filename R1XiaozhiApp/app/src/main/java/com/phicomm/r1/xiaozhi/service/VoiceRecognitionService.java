@@ -13,22 +13,84 @@ import android.media.MediaRecorder;
 import android.os.Binder;
 import android.os.Build;
 import android.os.IBinder;
+import android.os.SystemClock;
 import android.util.Log;
 
+import com.phicomm.r1.xiaozhi.audio.AudioConditioner;
+import com.phicomm.r1.xiaozhi.audio.AudioFrame;
+import com.phicomm.r1.xiaozhi.audio.AudioPipeline;
+import com.phicomm.r1.xiaozhi.audio.AudioSource;
+import com.phicomm.r1.xiaozhi.audio.AudioStage;
+import com.phicomm.r1.xiaozhi.audio.BargeInDetector;
+import com.phicomm.r1.xiaozhi.audio.Beamformer;
+import com.phicomm.r1.xiaozhi.audio.CaptureMonitor;
+import com.phicomm.r1.xiaozhi.audio.CaptureRing;
+import com.phicomm.r1.xiaozhi.audio.DspKernels;
+import com.phicomm.r1.xiaozhi.audio.EchoCanceller;
+import com.phicomm.r1.xiaozhi.audio.EchoReference;
+import com.phicomm.r1.xiaozhi.audio.MicAudioSource;
+import com.phicomm.r1.xiaozhi.audio.VoiceCommandDetector;
+import com.phicomm.r1.xiaozhi.audio.WavRecorderSink;
 import com.phicomm.r1.xiaozhi.config.XiaozhiConfig;
-
-import java.io.ByteArrayOutputStream;
-import java.util.Arrays;
+import com.phicomm.r1.xiaozhi.core.BootTimeline;
+import com.phicomm.r1.xiaozhi.core.DeviceState;
+import com.phicomm.r1.xiaozhi.core.XiaozhiCore;
+import com.phicomm.r1.xiaozhi.diagnostics.FlightRecorder;
+import com.phicomm.r1.xiaozhi.platform.LogRateLimiter;
+import com.phicomm.r1.xiaozhi.platform.ManagedExecutor;
+import com.phicomm.r1.xiaozhi.platform.XLog;
+import com.phicomm.r1.xiaozhi.util.PooledBuffer;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 /**
  * Service thu âm và phát hiện wake word liên tục
  * Khi phát hiện wake word, bắt đầu ghi âm đầy đủ và gửi đến Xiaozhi
  *
+ * Mỗi frame 20ms đi qua AudioPipeline:
+ *   aec -> conditioner -> features -> pre_roll -> detect (barge-in / wake word)
+ *   -> sinks: uplink (command audio) + sink đăng ký thêm (debug recorder...)
+ *
+ * Wake word / ghi command / endpointing nằm trong VoiceCommandDetector (xiaozhi-core)
+ * để replay harness chạy cùng logic trên file WAV; service chỉ giữ phần Android
+ * (AudioRecord qua MicAudioSource, barge-in, LED, Intent)
+ *
+ * Multi-channel (config mic_channels = 2): capture stereo, Beamformer (GCC-PHAT +
+ * delay-and-sum) gộp thành một kênh mono trước pipeline
+ *
+ * Threading: "mic-capture" chỉ đọc AudioSource vào CaptureRing (lock-free SPSC),
+ * "mic-process" chạy beamformer + pipeline. Processing chậm (log, Intent...) không
+ * làm AudioRecord overflow; khi backlog lớn, wake word detection bỏ frame xen kẽ.
+ *
+ * Barge-in: trong lúc TTS đang phát, BargeInDetector vẫn chạy trên từng frame 20ms;
+ * khi user nói chen vào -> dừng + flush playback, gửi AbortSpeaking,
+ * ghi command ngay (kèm pre-roll để không mất âm tiết đầu)
+ *
+ * AEC: khi XiaozhiCore.isAecEnabled() và PcmPlayer đang phát, mỗi mic frame được
+ * trừ echo (NLMS) với reference đã align theo capture time trước mọi xử lý khác
+ *
+ * Conditioning: sau AEC, mọi frame qua AudioConditioner (DC/high-pass, noise
+ * suppression, AGC) - detector và audio upload đều dùng tín hiệu đã làm sạch
+ *
  * FIX: Added permission checks to prevent SecurityException crash
  */
 public class VoiceRecognitionService extends Service {
     
     private static final String TAG = "VoiceRecognition";
+    // Capture thread: lỗi read / gap có thể lặp mỗi frame (20ms) khi mic hỏng
+    private static final LogRateLimiter READ_ERROR_LOG = new LogRateLimiter(3, 5000);
+    private static final LogRateLimiter GAP_LOG = new LogRateLimiter(3, 5000);
     private static final String CHANNEL_ID = "voice_recognition_channel";
     private static final int NOTIFICATION_ID = 1;
     
@@ -37,29 +99,62 @@ public class VoiceRecognitionService extends Service {
     private static final int CHANNEL_CONFIG = AudioFormat.CHANNEL_IN_MONO;
     private static final int AUDIO_FORMAT = AudioFormat.ENCODING_PCM_16BIT;
     private static final int BUFFER_SIZE_FACTOR = 2;
+    private static final int FRAME_SAMPLES = SAMPLE_RATE / 50;      // 20ms frame
+    
+    // Capture ring
+    private static final int RING_SLOTS = 32;            // 640ms
+    private static final int DEGRADE_BACKLOG = 4;        // >= 80ms chậm -> bỏ KWS frame xen kẽ
+    private static final long STALL_TIMEOUT_MS = 200;
+    private static final long READ_ERROR_BACKOFF_MS = 10;
+    private static final long STOP_TIMEOUT_MS = 1000;
     
     // Recording state
-    private AudioRecord audioRecord;
-    private boolean isRecording = false;
-    private Thread recordingThread;
+    private AudioSource audioSource;
+    private volatile boolean isRecording = false;
+    // Hai vòng lặp chạy trên tier audio của XiaozhiCore scheduler
+    private Future<?> captureTask;
+    private Future<?> processingTask;
+    private CountDownLatch processingDone;
+    private CaptureRing captureRing;
+    private int captureChannels = 1;
+    private final CaptureMonitor captureMonitor = new CaptureMonitor(SAMPLE_RATE, FRAME_SAMPLES);
+    // 60s audio mic gần nhất + timeline, dump qua HTTP / khi lỗi
+    private final FlightRecorder flightRecorder = FlightRecorder.getInstance();
     private XiaozhiConfig config;
     
-    // Wake word detection
-    private boolean isListeningForWakeWord = true;
-    private boolean isRecordingCommand = false;
-    private ByteArrayOutputStream commandAudioStream;
+    // Wake word + energy VAD + ghi command (processing thread)
+    private VoiceCommandDetector commandDetector;
+    
+    // Barge-in (chỉ truy cập từ recording thread, trừ stats)
+    private final BargeInDetector bargeInDetector = new BargeInDetector();
+    private boolean wasPlayingBack = false;
+    
+    // AEC (chỉ truy cập từ recording thread, trừ stats)
+    private final EchoCanceller echoCanceller = new EchoCanceller();
+    private final EchoReference echoReference = EchoReference.getInstance();
+    private final short[] echoRefFrame = new short[FRAME_SAMPLES];
+    private final short[] bargeInRefFrame = new short[FRAME_SAMPLES];
+    
+    // DC/high-pass + noise suppression + AGC (recording thread)
+    private final AudioConditioner conditioner = new AudioConditioner(SAMPLE_RATE, FRAME_SAMPLES);
+    
+    // Pipeline + frame tái sử dụng (recording thread)
+    private final AudioFrame frame = new AudioFrame(SAMPLE_RATE, FRAME_SAMPLES);
+    private AudioPipeline pipeline;
+    private WavRecorderSink debugRecorder;
     
-    // Energy-based Voice Activity Detection
-    private static final double ENERGY_THRESHOLD = 500.0;
-    private static final int SILENCE_FRAMES = 20; // ~0.4 seconds at 50fps
-    private int silenceCounter = 0;
+    // Multi-channel capture (null = mono)
+    private Beamformer beamformer;
     
     private VoiceCallback callback;
     
     public interface VoiceCallback {
         void onWakeWordDetected();
         void onRecordingStarted();
-        void onRecordingCompleted(byte[] audioData);
+        /**
+         * @param audioData PCM 16-bit (read-only view, chỉ hợp lệ trong callback)
+         */
+        void onRecordingCompleted(ByteBuffer audioData);
         void onVoiceActivityDetected();
         void onError(String error);
     }
@@ -76,6 +171,10 @@ public class VoiceRecognitionService extends Service {
     public void onCreate() {
         super.onCreate();
         config = new XiaozhiConfig(this);
+        commandDetector = new VoiceCommandDetector(SAMPLE_RATE, FRAME_SAMPLES,
+            new VoiceCommandDetector.Params(), new CommandListener());
+        pipeline = buildPipeline();
+        XiaozhiCore.getInstance().setVoiceService(this);
         Log.d(TAG, "VoiceRecognitionService created");
     }
     
@@ -163,24 +262,31 @@ public class VoiceRecognitionService extends Service {
             return;
         }
 
-        int bufferSize = AudioRecord.getMinBufferSize(
-            SAMPLE_RATE,
-            CHANNEL_CONFIG,
-            AUDIO_FORMAT
-        ) * BUFFER_SIZE_FACTOR;
-
         Log.i(TAG, "=== STARTING AUDIO RECORDING ===");
         Log.i(TAG, "Sample rate: " + SAMPLE_RATE);
-        Log.i(TAG, "Buffer size: " + bufferSize);
 
+        AudioRecord audioRecord = null;
         try {
-            audioRecord = new AudioRecord(
-                MediaRecorder.AudioSource.MIC,
-                SAMPLE_RATE,
-                CHANNEL_CONFIG,
-                AUDIO_FORMAT,
-                bufferSize
-            );
+            beamformer = null;
+            if (config.getMicChannels() > 1) {
+                audioRecord = createAudioRecord(AudioFormat.CHANNEL_IN_STEREO);
+                if (audioRecord != null) {
+                    beamformer = new Beamformer(2, SAMPLE_RATE, FRAME_SAMPLES,
+                        config.getMicSpacingMm() / 1000f);
+                    Log.i(TAG, "Stereo capture + beamforming enabled");
+                } else {
+                    Log.w(TAG, "Stereo capture not supported, falling back to mono");
+                }
+            }
+            if (audioRecord == null) {
+                audioRecord = new AudioRecord(
+                    MediaRecorder.AudioSource.MIC,
+                    SAMPLE_RATE,
+                    CHANNEL_CONFIG,
+                    AUDIO_FORMAT,
+                    getBufferSize(CHANNEL_CONFIG)
+                );
+            }
 
             if (audioRecord.getState() != AudioRecord.STATE_INITIALIZED) {
                 Log.e(TAG, "=== AUDIORECORD INITIALIZATION FAILED ===");
@@ -190,6 +296,8 @@ public class VoiceRecognitionService extends Service {
                 if (callback != null) {
                     callback.onError("Khong the khoi tao microphone");
                 }
+                flightRecorder.recordEvent(FlightRecorder.KIND_ERROR, "audio_init_failed", audioRecord.getState());
+                flightRecorder.autoDump("audio_init_failed");
 
                 // Clean up
                 if (audioRecord != null) {
@@ -199,13 +307,23 @@ public class VoiceRecognitionService extends Service {
                 return;
             }
 
+            MicAudioSource micSource = new MicAudioSource(audioRecord);
+            int captureLatencyMs = micSource.getCaptureLatencyMs(FRAME_SAMPLES);
+            echoReference.setExtraDelayMs(captureLatencyMs);
+            Log.i(TAG, "Estimated capture latency: " + captureLatencyMs + "ms");
+            audioSource = micSource;
+            captureChannels = beamformer != null ? beamformer.getChannels() : 1;
+            captureRing = new CaptureRing(RING_SLOTS, FRAME_SAMPLES * captureChannels);
+            
             isRecording = true;
-            recordingThread = new Thread(new RecordingRunnable());
-            recordingThread.start();
+            ManagedExecutor audioExecutor = XiaozhiCore.getInstance().getScheduler().audio();
+            processingDone = new CountDownLatch(1);
+            processingTask = audioExecutor.submit("mic-process", new ProcessingRunnable(processingDone));
+            captureTask = audioExecutor.submit("mic-capture", new CaptureRunnable());
 
             Log.i(TAG, "=== RECORDING STARTED SUCCESSFULLY ===");
             Log.i(TAG, "Wake word: " + config.getWakeWord());
-            Log.i(TAG, "Energy threshold: " + ENERGY_THRESHOLD);
+            Log.i(TAG, "Energy threshold: " + commandDetector.getParams().energyThreshold);
 
         } catch (SecurityException e) {
             Log.e(TAG, "=== SECURITY EXCEPTION ===", e);
@@ -215,6 +333,14 @@ public class VoiceRecognitionService extends Service {
                 callback.onError("Khong co quyen ghi am");
             }
 
+        } catch (RejectedExecutionException e) {
+            Log.e(TAG, "=== AUDIO THREADS UNAVAILABLE ===", e);
+            stopRecording();
+
+            if (callback != null) {
+                callback.onError("Khong the bat dau thu am");
+            }
+
         } catch (IllegalArgumentException e) {
             Log.e(TAG, "=== ILLEGAL ARGUMENT EXCEPTION ===", e);
             Log.e(TAG, "Invalid AudioRecord parameters!");
@@ -232,92 +358,396 @@ public class VoiceRecognitionService extends Service {
         }
     }
     
+    private int getBufferSize(int channelConfig) {
+        int bufferSize = AudioRecord.getMinBufferSize(SAMPLE_RATE, channelConfig, AUDIO_FORMAT)
+            * BUFFER_SIZE_FACTOR;
+        Log.i(TAG, "Buffer size: " + bufferSize);
+        return bufferSize;
+    }
+    
+    /**
+     * Thử mở AudioRecord với channel config khác mono
+     * 
+     * @return null nếu thiết bị không hỗ trợ
+     */
+    private AudioRecord createAudioRecord(int channelConfig) {
+        int minBuffer = AudioRecord.getMinBufferSize(SAMPLE_RATE, channelConfig, AUDIO_FORMAT);
+        if (minBuffer <= 0) {
+            return null;
+        }
+        try {
+            AudioRecord record = new AudioRecord(
+                MediaRecorder.AudioSource.MIC,
+                SAMPLE_RATE,
+                channelConfig,
+                AUDIO_FORMAT,
+                getBufferSize(channelConfig)
+            );
+            if (record.getState() == AudioRecord.STATE_INITIALIZED && record.getChannelCount() > 1) {
+                return record;
+            }
+            record.release();
+        } catch (IllegalArgumentException e) {
+            Log.w(TAG, "AudioRecord channel config " + channelConfig + " rejected: " + e.getMessage());
+        }
+        return null;
+    }
+    
     /**
-     * Recording loop - chạy trong background thread
+     * Capture loop: chỉ đọc AudioSource vào ring, không xử lý, không log mỗi frame
      */
-    private class RecordingRunnable implements Runnable {
+    private class CaptureRunnable implements Runnable {
         @Override
         public void run() {
-            android.os.Process.setThreadPriority(android.os.Process.THREAD_PRIORITY_AUDIO);
+            // Thread của tier audio được dùng lại -> trả priority khi xong
+            int previousPriority = android.os.Process.getThreadPriority(android.os.Process.myTid());
+            android.os.Process.setThreadPriority(android.os.Process.THREAD_PRIORITY_URGENT_AUDIO);
+            try {
+                captureLoop();
+            } finally {
+                android.os.Process.setThreadPriority(previousPriority);
+            }
+        }
+        
+        private void captureLoop() {
+            // Frame 20ms: barge-in phản ứng trong vài frame, silence detection đúng 50fps
+            try {
+                audioSource.start();
+            } catch (IOException e) {
+                Log.e(TAG, "Cannot start audio capture", e);
+                if (callback != null) {
+                    callback.onError("Khong the bat dau thu am");
+                }
+                flightRecorder.recordEvent(FlightRecorder.KIND_ERROR, "capture_start_failed", e.getMessage());
+                flightRecorder.autoDump("capture_start_failed");
+                return;
+            }
+            Log.d(TAG, "Capture loop started");
             
-            short[] buffer = new short[1024];
-            audioRecord.startRecording();
+            int frameShorts = FRAME_SAMPLES * captureChannels;
+            while (isRecording) {
+                CaptureRing.Slot slot = captureRing.claim();
+                boolean dropped = slot == null;
+                if (dropped) {
+                    // Ring đầy: vẫn phải drain AudioRecord, frame này bị bỏ
+                    slot = captureRing.scratch();
+                }
+                
+                int shortsRead = audioSource.read(slot.data, 0, frameShorts);
+                long captureEndNanos = audioSource.getCaptureNanos();
+                
+                if (shortsRead <= 0) {
+                    captureMonitor.onReadError();
+                    flightRecorder.recordEvent(FlightRecorder.KIND_ERROR, "audio_read_error", shortsRead);
+                    if (READ_ERROR_LOG.tryAcquire()) {
+                        XLog.w(TAG, "Audio read error: {} ({} suppressed)", shortsRead,
+                            READ_ERROR_LOG.drainSuppressed());
+                    }
+                    SystemClock.sleep(READ_ERROR_BACKOFF_MS);
+                    continue;
+                }
+                
+                // Ghi cả frame bị ring bỏ: flight recorder phải thấy đúng những gì mic nghe
+                flightRecorder.recordAudio(slot.data, 0, shortsRead / captureChannels, captureChannels,
+                    captureEndNanos);
+                if (captureMonitor.onCaptured(shortsRead / captureChannels, captureEndNanos)) {
+                    flightRecorder.recordEvent(FlightRecorder.KIND_AUDIO, "capture_gap", captureMonitor.getGaps());
+                    if (GAP_LOG.tryAcquire()) {
+                        XLog.w(TAG, "Capture gap detected (total {})", captureMonitor.getGaps());
+                    }
+                }
+                if (!dropped) {
+                    slot.length = shortsRead;
+                    slot.captureNanos = captureEndNanos;
+                    captureRing.publish();
+                }
+            }
             
-            Log.d(TAG, "Recording loop started");
+            Log.d(TAG, "Capture loop ended");
+        }
+    }
+    
+    /**
+     * Processing loop: lấy frame từ ring, beamform (nếu nhiều kênh) rồi chạy pipeline
+     */
+    private class ProcessingRunnable implements Runnable {
+        private final CountDownLatch done;
+        
+        ProcessingRunnable(CountDownLatch done) {
+            this.done = done;
+        }
+        
+        @Override
+        public void run() {
+            int previousPriority = android.os.Process.getThreadPriority(android.os.Process.myTid());
+            android.os.Process.setThreadPriority(android.os.Process.THREAD_PRIORITY_AUDIO);
+            try {
+                processLoop();
+            } finally {
+                android.os.Process.setThreadPriority(previousPriority);
+                done.countDown();
+            }
+        }
+        
+        private void processLoop() {
+            Log.d(TAG, "Processing loop started");
+            boolean firstFrame = true;
             
             while (isRecording) {
-                int shortsRead = audioRecord.read(buffer, 0, buffer.length);
+                CaptureRing.Slot slot = captureRing.take(STALL_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+                if (slot == null) {
+                    if (isRecording) {
+                        captureMonitor.onStall();
+                    }
+                    continue;
+                }
                 
-                if (shortsRead > 0) {
-                    processAudioBuffer(buffer, shortsRead);
+                int samples = slot.length / captureChannels;
+                if (beamformer != null) {
+                    beamformer.process(slot.data, samples, frame.samples);
                 } else {
-                    Log.w(TAG, "AudioRecord read error: " + shortsRead);
+                    System.arraycopy(slot.data, 0, frame.samples, 0, samples);
+                }
+                frame.length = samples;
+                frame.captureNanos = slot.captureNanos;
+                captureRing.release();
+                frame.backlog = captureRing.size();
+                
+                if (firstFrame) {
+                    // Frame đầu tiên tới detector = sẵn sàng nghe wake word
+                    BootTimeline.getInstance().mark(BootTimeline.WAKE_WORD_READY);
+                    firstFrame = false;
                 }
+                pipeline.process(frame);
             }
             
-            Log.d(TAG, "Recording loop ended");
+            Log.d(TAG, "Processing loop ended");
         }
     }
     
     /**
-     * Xử lý audio buffer
+     * Dựng pipeline xử lý mic frame
+     * Thêm DSP mới = thêm stage ở đây, không cần sửa logic detect / ghi âm
      */
-    private void processAudioBuffer(short[] buffer, int length) {
-        if (isListeningForWakeWord) {
-            // Mode 1: Phát hiện wake word
-            boolean wakeWordDetected = detectWakeWord(buffer, length);
+    private AudioPipeline buildPipeline() {
+        AudioPipeline audioPipeline = new AudioPipeline();
+        
+        audioPipeline.addStage(new AudioStage() {
+            @Override
+            public String getName() {
+                return "aec";
+            }
             
-            if (wakeWordDetected) {
-                onWakeWordDetected();
+            @Override
+            public void process(AudioFrame frame) {
+                if (XiaozhiCore.getInstance().isAecEnabled()) {
+                    cancelEcho(frame);
+                }
             }
-        } else if (isRecordingCommand) {
-            // Mode 2: Ghi âm command sau khi phát hiện wake word
-            recordCommandAudio(buffer, length);
-        }
+        });
+        
+        audioPipeline.addStage(conditioner);
+        
+        audioPipeline.addStage(new AudioStage() {
+            @Override
+            public String getName() {
+                return "features";
+            }
+            
+            @Override
+            public void process(AudioFrame frame) {
+                DspKernels.analyze(frame);
+            }
+        });
+        
+        audioPipeline.addStage(commandDetector.preRollStage());
+        
+        audioPipeline.addStage(new AudioStage() {
+            @Override
+            public String getName() {
+                return "detect";
+            }
+            
+            @Override
+            public void process(AudioFrame frame) {
+                detect(frame);
+            }
+        });
+        
+        audioPipeline.addSink(commandDetector.uplinkSink());
+        
+        return audioPipeline;
     }
     
     /**
-     * Phát hiện wake word đơn giản dựa trên energy và pattern
-     * TODO: Tích hợp thư viện wake word detection chuyên dụng như Porcupine
+     * Barge-in khi TTS đang phát, ngược lại wake word detection
      */
-    private boolean detectWakeWord(short[] buffer, int length) {
-        double energy = calculateEnergy(buffer, length);
+    private void detect(AudioFrame frame) {
+        boolean degraded = frame.backlog >= DEGRADE_BACKLOG;
+        if (degraded) {
+            captureMonitor.onDegraded();
+        }
         
-        // Simple energy-based detection
-        // Trong production nên dùng model ML như Porcupine, Snowboy
-        if (energy > ENERGY_THRESHOLD * 3) {
-            Log.d(TAG, "High energy detected, possible wake word: " + energy);
-            return true;
+        // Barge-in: trong lúc TTS phát, mic chủ yếu nghe loa - không chạy wake word detection
+        if (!commandDetector.isRecordingCommand() && isPlayingBack()) {
+            if (!wasPlayingBack) {
+                bargeInDetector.reset();
+                wasPlayingBack = true;
+            }
+            if (bargeInDetector.process(frame.rms, referenceRms(frame), frame.getStartNanos())) {
+                onBargeIn(frame);
+            }
+            return;
         }
+        wasPlayingBack = false;
         
-        return false;
+        // Đang chậm: chỉ chạy KWS trên frame chẵn để bắt kịp (AEC/NS vẫn chạy mọi frame)
+        if (degraded && commandDetector.isListeningForWakeWord() && (frame.sequence & 1) == 1) {
+            captureMonitor.onKwsSkipped();
+            return;
+        }
+        
+        if (commandDetector.detectWakeWord(frame)) {
+            onWakeWordDetected(frame);
+        }
     }
     
     /**
-     * Tính năng lượng audio để phát hiện voice activity
+     * RMS của audio đang ra loa ứng với mic frame (so sánh echo với barge-in, kể cả khi AEC tắt)
      */
-    private double calculateEnergy(short[] buffer, int length) {
-        double sum = 0;
-        for (int i = 0; i < length; i++) {
-            sum += buffer[i] * buffer[i];
+    private double referenceRms(AudioFrame frame) {
+        if (frame.length > bargeInRefFrame.length
+            || !echoReference.read(frame.captureNanos, bargeInRefFrame, frame.length, SAMPLE_RATE)) {
+            return BargeInDetector.NO_REFERENCE;
         }
-        return Math.sqrt(sum / length);
+        return DspKernels.rms(bargeInRefFrame, 0, frame.length);
     }
     
     /**
-     * Xử lý khi phát hiện wake word
+     * Trừ echo của loa khỏi mic frame (in-place)
+     * Không có reference (không phát PCM) -> bỏ qua, giữ nguyên filter đã hội tụ cho lượt sau
+     */
+    private void cancelEcho(AudioFrame frame) {
+        if (frame.length > echoRefFrame.length) {
+            return;
+        }
+        if (echoReference.read(frame.captureNanos, echoRefFrame, frame.length, SAMPLE_RATE)) {
+            echoCanceller.process(frame.samples, echoRefFrame, frame.length);
+        }
+    }
+    
+    /**
+     * TTS đang phát? (server state SPEAKING hoặc AudioPlaybackService đang có audio)
+     */
+    private boolean isPlayingBack() {
+        XiaozhiCore core = XiaozhiCore.getInstance();
+        if (core.isSpeaking()) {
+            return true;
+        }
+        AudioPlaybackService audioService = core.getAudioService();
+        return audioService != null && audioService.isPlaying();
+    }
+    
+    /**
+     * User nói chen vào TTS
+     * Dừng loa trước (latency quan trọng nhất), sau đó mới báo server và bắt đầu ghi
      */
-    private void onWakeWordDetected() {
-        Log.d(TAG, "Wake word detected!");
+    private void onBargeIn(AudioFrame frame) {
+        XiaozhiCore core = XiaozhiCore.getInstance();
         
-        isListeningForWakeWord = false;
-        isRecordingCommand = true;
-        silenceCounter = 0;
+        AudioPlaybackService audioService = core.getAudioService();
+        if (audioService != null) {
+            audioService.interrupt();
+        }
+        long latencyMs = bargeInDetector.recordSilenced(System.nanoTime());
+        XLog.i(TAG, "Barge-in: playback silenced {}ms after speech onset", latencyMs);
+        flightRecorder.recordEvent(FlightRecorder.KIND_AUDIO, "barge_in_ms", latencyMs);
+        
+        XiaozhiConnectionService connectionService = core.getConnectionService();
+        if (connectionService != null) {
+            connectionService.sendAbortSpeaking("user_interruption");
+        }
+        core.setDeviceState(DeviceState.LISTENING);
+        wasPlayingBack = false;
         
-        commandAudioStream = new ByteArrayOutputStream();
+        startCommandRecording(true, frame.sequence);
+    }
+    
+    /**
+     * @return null nếu đang capture mono
+     */
+    public Beamformer getBeamformer() {
+        return beamformer;
+    }
+    
+    public JSONObject getCaptureStats() throws JSONException {
+        return captureMonitor.getStats(captureRing);
+    }
+    
+    public AudioPipeline getPipeline() {
+        return pipeline;
+    }
+    
+    /**
+     * Bắt đầu ghi audio sau DSP ra WAV (debug) - fan-out song song với uplink
+     */
+    public synchronized File startDebugRecording(int maxSeconds) throws IOException {
+        stopDebugRecording();
+        File file = new File(getCacheDir(), "debug-capture.wav");
+        debugRecorder = new WavRecorderSink(file, maxSeconds);
+        pipeline.addSink(debugRecorder);
+        return file;
+    }
+    
+    /**
+     * @return File đã ghi, hoặc null nếu không ghi
+     */
+    public synchronized File stopDebugRecording() {
+        if (debugRecorder == null) {
+            return null;
+        }
+        pipeline.removeSink(debugRecorder);
+        debugRecorder.close();
+        File file = debugRecorder.getFile();
+        debugRecorder = null;
+        return file;
+    }
+    
+    public AudioConditioner getConditioner() {
+        return conditioner;
+    }
+    
+    public EchoCanceller getEchoCanceller() {
+        return echoCanceller;
+    }
+    
+    public BargeInDetector getBargeInDetector() {
+        return bargeInDetector;
+    }
+    
+    /**
+     * Xử lý khi phát hiện wake word
+     */
+    private void onWakeWordDetected(AudioFrame frame) {
+        XLog.d(TAG, "Wake word detected! (energy {})", frame.rms);
+        flightRecorder.recordEvent(FlightRecorder.KIND_AUDIO, "wake_word rms", frame.rms);
         
         if (callback != null) {
             callback.onWakeWordDetected();
+        }
+        startCommandRecording(false, frame.sequence);
+    }
+    
+    /**
+     * Bắt đầu ghi command
+     * 
+     * @param withPreRoll true: ghép audio ngay trước trigger vào đầu command (barge-in)
+     * @param triggerSequence Frame trigger - uplink chỉ ghi từ frame sau
+     */
+    private void startCommandRecording(boolean withPreRoll, long triggerSequence) {
+        commandDetector.startCommand(withPreRoll, triggerSequence);
+        
+        if (callback != null) {
             callback.onRecordingStarted();
         }
         
@@ -328,116 +758,44 @@ public class VoiceRecognitionService extends Service {
     }
     
     /**
-     * Ghi âm command sau wake word
-     * FIX: Added null check to prevent NullPointerException crash
+     * Kết quả từ VoiceCommandDetector (processing thread)
      */
-    private void recordCommandAudio(short[] buffer, int length) {
-        // FIX: Null check - prevent crash if stream already closed
-        if (commandAudioStream == null) {
-            Log.w(TAG, "commandAudioStream is null, skipping recording");
-            return;
-        }
-
-        double energy = calculateEnergy(buffer, length);
-
-        // Convert short[] to byte[]
-        byte[] audioBytes = new byte[length * 2];
-        for (int i = 0; i < length; i++) {
-            audioBytes[i * 2] = (byte) (buffer[i] & 0xFF);
-            audioBytes[i * 2 + 1] = (byte) ((buffer[i] >> 8) & 0xFF);
-        }
-
-        try {
-            commandAudioStream.write(audioBytes, 0, audioBytes.length);
-        } catch (Exception e) {
-            Log.e(TAG, "Error writing to commandAudioStream", e);
-            return;
-        }
-
-        // Phát hiện kết thúc câu lệnh (silence detection)
-        if (energy < ENERGY_THRESHOLD) {
-            silenceCounter++;
-
-            if (silenceCounter >= SILENCE_FRAMES) {
-                onCommandRecordingCompleted();
-                return; // FIX: Return immediately to prevent double-call
-            }
-        } else {
-            silenceCounter = 0;
-
+    private class CommandListener implements VoiceCommandDetector.Listener {
+        @Override
+        public void onVoiceActivity(AudioFrame frame) {
             if (callback != null) {
                 callback.onVoiceActivityDetected();
             }
         }
-
-        // FIX: Check null again before accessing size (may be null after onCommandRecordingCompleted)
-        if (commandAudioStream != null && commandAudioStream.size() > SAMPLE_RATE * 2 * 10) {
-            Log.w(TAG, "Recording too long, force stopping");
-            onCommandRecordingCompleted();
+        
+        @Override
+        public void onCommandCompleted(PooledBuffer audioData, AudioFrame frame, boolean timedOut) {
+            if (timedOut) {
+                XLog.w(TAG, "Recording too long, force stopping");
+            }
+            onCommandRecordingCompleted(audioData);
         }
     }
     
     /**
-     * Hoàn thành ghi âm command
-     * FIX: Added null check and prevent double-call
+     * Hoàn thành ghi âm command: gửi audio đến Xiaozhi và reset LED
      */
-    private void onCommandRecordingCompleted() {
-        // FIX: Prevent double-call - check if already completed
-        if (!isRecordingCommand) {
-            Log.w(TAG, "onCommandRecordingCompleted called but not recording, ignoring");
-            return;
-        }
-
-        // FIX: Null check - prevent crash if stream is null
-        if (commandAudioStream == null) {
-            Log.e(TAG, "commandAudioStream is null, cannot complete recording");
-            isRecordingCommand = false;
-            isListeningForWakeWord = true;
-            return;
-        }
-
-        Log.d(TAG, "Command recording completed");
-
-        // FIX: Set flags FIRST to prevent re-entry
-        isRecordingCommand = false;
-        isListeningForWakeWord = true;
-
-        byte[] audioData = null;
-        try {
-            audioData = commandAudioStream.toByteArray();
-        } catch (Exception e) {
-            Log.e(TAG, "Error getting audio data from stream", e);
-            commandAudioStream = null;
-            return;
-        }
-
-        // FIX: Close and null the stream immediately
-        try {
-            commandAudioStream.close();
-        } catch (Exception e) {
-            Log.e(TAG, "Error closing commandAudioStream", e);
-        }
-        commandAudioStream = null;
-
-        // Validate audio data
-        if (audioData == null || audioData.length == 0) {
-            Log.w(TAG, "No audio data recorded, skipping");
-            return;
-        }
-
-        Log.i(TAG, "Audio data size: " + audioData.length + " bytes");
+    private void onCommandRecordingCompleted(PooledBuffer audioData) {
+        int bytes = audioData.buffer().remaining();
+        XLog.i(TAG, "Command recording completed: {} bytes", bytes);
+        flightRecorder.recordEvent(FlightRecorder.KIND_AUDIO, "command_bytes", bytes);
 
         if (callback != null) {
-            callback.onRecordingCompleted(audioData);
+            callback.onRecordingCompleted(audioData.buffer().asReadOnlyBuffer());
         }
 
-        // Gửi audio đến XiaozhiConnectionService
-        Intent intent = new Intent(this, XiaozhiConnectionService.class);
-        intent.setAction("SEND_AUDIO");
-        intent.putExtra("audio_data", audioData);
-        intent.putExtra("sample_rate", SAMPLE_RATE);
-        intent.putExtra("channels", 1);
-        startService(intent);
+        // Gửi buffer thẳng cho XiaozhiConnectionService (không copy sang byte[] qua Intent)
+        XiaozhiConnectionService connection = XiaozhiCore.getInstance().getConnectionService();
+        if (connection != null) {
+            connection.sendAudio(audioData.retain(), SAMPLE_RATE, 1);
+        } else {
+            XLog.w(TAG, "Connection service not running, command audio dropped");
+        }
 
         // Reset LED
         Intent ledIntent = new Intent(this, LEDControlService.class);
@@ -451,22 +809,31 @@ public class VoiceRecognitionService extends Service {
     public void stopRecording() {
         isRecording = false;
         
-        if (recordingThread != null) {
-            try {
-                recordingThread.join();
-            } catch (InterruptedException e) {
-                Log.e(TAG, "Error stopping recording thread", e);
+        // Capture thoát sau tối đa một lần read (20ms); processing đang park -> cancel(true) = interrupt.
+        // Chờ processing kết thúc thật sự trước khi startRecording() tạo ring mới
+        try {
+            if (captureTask != null) {
+                captureTask.get(STOP_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+                captureTask = null;
+            }
+            if (processingTask != null) {
+                processingTask.cancel(true);
+                if (processingDone.await(STOP_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+                    // Processing thread đã dừng -> trả buffer của command đang ghi dở
+                    commandDetector.cancelCommand();
+                }
+                processingTask = null;
             }
+        } catch (InterruptedException e) {
+            Log.e(TAG, "Error stopping recording threads", e);
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException | TimeoutException e) {
+            Log.e(TAG, "Error stopping recording threads", e);
         }
         
-        if (audioRecord != null) {
-            try {
-                audioRecord.stop();
-                audioRecord.release();
-            } catch (Exception e) {
-                Log.e(TAG, "Error releasing AudioRecord", e);
-            }
-            audioRecord = null;
+        if (audioSource != null) {
+            audioSource.release();
+            audioSource = null;
         }
         
         Log.d(TAG, "Recording stopped");
@@ -476,17 +843,19 @@ public class VoiceRecognitionService extends Service {
      * Pause/Resume listening
      */
     public void setListening(boolean listening) {
-        isListeningForWakeWord = listening;
+        commandDetector.setListening(listening);
         Log.d(TAG, "Listening: " + listening);
     }
     
     public boolean isListening() {
-        return isListeningForWakeWord;
+        return commandDetector.isListeningForWakeWord();
     }
     
     @Override
     public void onDestroy() {
         stopRecording();
+        stopDebugRecording();
+        XiaozhiCore.getInstance().setVoiceService(null);
         super.onDestroy();
         Log.d(TAG, "VoiceRecognitionService destroyed");
     }
@@ -7,33 +7,51 @@ import android.content.Intent;
 import android.os.Binder;
 import android.os.Handler;
 import android.os.IBinder;
+import android.os.Looper;
 import android.util.Log;
 
 import com.phicomm.r1.xiaozhi.activation.DeviceActivator;
+import com.phicomm.r1.xiaozhi.audio.PcmStream;
+import com.phicomm.r1.xiaozhi.audio.TtsCache;
 import com.phicomm.r1.xiaozhi.activation.DeviceFingerprint;
 import com.phicomm.r1.xiaozhi.config.XiaozhiConfig;
 import com.phicomm.r1.xiaozhi.core.DeviceState;
 import com.phicomm.r1.xiaozhi.core.EventBus;
 import com.phicomm.r1.xiaozhi.core.ListeningMode;
+import com.phicomm.r1.xiaozhi.core.BootTimeline;
 import com.phicomm.r1.xiaozhi.core.XiaozhiCore;
+import com.phicomm.r1.xiaozhi.diagnostics.FlightRecorder;
 import com.phicomm.r1.xiaozhi.events.ConnectionEvent;
 import com.phicomm.r1.xiaozhi.events.MessageReceivedEvent;
+import com.phicomm.r1.xiaozhi.network.EndpointSelector;
+import com.phicomm.r1.xiaozhi.network.ReconnectScheduler;
+import com.phicomm.r1.xiaozhi.platform.LogRateLimiter;
+import com.phicomm.r1.xiaozhi.platform.XLog;
+import com.phicomm.r1.xiaozhi.protocol.MessageEncoder;
+import com.phicomm.r1.xiaozhi.protocol.XiaozhiProtocol;
+import com.phicomm.r1.xiaozhi.util.BufferPool;
 import com.phicomm.r1.xiaozhi.util.ErrorCodes;
+import com.phicomm.r1.xiaozhi.util.PooledBuffer;
 import com.phicomm.r1.xiaozhi.util.TrustAllCertificates;
 
 import org.java_websocket.client.WebSocketClient;
+import org.java_websocket.exceptions.WebsocketNotConnectedException;
+import org.java_websocket.framing.TextFrame;
 import org.java_websocket.handshake.ServerHandshake;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.io.StringWriter;
 import java.net.Socket;
 import java.net.URI;
+import java.nio.ByteBuffer;
 import java.util.HashMap;
 import java.util.Map;
-import java.util.UUID;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.regex.Pattern;
 
 import javax.net.ssl.SSLParameters;
 import javax.net.ssl.SSLSocket;
@@ -52,11 +70,21 @@ import javax.net.ssl.SSLSocketFactory;
 public class XiaozhiConnectionService extends Service {
 
     private static final String TAG = "XiaozhiConnection";
-    private static final int MAX_RETRIES = 3;
+    private static final int CLOSE_NORMAL = 1000;
+    private static final int CLOSE_TRY_AGAIN_LATER = 1013;
+    private static final int CLOSE_PROTOCOL_ERROR = 1002;
+    // Java-WebSocket đóng với 1002 + status line khi server không trả 101 (vd: 401 Unauthorized)
+    private static final Pattern HANDSHAKE_AUTH_REJECTED =
+        Pattern.compile("status code received:\\s*(401|403)\\b");
     private static final int NOTIFICATION_ID = 1001;
     private static final String CHANNEL_ID = "xiaozhi_service_channel";
+    private static final int MAX_CACHED_SENTENCE_BYTES = 1024 * 1024;
 
     private WebSocketClient webSocketClient;
+    // Encoder message gửi đi, mỗi connection một cái (message_id đếm theo connection)
+    private MessageEncoder encoder = new MessageEncoder();
+    private final FlightRecorder flightRecorder = FlightRecorder.getInstance();
+    private final BufferPool bufferPool = BufferPool.getInstance();
     private final IBinder binder = new LocalBinder();
     private ConnectionListener connectionListener;
     
@@ -68,10 +96,34 @@ public class XiaozhiConnectionService extends Service {
     private DeviceActivator deviceActivator;
     private DeviceFingerprint deviceFingerprint;
     
-    // Retry logic
-    private Handler retryHandler;
-    private int retryCount = 0;
-    private boolean isRetrying = false;
+    // Retry logic - jittered, network-aware, never gives up
+    private Handler mainHandler;
+    private ReconnectScheduler reconnectScheduler;
+    
+    // Server-directed endpoint selection (OTA endpoint list, RTT, failover)
+    private EndpointSelector endpointSelector;
+    
+    // TTS PCM nhận qua binary frame -> PcmPlayer (WebSocket thread ghi, main thread / disconnect đóng)
+    // Handler riêng: cancelRetries() xoá mọi callback của mainHandler, stream chưa phát sẽ không được close
+    private final Handler playbackHandler = new Handler(Looper.getMainLooper());
+    private final Object ttsLock = new Object();
+    private PcmStream ttsStream;
+    private int ttsStreamSampleRate;
+    private volatile int ttsSampleRate = XiaozhiProtocol.AUDIO_SAMPLE_RATE;
+    // Binary frame chỉ được phát khi hello của server xác nhận audio_params.format == "pcm"
+    // (server mặc định gửi Opus -> phát như PCM sẽ ra nhiễu full-scale)
+    private volatile boolean ttsPcmEnabled = false;
+    // Câu hiện tại (sentence_start): PCM được tee vào TtsCache khi câu kết thúc bình thường;
+    // cache hit -> phát từ cache và bỏ audio server gửi cho câu đó (cùng ttsLock)
+    private TtsCache ttsCache;
+    private String ttsSentenceKey;
+    private ByteArrayOutputStream ttsSentencePcm;
+    private byte[] ttsTeeScratch = new byte[0];
+    private boolean ttsSentenceFromCache;
+    private final LogRateLimiter ttsDropLog = new LogRateLimiter(3, 10000);
+    // AudioPlaybackService chưa chạy (boot không qua MainActivity): start rồi chờ onCreate
+    private static final long PLAYBACK_SERVICE_POLL_MS = 50;
+    private static final int PLAYBACK_SERVICE_MAX_POLLS = 40;
     
     public class LocalBinder extends Binder {
         public XiaozhiConnectionService getService() {
@@ -83,7 +135,7 @@ public class XiaozhiConnectionService extends Service {
         void onConnected();
         void onDisconnected();
         void onActivationRequired(String verificationCode);
-        void onActivationProgress(int attempt, int maxAttempts);
+        void onActivationProgress(int elapsedSeconds, int timeoutSeconds);
         void onPairingSuccess();
         void onPairingFailed(String error);
         void onMessage(String message);
@@ -129,10 +181,12 @@ public class XiaozhiConnectionService extends Service {
         // Get XiaozhiCore instance
         core = XiaozhiCore.getInstance();
         eventBus = core.getEventBus();
+        ttsCache = TtsCache.getInstance(this);
 
         // Initialize device activation
         deviceFingerprint = DeviceFingerprint.getInstance(this);
         deviceActivator = new DeviceActivator(this);
+        endpointSelector = EndpointSelector.getInstance(this);
 
         // Setup activation listener
         deviceActivator.setListener(new DeviceActivator.ActivationListener() {
@@ -145,10 +199,10 @@ public class XiaozhiConnectionService extends Service {
             }
 
             @Override
-            public void onActivationProgress(int attempt, int maxAttempts) {
-                Log.d(TAG, "Activation progress: " + attempt + "/" + maxAttempts);
+            public void onActivationProgress(int elapsedSeconds, int timeoutSeconds) {
+                Log.d(TAG, "Activation progress: " + elapsedSeconds + "s/" + timeoutSeconds + "s");
                 if (connectionListener != null) {
-                    connectionListener.onActivationProgress(attempt, maxAttempts);
+                    connectionListener.onActivationProgress(elapsedSeconds, timeoutSeconds);
                 }
             }
 
@@ -177,6 +231,17 @@ public class XiaozhiConnectionService extends Service {
             }
         });
 
+        // Setup reconnect engine (một Handler duy nhất cho cả service lifetime)
+        mainHandler = new Handler();
+        reconnectScheduler = new ReconnectScheduler(this, new ReconnectScheduler.Callback() {
+            @Override
+            public void onReconnect(int attempt) {
+                Log.i(TAG, "Retrying connection (attempt " + attempt + ")...");
+                connect();
+            }
+        });
+        reconnectScheduler.start();
+
         // Register this service với core
         core.setConnectionService(this);
 
@@ -191,7 +256,6 @@ public class XiaozhiConnectionService extends Service {
     @Override
     public int onStartCommand(Intent intent, int flags, int startId) {
         Log.i(TAG, "=== SERVICE STARTED ===");
-        retryHandler = new Handler();
 
         // FIX: Handle SEND_AUDIO action from VoiceRecognitionService
         if (intent != null && "SEND_AUDIO".equals(intent.getAction())) {
@@ -201,7 +265,7 @@ public class XiaozhiConnectionService extends Service {
 
             if (audioData != null && audioData.length > 0) {
                 Log.i(TAG, "Received audio data: " + audioData.length + " bytes");
-                sendAudioToServer(audioData, sampleRate, channels);
+                sendAudioToServer(ByteBuffer.wrap(audioData), sampleRate, channels);
             } else {
                 Log.w(TAG, "Received SEND_AUDIO action but no audio data");
             }
@@ -212,17 +276,15 @@ public class XiaozhiConnectionService extends Service {
         // FIX #3: Auto-connect if device is activated but not connected
         // This handles boot/restart scenarios
         if (deviceActivator != null && deviceActivator.isActivated()) {
+            // Connect từ cached config/endpoints, revalidate OTA config trong background
+            deviceActivator.getOTAConfigManager().refreshInBackground();
+            
             if (!isConnected()) {
                 Log.i(TAG, "Device is activated but not connected");
                 Log.i(TAG, "Starting auto-connect on service startup...");
 
-                // Delay connect to ensure service is fully initialized
-                retryHandler.postDelayed(new Runnable() {
-                    @Override
-                    public void run() {
-                        connect();
-                    }
-                }, 1000); // 1 second delay
+                // Token đã có sẵn - connect ngay, không chờ thêm
+                connect();
             } else {
                 Log.i(TAG, "Device is already connected");
             }
@@ -286,6 +348,9 @@ public class XiaozhiConnectionService extends Service {
     /**
      * Connect to WebSocket with Bearer token
      * py-xiaozhi method: Token trong WebSocket header
+     *
+     * URL và token lấy từ endpoint do OTA server chỉ định (nếu có),
+     * fallback về XiaozhiConfig.WEBSOCKET_URL + access token từ activation
      */
     private void connectWithToken(final String accessToken) {
         if (webSocketClient != null && webSocketClient.isOpen()) {
@@ -303,29 +368,50 @@ public class XiaozhiConnectionService extends Service {
         }
         
         try {
-            URI serverUri = new URI(XiaozhiConfig.WEBSOCKET_URL);
+            final EndpointSelector.Endpoint endpoint = endpointSelector.select();
+            
+            // OTA-provided token takes precedence over the activation token (trừ khi đã bị từ chối)
+            final String otaToken = endpoint.getToken();
+            String token = otaToken != null ? otaToken : accessToken;
+            
+            URI serverUri = new URI(endpoint.url);
+            BootTimeline.getInstance().mark(BootTimeline.WS_CONNECT_START);
             
             // Enhanced logging for debugging
             Log.i(TAG, "=== WEBSOCKET CONNECTION ===");
-            Log.i(TAG, "URL: " + XiaozhiConfig.WEBSOCKET_URL);
-            Log.i(TAG, "Token (first 30 chars): " + (accessToken.length() > 30 ? accessToken.substring(0, 30) + "..." : accessToken));
-            Log.i(TAG, "Token length: " + accessToken.length());
+            Log.i(TAG, "URL: " + endpoint.url);
+            Log.i(TAG, "Token source: " + (otaToken == null ? "activation" : "OTA"));
+            Log.i(TAG, "Token (first 30 chars): " + (token.length() > 30 ? token.substring(0, 30) + "..." : token));
+            Log.i(TAG, "Token length: " + token.length());
             Log.i(TAG, "============================");
             
             // Create headers with Bearer token
             Map<String, String> headers = new HashMap<>();
-            headers.put("Authorization", "Bearer " + accessToken);
+            headers.put("Authorization", "Bearer " + token);
             Log.i(TAG, "Headers: " + headers.toString());
             
+            encoder = new MessageEncoder();
             webSocketClient = new WebSocketClient(serverUri, headers) {
+                private boolean opened = false;
+                
                 @Override
                 public void onOpen(ServerHandshake handshakedata) {
+                    opened = true;
+                    ttsPcmEnabled = false;
+                    ttsSampleRate = XiaozhiProtocol.AUDIO_SAMPLE_RATE;
+                    BootTimeline.getInstance().mark(BootTimeline.WS_OPEN);
+                    endpointSelector.reportSuccess(endpoint);
+                    flightRecorder.recordEvent(FlightRecorder.KIND_CONNECTION, "open", endpoint.url);
+
                     Log.i(TAG, "=== WEBSOCKET CONNECTED ===");
                     Log.i(TAG, "HTTP Status: " + handshakedata.getHttpStatus());
                     Log.i(TAG, "HTTP Status Message: " + handshakedata.getHttpStatusMessage());
                     Log.i(TAG, "Server handshake: " + handshakedata.toString());
                     Log.i(TAG, "============================");
 
+                    // Reset backoff
+                    reconnectScheduler.onConnected();
+
                     if (connectionListener != null) {
                         connectionListener.onConnected();
                     }
@@ -342,7 +428,7 @@ public class XiaozhiConnectionService extends Service {
                 
                 @Override
                 public void onMessage(String message) {
-                    Log.d(TAG, "Message received: " + message);
+                    XLog.d(TAG, "Message received: {}", message);
                     handleMessage(message);
                     
                     if (connectionListener != null) {
@@ -350,6 +436,11 @@ public class XiaozhiConnectionService extends Service {
                     }
                 }
                 
+                @Override
+                public void onMessage(ByteBuffer bytes) {
+                    onTtsAudio(bytes);
+                }
+                
                 @Override
                 public void onClose(int code, String reason, boolean remote) {
                     // Enhanced logging
@@ -358,14 +449,44 @@ public class XiaozhiConnectionService extends Service {
                     Log.w(TAG, "Reason: " + reason);
                     Log.w(TAG, "Remote: " + remote);
                     Log.w(TAG, "========================");
+                    flightRecorder.recordEvent(FlightRecorder.KIND_CONNECTION, remote ? "closed_remote" : "closed", code);
+                    ttsPcmEnabled = false;
+                    closeTtsStream();
+                    if (remote && code != CLOSE_NORMAL) {
+                        flightRecorder.autoDump("websocket_closed");
+                    }
                     
                     if (connectionListener != null) {
                         connectionListener.onDisconnected();
                     }
                     
+                    // Handshake bị từ chối vì token: không phải lỗi endpoint, không quarantine
+                    if (!opened && isAuthRejected(code, reason)) {
+                        flightRecorder.recordEvent(FlightRecorder.KIND_CONNECTION, "auth_rejected",
+                            otaToken != null ? "ota" : "activation");
+                        if (otaToken != null) {
+                            // Token OTA cũ/hết hạn -> lần sau gửi access token activation
+                            endpointSelector.reportAuthFailure(endpoint);
+                        } else if (connectionListener != null) {
+                            connectionListener.onError(ErrorCodes.getMessage(ErrorCodes.AUTHORIZATION_FAILED));
+                        }
+                        scheduleReconnect(ErrorCodes.AUTHORIZATION_FAILED);
+                        return;
+                    }
+                    
+                    // Failover: endpoint không mở được -> lần sau chọn endpoint khác
+                    if (!opened) {
+                        endpointSelector.reportFailure(endpoint);
+                    }
+                    
+                    // Server-driven retry-after hint (vd: "retry-after=30")
+                    reconnectScheduler.setRetryAfterHint(ReconnectScheduler.parseRetryAfter(reason));
+
                     // Auto retry if not manually disconnected
-                    if (remote && !isRetrying) {
-                        scheduleReconnect(ErrorCodes.WEBSOCKET_ERROR);
+                    if (remote) {
+                        scheduleReconnect(code == CLOSE_TRY_AGAIN_LATER
+                            ? ErrorCodes.SERVER_UNAVAILABLE
+                            : ErrorCodes.WEBSOCKET_ERROR);
                     }
                 }
                 
@@ -389,6 +510,8 @@ public class XiaozhiConnectionService extends Service {
                     ex.printStackTrace(pw);
                     Log.e(TAG, "Full stack trace:\n" + sw.toString());
                     Log.e(TAG, "==============================");
+                    flightRecorder.recordEvent(FlightRecorder.KIND_ERROR, "websocket", ex.getClass().getSimpleName());
+                    flightRecorder.autoDump("websocket_error");
 
                     String errorMsg = ErrorCodes.getMessage(ErrorCodes.WEBSOCKET_ERROR);
                     if (connectionListener != null) {
@@ -438,7 +561,8 @@ public class XiaozhiConnectionService extends Service {
      *     "serial_number": "SN-HASH-MAC",
      *     "device_type": "android",
      *     "os_version": "11",
-     *     "app_version": "1.0.0"
+     *     "app_version": "1.0.0",
+     *     "audio_params": {"format": "pcm", "sample_rate": 16000, "channels": 1}
      *   }
      * }
      */
@@ -464,33 +588,15 @@ public class XiaozhiConnectionService extends Service {
                 return;
             }
 
-            JSONObject message = new JSONObject();
-
-            // Header
-            JSONObject header = new JSONObject();
-            header.put("name", "hello");
-            header.put("namespace", "ai.xiaoai.common");
-            header.put("message_id", UUID.randomUUID().toString());
-
             // Payload - Match EXACTLY with py-xiaozhi format
-            JSONObject payload = new JSONObject();
-            payload.put("device_id", deviceId);  // MAC with colons: aa:bb:cc:dd:ee:ff
-            payload.put("serial_number", serialNumber);  // SN-HASH-MAC format
-            payload.put("device_type", "android");
-            payload.put("os_version", android.os.Build.VERSION.RELEASE);
-            payload.put("app_version", "1.0.0");
-
-            message.put("header", header);
-            message.put("payload", payload);
-
-            String json = message.toString();
-            Log.i(TAG, "=== HELLO MESSAGE (py-xiaozhi) ===");
-            Log.i(TAG, "Device ID: " + deviceId);
-            Log.i(TAG, "Serial Number: " + serialNumber);
-            Log.i(TAG, "OS Version: " + android.os.Build.VERSION.RELEASE);
-            Log.i(TAG, "Full JSON: " + json);
-            Log.i(TAG, "==================================");
-            webSocketClient.send(json);
+            // device_id: MAC with colons (aa:bb:cc:dd:ee:ff), serial_number: SN-HASH-MAC
+            MessageEncoder encoder = this.encoder;
+            synchronized (encoder) {
+                int length = sendEncoded(encoder.hello(deviceId, serialNumber, android.os.Build.VERSION.RELEASE));
+                flightRecorder.recordEvent(FlightRecorder.KIND_MESSAGE_OUT, "hello", length);
+                XLog.i(TAG, "Hello sent: device_id={} serial_number={} os_version={} message_id={} ({} bytes)",
+                    deviceId, serialNumber, android.os.Build.VERSION.RELEASE, encoder.getLastMessageId(), length);
+            }
             
             // Mark as paired after successful hello
             core.setDeviceState(DeviceState.IDLE);
@@ -513,33 +619,61 @@ public class XiaozhiConnectionService extends Service {
      */
     private void handleMessage(String message) {
         try {
-            JSONObject json = new JSONObject(message);
+            JSONObject json = XiaozhiProtocol.parse(message);
+            
+            // Server-driven reconnect hint (seconds), vd: {"type":"goodbye","retry_after":30}
+            long retryAfterMs = XiaozhiProtocol.getRetryAfterMs(json);
+            if (retryAfterMs >= 0) {
+                reconnectScheduler.setRetryAfterHint(retryAfterMs);
+            }
             
             // Broadcast message received event
             eventBus.post(new MessageReceivedEvent(json));
             
+            String type = XiaozhiProtocol.getType(json);
+            if (XiaozhiProtocol.HELLO.equals(type)) {
+                handleServerHello(json);
+            }
+            
             // Handle TTS messages
-            String type = json.optString("type");
-            if ("tts".equals(type)) {
+            flightRecorder.recordEvent(FlightRecorder.KIND_MESSAGE_IN, type, json.optString("state", null));
+            if (XiaozhiProtocol.TYPE_TTS.equals(type)) {
                 handleTTSMessage(json);
             }
             
             // Handle other message types here
-            Log.d(TAG, "Message type: " + type);
+            XLog.d(TAG, "Message type: {}", type);
             
         } catch (JSONException e) {
             Log.w(TAG, "Failed to parse message: " + e.getMessage());
         }
     }
     
+    /**
+     * Hello của server: format audio TTS sẽ gửi xuống (audio_params), xác nhận PCM mới bật phát binary frame
+     */
+    private void handleServerHello(JSONObject json) {
+        String format = XiaozhiProtocol.getAudioFormat(json);
+        ttsPcmEnabled = XiaozhiProtocol.AUDIO_FORMAT_PCM.equals(format);
+        if (ttsPcmEnabled) {
+            ttsSampleRate = XiaozhiProtocol.getAudioSampleRate(json, XiaozhiProtocol.AUDIO_SAMPLE_RATE);
+            XLog.i(TAG, "Server TTS audio: pcm {}Hz", ttsSampleRate);
+        } else {
+            XLog.w(TAG, "Server TTS audio format {} not supported, binary frames will be dropped", format);
+        }
+    }
+    
     /**
      * Handle TTS messages theo logic py-xiaozhi
      */
     private void handleTTSMessage(JSONObject json) {
         try {
-            String state = json.optString("state");
+            String state = XiaozhiProtocol.getTtsState(json);
             
-            if ("start".equals(state)) {
+            if (XiaozhiProtocol.TTS_START.equals(state)) {
+                // Câu mới: bỏ phần còn lại của câu trước (nếu có), stream mới mở ở binary frame đầu
+                closeTtsStream();
+                
                 // Check listening mode
                 if (core.isKeepListening() &&
                     core.getListeningMode() == ListeningMode.REALTIME) {
@@ -548,7 +682,13 @@ public class XiaozhiConnectionService extends Service {
                 } else {
                     core.setDeviceState(DeviceState.SPEAKING);
                 }
-            } else if ("stop".equals(state)) {
+            } else if (XiaozhiProtocol.TTS_SENTENCE_START.equals(state)) {
+                startTtsSentence(XiaozhiProtocol.getTtsText(json));
+            } else if (XiaozhiProtocol.TTS_SENTENCE_END.equals(state)) {
+                endTtsSentence();
+            } else if (XiaozhiProtocol.TTS_STOP.equals(state)) {
+                finishTtsStream();
+                
                 if (core.isKeepListening()) {
                     // Resume listening
                     core.setDeviceState(DeviceState.LISTENING);
@@ -565,6 +705,186 @@ public class XiaozhiConnectionService extends Service {
     }
     
     
+    /**
+     * Binary frame = TTS PCM 16-bit mono (WebSocket thread)
+     * Copy một lần từ frame vào direct buffer của pool, player ghi thẳng buffer đó vào AudioTrack
+     */
+    private void onTtsAudio(ByteBuffer frame) {
+        if (!frame.hasRemaining()) {
+            return;
+        }
+        if (!ttsPcmEnabled) {
+            if (ttsDropLog.tryAcquire()) {
+                XLog.w(TAG, "Binary frame dropped: server did not confirm pcm audio ({} suppressed)",
+                    ttsDropLog.drainSuppressed());
+            }
+            return;
+        }
+        PooledBuffer chunk = bufferPool.acquire(frame.remaining());
+        try {
+            chunk.buffer().put(frame).flip();
+            synchronized (ttsLock) {
+                if (ttsSentenceFromCache) {
+                    return;
+                }
+                teeTtsSentence(chunk.buffer());
+            }
+            writeTts(chunk, ttsSampleRate);
+        } finally {
+            chunk.release();
+        }
+    }
+    
+    /**
+     * Ghi chunk vào stream của lượt TTS hiện tại (mở stream + bắt đầu phát nếu chưa có)
+     */
+    private void writeTts(PooledBuffer chunk, int sampleRate) {
+        PcmStream stream;
+        boolean created = false;
+        synchronized (ttsLock) {
+            stream = ttsStream;
+            if (stream == null) {
+                stream = ttsStream = new PcmStream();
+                ttsStreamSampleRate = sampleRate;
+                created = true;
+            }
+        }
+        if (!stream.write(chunk) && ttsDropLog.tryAcquire()) {
+            XLog.w(TAG, "TTS audio after stream end dropped ({} suppressed)", ttsDropLog.drainSuppressed());
+        }
+        if (created) {
+            startTtsPlayback(stream, sampleRate);
+        }
+    }
+    
+    /**
+     * sentence_start: cache hit -> phát PCM đã cache ngay; miss -> bắt đầu tee audio của câu
+     */
+    private void startTtsSentence(String text) {
+        endTtsSentence();
+        if (text == null) {
+            return;
+        }
+        String key = TtsCache.keyForText(text);
+        TtsCache.Entry entry = ttsCache.get(key);
+        int sampleRate;
+        synchronized (ttsLock) {
+            sampleRate = ttsStream != null ? ttsStreamSampleRate : ttsSampleRate;
+        }
+        // Một stream = một format: chỉ dùng entry cùng sample rate, mono
+        if (entry != null && entry.isPcm() && entry.sampleRate == sampleRate && entry.channels == 1) {
+            try {
+                PooledBuffer cached = PooledBuffer.wrap(ttsCache.open(entry));
+                synchronized (ttsLock) {
+                    ttsSentenceFromCache = true;
+                }
+                XLog.d(TAG, "TTS sentence from cache ({} bytes)", entry.size());
+                writeTts(cached, sampleRate);
+                cached.release();
+                return;
+            } catch (IOException e) {
+                Log.w(TAG, "TTS cache read failed: " + e.getMessage());
+            }
+        }
+        synchronized (ttsLock) {
+            ttsSentenceKey = key;
+            ttsSentencePcm = new ByteArrayOutputStream();
+        }
+    }
+    
+    /**
+     * Câu nhận đủ (sentence_end / câu tiếp theo / stop) -> lưu PCM vào TtsCache
+     */
+    private void endTtsSentence() {
+        String key;
+        byte[] pcm;
+        int sampleRate;
+        synchronized (ttsLock) {
+            key = ttsSentenceKey;
+            pcm = ttsSentencePcm != null && ttsSentencePcm.size() > 0 ? ttsSentencePcm.toByteArray() : null;
+            sampleRate = ttsStream != null ? ttsStreamSampleRate : ttsSampleRate;
+            discardTtsSentenceLocked();
+        }
+        if (key != null && pcm != null) {
+            ttsCache.putPcm(key, pcm, sampleRate, 1);
+        }
+    }
+    
+    private void teeTtsSentence(ByteBuffer pcm) {
+        ByteArrayOutputStream out = ttsSentencePcm;
+        if (out == null) {
+            return;
+        }
+        if (out.size() + pcm.remaining() > MAX_CACHED_SENTENCE_BYTES) {
+            // Câu quá dài cho cache: bỏ tee, vẫn phát bình thường
+            discardTtsSentenceLocked();
+            return;
+        }
+        int length = pcm.remaining();
+        if (ttsTeeScratch.length < length) {
+            ttsTeeScratch = new byte[length];
+        }
+        pcm.duplicate().get(ttsTeeScratch, 0, length);
+        out.write(ttsTeeScratch, 0, length);
+    }
+    
+    private void discardTtsSentenceLocked() {
+        ttsSentenceKey = null;
+        ttsSentencePcm = null;
+        ttsSentenceFromCache = false;
+    }
+    
+    private void startTtsPlayback(final PcmStream stream, final int sampleRate) {
+        flightRecorder.recordEvent(FlightRecorder.KIND_AUDIO, "tts_stream", sampleRate);
+        playbackHandler.post(new Runnable() {
+            private int polls = 0;
+            
+            @Override
+            public void run() {
+                if (stream.isClosed()) {
+                    return;
+                }
+                AudioPlaybackService audioService = core.getAudioService();
+                if (audioService != null) {
+                    audioService.playStream(stream, sampleRate, 1);
+                    return;
+                }
+                if (polls == 0) {
+                    Log.w(TAG, "AudioPlaybackService not running, starting it for TTS");
+                    startService(new Intent(XiaozhiConnectionService.this, AudioPlaybackService.class));
+                }
+                if (++polls > PLAYBACK_SERVICE_MAX_POLLS) {
+                    Log.e(TAG, "AudioPlaybackService did not start, TTS stream dropped");
+                    stream.close();
+                    return;
+                }
+                // Stream vẫn nhận chunk trong lúc chờ, phát từ đầu khi service lên
+                playbackHandler.postDelayed(this, PLAYBACK_SERVICE_POLL_MS);
+            }
+        });
+    }
+    
+    private void finishTtsStream() {
+        endTtsSentence();
+        synchronized (ttsLock) {
+            if (ttsStream != null) {
+                ttsStream.finish();
+                ttsStream = null;
+            }
+        }
+    }
+    
+    private void closeTtsStream() {
+        synchronized (ttsLock) {
+            // Câu bị cắt ngang: không cache audio dở dang
+            discardTtsSentenceLocked();
+            if (ttsStream != null) {
+                ttsStream.close();
+                ttsStream = null;
+            }
+        }
+    }
+    
     /**
      * Send start listening message theo py-xiaozhi
      */
@@ -574,26 +894,11 @@ public class XiaozhiConnectionService extends Service {
             return;
         }
         
-        try {
-            JSONObject message = new JSONObject();
-            
-            JSONObject header = new JSONObject();
-            header.put("name", "StartListening");
-            header.put("namespace", "ai.xiaoai.recognizer");
-            header.put("message_id", UUID.randomUUID().toString());
-            
-            JSONObject payload = new JSONObject();
-            payload.put("mode", mode.getValue());
-            
-            message.put("header", header);
-            message.put("payload", payload);
-            
-            String json = message.toString();
-            Log.d(TAG, "Sending StartListening: " + json);
-            webSocketClient.send(json);
-            
-        } catch (JSONException e) {
-            Log.e(TAG, "Failed to send StartListening: " + e.getMessage(), e);
+        MessageEncoder encoder = this.encoder;
+        synchronized (encoder) {
+            int length = sendEncoded(encoder.startListening(mode.getValue()));
+            flightRecorder.recordEvent(FlightRecorder.KIND_MESSAGE_OUT, "start_listening", length);
+            XLog.d(TAG, "Sent StartListening #{} ({} bytes)", encoder.getSequence() - 1, length);
         }
     }
     
@@ -606,23 +911,11 @@ public class XiaozhiConnectionService extends Service {
             return;
         }
         
-        try {
-            JSONObject message = new JSONObject();
-            
-            JSONObject header = new JSONObject();
-            header.put("name", "StopListening");
-            header.put("namespace", "ai.xiaoai.recognizer");
-            header.put("message_id", UUID.randomUUID().toString());
-            
-            message.put("header", header);
-            message.put("payload", new JSONObject());
-            
-            String json = message.toString();
-            Log.d(TAG, "Sending StopListening: " + json);
-            webSocketClient.send(json);
-            
-        } catch (JSONException e) {
-            Log.e(TAG, "Failed to send StopListening: " + e.getMessage(), e);
+        MessageEncoder encoder = this.encoder;
+        synchronized (encoder) {
+            int length = sendEncoded(encoder.stopListening());
+            flightRecorder.recordEvent(FlightRecorder.KIND_MESSAGE_OUT, "stop_listening", length);
+            XLog.d(TAG, "Sent StopListening #{} ({} bytes)", encoder.getSequence() - 1, length);
         }
     }
     
@@ -635,28 +928,11 @@ public class XiaozhiConnectionService extends Service {
             return;
         }
         
-        try {
-            JSONObject message = new JSONObject();
-            
-            JSONObject header = new JSONObject();
-            header.put("name", "AbortSpeaking");
-            header.put("namespace", "ai.xiaoai.tts");
-            header.put("message_id", UUID.randomUUID().toString());
-            
-            JSONObject payload = new JSONObject();
-            if (reason != null) {
-                payload.put("reason", reason);
-            }
-            
-            message.put("header", header);
-            message.put("payload", payload);
-            
-            String json = message.toString();
-            Log.d(TAG, "Sending AbortSpeaking: " + json);
-            webSocketClient.send(json);
-            
-        } catch (JSONException e) {
-            Log.e(TAG, "Failed to send AbortSpeaking: " + e.getMessage(), e);
+        MessageEncoder encoder = this.encoder;
+        synchronized (encoder) {
+            int length = sendEncoded(encoder.abortSpeaking(reason));
+            flightRecorder.recordEvent(FlightRecorder.KIND_MESSAGE_OUT, "abort_speaking", length);
+            XLog.d(TAG, "Sent AbortSpeaking #{} ({} bytes)", encoder.getSequence() - 1, length);
         }
     }
     
@@ -669,34 +945,41 @@ public class XiaozhiConnectionService extends Service {
             return;
         }
 
-        try {
-            JSONObject message = new JSONObject();
-
-            JSONObject header = new JSONObject();
-            header.put("name", "Recognize");
-            header.put("namespace", "ai.xiaoai.recognizer");
-            header.put("message_id", UUID.randomUUID().toString());
-
-            JSONObject payload = new JSONObject();
-            payload.put("text", text);
-
-            message.put("header", header);
-            message.put("payload", payload);
-
-            String json = message.toString();
-            Log.d(TAG, "Sending text: " + json);
-            webSocketClient.send(json);
+        MessageEncoder encoder = this.encoder;
+        synchronized (encoder) {
+            int length = sendEncoded(encoder.recognizeText(text));
+            flightRecorder.recordEvent(FlightRecorder.KIND_MESSAGE_OUT, "text", length);
+            XLog.d(TAG, "Sent text #{} ({} bytes)", encoder.getSequence() - 1, length);
+        }
+    }
 
-        } catch (JSONException e) {
-            Log.e(TAG, "Failed to send text: " + e.getMessage(), e);
+    /**
+     * Gửi command audio từ VoiceRecognitionService (buffer pool, không copy sang byte[] / Intent)
+     * Encode + gửi trên tier network; service nhận ownership và release() khi gửi xong
+     */
+    public void sendAudio(final PooledBuffer pcm, final int sampleRate, final int channels) {
+        try {
+            core.getScheduler().network().execute("uplink-audio", new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        sendAudioToServer(pcm.buffer(), sampleRate, channels);
+                    } finally {
+                        pcm.release();
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            pcm.release();
+            Log.e(TAG, "Cannot send audio: " + e.getMessage());
         }
     }
 
     /**
-     * Gửi audio data đến Xiaozhi server
+     * Gửi audio data (position..limit) đến Xiaozhi server
      * FIX: Added to handle SEND_AUDIO action from VoiceRecognitionService
      */
-    private void sendAudioToServer(byte[] audioData, int sampleRate, int channels) {
+    private void sendAudioToServer(ByteBuffer audioData, int sampleRate, int channels) {
         if (webSocketClient == null || !webSocketClient.isOpen()) {
             Log.w(TAG, "Cannot send audio - not connected");
 
@@ -709,44 +992,25 @@ public class XiaozhiConnectionService extends Service {
         }
 
         try {
-            Log.i(TAG, "=== SENDING AUDIO TO SERVER ===");
-            Log.i(TAG, "Audio size: " + audioData.length + " bytes");
-            Log.i(TAG, "Sample rate: " + sampleRate);
-            Log.i(TAG, "Channels: " + channels);
-
-            // Encode audio to base64
-            String audioBase64 = android.util.Base64.encodeToString(audioData, android.util.Base64.NO_WRAP);
-
-            JSONObject message = new JSONObject();
-
-            JSONObject header = new JSONObject();
-            header.put("name", "Recognize");
-            header.put("namespace", "ai.xiaoai.recognizer");
-            header.put("message_id", UUID.randomUUID().toString());
-
-            JSONObject payload = new JSONObject();
-            payload.put("audio", audioBase64);
-            payload.put("format", "pcm");
-            payload.put("sample_rate", sampleRate);
-            payload.put("channels", channels);
-            payload.put("bits_per_sample", 16);
-
-            message.put("header", header);
-            message.put("payload", payload);
-
-            String json = message.toString();
-            Log.d(TAG, "Sending audio message (base64 length: " + audioBase64.length() + ")");
-            webSocketClient.send(json);
+            XLog.i(TAG, "Sending audio: {} bytes, {}Hz, {}ch", audioData.remaining(), sampleRate, channels);
+
+            // Audio base64 ghi thẳng vào buffer của encoder (không qua String)
+            MessageEncoder encoder = this.encoder;
+            synchronized (encoder) {
+                int length = sendEncoded(encoder.recognizeAudio(audioData, sampleRate, channels));
+                flightRecorder.recordEvent(FlightRecorder.KIND_MESSAGE_OUT, "audio", length);
+                XLog.d(TAG, "Sent audio message #{} ({} bytes)", encoder.getSequence() - 1, length);
+            }
 
             // Notify LED service - speaking state (waiting for response)
             Intent ledIntent = new Intent(this, LEDControlService.class);
             ledIntent.setAction(LEDControlService.ACTION_SET_SPEAKING);
             startService(ledIntent);
 
-            Log.i(TAG, "=== AUDIO SENT SUCCESSFULLY ===");
-
-        } catch (JSONException e) {
-            Log.e(TAG, "Failed to send audio: " + e.getMessage(), e);
+        } catch (WebsocketNotConnectedException e) {
+            XLog.e(TAG, "Failed to send audio - connection closed", e);
+            flightRecorder.recordEvent(FlightRecorder.KIND_ERROR, "send_audio", audioData.remaining());
+            flightRecorder.autoDump("send_audio_failed");
 
             // Notify LED service - error state
             Intent ledIntent = new Intent(this, LEDControlService.class);
@@ -756,46 +1020,44 @@ public class XiaozhiConnectionService extends Service {
     }
     
     /**
-     * Schedule reconnect với exponential backoff
+     * Gửi message đã encode (UTF-8) làm text frame, không tạo String.
+     * Draft copy payload khi tạo frame, nên buffer của encoder dùng lại được ngay sau khi gọi.
+     * Caller giữ lock của encoder.
+     *
+     * @return số byte payload
+     */
+    private int sendEncoded(ByteBuffer utf8) {
+        TextFrame frame = new TextFrame();
+        frame.setPayload(utf8);
+        frame.setTransferemasked(true); // frame từ client luôn phải mask
+        webSocketClient.sendFrame(frame);
+        return utf8.limit();
+    }
+
+    /**
+     * Handshake bị server trả 401/403 thay vì 101
+     */
+    private static boolean isAuthRejected(int code, String reason) {
+        return code == CLOSE_PROTOCOL_ERROR && reason != null
+            && HANDSHAKE_AUTH_REJECTED.matcher(reason).find();
+    }
+    
+    /**
+     * Schedule reconnect với decorrelated jitter (không giới hạn số lần)
      */
     private void scheduleReconnect(final int errorCode) {
-        if (retryCount >= MAX_RETRIES) {
-            Log.e(TAG, "Max retries reached. Giving up.");
-            isRetrying = false;
-            retryCount = 0;
-            
-            String errorMsg = ErrorCodes.getMessage(ErrorCodes.SERVER_UNAVAILABLE);
-            if (connectionListener != null) {
-                connectionListener.onError(errorMsg);
-            }
-            return;
-        }
-        
-        isRetrying = true;
-        int delay = ErrorCodes.getRetryDelay(errorCode, retryCount);
-        retryCount++;
-        
-        Log.i(TAG, "Scheduling reconnect #" + retryCount + " in " + delay + "ms");
-        
-        if (retryHandler != null) {
-            retryHandler.postDelayed(new Runnable() {
-                @Override
-                public void run() {
-                    Log.i(TAG, "Retrying connection...");
-                    connect();
-                }
-            }, delay);
-        }
+        reconnectScheduler.schedule(errorCode);
     }
     
     /**
      * Cancel scheduled retries
      */
     private void cancelRetries() {
-        isRetrying = false;
-        retryCount = 0;
-        if (retryHandler != null) {
-            retryHandler.removeCallbacksAndMessages(null);
+        if (reconnectScheduler != null) {
+            reconnectScheduler.cancel();
+        }
+        if (mainHandler != null) {
+            mainHandler.removeCallbacksAndMessages(null);
         }
     }
     
@@ -804,6 +1066,7 @@ public class XiaozhiConnectionService extends Service {
      */
     public void disconnect() {
         cancelRetries();
+        closeTtsStream();
         
         if (webSocketClient != null) {
             webSocketClient.close();
@@ -870,6 +1133,11 @@ public class XiaozhiConnectionService extends Service {
             cancelRetries();
         }
 
+        // Release network callback (holds a reference to this service)
+        if (reconnectScheduler != null) {
+            reconnectScheduler.stop();
+        }
+
         // Unregister from core
         if (core != null) {
             core.setConnectionService(null);
@@ -194,11 +194,11 @@ public class MainActivity extends Activity {
                 }
                 
                 @Override
-                public void onActivationProgress(final int attempt, final int maxAttempts) {
+                public void onActivationProgress(final int elapsedSeconds, final int timeoutSeconds) {
                     runOnUiThread(new Runnable() {
                         @Override
                         public void run() {
-                            updateActivationProgress(attempt, maxAttempts);
+                            updateActivationProgress(elapsedSeconds, timeoutSeconds);
                         }
                     });
                 }
@@ -550,8 +550,10 @@ public class MainActivity extends Activity {
     /**
      * Update activation progress
      */
-    private void updateActivationProgress(int attempt, int maxAttempts) {
-        String progress = "Dang kiem tra... (" + attempt + "/" + maxAttempts + ")";
+    private void updateActivationProgress(int elapsedSeconds, int timeoutSeconds) {
+        int remaining = Math.max(0, timeoutSeconds - elapsedSeconds);
+        String progress = "Dang kiem tra... (" + elapsedSeconds + "s/" + timeoutSeconds + "s, con "
+            + remaining + "s)";
         
         if (activationProgressText != null) {
             activationProgressText.setText(progress);
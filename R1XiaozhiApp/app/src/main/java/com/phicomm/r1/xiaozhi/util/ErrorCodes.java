@@ -135,14 +135,18 @@ public class ErrorCodes {
      */
     public static int getRetryDelay(int code, int retryCount) {
         // Exponential backoff: 1s, 2s, 4s, 8s, ...
-        int baseDelay = 1000;
-        
-        if (code == RATE_LIMIT_EXCEEDED) {
-            // Longer delay for rate limiting
-            baseDelay = 5000;
+        return getBaseRetryDelay(code) * (int) Math.pow(2, Math.min(retryCount, 4));
+    }
+    
+    /**
+     * Get base retry delay in milliseconds (before backoff/jitter)
+     */
+    public static int getBaseRetryDelay(int code) {
+        if (code == RATE_LIMIT_EXCEEDED || code == SERVER_UNAVAILABLE) {
+            // Longer delay for rate limiting / overloaded server
+            return 5000;
         }
-        
-        return baseDelay * (int) Math.pow(2, Math.min(retryCount, 4));
+        return 1000;
     }
     
     /**
@@ -0,0 +1,82 @@
+package com.phicomm.r1.xiaozhi.benchmarks;
+
+import com.phicomm.r1.xiaozhi.audio.PcmCodec;
+import com.phicomm.r1.xiaozhi.protocol.MessageEncoder;
+import com.phicomm.r1.xiaozhi.protocol.XiaozhiProtocol;
+import com.phicomm.r1.xiaozhi.util.Base64Codec;
+
+import org.json.JSONException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Đóng gói audio để gửi lên server
+ *
+ * base64Json: XiaozhiProtocol.recognizeAudio (Recognize + base64 trong JSON, trả String)
+ * base64Encoder: sendAudioToServer() hiện tại (MessageEncoder, base64 ghi thẳng vào buffer)
+ * binaryFrame: PCM thô trong một WebSocket binary frame
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class AudioFramingBenchmark {
+
+    /** Thời lượng audio mỗi message (ms) */
+    @Param({"20", "1000", "5000"})
+    public int durationMs;
+
+    private short[] samples;
+    private byte[] pcm;
+    private ByteBuffer binary;
+    private final MessageEncoder encoder = new MessageEncoder();
+
+    @Setup
+    public void setup() {
+        int count = Fixtures.SAMPLE_RATE * durationMs / 1000;
+        samples = Fixtures.speechLike(count);
+        pcm = new byte[count * 2];
+        binary = ByteBuffer.allocate(count * 2);
+    }
+
+    @Benchmark
+    public String base64Json() throws JSONException {
+        PcmCodec.toBytes(samples, 0, samples.length, pcm, 0);
+        return XiaozhiProtocol.recognizeAudio(pcm, Fixtures.SAMPLE_RATE, 1);
+    }
+
+    @Benchmark
+    public ByteBuffer base64Encoder() {
+        PcmCodec.toBytes(samples, 0, samples.length, pcm, 0);
+        return encoder.recognizeAudio(pcm, 0, pcm.length, Fixtures.SAMPLE_RATE, 1);
+    }
+
+    @Benchmark
+    public String base64Only() {
+        PcmCodec.toBytes(samples, 0, samples.length, pcm, 0);
+        return Base64Codec.encode(pcm);
+    }
+
+    @Benchmark
+    public ByteBuffer binaryFrame() {
+        PcmCodec.toBytes(samples, 0, samples.length, pcm, 0);
+        binary.clear();
+        binary.put(pcm);
+        binary.flip();
+        return binary;
+    }
+}
@@ -0,0 +1,103 @@
+package com.phicomm.r1.xiaozhi.benchmarks;
+
+import com.phicomm.r1.xiaozhi.core.DeviceState;
+import com.phicomm.r1.xiaozhi.core.EventBus;
+import com.phicomm.r1.xiaozhi.events.StateChangedEvent;
+import com.phicomm.r1.xiaozhi.platform.Dispatcher;
+import com.phicomm.r1.xiaozhi.platform.Logger;
+import com.phicomm.r1.xiaozhi.platform.Platform;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * EventBus.post() fan-out tới N listener
+ *
+ * Dispatcher chạy task ngay trên thread gọi -> đo chi phí của bus
+ * (lookup, log, tạo Runnable), không đo context switch sang main thread.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class EventBusBenchmark {
+
+    @Param({"1", "4", "16"})
+    public int listeners;
+
+    private EventBus bus;
+    private final StateChangedEvent event = new StateChangedEvent(DeviceState.IDLE, DeviceState.LISTENING);
+
+    @Setup
+    public void setup(final Blackhole blackhole) {
+        // Log bị tắt như release build
+        Platform.install(new SilentLogger(), null, null);
+        bus = new EventBus(new Dispatcher() {
+            @Override
+            public void post(Runnable task) {
+                task.run();
+            }
+
+            @Override
+            public void postDelayed(Runnable task, long delayMillis) {
+                task.run();
+            }
+
+            @Override
+            public boolean isCurrentThread() {
+                return true;
+            }
+        });
+        for (int i = 0; i < listeners; i++) {
+            bus.register(StateChangedEvent.class, new EventBus.EventListener<StateChangedEvent>() {
+                @Override
+                public void onEvent(StateChangedEvent e) {
+                    blackhole.consume(e);
+                }
+            });
+        }
+    }
+
+    @Benchmark
+    public void post() {
+        bus.post(event);
+    }
+
+    @Benchmark
+    public void postSync() {
+        bus.postSync(event);
+    }
+
+    static final class SilentLogger implements Logger {
+
+        @Override
+        public void d(String tag, String message) {
+        }
+
+        @Override
+        public void i(String tag, String message) {
+        }
+
+        @Override
+        public void w(String tag, String message, Throwable error) {
+        }
+
+        @Override
+        public void e(String tag, String message, Throwable error) {
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package com.phicomm.r1.xiaozhi.benchmarks;
+
+import java.util.Random;
+
+/**
+ * Input cố định cho benchmark (seed cố định -> kết quả so sánh được giữa các lần chạy)
+ */
+final class Fixtures {
+
+    static final int SAMPLE_RATE = 16000;
+    static final int FRAME_SAMPLES = SAMPLE_RATE / 50;
+
+    private Fixtures() {
+    }
+
+    static short[] speechLikeFrame() {
+        return speechLike(FRAME_SAMPLES);
+    }
+
+    /**
+     * Tổng vài formant + noise, biên độ ~ giọng nói ở 1m
+     */
+    static short[] speechLike(int count) {
+        Random random = new Random(42);
+        short[] samples = new short[count];
+        for (int i = 0; i < count; i++) {
+            double t = (double) i / SAMPLE_RATE;
+            double v = 3000 * Math.sin(2 * Math.PI * 180 * t)
+                + 1500 * Math.sin(2 * Math.PI * 720 * t)
+                + 800 * Math.sin(2 * Math.PI * 2400 * t)
+                + 300 * random.nextGaussian();
+            samples[i] = (short) Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, v));
+        }
+        return samples;
+    }
+}
@@ -0,0 +1,74 @@
+package com.phicomm.r1.xiaozhi.benchmarks;
+
+import com.phicomm.r1.xiaozhi.audio.AudioConditioner;
+import com.phicomm.r1.xiaozhi.audio.AudioFrame;
+import com.phicomm.r1.xiaozhi.audio.DspKernels;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Feature kernel cho một frame 20ms @ 16kHz (320 sample)
+ *
+ * legacyEnergy: calculateEnergy() cũ (double MAC + Math.sqrt)
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class FrameKernelBenchmark {
+
+    private final AudioFrame frame = new AudioFrame(Fixtures.SAMPLE_RATE, Fixtures.FRAME_SAMPLES);
+    private final AudioConditioner conditioner =
+        new AudioConditioner(Fixtures.SAMPLE_RATE, Fixtures.FRAME_SAMPLES);
+    private short[] speech;
+
+    @Setup
+    public void setup() {
+        speech = Fixtures.speechLikeFrame();
+        System.arraycopy(speech, 0, frame.samples, 0, speech.length);
+        frame.length = speech.length;
+    }
+
+    @Benchmark
+    public double legacyEnergy() {
+        short[] buffer = frame.samples;
+        int length = frame.length;
+        double sum = 0;
+        for (int i = 0; i < length; i++) {
+            sum += buffer[i] * buffer[i];
+        }
+        return Math.sqrt(sum / length);
+    }
+
+    @Benchmark
+    public int analyze() {
+        DspKernels.analyze(frame);
+        return frame.rms + frame.logEnergyQ8;
+    }
+
+    @Benchmark
+    public int rms() {
+        return DspKernels.rms(frame.samples, 0, frame.length);
+    }
+
+    @Benchmark
+    public short conditioner() {
+        // Conditioner sửa in-place -> nạp lại frame gốc mỗi lần
+        System.arraycopy(speech, 0, frame.samples, 0, speech.length);
+        conditioner.process(frame);
+        return frame.samples[0];
+    }
+}
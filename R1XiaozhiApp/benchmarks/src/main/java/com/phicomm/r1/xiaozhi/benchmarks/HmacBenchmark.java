@@ -0,0 +1,50 @@
+package com.phicomm.r1.xiaozhi.benchmarks;
+
+import com.phicomm.r1.xiaozhi.util.CryptoUtils;
+import com.phicomm.r1.xiaozhi.util.CryptoUtils.HmacSigner;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * HMAC-SHA256 của activation challenge (DeviceFingerprint.generateHmac)
+ *
+ * legacyPerCall: Mac.getInstance + init cho mỗi challenge (cách làm trước HmacSigner)
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class HmacBenchmark {
+
+    private static final String KEY = "3f2a9c1be47d5a60c8e1f4b27d9a0c35e6b81f4d2a7c9e0b5d3f1a8c6e4b2d09";
+    private static final String CHALLENGE = "7c1e4a9f-2b3d-4e5f-8a6b-0c1d2e3f4a5b";
+
+    private final HmacSigner signer = new HmacSigner(KEY);
+
+    @Benchmark
+    public String signerReuse() {
+        return signer.signHex(CHALLENGE);
+    }
+
+    @Benchmark
+    public String legacyPerCall() throws Exception {
+        Mac mac = Mac.getInstance(CryptoUtils.HMAC_SHA256);
+        mac.init(new SecretKeySpec(KEY.getBytes(CryptoUtils.UTF_8), CryptoUtils.HMAC_SHA256));
+        return CryptoUtils.toHex(mac.doFinal(CHALLENGE.getBytes(CryptoUtils.UTF_8)));
+    }
+}
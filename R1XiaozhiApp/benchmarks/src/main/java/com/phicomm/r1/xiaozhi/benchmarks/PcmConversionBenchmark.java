@@ -0,0 +1,66 @@
+package com.phicomm.r1.xiaozhi.benchmarks;
+
+import com.phicomm.r1.xiaozhi.audio.PcmCodec;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * PCM short[] -> byte[] little-endian cho một frame 20ms
+ *
+ * legacyAllocate: vòng lặp cũ trong recordCommandAudio() (allocate mỗi frame)
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class PcmConversionBenchmark {
+
+    private short[] samples;
+    private final byte[] bytes = new byte[Fixtures.FRAME_SAMPLES * 2];
+    private final ByteBuffer buffer =
+        ByteBuffer.allocateDirect(Fixtures.FRAME_SAMPLES * 2).order(ByteOrder.LITTLE_ENDIAN);
+
+    @Setup
+    public void setup() {
+        samples = Fixtures.speechLikeFrame();
+    }
+
+    @Benchmark
+    public byte[] legacyAllocate() {
+        int length = samples.length;
+        byte[] audioBytes = new byte[length * 2];
+        for (int i = 0; i < length; i++) {
+            audioBytes[i * 2] = (byte) (samples[i] & 0xFF);
+            audioBytes[i * 2 + 1] = (byte) ((samples[i] >> 8) & 0xFF);
+        }
+        return audioBytes;
+    }
+
+    @Benchmark
+    public byte[] codecReuse() {
+        PcmCodec.toBytes(samples, 0, samples.length, bytes, 0);
+        return bytes;
+    }
+
+    @Benchmark
+    public ByteBuffer directShortBuffer() {
+        buffer.clear();
+        buffer.asShortBuffer().put(samples, 0, samples.length);
+        return buffer;
+    }
+}
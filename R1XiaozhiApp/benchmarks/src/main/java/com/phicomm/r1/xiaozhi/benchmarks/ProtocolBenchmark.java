@@ -0,0 +1,92 @@
+package com.phicomm.r1.xiaozhi.benchmarks;
+
+import com.phicomm.r1.xiaozhi.core.ListeningMode;
+import com.phicomm.r1.xiaozhi.protocol.MessageEncoder;
+import com.phicomm.r1.xiaozhi.protocol.XiaozhiProtocol;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Build / parse message JSON (XiaozhiConnectionService send* và handleMessage)
+ *
+ * encode*: MessageEncoder của connection (đường gửi thật của app)
+ * build*: XiaozhiProtocol trả String (encoder dùng chung + decode UTF-8)
+ * jsonTree*: cách cũ - JSONObject header/payload + UUID.randomUUID() + toString()
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ProtocolBenchmark {
+
+    private static final String TTS_START =
+        "{\"type\":\"tts\",\"state\":\"start\",\"session_id\":\"b3f1c2d4\"}";
+    private static final String TTS_SENTENCE =
+        "{\"type\":\"tts\",\"state\":\"sentence_start\",\"text\":\"Xin chào, tôi có thể giúp gì cho bạn?\","
+            + "\"session_id\":\"b3f1c2d4\"}";
+
+    private final MessageEncoder encoder = new MessageEncoder();
+
+    @Benchmark
+    public ByteBuffer encodeHello() {
+        return encoder.hello("aa:bb:cc:dd:ee:ff", "SN-1A2B3C4D-aabbccddeeff", "5.1.1");
+    }
+
+    @Benchmark
+    public ByteBuffer encodeStartListening() {
+        return encoder.startListening(ListeningMode.AUTO_STOP.getValue());
+    }
+
+    @Benchmark
+    public String jsonTreeStartListening() throws JSONException {
+        JSONObject payload = new JSONObject();
+        payload.put("mode", ListeningMode.AUTO_STOP.getValue());
+        JSONObject header = new JSONObject();
+        header.put("name", XiaozhiProtocol.START_LISTENING);
+        header.put("namespace", XiaozhiProtocol.NS_RECOGNIZER);
+        header.put("message_id", UUID.randomUUID().toString());
+        JSONObject message = new JSONObject();
+        message.put("header", header);
+        message.put("payload", payload);
+        return message.toString();
+    }
+
+    @Benchmark
+    public String buildHello() throws JSONException {
+        return XiaozhiProtocol.hello("aa:bb:cc:dd:ee:ff", "SN-1A2B3C4D-aabbccddeeff", "5.1.1");
+    }
+
+    @Benchmark
+    public String buildStartListening() throws JSONException {
+        return XiaozhiProtocol.startListening(ListeningMode.AUTO_STOP.getValue());
+    }
+
+    @Benchmark
+    public String parseTtsState() throws JSONException {
+        JSONObject json = XiaozhiProtocol.parse(TTS_START);
+        XiaozhiProtocol.getRetryAfterMs(json);
+        return XiaozhiProtocol.getType(json) + XiaozhiProtocol.getTtsState(json);
+    }
+
+    @Benchmark
+    public String parseTtsSentence() throws JSONException {
+        JSONObject json = XiaozhiProtocol.parse(TTS_SENTENCE);
+        return json.optString("text");
+    }
+}
@@ -0,0 +1,107 @@
+package com.phicomm.r1.xiaozhi.benchmarks.replay;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Danh sách file WAV + kỳ vọng cho replay
+ *
+ * Hai cách mô tả corpus:
+ * - corpus.csv trong thư mục: file,expect_wake,speech_end_ms (dòng '#' bỏ qua,
+ *   speech_end_ms để trống nếu không biết - khi đó không đo endpoint latency)
+ * - Không có manifest: positive/*.wav phải wake, negative/*.wav không được wake
+ */
+final class ReplayCorpus {
+
+    static final String MANIFEST = "corpus.csv";
+
+    static final class Entry {
+        final File file;
+        final boolean expectWake;
+        /** Thời điểm hết tiếng nói trong file (ms), -1 nếu không biết */
+        final long speechEndMs;
+
+        Entry(File file, boolean expectWake, long speechEndMs) {
+            this.file = file;
+            this.expectWake = expectWake;
+            this.speechEndMs = speechEndMs;
+        }
+    }
+
+    private ReplayCorpus() {
+    }
+
+    static List<Entry> load(File dir) throws IOException {
+        if (!dir.isDirectory()) {
+            throw new IOException(dir + ": not a directory");
+        }
+        File manifest = new File(dir, MANIFEST);
+        List<Entry> entries = manifest.isFile() ? readManifest(dir, manifest) : scan(dir);
+        if (entries.isEmpty()) {
+            throw new IOException(dir + ": no WAV files (expected " + MANIFEST
+                + " or positive/ and negative/)");
+        }
+        return entries;
+    }
+
+    private static List<Entry> readManifest(File dir, File manifest) throws IOException {
+        List<Entry> entries = new ArrayList<Entry>();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(manifest), "UTF-8"));
+        try {
+            String line;
+            int lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#") || line.startsWith("file,")) {
+                    continue;
+                }
+                String[] fields = line.split(",", -1);
+                if (fields.length < 2) {
+                    throw new IOException(manifest + ":" + lineNumber + ": expected file,expect_wake[,speech_end_ms]");
+                }
+                File file = new File(dir, fields[0].trim());
+                boolean expectWake = parseBoolean(fields[1].trim());
+                long speechEndMs = fields.length > 2 && !fields[2].trim().isEmpty()
+                    ? Long.parseLong(fields[2].trim()) : -1;
+                entries.add(new Entry(file, expectWake, speechEndMs));
+            }
+        } finally {
+            reader.close();
+        }
+        return entries;
+    }
+
+    private static List<Entry> scan(File dir) {
+        List<Entry> entries = new ArrayList<Entry>();
+        addAll(entries, new File(dir, "positive"), true);
+        addAll(entries, new File(dir, "negative"), false);
+        return entries;
+    }
+
+    private static void addAll(List<Entry> entries, File dir, boolean expectWake) {
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return;
+        }
+        // Thứ tự cố định -> báo cáo lặp lại được giữa các lần chạy
+        List<File> sorted = new ArrayList<File>(Arrays.asList(files));
+        Collections.sort(sorted);
+        for (File file : sorted) {
+            if (file.isFile() && file.getName().toLowerCase().endsWith(".wav")) {
+                entries.add(new Entry(file, expectWake, -1));
+            }
+        }
+    }
+
+    private static boolean parseBoolean(String value) {
+        return "1".equals(value) || "true".equalsIgnoreCase(value) || "yes".equalsIgnoreCase(value);
+    }
+}
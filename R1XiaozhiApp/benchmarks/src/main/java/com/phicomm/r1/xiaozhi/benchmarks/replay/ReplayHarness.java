@@ -0,0 +1,527 @@
+package com.phicomm.r1.xiaozhi.benchmarks.replay;
+
+import com.phicomm.r1.xiaozhi.audio.AudioConditioner;
+import com.phicomm.r1.xiaozhi.audio.AudioFrame;
+import com.phicomm.r1.xiaozhi.audio.AudioPipeline;
+import com.phicomm.r1.xiaozhi.audio.AudioSource;
+import com.phicomm.r1.xiaozhi.audio.AudioStage;
+import com.phicomm.r1.xiaozhi.audio.Beamformer;
+import com.phicomm.r1.xiaozhi.audio.DspKernels;
+import com.phicomm.r1.xiaozhi.audio.VoiceCommandDetector;
+import com.phicomm.r1.xiaozhi.audio.WavFileSource;
+import com.phicomm.r1.xiaozhi.platform.Logger;
+import com.phicomm.r1.xiaozhi.platform.Platform;
+import com.phicomm.r1.xiaozhi.util.PooledBuffer;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Replay corpus WAV qua đúng chain xử lý mic của VoiceRecognitionService
+ * (beamformer nếu stereo -> conditioner -> features -> pre_roll -> wake word -> uplink/endpointing),
+ * nhanh nhất có thể, với clock ảo theo vị trí trong file -> kết quả xác định
+ *
+ * Báo cáo: false accept (negative có wake), false reject (positive không wake),
+ * endpoint latency (hết tiếng nói -> command kết thúc, theo thời gian audio),
+ * CPU ms / giây audio và thời gian từng stage
+ *
+ *   ReplayHarness <corpus-dir> [--energy-threshold=500] [--wake-factor=3] [--silence-frames=20]
+ *                 [--tail-ms=1000] [--mic-spacing-mm=60] [--sweep=energy-threshold:300,500,700]
+ *                 [--out=replay.json]
+ *
+ * Không replay: AEC và barge-in (cần reference playback), bỏ frame KWS khi backlog
+ * (replay không bao giờ bị chậm hơn capture)
+ */
+public final class ReplayHarness {
+
+    private static final int FRAMES_PER_SECOND = 50; // frame 20ms như service
+
+    private final VoiceCommandDetector.Params params;
+    private final int tailMs;
+    private final float micSpacingMeters;
+    private final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+    ReplayHarness(VoiceCommandDetector.Params params, int tailMs, float micSpacingMeters) {
+        this.params = params;
+        this.tailMs = tailMs;
+        this.micSpacingMeters = micSpacingMeters;
+    }
+
+    /**
+     * Kết quả một file
+     */
+    static final class FileResult {
+        ReplayCorpus.Entry entry;
+        long audioMs;
+        long cpuNanos;
+        long wallNanos;
+        int wakes;
+        long firstWakeMs = -1;
+        final List<Long> commandEndMs = new ArrayList<Long>();
+        int timeouts;
+        JSONObject pipelineStats;
+
+        /**
+         * Command đầu tiên kết thúc sau khi hết tiếng nói, -1 nếu không đo được
+         */
+        long endpointLatencyMs() {
+            if (entry.speechEndMs < 0) {
+                return -1;
+            }
+            for (long endMs : commandEndMs) {
+                if (endMs >= entry.speechEndMs) {
+                    return endMs - entry.speechEndMs;
+                }
+            }
+            return -1;
+        }
+
+        JSONObject toJson() throws JSONException {
+            JSONObject json = new JSONObject();
+            json.put("file", entry.file.getName());
+            json.put("expect_wake", entry.expectWake);
+            json.put("audio_ms", audioMs);
+            json.put("wakes", wakes);
+            json.put("first_wake_ms", firstWakeMs);
+            json.put("commands", new JSONArray(commandEndMs));
+            json.put("timeouts", timeouts);
+            if (entry.speechEndMs >= 0) {
+                json.put("speech_end_ms", entry.speechEndMs);
+                json.put("endpoint_latency_ms", endpointLatencyMs());
+            }
+            json.put("cpu_ms", round(cpuNanos / 1e6));
+            return json;
+        }
+    }
+
+    FileResult replay(ReplayCorpus.Entry entry) throws IOException {
+        final FileResult result = new FileResult();
+        result.entry = entry;
+
+        WavFileSource source = new WavFileSource(entry.file, tailMs);
+        try {
+            int sampleRate = source.getSampleRate();
+            int channels = source.getChannels();
+            int frameSamples = sampleRate / FRAMES_PER_SECOND;
+            Beamformer beamformer = channels > 1
+                ? new Beamformer(channels, sampleRate, frameSamples, micSpacingMeters) : null;
+
+            final VoiceCommandDetector detector = new VoiceCommandDetector(sampleRate, frameSamples, params,
+                new VoiceCommandDetector.Listener() {
+                    @Override
+                    public void onVoiceActivity(AudioFrame frame) {
+                    }
+
+                    @Override
+                    public void onCommandCompleted(PooledBuffer pcm, AudioFrame frame, boolean timedOut) {
+                        result.commandEndMs.add(frame.captureNanos / 1000000L);
+                        if (timedOut) {
+                            result.timeouts++;
+                        }
+                    }
+                });
+
+            AudioPipeline pipeline = new AudioPipeline();
+            pipeline.addStage(new AudioConditioner(sampleRate, frameSamples));
+            pipeline.addStage(new AudioStage() {
+                @Override
+                public String getName() {
+                    return "features";
+                }
+
+                @Override
+                public void process(AudioFrame frame) {
+                    DspKernels.analyze(frame);
+                }
+            });
+            pipeline.addStage(detector.preRollStage());
+            pipeline.addStage(new AudioStage() {
+                @Override
+                public String getName() {
+                    return "detect";
+                }
+
+                @Override
+                public void process(AudioFrame frame) {
+                    if (detector.detectWakeWord(frame)) {
+                        result.wakes++;
+                        if (result.firstWakeMs < 0) {
+                            result.firstWakeMs = frame.captureNanos / 1000000L;
+                        }
+                        detector.startCommand(false, frame.sequence);
+                    }
+                }
+            });
+            pipeline.addSink(detector.uplinkSink());
+
+            AudioFrame frame = new AudioFrame(sampleRate, frameSamples);
+            short[] interleaved = new short[frameSamples * channels];
+
+            long cpuStart = cpuNanos();
+            long wallStart = System.nanoTime();
+            source.start();
+            while (true) {
+                int read = readFrame(source, interleaved);
+                if (read <= 0) {
+                    break;
+                }
+                int samples = read / channels;
+                if (beamformer != null) {
+                    beamformer.process(interleaved, samples, frame.samples);
+                } else {
+                    System.arraycopy(interleaved, 0, frame.samples, 0, samples);
+                }
+                frame.length = samples;
+                frame.captureNanos = source.getCaptureNanos();
+                pipeline.process(frame);
+            }
+            result.cpuNanos = cpuNanos() - cpuStart;
+            result.wallNanos = System.nanoTime() - wallStart;
+            result.audioMs = source.getPositionMs();
+            try {
+                result.pipelineStats = pipeline.getStats();
+            } catch (JSONException e) {
+                result.pipelineStats = new JSONObject();
+            }
+        } finally {
+            source.release();
+        }
+        return result;
+    }
+
+    /**
+     * Đọc đủ một frame như AudioRecord.read() (block tới khi đầy); frame cuối có thể thiếu
+     */
+    private static int readFrame(AudioSource source, short[] buffer) {
+        int count = 0;
+        while (count < buffer.length) {
+            int n = source.read(buffer, count, buffer.length - count);
+            if (n <= 0) {
+                break;
+            }
+            count += n;
+        }
+        return count;
+    }
+
+    private long cpuNanos() {
+        // JVM không hỗ trợ thread CPU time -> dùng wall time (replay chạy một thread, không sleep)
+        return threads.isCurrentThreadCpuTimeSupported() ? threads.getCurrentThreadCpuTime() : System.nanoTime();
+    }
+
+    /**
+     * Replay toàn bộ corpus và tổng hợp
+     */
+    JSONObject run(List<ReplayCorpus.Entry> corpus) throws IOException, JSONException {
+        int positives = 0;
+        int falseRejects = 0;
+        int negatives = 0;
+        int falseAccepts = 0;
+        long negativeMs = 0;
+        long audioMs = 0;
+        long cpuNanos = 0;
+        long wallNanos = 0;
+        int timeouts = 0;
+        int endpointMissed = 0;
+        List<Long> latencies = new ArrayList<Long>();
+        JSONArray details = new JSONArray();
+        JSONObject stages = new JSONObject();
+
+        for (ReplayCorpus.Entry entry : corpus) {
+            FileResult result = replay(entry);
+            audioMs += result.audioMs;
+            cpuNanos += result.cpuNanos;
+            wallNanos += result.wallNanos;
+            timeouts += result.timeouts;
+            if (entry.expectWake) {
+                positives++;
+                if (result.wakes == 0) {
+                    falseRejects++;
+                } else if (entry.speechEndMs >= 0) {
+                    long latency = result.endpointLatencyMs();
+                    if (latency >= 0) {
+                        latencies.add(latency);
+                    } else {
+                        endpointMissed++;
+                    }
+                }
+            } else {
+                negatives++;
+                negativeMs += result.audioMs;
+                // Mỗi lần wake trên file negative là một false accept
+                falseAccepts += result.wakes;
+            }
+            mergeStages(stages, result.pipelineStats);
+            details.put(result.toJson());
+        }
+
+        JSONObject report = new JSONObject();
+        report.put("params", paramsJson());
+        report.put("files", corpus.size());
+        report.put("audio_s", round(audioMs / 1000.0));
+
+        JSONObject wake = new JSONObject();
+        wake.put("positives", positives);
+        wake.put("false_rejects", falseRejects);
+        wake.put("fr_rate", positives > 0 ? round((double) falseRejects / positives) : 0);
+        wake.put("negatives", negatives);
+        wake.put("false_accepts", falseAccepts);
+        wake.put("fa_per_file", negatives > 0 ? round((double) falseAccepts / negatives) : 0);
+        wake.put("fa_per_hour", negativeMs > 0 ? round(falseAccepts * 3600000.0 / negativeMs) : 0);
+        report.put("wake", wake);
+
+        JSONObject endpoint = new JSONObject();
+        endpoint.put("count", latencies.size());
+        endpoint.put("missed", endpointMissed);
+        endpoint.put("timeouts", timeouts);
+        if (!latencies.isEmpty()) {
+            Collections.sort(latencies);
+            long total = 0;
+            for (long latency : latencies) {
+                total += latency;
+            }
+            endpoint.put("avg_ms", round((double) total / latencies.size()));
+            endpoint.put("p50_ms", percentile(latencies, 50));
+            endpoint.put("p90_ms", percentile(latencies, 90));
+            endpoint.put("max_ms", latencies.get(latencies.size() - 1));
+        }
+        report.put("endpoint", endpoint);
+
+        JSONObject cpu = new JSONObject();
+        cpu.put("total_ms", round(cpuNanos / 1e6));
+        cpu.put("ms_per_audio_s", audioMs > 0 ? round(cpuNanos / 1e3 / audioMs) : 0);
+        // > 1: nhanh hơn thời gian thực bao nhiêu lần
+        cpu.put("realtime_factor", wallNanos > 0 ? round(audioMs * 1e6 / wallNanos) : 0);
+        report.put("cpu", cpu);
+
+        report.put("stages", finishStages(stages));
+        report.put("details", details);
+        return report;
+    }
+
+    private JSONObject paramsJson() throws JSONException {
+        JSONObject json = new JSONObject();
+        json.put("energy_threshold", params.energyThreshold);
+        json.put("wake_factor", params.wakeFactor);
+        json.put("silence_frames", params.silenceFrames);
+        json.put("max_command_ms", params.maxCommandMs);
+        json.put("pre_roll_ms", params.preRollMs);
+        json.put("tail_ms", tailMs);
+        return json;
+    }
+
+    /**
+     * Cộng dồn AudioPipeline.getStats() của từng file: name -> [frames, tổng us, max us]
+     */
+    private static void mergeStages(JSONObject totals, JSONObject pipelineStats) throws JSONException {
+        String[] groups = {"stages", "sinks"};
+        for (String group : groups) {
+            JSONObject stats = pipelineStats.optJSONObject(group);
+            if (stats == null) {
+                continue;
+            }
+            Iterator<String> names = stats.keys();
+            while (names.hasNext()) {
+                String name = names.next();
+                JSONObject stage = stats.getJSONObject(name);
+                long frames = stage.getLong("frames");
+                JSONArray total = totals.optJSONArray(name);
+                if (total == null) {
+                    total = new JSONArray().put(0L).put(0L).put(0L);
+                    totals.put(name, total);
+                }
+                total.put(0, total.getLong(0) + frames);
+                total.put(1, total.getLong(1) + frames * stage.getLong("avg_us"));
+                total.put(2, Math.max(total.getLong(2), stage.getLong("max_us")));
+            }
+        }
+    }
+
+    private static JSONObject finishStages(JSONObject totals) throws JSONException {
+        JSONObject json = new JSONObject();
+        Iterator<String> names = totals.keys();
+        while (names.hasNext()) {
+            String name = names.next();
+            JSONArray total = totals.getJSONArray(name);
+            long frames = total.getLong(0);
+            JSONObject stage = new JSONObject();
+            stage.put("frames", frames);
+            stage.put("avg_us", frames > 0 ? total.getLong(1) / frames : 0);
+            stage.put("max_us", total.getLong(2));
+            json.put(name, stage);
+        }
+        return json;
+    }
+
+    private static long percentile(List<Long> sorted, int percent) {
+        int index = (int) Math.ceil(percent / 100.0 * sorted.size()) - 1;
+        return sorted.get(Math.max(0, Math.min(sorted.size() - 1, index)));
+    }
+
+    private static double round(double value) {
+        return Math.round(value * 1000) / 1000.0;
+    }
+
+    private static String summary(JSONObject report) throws JSONException {
+        JSONObject params = report.getJSONObject("params");
+        JSONObject wake = report.getJSONObject("wake");
+        JSONObject endpoint = report.getJSONObject("endpoint");
+        JSONObject cpu = report.getJSONObject("cpu");
+        return String.format(Locale.US,
+            "threshold=%d factor=%d silence=%d | FR %d/%d  FA %d (%.2f/h) | endpoint p50=%sms p90=%sms"
+                + " | %.3f cpu-ms/audio-s, %.0fx realtime",
+            params.getInt("energy_threshold"), params.getInt("wake_factor"), params.getInt("silence_frames"),
+            wake.getInt("false_rejects"), wake.getInt("positives"),
+            wake.getInt("false_accepts"), wake.getDouble("fa_per_hour"),
+            endpoint.opt("p50_ms"), endpoint.opt("p90_ms"),
+            cpu.getDouble("ms_per_audio_s"), cpu.getDouble("realtime_factor"));
+    }
+
+    private static final String USAGE =
+        "Usage: ReplayHarness <corpus-dir> [--energy-threshold=N] [--wake-factor=N] [--silence-frames=N]\n"
+            + "                     [--max-command-ms=N] [--tail-ms=N] [--mic-spacing-mm=N]\n"
+            + "                     [--sweep=<param>:v1,v2,...] [--out=report.json]\n"
+            + "  corpus-dir: corpus.csv (file,expect_wake,speech_end_ms) or positive/ + negative/ WAVs";
+
+    public static void main(String[] args) throws Exception {
+        // Pipeline log "Sink added" mỗi file -> chỉ giữ warning / error
+        Platform.install(new QuietLogger(), null, null);
+
+        File corpusDir = null;
+        String out = null;
+        String sweep = null;
+        int tailMs = 1000;
+        int micSpacingMm = 60;
+        VoiceCommandDetector.Params params = new VoiceCommandDetector.Params();
+        for (String arg : args) {
+            if (arg.startsWith("--out=")) {
+                out = arg.substring(6);
+            } else if (arg.startsWith("--sweep=")) {
+                sweep = arg.substring(8);
+            } else if (arg.startsWith("--tail-ms=")) {
+                tailMs = Integer.parseInt(arg.substring(10));
+            } else if (arg.startsWith("--mic-spacing-mm=")) {
+                micSpacingMm = Integer.parseInt(arg.substring(17));
+            } else if (arg.startsWith("--") && arg.contains("=")) {
+                int eq = arg.indexOf('=');
+                if (!setParam(params, arg.substring(2, eq), Integer.parseInt(arg.substring(eq + 1)))) {
+                    throw new IllegalArgumentException("Unknown option " + arg + "\n" + USAGE);
+                }
+            } else if (!arg.startsWith("--") && corpusDir == null) {
+                corpusDir = new File(arg);
+            } else {
+                throw new IllegalArgumentException("Unknown option " + arg + "\n" + USAGE);
+            }
+        }
+        if (corpusDir == null) {
+            System.err.println(USAGE);
+            System.exit(2);
+        }
+
+        List<ReplayCorpus.Entry> corpus = ReplayCorpus.load(corpusDir);
+        System.out.println("Corpus " + corpusDir + ": " + corpus.size() + " files");
+
+        JSONObject result;
+        if (sweep == null) {
+            result = new ReplayHarness(params, tailMs, micSpacingMm / 1000f).run(corpus);
+            System.out.println(summary(result));
+        } else {
+            int colon = sweep.indexOf(':');
+            if (colon < 0) {
+                throw new IllegalArgumentException("--sweep=<param>:v1,v2,...");
+            }
+            String name = sweep.substring(0, colon);
+            JSONArray runs = new JSONArray();
+            for (String value : sweep.substring(colon + 1).split(",")) {
+                VoiceCommandDetector.Params swept = copy(params);
+                if (!setParam(swept, name, Integer.parseInt(value.trim()))) {
+                    throw new IllegalArgumentException("Unknown sweep parameter " + name);
+                }
+                JSONObject report = new ReplayHarness(swept, tailMs, micSpacingMm / 1000f).run(corpus);
+                System.out.println(summary(report));
+                runs.put(report);
+            }
+            result = new JSONObject();
+            result.put("sweep", name);
+            result.put("runs", runs);
+        }
+
+        if (out != null) {
+            File file = new File(out);
+            File parent = file.getAbsoluteFile().getParentFile();
+            if (parent != null) {
+                parent.mkdirs();
+            }
+            OutputStream stream = new FileOutputStream(file);
+            try {
+                stream.write(result.toString(2).getBytes("UTF-8"));
+            } finally {
+                stream.close();
+            }
+            System.out.println("Report: " + file);
+        }
+    }
+
+    private static boolean setParam(VoiceCommandDetector.Params params, String name, int value) {
+        if ("energy-threshold".equals(name)) {
+            params.energyThreshold = value;
+        } else if ("wake-factor".equals(name)) {
+            params.wakeFactor = value;
+        } else if ("silence-frames".equals(name)) {
+            params.silenceFrames = value;
+        } else if ("max-command-ms".equals(name)) {
+            params.maxCommandMs = value;
+        } else {
+            return false;
+        }
+        return true;
+    }
+
+    private static VoiceCommandDetector.Params copy(VoiceCommandDetector.Params params) {
+        VoiceCommandDetector.Params copy = new VoiceCommandDetector.Params();
+        copy.energyThreshold = params.energyThreshold;
+        copy.wakeFactor = params.wakeFactor;
+        copy.silenceFrames = params.silenceFrames;
+        copy.maxCommandMs = params.maxCommandMs;
+        copy.preRollMs = params.preRollMs;
+        return copy;
+    }
+
+    /**
+     * Bỏ debug/info, giữ warning/error ra stderr
+     */
+    private static final class QuietLogger implements Logger {
+        private final Logger delegate = new Platform.StderrLogger();
+
+        @Override
+        public void d(String tag, String message) {
+        }
+
+        @Override
+        public void i(String tag, String message) {
+        }
+
+        @Override
+        public void w(String tag, String message, Throwable error) {
+            delegate.w(tag, message, error);
+        }
+
+        @Override
+        public void e(String tag, String message, Throwable error) {
+            delegate.e(tag, message, error);
+        }
+    }
+}
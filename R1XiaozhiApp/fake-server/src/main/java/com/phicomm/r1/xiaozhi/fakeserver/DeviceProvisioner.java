@@ -0,0 +1,180 @@
+package com.phicomm.r1.xiaozhi.fakeserver;
+
+import com.phicomm.r1.xiaozhi.util.CryptoUtils;
+import com.phicomm.r1.xiaozhi.util.CryptoUtils.HmacSigner;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * OTA + activation (HMAC challenge) như OTAConfigManager / DeviceActivator của app
+ *
+ * Dùng chung cho Probe và load generator: mỗi Device là một R1 ảo với MAC / HMAC key riêng
+ */
+public final class DeviceProvisioner {
+
+    private static final long TIMEOUT_MS = 30000;
+
+    /**
+     * Danh tính + credentials của một thiết bị ảo
+     */
+    public static final class Device {
+        public final String deviceId;
+        public final String serialNumber;
+        final String hmacKey;
+
+        /** Từ OTA (hoặc cấu hình sẵn khi bỏ qua OTA) */
+        public String webSocketUrl;
+        public String token;
+
+        public long otaMs = -1;
+        public long activationMs = -1;
+
+        public Device(String deviceId, String serialNumber, String hmacKey) {
+            this.deviceId = deviceId;
+            this.serialNumber = serialNumber;
+            this.hmacKey = hmacKey;
+        }
+    }
+
+    private final String otaUrl;
+    private final String clientId;
+
+    public DeviceProvisioner(String otaUrl, String clientId) {
+        this.otaUrl = otaUrl.endsWith("/") ? otaUrl : otaUrl + "/";
+        this.clientId = clientId;
+    }
+
+    /**
+     * Thiết bị mới với MAC ngẫu nhiên (lấy từ random -> tái lập được theo seed)
+     */
+    public static Device newDevice(Random random, String serialPrefix) {
+        StringBuilder mac = new StringBuilder();
+        for (int i = 0; i < 6; i++) {
+            if (i > 0) {
+                mac.append(':');
+            }
+            mac.append(String.format(Locale.US, "%02x", random.nextInt(256)));
+        }
+        String deviceId = mac.toString();
+        return new Device(deviceId, serialPrefix + deviceId.replace(":", ""),
+            CryptoUtils.sha256Hex(deviceId + random.nextLong()));
+    }
+
+    /**
+     * OTA rồi activation nếu server yêu cầu; block tới khi có token (tối đa 30s)
+     */
+    public void provision(Device device) throws IOException, JSONException, InterruptedException {
+        // 1. OTA
+        long start = System.nanoTime();
+        JSONObject application = new JSONObject();
+        application.put("version", "1.0.0");
+        application.put("elf_sha256", device.hmacKey);
+        JSONObject otaBody = new JSONObject();
+        otaBody.put("application", application);
+        JSONObject ota = post(otaUrl + "?device_id=" + device.deviceId, device.deviceId, otaBody, null).body;
+        device.otaMs = elapsedMs(start);
+
+        device.token = ota.getJSONObject("websocket").optString("token");
+        device.webSocketUrl = ota.getJSONObject("websocket").getString("url");
+
+        // 2. Activation (nếu server yêu cầu)
+        JSONObject activation = ota.optJSONObject("activation");
+        if (activation == null) {
+            return;
+        }
+        start = System.nanoTime();
+        String challenge = activation.getString("challenge");
+        JSONObject payload = new JSONObject();
+        payload.put("algorithm", "hmac-sha256");
+        payload.put("serial_number", device.serialNumber);
+        payload.put("challenge", challenge);
+        payload.put("hmac", new HmacSigner(device.hmacKey).signHex(challenge));
+        JSONObject body = new JSONObject();
+        body.put("Payload", payload);
+
+        Response response;
+        do {
+            response = post(otaUrl + "activate", device.deviceId, body, "wait=25");
+            if (response.status == 202) {
+                Thread.sleep(response.body.optInt("poll_interval", 1) * 1000L);
+            }
+        } while (response.status == 202 && elapsedMs(start) < TIMEOUT_MS);
+        if (response.status != 200) {
+            throw new IOException("Activation failed: HTTP " + response.status + " " + response.body);
+        }
+        device.token = response.body.optString("access_token", device.token);
+        device.activationMs = elapsedMs(start);
+    }
+
+    private static final class Response {
+        int status;
+        JSONObject body;
+    }
+
+    private Response post(String url, String deviceId, JSONObject body, String prefer) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        try {
+            connection.setConnectTimeout((int) TIMEOUT_MS);
+            connection.setReadTimeout((int) TIMEOUT_MS);
+            connection.setRequestMethod("POST");
+            connection.setDoOutput(true);
+            connection.setRequestProperty("Content-Type", "application/json");
+            connection.setRequestProperty("Device-Id", deviceId);
+            connection.setRequestProperty("Client-Id", clientId);
+            connection.setRequestProperty("Activation-Version", "2");
+            if (prefer != null) {
+                connection.setRequestProperty("Prefer", prefer);
+            }
+            OutputStream out = connection.getOutputStream();
+            try {
+                out.write(body.toString().getBytes(CryptoUtils.UTF_8));
+            } finally {
+                out.close();
+            }
+
+            Response response = new Response();
+            response.status = connection.getResponseCode();
+            InputStream in = response.status < 400 ? connection.getInputStream() : connection.getErrorStream();
+            String text = in != null ? read(in) : "";
+            try {
+                response.body = text.isEmpty() ? new JSONObject() : new JSONObject(text);
+            } catch (JSONException e) {
+                throw new IOException("Invalid JSON (HTTP " + response.status + "): " + text);
+            }
+            if (response.status >= 400) {
+                throw new IOException("HTTP " + response.status + ": " + text);
+            }
+            return response;
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    private static String read(InputStream in) throws IOException {
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int n;
+            while ((n = in.read(buffer)) > 0) {
+                out.write(buffer, 0, n);
+            }
+            return out.toString("UTF-8");
+        } finally {
+            in.close();
+        }
+    }
+
+    private static long elapsedMs(long startNanos) {
+        return (System.nanoTime() - startNanos) / 1000000L;
+    }
+}
@@ -0,0 +1,98 @@
+package com.phicomm.r1.xiaozhi.fakeserver;
+
+import com.phicomm.r1.xiaozhi.util.CryptoUtils;
+import com.phicomm.r1.xiaozhi.util.CryptoUtils.HmacSigner;
+
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Trạng thái activation của từng thiết bị (theo Device-Id)
+ */
+final class DeviceRegistry {
+
+    static final class Device {
+        final String deviceId;
+        final String token;
+        volatile String hmacKey;
+        volatile String challenge;
+        volatile String code;
+        volatile boolean activated;
+        volatile long firstPollNanos = -1;
+
+        Device(String deviceId) {
+            this.deviceId = deviceId;
+            this.token = "fake-" + CryptoUtils.sha256Hex(deviceId).substring(0, 32);
+        }
+    }
+
+    private final Map<String, Device> devices = new ConcurrentHashMap<>();
+    private final Map<String, Device> byToken = new ConcurrentHashMap<>();
+    private final long activateAfterMs;
+    private final Random random = new Random();
+
+    /**
+     * @param activateAfterMs < 0: mọi thiết bị coi như đã activate
+     */
+    DeviceRegistry(long activateAfterMs) {
+        this.activateAfterMs = activateAfterMs;
+    }
+
+    Device get(String deviceId) {
+        Device device = devices.get(deviceId);
+        if (device == null) {
+            synchronized (this) {
+                device = devices.get(deviceId);
+                if (device == null) {
+                    device = new Device(deviceId);
+                    device.activated = activateAfterMs < 0;
+                    devices.put(deviceId, device);
+                    byToken.put(device.token, device);
+                }
+            }
+        }
+        return device;
+    }
+
+    boolean isValidToken(String token) {
+        Device device = token != null ? byToken.get(token) : null;
+        return device != null && device.activated;
+    }
+
+    /**
+     * Challenge + code mới cho thiết bị chưa activate (mỗi lần OTA)
+     */
+    synchronized void issueChallenge(Device device) {
+        device.challenge = UUID.randomUUID().toString();
+        device.code = String.format("%06d", random.nextInt(1000000));
+        device.firstPollNanos = -1;
+    }
+
+    /**
+     * HMAC của challenge với key thiết bị gửi trong OTA (application.elf_sha256)
+     * Không có key -> không kiểm tra được, chấp nhận
+     */
+    static boolean verify(Device device, String challenge, String hmac) {
+        if (device.challenge == null || !device.challenge.equals(challenge)) {
+            return false;
+        }
+        String key = device.hmacKey;
+        if (key == null || key.isEmpty() || "unknown".equals(key)) {
+            return true;
+        }
+        return new HmacSigner(key).signHex(challenge).equalsIgnoreCase(hmac);
+    }
+
+    /**
+     * @return ms còn lại tới khi thiết bị được activate (0 = activate ngay bây giờ)
+     */
+    long remainingMs(Device device, long nowNanos) {
+        if (device.firstPollNanos < 0) {
+            device.firstPollNanos = nowNanos;
+        }
+        long elapsedMs = (nowNanos - device.firstPollNanos) / 1000000L;
+        return Math.max(0, activateAfterMs - elapsedMs);
+    }
+}
@@ -0,0 +1,194 @@
+package com.phicomm.r1.xiaozhi.fakeserver;
+
+import com.phicomm.r1.xiaozhi.platform.Log;
+import com.phicomm.r1.xiaozhi.protocol.XiaozhiProtocol;
+
+import org.java_websocket.WebSocket;
+import org.java_websocket.framing.CloseFrame;
+import org.java_websocket.handshake.ClientHandshake;
+import org.java_websocket.server.WebSocketServer;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * WebSocket phía Xiaozhi: hello / StartListening / Recognize (text + audio) / AbortSpeaking
+ *
+ * Response lấy từ ResponseScript, gửi qua NetworkConditions.
+ * Thứ tự message trên mỗi connection được giữ nguyên (như TCP) dù có jitter.
+ */
+final class FakeWebSocketServer extends WebSocketServer {
+
+    private static final String TAG = "FakeWs";
+
+    /**
+     * Trạng thái mỗi connection (WebSocket attachment)
+     */
+    private static final class Session {
+        final String id = UUID.randomUUID().toString().substring(0, 8);
+        long lastDeliveryNanos;
+        String mode = "";
+    }
+
+    private final ServerOptions options;
+    private final NetworkConditions network;
+    private final DeviceRegistry devices;
+    private final ServerStats stats;
+    private final ResponseScript script;
+    private final ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(2);
+    private final CountDownLatch started = new CountDownLatch(1);
+
+    FakeWebSocketServer(ServerOptions options, NetworkConditions network, DeviceRegistry devices,
+                        ServerStats stats, ResponseScript script) {
+        super(new InetSocketAddress(options.host, options.wsPort));
+        this.options = options;
+        this.network = network;
+        this.devices = devices;
+        this.stats = stats;
+        this.script = script;
+        setReuseAddr(true);
+    }
+
+    void awaitStarted() throws InterruptedException {
+        started.await(10, TimeUnit.SECONDS);
+    }
+
+    void shutdown() throws InterruptedException {
+        scheduler.shutdownNow();
+        stop(1000);
+    }
+
+    @Override
+    public void onStart() {
+        started.countDown();
+    }
+
+    @Override
+    public void onOpen(WebSocket conn, ClientHandshake handshake) {
+        stats.wsConnections.incrementAndGet();
+        if (options.checkAuth) {
+            String authorization = handshake.getFieldValue("Authorization");
+            String token = authorization.startsWith("Bearer ") ? authorization.substring(7).trim() : null;
+            if (!devices.isValidToken(token)) {
+                stats.wsRejected.incrementAndGet();
+                conn.close(CloseFrame.POLICY_VALIDATION, "invalid token");
+                return;
+            }
+        }
+        stats.wsOpen.incrementAndGet();
+        conn.setAttachment(new Session());
+    }
+
+    @Override
+    public void onClose(WebSocket conn, int code, String reason, boolean remote) {
+        if (conn.getAttachment() != null) {
+            stats.wsOpen.decrementAndGet();
+            conn.setAttachment(null);
+        }
+    }
+
+    @Override
+    public void onMessage(WebSocket conn, String message) {
+        long receivedNanos = System.nanoTime();
+        Session session = conn.getAttachment();
+        if (session == null) {
+            return;
+        }
+        stats.messagesIn.incrementAndGet();
+
+        JSONObject json;
+        try {
+            json = XiaozhiProtocol.parse(message);
+        } catch (JSONException e) {
+            Log.w(TAG, "Invalid JSON from client: " + e.getMessage());
+            return;
+        }
+        String name = XiaozhiProtocol.getName(json);
+        JSONObject payload = json.optJSONObject("payload");
+
+        Map<String, String> vars = new HashMap<>();
+        vars.put("session_id", session.id);
+        vars.put("mode", session.mode);
+        vars.put("text", "");
+
+        if (XiaozhiProtocol.START_LISTENING.equals(name) && payload != null) {
+            session.mode = payload.optString("mode");
+            vars.put("mode", session.mode);
+        } else if (XiaozhiProtocol.RECOGNIZE.equals(name) && payload != null) {
+            String audio = payload.optString("audio", null);
+            if (audio != null) {
+                int bytes = audio.length() / 4 * 3 - (audio.endsWith("==") ? 2 : audio.endsWith("=") ? 1 : 0);
+                stats.onAudio(bytes, receivedNanos);
+                vars.put("text", "<audio " + bytes * 1000L / (payload.optInt("sample_rate", 16000) * 2) + "ms>");
+            } else {
+                vars.put("text", payload.optString("text"));
+            }
+        }
+
+        run(conn, session, name, script.get(name), vars, receivedNanos);
+    }
+
+    @Override
+    public void onMessage(WebSocket conn, ByteBuffer message) {
+        // Binary frame = PCM thô (chưa dùng bởi app, nhưng đếm để so sánh với base64)
+        if (conn.getAttachment() == null) {
+            return;
+        }
+        stats.messagesIn.incrementAndGet();
+        stats.onAudio(message.remaining(), System.nanoTime());
+    }
+
+    @Override
+    public void onError(WebSocket conn, Exception ex) {
+        Log.w(TAG, "WebSocket error", ex);
+    }
+
+    private void run(final WebSocket conn, Session session, final String name, List<ResponseScript.Step> steps,
+                     Map<String, String> vars, final long requestNanos) {
+        final AtomicBoolean first = new AtomicBoolean(true);
+        long offsetMs = 0;
+        for (final ResponseScript.Step step : steps) {
+            offsetMs += step.delayMs;
+            final String text = step.isClose() ? null : ResponseScript.render(step.template, vars);
+            long now = System.nanoTime();
+            long at;
+            synchronized (session) {
+                at = Math.max(session.lastDeliveryNanos,
+                    now + (offsetMs + network.sampleDelayMs()) * 1000000L);
+                session.lastDeliveryNanos = at;
+            }
+            scheduler.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    if (!conn.isOpen()) {
+                        return;
+                    }
+                    if (step.isClose()) {
+                        conn.close(step.closeCode, step.closeReason);
+                        return;
+                    }
+                    if (network.drop()) {
+                        stats.messagesDropped.incrementAndGet();
+                        return;
+                    }
+                    conn.send(text);
+                    stats.messagesOut.incrementAndGet();
+                    if (first.compareAndSet(true, false)) {
+                        stats.firstResponse(name).add(System.nanoTime() - requestNanos);
+                    }
+                }
+            }, at - now, TimeUnit.NANOSECONDS);
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package com.phicomm.r1.xiaozhi.fakeserver;
+
+import com.phicomm.r1.xiaozhi.platform.Log;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.IOException;
+
+/**
+ * Fake Xiaozhi server cho test end-to-end không cần mạng
+ *
+ * Thay cho api.tenclass.net (OTA + activation) và wss://xiaozhi.me/v1/ws.
+ * Trỏ thiết bị vào server: XiaozhiConfig.setOtaUrl("http://HOST:8002/xiaozhi/ota/")
+ * - WebSocket URL được trả về qua OTA như server thật.
+ */
+public final class FakeXiaozhiServer {
+
+    private static final String TAG = "FakeServer";
+
+    private final ServerOptions options;
+    private final ServerStats stats = new ServerStats();
+    private final OtaServer ota;
+    private final FakeWebSocketServer websocket;
+
+    public FakeXiaozhiServer(ServerOptions options) throws IOException, JSONException {
+        this.options = options;
+        NetworkConditions network = new NetworkConditions(options.latencyMs, options.jitterMs, options.loss,
+            options.seed);
+        DeviceRegistry devices = new DeviceRegistry(options.activateAfterMs);
+        this.ota = new OtaServer(options, network, devices, stats);
+        this.websocket = new FakeWebSocketServer(options, network, devices, stats,
+            ResponseScript.load(options.scriptFile));
+    }
+
+    public void start() throws InterruptedException {
+        websocket.start();
+        websocket.awaitStarted();
+        ota.start(getWebSocketUrl());
+        Log.i(TAG, "OTA:       " + getOtaUrl());
+        Log.i(TAG, "WebSocket: " + getWebSocketUrl());
+        Log.i(TAG, "Stats:     http://" + options.publicHost + ":" + ota.getPort() + "/stats");
+    }
+
+    public void stop() throws InterruptedException {
+        ota.stop();
+        websocket.shutdown();
+    }
+
+    public String getOtaUrl() {
+        return "http://" + options.publicHost + ":" + ota.getPort() + "/xiaozhi/ota/";
+    }
+
+    public String getWebSocketUrl() {
+        return "ws://" + options.publicHost + ":" + websocket.getPort() + "/v1/ws";
+    }
+
+    public JSONObject getStats() throws JSONException {
+        return stats.toJson();
+    }
+
+    public static void main(String[] args) throws Exception {
+        for (String arg : args) {
+            if ("--help".equals(arg) || "-h".equals(arg)) {
+                System.out.println(ServerOptions.USAGE);
+                return;
+            }
+        }
+        final FakeXiaozhiServer server = new FakeXiaozhiServer(ServerOptions.parse(args, false));
+        server.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    Log.i(TAG, "Final stats: " + server.getStats().toString(2));
+                    server.stop();
+                } catch (Exception e) {
+                    Log.w(TAG, "Shutdown failed", e);
+                }
+            }
+        }));
+        Thread.currentThread().join();
+    }
+}
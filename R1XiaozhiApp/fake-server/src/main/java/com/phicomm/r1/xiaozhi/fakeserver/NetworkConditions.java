@@ -0,0 +1,44 @@
+package com.phicomm.r1.xiaozhi.fakeserver;
+
+import java.util.Random;
+
+/**
+ * Mạng giả lập: latency + jitter (phân bố đều) và loss
+ *
+ * Latency áp dụng một lần cho mỗi response / message server gửi đi,
+ * nên với request/response nó tương đương round-trip thêm vào.
+ */
+final class NetworkConditions {
+
+    private final long latencyMs;
+    private final long jitterMs;
+    private final double loss;
+    private final Random random;
+
+    NetworkConditions(long latencyMs, long jitterMs, double loss, long seed) {
+        if (loss < 0 || loss > 1) {
+            throw new IllegalArgumentException("loss must be in [0, 1]: " + loss);
+        }
+        this.latencyMs = Math.max(0, latencyMs);
+        this.jitterMs = Math.max(0, jitterMs);
+        this.loss = loss;
+        this.random = new Random(seed);
+    }
+
+    synchronized long sampleDelayMs() {
+        if (jitterMs == 0) {
+            return latencyMs;
+        }
+        long offset = (long) ((random.nextDouble() * 2 - 1) * jitterMs);
+        return Math.max(0, latencyMs + offset);
+    }
+
+    synchronized boolean drop() {
+        return loss > 0 && random.nextDouble() < loss;
+    }
+
+    @Override
+    public String toString() {
+        return "latency=" + latencyMs + "ms jitter=" + jitterMs + "ms loss=" + loss;
+    }
+}
@@ -0,0 +1,267 @@
+package com.phicomm.r1.xiaozhi.fakeserver;
+
+import com.phicomm.r1.xiaozhi.platform.Log;
+import com.phicomm.r1.xiaozhi.util.CryptoUtils;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * HTTP phía OTA: giống api.tenclass.net đủ cho OTAConfigManager / DeviceActivator
+ *
+ * POST /xiaozhi/ota/          -> websocket endpoint + activation (nếu chưa activate),
+ *                                ETag / If-None-Match -> 304
+ * POST /xiaozhi/ota/activate  -> 202 (chờ, hỗ trợ "Prefer: wait=N") / 200 access_token / 403
+ * GET  /stats                 -> ServerStats
+ */
+final class OtaServer {
+
+    private static final String TAG = "FakeOta";
+    private static final String CONFIG_VERSION = "fake-1";
+    private static final String ETAG = "\"" + CONFIG_VERSION + "\"";
+    private static final int POLL_INTERVAL_SECONDS = 2;
+    private static final Pattern WAIT_PATTERN = Pattern.compile("wait\\s*=\\s*(\\d+)");
+
+    private final NetworkConditions network;
+    private final DeviceRegistry devices;
+    private final ServerStats stats;
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private volatile String websocketUrl;
+
+    OtaServer(ServerOptions options, NetworkConditions network, DeviceRegistry devices, ServerStats stats)
+            throws IOException {
+        this.network = network;
+        this.devices = devices;
+        this.stats = stats;
+        this.server = HttpServer.create(new InetSocketAddress(options.host, options.httpPort), 64);
+        server.setExecutor(executor);
+        server.createContext("/xiaozhi/ota/", new Handler() {
+            @Override
+            void handle(HttpExchange exchange, JSONObject body) throws IOException, JSONException {
+                handleOta(exchange, body);
+            }
+        });
+        server.createContext("/xiaozhi/ota/activate", new Handler() {
+            @Override
+            void handle(HttpExchange exchange, JSONObject body) throws IOException, JSONException {
+                handleActivate(exchange, body);
+            }
+        });
+        server.createContext("/stats", new Handler() {
+            @Override
+            void handle(HttpExchange exchange, JSONObject body) throws IOException, JSONException {
+                respond(exchange, 200, OtaServer.this.stats.toJson());
+            }
+        });
+    }
+
+    void start(String websocketUrl) {
+        this.websocketUrl = websocketUrl;
+        server.start();
+    }
+
+    int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    void stop() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void handleOta(HttpExchange exchange, JSONObject body) throws IOException, JSONException {
+        stats.otaRequests.incrementAndGet();
+        String deviceId = exchange.getRequestHeaders().getFirst("Device-Id");
+        if (deviceId == null || deviceId.isEmpty()) {
+            respond(exchange, 400, error("Device-Id header required"));
+            return;
+        }
+
+        DeviceRegistry.Device device = devices.get(deviceId);
+        JSONObject application = body != null ? body.optJSONObject("application") : null;
+        if (application != null && application.has("elf_sha256")) {
+            device.hmacKey = application.optString("elf_sha256");
+        }
+
+        exchange.getResponseHeaders().set("Cache-Control", "max-age=300");
+        if (device.activated && ETAG.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+            stats.otaNotModified.incrementAndGet();
+            exchange.getResponseHeaders().set("ETag", ETAG);
+            respond(exchange, 304, null);
+            return;
+        }
+
+        JSONObject json = new JSONObject();
+        JSONObject serverTime = new JSONObject();
+        serverTime.put("timestamp", System.currentTimeMillis());
+        json.put("server_time", serverTime);
+
+        JSONObject firmware = new JSONObject();
+        firmware.put("version", "1.0.0");
+        firmware.put("url", "");
+        json.put("firmware", firmware);
+        json.put("config_version", CONFIG_VERSION);
+
+        JSONObject websocket = new JSONObject();
+        websocket.put("url", websocketUrl);
+        websocket.put("token", device.token);
+        websocket.put("protocol", "v1");
+        json.put("websocket", websocket);
+
+        if (!device.activated) {
+            devices.issueChallenge(device);
+            JSONObject activation = new JSONObject();
+            activation.put("code", device.code);
+            activation.put("challenge", device.challenge);
+            activation.put("message", "Fake server: mã " + device.code);
+            activation.put("timeout", 300);
+            json.put("activation", activation);
+        } else {
+            exchange.getResponseHeaders().set("ETag", ETAG);
+        }
+        respond(exchange, 200, json);
+    }
+
+    private void handleActivate(HttpExchange exchange, JSONObject body) throws IOException, JSONException {
+        String deviceId = exchange.getRequestHeaders().getFirst("Device-Id");
+        JSONObject payload = body != null ? body.optJSONObject("Payload") : null;
+        if (deviceId == null || payload == null) {
+            respond(exchange, 400, error("Device-Id header and Payload required"));
+            return;
+        }
+
+        DeviceRegistry.Device device = devices.get(deviceId);
+        if (!device.activated
+            && !DeviceRegistry.verify(device, payload.optString("challenge"), payload.optString("hmac"))) {
+            stats.activationRejected.incrementAndGet();
+            Log.w(TAG, "Invalid challenge/HMAC from " + deviceId);
+            respond(exchange, 403, error("invalid challenge or hmac"));
+            return;
+        }
+
+        long remaining = device.activated ? 0 : devices.remainingMs(device, System.nanoTime());
+
+        // Long-poll (RFC 7240): giữ request tới khi activate hoặc hết wait
+        String prefer = exchange.getRequestHeaders().getFirst("Prefer");
+        Matcher wait = prefer != null ? WAIT_PATTERN.matcher(prefer) : null;
+        if (remaining > 0 && wait != null && wait.find()) {
+            long waitMs = Math.min(remaining, Long.parseLong(wait.group(1)) * 1000L);
+            exchange.getResponseHeaders().set("Preference-Applied", "wait=" + wait.group(1));
+            sleep(waitMs);
+            remaining = devices.remainingMs(device, System.nanoTime());
+        }
+
+        if (remaining > 0) {
+            stats.activationPending.incrementAndGet();
+            JSONObject json = new JSONObject();
+            json.put("code", device.code);
+            json.put("message", "Please enter verification code");
+            json.put("poll_interval", POLL_INTERVAL_SECONDS);
+            respond(exchange, 202, json);
+            return;
+        }
+
+        device.activated = true;
+        stats.activationGranted.incrementAndGet();
+        Log.i(TAG, "Activated " + deviceId);
+        JSONObject json = new JSONObject();
+        json.put("access_token", device.token);
+        respond(exchange, 200, json);
+    }
+
+    private static JSONObject error(String message) throws JSONException {
+        JSONObject json = new JSONObject();
+        json.put("error", message);
+        return json;
+    }
+
+    private void respond(HttpExchange exchange, int status, JSONObject json) throws IOException {
+        // Network giả lập: trễ trước khi trả lời, hoặc bỏ hẳn (client thấy connection reset)
+        sleep(network.sampleDelayMs());
+        if (network.drop()) {
+            stats.httpDropped.incrementAndGet();
+            exchange.close();
+            return;
+        }
+        if (json == null) {
+            exchange.sendResponseHeaders(status, -1);
+            exchange.close();
+            return;
+        }
+        byte[] bytes = json.toString().getBytes(CryptoUtils.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        OutputStream out = exchange.getResponseBody();
+        try {
+            out.write(bytes);
+        } finally {
+            out.close();
+        }
+    }
+
+    private static void sleep(long ms) {
+        if (ms <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(ms);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Đọc body JSON (nếu có) rồi gọi handle(); lỗi -> 500
+     */
+    private abstract class Handler implements HttpHandler {
+
+        abstract void handle(HttpExchange exchange, JSONObject body) throws IOException, JSONException;
+
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            try {
+                handle(exchange, readBody(exchange));
+            } catch (JSONException e) {
+                respond(exchange, 400, errorQuietly("invalid JSON: " + e.getMessage()));
+            } catch (RuntimeException e) {
+                Log.e(TAG, "Handler failed: " + exchange.getRequestURI(), e);
+                respond(exchange, 500, errorQuietly(String.valueOf(e)));
+            }
+        }
+
+        private JSONObject errorQuietly(String message) {
+            try {
+                return error(message);
+            } catch (JSONException e) {
+                return new JSONObject();
+            }
+        }
+
+        private JSONObject readBody(HttpExchange exchange) throws IOException, JSONException {
+            InputStream in = exchange.getRequestBody();
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int n;
+            while ((n = in.read(buffer)) > 0) {
+                out.write(buffer, 0, n);
+            }
+            String text = out.toString("UTF-8").trim();
+            return text.isEmpty() ? null : new JSONObject(text);
+        }
+    }
+}
@@ -0,0 +1,247 @@
+package com.phicomm.r1.xiaozhi.fakeserver;
+
+import com.phicomm.r1.xiaozhi.audio.PcmCodec;
+import com.phicomm.r1.xiaozhi.core.ListeningMode;
+import com.phicomm.r1.xiaozhi.platform.Log;
+import com.phicomm.r1.xiaozhi.protocol.XiaozhiProtocol;
+import com.phicomm.r1.xiaozhi.util.CryptoUtils;
+
+import org.java_websocket.client.WebSocketClient;
+import org.java_websocket.handshake.ServerHandshake;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URI;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Client đo end-to-end theo đúng luồng của app:
+ * OTA -> activation (HMAC) -> WebSocket + hello -> StartListening -> Recognize(audio) -> stt / tts
+ *
+ * Đo: ota_ms, activation_ms, connect_ms, upload_kbps (audio tới stt), response_ms (tới tts start)
+ *
+ *   Probe --ota=http://127.0.0.1:8002/xiaozhi/ota/ [--runs=3] [--audio-ms=3000] [--out=probe.json]
+ *   Probe --embedded [server options...]   (server chạy trong cùng process)
+ */
+public final class Probe {
+
+    private static final String TAG = "Probe";
+    private static final int SAMPLE_RATE = 16000;
+    private static final long TIMEOUT_MS = 30000;
+
+    private final DeviceProvisioner provisioner;
+    private final int audioMs;
+    private final Random random = new Random();
+
+    Probe(String otaUrl, int audioMs) {
+        this.provisioner = new DeviceProvisioner(otaUrl, "probe");
+        this.audioMs = audioMs;
+    }
+
+    /**
+     * Một lượt đo với thiết bị mới (MAC / HMAC key ngẫu nhiên)
+     */
+    JSONObject runOnce() throws Exception {
+        DeviceProvisioner.Device device = DeviceProvisioner.newDevice(random, "SN-PROBE-");
+        JSONObject result = new JSONObject();
+
+        // 1-2. OTA + activation (nếu server yêu cầu)
+        provisioner.provision(device);
+        result.put("ota_ms", device.otaMs);
+        if (device.activationMs >= 0) {
+            result.put("activation_ms", device.activationMs);
+        }
+
+        // 3. WebSocket + hello
+        final BlockingQueue<JSONObject> inbox = new LinkedBlockingQueue<>();
+        final long[] openedAt = new long[1];
+        Map<String, String> headers = new HashMap<>();
+        headers.put("Authorization", "Bearer " + device.token);
+        long start = System.nanoTime();
+        WebSocketClient client = new WebSocketClient(new URI(device.webSocketUrl), headers) {
+            @Override
+            public void onOpen(ServerHandshake handshake) {
+                openedAt[0] = System.nanoTime();
+            }
+
+            @Override
+            public void onMessage(String message) {
+                try {
+                    JSONObject json = XiaozhiProtocol.parse(message);
+                    json.put("_received_nanos", System.nanoTime());
+                    inbox.add(json);
+                } catch (JSONException e) {
+                    Log.w(TAG, "Invalid message: " + message);
+                }
+            }
+
+            @Override
+            public void onClose(int code, String reason, boolean remote) {
+            }
+
+            @Override
+            public void onError(Exception ex) {
+                Log.w(TAG, "WebSocket error: " + ex);
+            }
+        };
+        if (!client.connectBlocking(TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+            throw new IOException("WebSocket connect failed: " + device.webSocketUrl);
+        }
+        try {
+            result.put("connect_ms", round((openedAt[0] - start) / 1e6));
+            client.send(XiaozhiProtocol.hello(device.deviceId, device.serialNumber, System.getProperty("os.version")));
+            result.put("hello_ms", awaitType(inbox, "hello", start));
+
+            // 4. Một câu lệnh: StartListening + Recognize(audio)
+            client.send(XiaozhiProtocol.startListening(ListeningMode.AUTO_STOP.getValue()));
+            byte[] pcm = PcmCodec.toBytes(tone(SAMPLE_RATE * audioMs / 1000), 0, SAMPLE_RATE * audioMs / 1000);
+            start = System.nanoTime();
+            client.send(XiaozhiProtocol.recognizeAudio(pcm, SAMPLE_RATE, 1));
+            double sttMs = awaitType(inbox, "stt", start);
+            result.put("audio_bytes", pcm.length);
+            result.put("stt_ms", sttMs);
+            result.put("upload_kbps", round(pcm.length * 8 / sttMs));
+            result.put("response_ms", awaitType(inbox, "tts", start));
+        } finally {
+            client.closeBlocking();
+        }
+        return result;
+    }
+
+    private static double awaitType(BlockingQueue<JSONObject> inbox, String type, long startNanos)
+            throws Exception {
+        long deadline = startNanos + TIMEOUT_MS * 1000000L;
+        while (true) {
+            JSONObject message = inbox.poll(Math.max(1, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+            if (message == null) {
+                throw new IOException("Timed out waiting for \"" + type + "\"");
+            }
+            if (type.equals(XiaozhiProtocol.getType(message))) {
+                return round((message.getLong("_received_nanos") - startNanos) / 1e6);
+            }
+        }
+    }
+
+    private static short[] tone(int count) {
+        short[] samples = new short[count];
+        for (int i = 0; i < count; i++) {
+            samples[i] = (short) (3000 * Math.sin(2 * Math.PI * 440 * i / SAMPLE_RATE));
+        }
+        return samples;
+    }
+
+    private static double round(double value) {
+        return Math.round(value * 100) / 100.0;
+    }
+
+    /**
+     * avg / max của từng metric qua các lượt
+     */
+    static JSONObject summarize(JSONArray runs) throws JSONException {
+        Map<String, double[]> totals = new HashMap<>();
+        for (int i = 0; i < runs.length(); i++) {
+            JSONObject run = runs.getJSONObject(i);
+            Iterator<String> keys = run.keys();
+            while (keys.hasNext()) {
+                String key = keys.next();
+                double value = run.getDouble(key);
+                double[] total = totals.get(key);
+                if (total == null) {
+                    total = new double[] {0, 0, -Double.MAX_VALUE};
+                    totals.put(key, total);
+                }
+                total[0]++;
+                total[1] += value;
+                total[2] = Math.max(total[2], value);
+            }
+        }
+        JSONObject summary = new JSONObject();
+        for (Map.Entry<String, double[]> entry : totals.entrySet()) {
+            double[] total = entry.getValue();
+            JSONObject metric = new JSONObject();
+            metric.put("avg", round(total[1] / total[0]));
+            metric.put("max", round(total[2]));
+            summary.put(entry.getKey(), metric);
+        }
+        return summary;
+    }
+
+    public static void main(String[] args) throws Exception {
+        String otaUrl = null;
+        String out = null;
+        int runs = 3;
+        int audioMs = 3000;
+        boolean embedded = false;
+        for (String arg : args) {
+            if (arg.startsWith("--ota=")) {
+                otaUrl = arg.substring(6);
+            } else if (arg.startsWith("--out=")) {
+                out = arg.substring(6);
+            } else if (arg.startsWith("--runs=")) {
+                runs = Integer.parseInt(arg.substring(7));
+            } else if (arg.startsWith("--audio-ms=")) {
+                audioMs = Integer.parseInt(arg.substring(11));
+            } else if ("--embedded".equals(arg)) {
+                embedded = true;
+            }
+        }
+
+        FakeXiaozhiServer server = null;
+        if (embedded) {
+            ServerOptions options = ServerOptions.parse(args, true);
+            options.httpPort = 0;
+            options.wsPort = 0;
+            options.host = "127.0.0.1";
+            server = new FakeXiaozhiServer(options);
+            server.start();
+            otaUrl = server.getOtaUrl();
+        }
+        if (otaUrl == null) {
+            System.err.println("Usage: Probe --ota=URL | --embedded [--runs=N] [--audio-ms=MS] [--out=FILE]");
+            System.exit(2);
+        }
+
+        int exitCode = 0;
+        JSONObject report = new JSONObject();
+        JSONArray results = new JSONArray();
+        try {
+            Probe probe = new Probe(otaUrl, audioMs);
+            for (int i = 0; i < runs; i++) {
+                results.put(probe.runOnce());
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "Probe failed", e);
+            report.put("error", String.valueOf(e));
+            exitCode = 1;
+        }
+        report.put("ota_url", otaUrl);
+        report.put("runs", results);
+        report.put("summary", summarize(results));
+        if (server != null) {
+            report.put("server", server.getStats());
+            server.stop();
+        }
+
+        String json = report.toString(2);
+        System.out.println(json);
+        if (out != null) {
+            OutputStream file = new FileOutputStream(out);
+            try {
+                file.write(json.getBytes(CryptoUtils.UTF_8));
+            } finally {
+                file.close();
+            }
+        }
+        System.exit(exitCode);
+    }
+}
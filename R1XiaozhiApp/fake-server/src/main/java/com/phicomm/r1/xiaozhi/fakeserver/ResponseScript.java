@@ -0,0 +1,125 @@
+package com.phicomm.r1.xiaozhi.fakeserver;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Kịch bản: message client gửi (header name) -> chuỗi response của server
+ *
+ * {
+ *   "Recognize": [
+ *     {"delay_ms": 0,   "send": {"type": "stt", "text": "${text}"}},
+ *     {"delay_ms": 300, "send": {"type": "tts", "state": "start"}},
+ *     {"delay_ms": 0,   "close": 1013, "reason": "retry-after=30"}
+ *   ]
+ * }
+ *
+ * delay_ms tính từ bước trước. Biến: ${text}, ${session_id}, ${mode}.
+ */
+final class ResponseScript {
+
+    static final String DEFAULT = "{"
+        + "\"hello\": [{\"delay_ms\": 0, \"send\": {\"type\": \"hello\", \"transport\": \"websocket\","
+        + " \"session_id\": \"${session_id}\"}}],"
+        + "\"Recognize\": ["
+        + " {\"delay_ms\": 0, \"send\": {\"type\": \"stt\", \"text\": \"${text}\", \"session_id\": \"${session_id}\"}},"
+        + " {\"delay_ms\": 300, \"send\": {\"type\": \"tts\", \"state\": \"start\", \"session_id\": \"${session_id}\"}},"
+        + " {\"delay_ms\": 0, \"send\": {\"type\": \"tts\", \"state\": \"sentence_start\","
+        + " \"text\": \"Xin chào, tôi có thể giúp gì cho bạn?\", \"session_id\": \"${session_id}\"}},"
+        + " {\"delay_ms\": 1500, \"send\": {\"type\": \"tts\", \"state\": \"stop\", \"session_id\": \"${session_id}\"}}"
+        + "],"
+        + "\"AbortSpeaking\": [{\"delay_ms\": 0, \"send\": {\"type\": \"tts\", \"state\": \"stop\","
+        + " \"session_id\": \"${session_id}\"}}]"
+        + "}";
+
+    static final class Step {
+        final long delayMs;
+        final String template;     // null nếu là bước close
+        final int closeCode;
+        final String closeReason;
+
+        Step(long delayMs, String template, int closeCode, String closeReason) {
+            this.delayMs = delayMs;
+            this.template = template;
+            this.closeCode = closeCode;
+            this.closeReason = closeReason;
+        }
+
+        boolean isClose() {
+            return template == null;
+        }
+    }
+
+    private final Map<String, List<Step>> steps = new HashMap<>();
+
+    private ResponseScript() {
+    }
+
+    static ResponseScript load(String file) throws IOException, JSONException {
+        if (file == null) {
+            return parse(DEFAULT);
+        }
+        InputStream in = new FileInputStream(new File(file));
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int n;
+            while ((n = in.read(buffer)) > 0) {
+                out.write(buffer, 0, n);
+            }
+            return parse(out.toString("UTF-8"));
+        } finally {
+            in.close();
+        }
+    }
+
+    static ResponseScript parse(String json) throws JSONException {
+        ResponseScript script = new ResponseScript();
+        JSONObject root = new JSONObject(json);
+        Iterator<String> names = root.keys();
+        while (names.hasNext()) {
+            String name = names.next();
+            JSONArray array = root.getJSONArray(name);
+            List<Step> list = new ArrayList<>();
+            for (int i = 0; i < array.length(); i++) {
+                JSONObject step = array.getJSONObject(i);
+                long delay = step.optLong("delay_ms", 0);
+                if (step.has("close")) {
+                    list.add(new Step(delay, null, step.getInt("close"), step.optString("reason", "")));
+                } else {
+                    list.add(new Step(delay, step.getJSONObject("send").toString(), 0, null));
+                }
+            }
+            script.steps.put(name, list);
+        }
+        return script;
+    }
+
+    List<Step> get(String name) {
+        List<Step> list = steps.get(name);
+        return list != null ? list : Collections.<Step>emptyList();
+    }
+
+    static String render(String template, Map<String, String> vars) {
+        String result = template;
+        for (Map.Entry<String, String> var : vars.entrySet()) {
+            // Escape như chuỗi JSON (bỏ dấu ngoặc kép hai đầu)
+            String quoted = JSONObject.quote(var.getValue());
+            result = result.replace("${" + var.getKey() + "}", quoted.substring(1, quoted.length() - 1));
+        }
+        return result;
+    }
+}
@@ -0,0 +1,96 @@
+package com.phicomm.r1.xiaozhi.fakeserver;
+
+/**
+ * Tham số dòng lệnh của fake server (--key=value)
+ */
+public final class ServerOptions {
+
+    static final String USAGE = "Options:\n"
+        + "  --host=0.0.0.0          bind address\n"
+        + "  --public-host=127.0.0.1 host trong WebSocket URL trả về qua OTA\n"
+        + "  --http-port=8002        OTA + activation + /stats (0 = port ngẫu nhiên)\n"
+        + "  --ws-port=8003          WebSocket (0 = port ngẫu nhiên)\n"
+        + "  --latency=0             ms thêm vào mỗi response / message gửi đi\n"
+        + "  --jitter=0              +/- ms ngẫu nhiên quanh latency\n"
+        + "  --loss=0                xác suất (0..1) bỏ một response / message\n"
+        + "  --activate-after=0      ms từ lần poll activation đầu tiên tới khi được activate\n"
+        + "                          (-1 = coi mọi thiết bị đã activate)\n"
+        + "  --no-auth               không kiểm tra Bearer token của WebSocket\n"
+        + "  --script=FILE           kịch bản response (JSON), mặc định: ResponseScript.DEFAULT\n"
+        + "  --seed=N                seed cho latency / loss (tái lập được)\n";
+
+    public String host = "0.0.0.0";
+    public String publicHost = "127.0.0.1";
+    public int httpPort = 8002;
+    public int wsPort = 8003;
+    public long latencyMs = 0;
+    public long jitterMs = 0;
+    public double loss = 0;
+    public long activateAfterMs = 0;
+    public boolean checkAuth = true;
+    public String scriptFile;
+    public long seed = 42;
+
+    /**
+     * Parse các option của server, bỏ qua option không biết nếu lenient (dùng chung argv với Probe)
+     */
+    public static ServerOptions parse(String[] args, boolean lenient) {
+        ServerOptions options = new ServerOptions();
+        for (String arg : args) {
+            if (!options.apply(arg) && !lenient) {
+                throw new IllegalArgumentException("Unknown option: " + arg + "\n" + USAGE);
+            }
+        }
+        return options;
+    }
+
+    /**
+     * @return false nếu không phải option của server
+     */
+    public boolean apply(String arg) {
+        if ("--no-auth".equals(arg)) {
+            checkAuth = false;
+            return true;
+        }
+        int eq = arg.indexOf('=');
+        if (!arg.startsWith("--") || eq < 0) {
+            return false;
+        }
+        String key = arg.substring(2, eq);
+        String value = arg.substring(eq + 1);
+        switch (key) {
+            case "host":
+                host = value;
+                return true;
+            case "public-host":
+                publicHost = value;
+                return true;
+            case "http-port":
+                httpPort = Integer.parseInt(value);
+                return true;
+            case "ws-port":
+                wsPort = Integer.parseInt(value);
+                return true;
+            case "latency":
+                latencyMs = Long.parseLong(value);
+                return true;
+            case "jitter":
+                jitterMs = Long.parseLong(value);
+                return true;
+            case "loss":
+                loss = Double.parseDouble(value);
+                return true;
+            case "activate-after":
+                activateAfterMs = Long.parseLong(value);
+                return true;
+            case "script":
+                scriptFile = value;
+                return true;
+            case "seed":
+                seed = Long.parseLong(value);
+                return true;
+            default:
+                return false;
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package com.phicomm.r1.xiaozhi.fakeserver;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counter của fake server - GET /stats
+ */
+final class ServerStats {
+
+    /**
+     * count / avg / max (ms)
+     */
+    static final class Timing {
+        private long count;
+        private long totalNanos;
+        private long maxNanos;
+
+        synchronized void add(long nanos) {
+            count++;
+            totalNanos += nanos;
+            maxNanos = Math.max(maxNanos, nanos);
+        }
+
+        synchronized JSONObject toJson() throws JSONException {
+            JSONObject json = new JSONObject();
+            json.put("count", count);
+            json.put("avg_ms", count > 0 ? Math.round(totalNanos / count / 10000.0) / 100.0 : 0);
+            json.put("max_ms", Math.round(maxNanos / 10000.0) / 100.0);
+            return json;
+        }
+    }
+
+    final AtomicLong otaRequests = new AtomicLong();
+    final AtomicLong otaNotModified = new AtomicLong();
+    final AtomicLong activationPending = new AtomicLong();
+    final AtomicLong activationGranted = new AtomicLong();
+    final AtomicLong activationRejected = new AtomicLong();
+    final AtomicLong httpDropped = new AtomicLong();
+
+    final AtomicLong wsConnections = new AtomicLong();
+    final AtomicLong wsOpen = new AtomicLong();
+    final AtomicLong wsRejected = new AtomicLong();
+    final AtomicLong messagesIn = new AtomicLong();
+    final AtomicLong messagesOut = new AtomicLong();
+    final AtomicLong messagesDropped = new AtomicLong();
+    final AtomicLong audioMessages = new AtomicLong();
+    final AtomicLong audioBytes = new AtomicLong();
+
+    private final Map<String, Timing> firstResponse = new TreeMap<>();
+    private long firstAudioNanos = -1;
+    private long lastAudioNanos = -1;
+
+    /**
+     * Thời gian từ lúc nhận request tới lúc response đầu tiên được gửi
+     */
+    synchronized Timing firstResponse(String name) {
+        Timing timing = firstResponse.get(name);
+        if (timing == null) {
+            timing = new Timing();
+            firstResponse.put(name, timing);
+        }
+        return timing;
+    }
+
+    synchronized void onAudio(int bytes, long nanos) {
+        audioMessages.incrementAndGet();
+        audioBytes.addAndGet(bytes);
+        if (firstAudioNanos < 0) {
+            firstAudioNanos = nanos;
+        }
+        lastAudioNanos = nanos;
+    }
+
+    synchronized JSONObject toJson() throws JSONException {
+        JSONObject http = new JSONObject();
+        http.put("ota_requests", otaRequests.get());
+        http.put("ota_not_modified", otaNotModified.get());
+        http.put("activation_pending", activationPending.get());
+        http.put("activation_granted", activationGranted.get());
+        http.put("activation_rejected", activationRejected.get());
+        http.put("dropped", httpDropped.get());
+
+        JSONObject ws = new JSONObject();
+        ws.put("connections", wsConnections.get());
+        ws.put("open", wsOpen.get());
+        ws.put("rejected", wsRejected.get());
+        ws.put("messages_in", messagesIn.get());
+        ws.put("messages_out", messagesOut.get());
+        ws.put("messages_dropped", messagesDropped.get());
+
+        JSONObject audio = new JSONObject();
+        audio.put("messages", audioMessages.get());
+        audio.put("bytes", audioBytes.get());
+        long window = lastAudioNanos - firstAudioNanos;
+        audio.put("kbps", window > 0 ? Math.round(audioBytes.get() * 8e8 / window) / 100.0 : 0);
+
+        JSONObject latency = new JSONObject();
+        for (Map.Entry<String, Timing> entry : firstResponse.entrySet()) {
+            latency.put(entry.getKey(), entry.getValue().toJson());
+        }
+
+        JSONObject json = new JSONObject();
+        json.put("http", http);
+        json.put("websocket", ws);
+        json.put("audio", audio);
+        json.put("first_response", latency);
+        return json;
+    }
+}
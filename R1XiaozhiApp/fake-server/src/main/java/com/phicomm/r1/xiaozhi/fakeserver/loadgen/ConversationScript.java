@@ -0,0 +1,114 @@
+package com.phicomm.r1.xiaozhi.fakeserver.loadgen;
+
+import com.phicomm.r1.xiaozhi.audio.PcmCodec;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Kịch bản hội thoại của mỗi thiết bị ảo (JSON)
+ *
+ * {"repeat": true, "turns": [
+ *   {"think_ms": 2000, "audio_ms": 2500},             // Recognize(audio) như app gửi sau wake word
+ *   {"think_ms": 4000, "text": "mấy giờ rồi"},          // Recognize(text)
+ *   {"think_ms": 3000, "audio_ms": 1500, "abort_after_ms": 400}  // barge-in khi TTS đang phát
+ * ]}
+ *
+ * think_ms dao động +/-25% (seed) để các thiết bị không đồng bộ với nhau
+ */
+final class ConversationScript {
+
+    static final String DEFAULT = "{\"repeat\": true, \"turns\": ["
+        + " {\"think_ms\": 2000, \"audio_ms\": 2500},"
+        + " {\"think_ms\": 4000, \"text\": \"mấy giờ rồi\"},"
+        + " {\"think_ms\": 3000, \"audio_ms\": 1500, \"abort_after_ms\": 400}"
+        + "]}";
+
+    static final int SAMPLE_RATE = 16000;
+
+    static final class Turn {
+        final long thinkMs;
+        /** null nếu gửi audio */
+        final String text;
+        /** PCM 16-bit mono dùng chung giữa các thiết bị (chỉ đọc) */
+        final byte[] pcm;
+        /** AbortSpeaking sau khi TTS start bao lâu, -1 = nghe hết */
+        final long abortAfterMs;
+
+        Turn(long thinkMs, String text, byte[] pcm, long abortAfterMs) {
+            this.thinkMs = thinkMs;
+            this.text = text;
+            this.pcm = pcm;
+            this.abortAfterMs = abortAfterMs;
+        }
+    }
+
+    final List<Turn> turns;
+    final boolean repeat;
+
+    private ConversationScript(List<Turn> turns, boolean repeat) {
+        this.turns = Collections.unmodifiableList(turns);
+        this.repeat = repeat;
+    }
+
+    static ConversationScript load(String file) throws IOException, JSONException {
+        if (file == null) {
+            return parse(DEFAULT);
+        }
+        InputStream in = new FileInputStream(new File(file));
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int n;
+            while ((n = in.read(buffer)) > 0) {
+                out.write(buffer, 0, n);
+            }
+            return parse(out.toString("UTF-8"));
+        } finally {
+            in.close();
+        }
+    }
+
+    static ConversationScript parse(String json) throws JSONException {
+        JSONObject root = new JSONObject(json);
+        JSONArray array = root.getJSONArray("turns");
+        List<Turn> turns = new ArrayList<Turn>();
+        for (int i = 0; i < array.length(); i++) {
+            JSONObject turn = array.getJSONObject(i);
+            String text = turn.optString("text", null);
+            byte[] pcm = null;
+            if (text == null) {
+                pcm = speech(turn.optInt("audio_ms", 2000));
+            }
+            turns.add(new Turn(turn.optLong("think_ms", 2000), text, pcm, turn.optLong("abort_after_ms", -1)));
+        }
+        if (turns.isEmpty()) {
+            throw new JSONException("Script has no turns");
+        }
+        return new ConversationScript(turns, root.optBoolean("repeat", true));
+    }
+
+    /**
+     * Tín hiệu giống tiếng nói (tone điều biên 4Hz) - nội dung không quan trọng với server giả,
+     * kích thước giống hệt câu lệnh thật cùng độ dài
+     */
+    private static byte[] speech(int durationMs) {
+        int count = SAMPLE_RATE * durationMs / 1000;
+        short[] samples = new short[count];
+        for (int i = 0; i < count; i++) {
+            double envelope = 0.6 + 0.4 * Math.sin(2 * Math.PI * 4 * i / SAMPLE_RATE);
+            samples[i] = (short) (4000 * envelope * Math.sin(2 * Math.PI * 220 * i / SAMPLE_RATE));
+        }
+        return PcmCodec.toBytes(samples, 0, count);
+    }
+}
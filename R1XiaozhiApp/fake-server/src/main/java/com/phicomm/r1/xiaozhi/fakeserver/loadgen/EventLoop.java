@@ -0,0 +1,178 @@
+package com.phicomm.r1.xiaozhi.fakeserver.loadgen;
+
+import com.phicomm.r1.xiaozhi.platform.Log;
+
+import java.io.IOException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Một thread + một Selector phục vụ hàng nghìn NioWebSocket
+ *
+ * Thay cho mô hình của Java-WebSocket (2 thread / client): mọi I/O, timer và callback
+ * của các VirtualDevice gắn với loop đều chạy trên thread này -> không cần lock trong device
+ */
+final class EventLoop implements Runnable {
+
+    private static final String TAG = "EventLoop";
+
+    /**
+     * Task hẹn giờ (chỉ dùng trong loop thread)
+     */
+    static final class Timer implements Comparable<Timer> {
+        final long dueNanos;
+        final long order;
+        final Runnable task;
+        boolean cancelled;
+
+        Timer(long dueNanos, long order, Runnable task) {
+            this.dueNanos = dueNanos;
+            this.order = order;
+            this.task = task;
+        }
+
+        void cancel() {
+            cancelled = true;
+        }
+
+        @Override
+        public int compareTo(Timer other) {
+            if (dueNanos != other.dueNanos) {
+                return dueNanos < other.dueNanos ? -1 : 1;
+            }
+            return order < other.order ? -1 : order > other.order ? 1 : 0;
+        }
+    }
+
+    private final String name;
+    private final Selector selector;
+    private final ConcurrentLinkedQueue<Runnable> inbox = new ConcurrentLinkedQueue<Runnable>();
+    private final PriorityQueue<Timer> timers = new PriorityQueue<Timer>();
+    private final CountDownLatch stopped = new CountDownLatch(1);
+    private final LoadStats.Local stats = new LoadStats.Local();
+    private volatile boolean running = true;
+    private Thread thread;
+    private long timerOrder;
+
+    EventLoop(String name) throws IOException {
+        this.name = name;
+        this.selector = Selector.open();
+    }
+
+    void start() {
+        thread = new Thread(this, name);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    Selector selector() {
+        return selector;
+    }
+
+    /**
+     * Histogram của loop - chỉ ghi từ loop thread, đọc sau khi loop dừng
+     */
+    LoadStats.Local stats() {
+        return stats;
+    }
+
+    boolean inLoop() {
+        return Thread.currentThread() == thread;
+    }
+
+    /**
+     * Chạy task trên loop thread (gọi được từ mọi thread)
+     */
+    void execute(Runnable task) {
+        inbox.add(task);
+        selector.wakeup();
+    }
+
+    /**
+     * Hẹn giờ - chỉ gọi từ loop thread
+     */
+    Timer schedule(Runnable task, long delayMs) {
+        Timer timer = new Timer(System.nanoTime() + delayMs * 1000000L, timerOrder++, task);
+        timers.add(timer);
+        return timer;
+    }
+
+    void shutdown() throws InterruptedException {
+        running = false;
+        selector.wakeup();
+        stopped.await();
+    }
+
+    @Override
+    public void run() {
+        try {
+            while (running) {
+                long waitMs = runTimers();
+                if (!inbox.isEmpty()) {
+                    selector.selectNow();
+                } else {
+                    // 0 = không có timer -> chờ I/O hoặc wakeup()
+                    selector.select(waitMs);
+                }
+
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    ((NioWebSocket) key.attachment()).onReady(key);
+                }
+
+                Runnable task;
+                while ((task = inbox.poll()) != null) {
+                    runSafely(task);
+                }
+            }
+        } catch (IOException e) {
+            Log.e(TAG, name + " selector failed", e);
+        } finally {
+            for (SelectionKey key : selector.keys()) {
+                ((NioWebSocket) key.attachment()).abort();
+            }
+            try {
+                selector.close();
+            } catch (IOException e) {
+                // ignore
+            }
+            stopped.countDown();
+        }
+    }
+
+    /**
+     * @return ms tới timer kế tiếp (>= 1), 0 nếu không còn timer
+     */
+    private long runTimers() {
+        long now = System.nanoTime();
+        Timer timer;
+        while ((timer = timers.peek()) != null) {
+            if (timer.cancelled) {
+                timers.poll();
+                continue;
+            }
+            if (timer.dueNanos > now) {
+                return Math.max(1, (timer.dueNanos - now + 999999) / 1000000L);
+            }
+            timers.poll();
+            runSafely(timer.task);
+        }
+        return 0;
+    }
+
+    private void runSafely(Runnable task) {
+        try {
+            task.run();
+        } catch (RuntimeException e) {
+            // Lỗi của một device không được làm dừng cả loop
+            stats.errors++;
+            Log.e(TAG, name + " task failed", e);
+        }
+    }
+}
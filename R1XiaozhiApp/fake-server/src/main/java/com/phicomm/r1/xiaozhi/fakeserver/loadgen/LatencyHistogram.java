@@ -0,0 +1,106 @@
+package com.phicomm.r1.xiaozhi.fakeserver.loadgen;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Histogram log-linear (micro giây): 16 bucket con cho mỗi lũy thừa của 2 -> sai số <= 6.25%
+ *
+ * Bộ nhớ cố định (~8KB), record() O(1) không cấp phát. Không thread-safe:
+ * mỗi EventLoop giữ histogram riêng, merge() khi báo cáo.
+ */
+final class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    private final long[] counts = new long[64 * SUB_BUCKETS];
+    private long count;
+    private long totalMicros;
+    private long maxMicros;
+
+    void record(long micros) {
+        if (micros < 0) {
+            micros = 0;
+        }
+        counts[index(micros)]++;
+        count++;
+        totalMicros += micros;
+        if (micros > maxMicros) {
+            maxMicros = micros;
+        }
+    }
+
+    void recordNanos(long nanos) {
+        record(nanos / 1000L);
+    }
+
+    void merge(LatencyHistogram other) {
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] += other.counts[i];
+        }
+        count += other.count;
+        totalMicros += other.totalMicros;
+        maxMicros = Math.max(maxMicros, other.maxMicros);
+    }
+
+    long getCount() {
+        return count;
+    }
+
+    /**
+     * @param percent 0..100
+     * @return Cận trên của bucket chứa percentile (micro giây)
+     */
+    long percentile(double percent) {
+        if (count == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(percent / 100.0 * count);
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= Math.max(1, rank)) {
+                return Math.min(upperBound(i), maxMicros);
+            }
+        }
+        return maxMicros;
+    }
+
+    JSONObject toJson() throws JSONException {
+        JSONObject json = new JSONObject();
+        json.put("count", count);
+        if (count > 0) {
+            json.put("avg_ms", millis(totalMicros / count));
+            json.put("p50_ms", millis(percentile(50)));
+            json.put("p90_ms", millis(percentile(90)));
+            json.put("p99_ms", millis(percentile(99)));
+            json.put("p999_ms", millis(percentile(99.9)));
+            json.put("max_ms", millis(maxMicros));
+        }
+        return json;
+    }
+
+    private static double millis(long micros) {
+        return Math.round(micros / 10.0) / 100.0;
+    }
+
+    private static int index(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int msb = 63 - Long.numberOfLeadingZeros(value);
+        int shift = msb - SUB_BUCKET_BITS;
+        return ((shift + 1) << SUB_BUCKET_BITS) + (int) ((value >>> shift) & (SUB_BUCKETS - 1));
+    }
+
+    private static long upperBound(int index) {
+        int bucket = index >>> SUB_BUCKET_BITS;
+        int sub = index & (SUB_BUCKETS - 1);
+        if (bucket == 0) {
+            return sub;
+        }
+        int shift = bucket - 1;
+        return ((long) (SUB_BUCKETS + sub) << shift) + (1L << shift) - 1;
+    }
+}
@@ -0,0 +1,334 @@
+package com.phicomm.r1.xiaozhi.fakeserver.loadgen;
+
+import com.phicomm.r1.xiaozhi.fakeserver.DeviceProvisioner;
+import com.phicomm.r1.xiaozhi.fakeserver.FakeXiaozhiServer;
+import com.phicomm.r1.xiaozhi.fakeserver.ServerOptions;
+import com.phicomm.r1.xiaozhi.platform.Log;
+import com.phicomm.r1.xiaozhi.util.CryptoUtils;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Load generator: hàng nghìn R1 ảo trên vài EventLoop (NIO selector), không thread / client
+ *
+ * Dùng lại code của app: MessageEncoder (hello / StartListening / Recognize base64),
+ * PcmCodec, OTA + activation HMAC (DeviceProvisioner). Mỗi thiết bị chạy ConversationScript,
+ * số thiết bị theo RampProfile; báo cáo p50/p90/p99 của connect / hello / stt / TTS đầu tiên /
+ * cả lượt và throughput theo thời gian.
+ *
+ *   LoadGenerator --embedded [server options] [--ramp=10s:200,30s:200,5s:0]
+ *   LoadGenerator --ota=http://HOST:8002/xiaozhi/ota/ ...     (provision qua OTA + activation)
+ *   LoadGenerator --ws=ws://HOST:8000/xiaozhi/v1/ --token=T   (server self-hosted, bỏ qua OTA)
+ *
+ * Vài nghìn connection cần nâng giới hạn file descriptor (ulimit -n) ở cả hai phía.
+ */
+public final class LoadGenerator {
+
+    private static final String TAG = "LoadGen";
+    private static final long TICK_MS = 100;
+    private static final long STOP_TIMEOUT_MS = 10000;
+
+    static final String USAGE = "Usage: LoadGenerator (--embedded [server options] | --ota=URL | --ws=URL [--token=T])\n"
+        + "  --ramp=10s:100,30s:100,5s:0   số thiết bị theo thời gian (tuyến tính trong mỗi stage)\n"
+        + "  --conversation=FILE           kịch bản hội thoại (JSON), mặc định ConversationScript.DEFAULT\n"
+        + "  --loops=N                     số EventLoop (mặc định = số CPU)\n"
+        + "  --provision-threads=16        OTA / activation song song\n"
+        + "  --hello-timeout-ms=5000  --turn-timeout-ms=15000\n"
+        + "  --interval=5s                 chu kỳ in tiến độ / timeline\n"
+        + "  --seed=42  --out=FILE\n";
+
+    private final RampProfile ramp;
+    private final ConversationScript script;
+    private final List<EventLoop> loops = new ArrayList<EventLoop>();
+    private final List<Random> loopRandoms = new ArrayList<Random>();
+    private final LoadStats stats = new LoadStats();
+    private final DeviceProvisioner provisioner;
+    private final ExecutorService provisioning;
+    private final String webSocketUrl;
+    private final String token;
+    private final Random random;
+    private final long helloTimeoutMs;
+    private final long turnTimeoutMs;
+    private final long intervalMs;
+
+    /** Device đang chạy, mới nhất ở cuối (ramp down LIFO) - chỉ main thread */
+    private final Deque<VirtualDevice> active = new ArrayDeque<VirtualDevice>();
+    /** Identity đã provision, rảnh sau ramp down -> dùng lại khi ramp up */
+    private final ConcurrentLinkedQueue<DeviceProvisioner.Device> idle =
+        new ConcurrentLinkedQueue<DeviceProvisioner.Device>();
+    private final AtomicInteger stopping = new AtomicInteger();
+    private int nextLoop;
+
+    LoadGenerator(Options options) throws Exception {
+        this.ramp = RampProfile.parse(options.ramp);
+        this.script = ConversationScript.load(options.conversationFile);
+        this.random = new Random(options.seed);
+        this.helloTimeoutMs = options.helloTimeoutMs;
+        this.turnTimeoutMs = options.turnTimeoutMs;
+        this.intervalMs = options.intervalMs;
+        this.webSocketUrl = options.webSocketUrl;
+        this.token = options.token;
+        if (options.otaUrl != null) {
+            provisioner = new DeviceProvisioner(options.otaUrl, "loadgen");
+            provisioning = Executors.newFixedThreadPool(options.provisionThreads);
+        } else {
+            provisioner = null;
+            provisioning = null;
+        }
+        for (int i = 0; i < options.loops; i++) {
+            EventLoop loop = new EventLoop("loadgen-" + i);
+            loops.add(loop);
+            loopRandoms.add(new Random(random.nextLong()));
+            loop.start();
+        }
+    }
+
+    JSONObject run() throws Exception {
+        Log.i(TAG, loops.size() + " event loops, peak " + ramp.getPeak() + " devices, "
+            + ramp.getTotalMs() / 1000 + "s");
+        JSONArray timeline = new JSONArray();
+        long start = System.nanoTime();
+        LoadStats.Snapshot previous = new LoadStats.Snapshot(stats, 0);
+        long nextReportMs = intervalMs;
+
+        while (true) {
+            long elapsedMs = (System.nanoTime() - start) / 1000000L;
+            if (elapsedMs >= ramp.getTotalMs()) {
+                break;
+            }
+            adjust(ramp.targetAt(elapsedMs));
+            if (elapsedMs >= nextReportMs) {
+                LoadStats.Snapshot snapshot = new LoadStats.Snapshot(stats, elapsedMs);
+                Log.i(TAG, snapshot.format(previous));
+                timeline.put(snapshot.since(previous));
+                previous = snapshot;
+                nextReportMs += intervalMs;
+            }
+            Thread.sleep(TICK_MS);
+        }
+        long elapsedMs = (System.nanoTime() - start) / 1000000L;
+
+        // Kết thúc: đóng mọi connection rồi mới dừng loop (close handshake cần loop)
+        adjust(0);
+        long deadline = System.nanoTime() + STOP_TIMEOUT_MS * 1000000L;
+        while (stopping.get() > 0 && System.nanoTime() < deadline) {
+            Thread.sleep(TICK_MS);
+        }
+        if (provisioning != null) {
+            provisioning.shutdownNow();
+            provisioning.awaitTermination(5, TimeUnit.SECONDS);
+        }
+        List<LoadStats.Local> locals = new ArrayList<LoadStats.Local>();
+        for (EventLoop loop : loops) {
+            loop.shutdown();
+            locals.add(loop.stats());
+        }
+
+        JSONObject report = stats.toJson(locals, elapsedMs);
+        report.put("ramp_peak", ramp.getPeak());
+        report.put("loops", loops.size());
+        report.put("timeline", timeline);
+        return report;
+    }
+
+    /**
+     * Đưa số device đang chạy về target (main thread)
+     */
+    private void adjust(int target) {
+        while (active.size() < target) {
+            startDevice();
+        }
+        while (active.size() > target) {
+            stopping.incrementAndGet();
+            active.removeLast().stop();
+        }
+        stats.devices.set(active.size());
+    }
+
+    private void startDevice() {
+        int index = nextLoop++ % loops.size();
+        EventLoop loop = loops.get(index);
+        DeviceProvisioner.Device identity = idle.poll();
+        if (identity == null) {
+            identity = DeviceProvisioner.newDevice(random, "SN-LOAD-");
+            if (provisioner == null) {
+                identity.webSocketUrl = webSocketUrl;
+                identity.token = token;
+            }
+        }
+        final VirtualDevice device = new VirtualDevice(identity, loop, script, stats, loopRandoms.get(index),
+            helloTimeoutMs, turnTimeoutMs, new VirtualDevice.StopListener() {
+                @Override
+                public void onStopped(VirtualDevice stopped) {
+                    idle.add(stopped.identity);
+                    stopping.decrementAndGet();
+                }
+            });
+        active.addLast(device);
+
+        if (identity.token != null) {
+            device.start();
+            return;
+        }
+        // Chưa provision: OTA + activation trên pool riêng (HTTP blocking), xong mới connect trên loop
+        final DeviceProvisioner.Device pending = identity;
+        final EventLoop target = loop;
+        provisioning.execute(new Runnable() {
+            @Override
+            public void run() {
+                final long begin = System.nanoTime();
+                try {
+                    provisioner.provision(pending);
+                } catch (Exception e) {
+                    Log.w(TAG, pending.deviceId + " provisioning failed: " + e.getMessage());
+                    stats.provisionFailures.incrementAndGet();
+                    pending.token = null;
+                    return;
+                }
+                stats.provisioned.incrementAndGet();
+                final long nanos = System.nanoTime() - begin;
+                target.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        target.stats().provision.recordNanos(nanos);
+                    }
+                });
+                device.start();
+            }
+        });
+    }
+
+    static final class Options {
+        boolean embedded;
+        String otaUrl;
+        String webSocketUrl;
+        String token = "loadgen";
+        String ramp = "10s:50,20s:50,5s:0";
+        String conversationFile;
+        int loops = Runtime.getRuntime().availableProcessors();
+        int provisionThreads = 16;
+        long helloTimeoutMs = 5000;
+        long turnTimeoutMs = 15000;
+        long intervalMs = 5000;
+        long seed = 42;
+        String out;
+
+        /**
+         * Option của server (--latency, --loss...) được bỏ qua ở đây, ServerOptions đọc lại khi --embedded
+         */
+        static Options parse(String[] args) {
+            Options options = new Options();
+            ServerOptions probe = new ServerOptions();
+            for (String arg : args) {
+                int eq = arg.indexOf('=');
+                String key = eq > 0 ? arg.substring(0, eq) : arg;
+                String value = eq > 0 ? arg.substring(eq + 1) : "";
+                switch (key) {
+                    case "--embedded":
+                        options.embedded = true;
+                        break;
+                    case "--ota":
+                        options.otaUrl = value;
+                        break;
+                    case "--ws":
+                        options.webSocketUrl = value;
+                        break;
+                    case "--token":
+                        options.token = value;
+                        break;
+                    case "--ramp":
+                        options.ramp = value;
+                        break;
+                    case "--conversation":
+                        options.conversationFile = value;
+                        break;
+                    case "--loops":
+                        options.loops = Math.max(1, Integer.parseInt(value));
+                        break;
+                    case "--provision-threads":
+                        options.provisionThreads = Math.max(1, Integer.parseInt(value));
+                        break;
+                    case "--hello-timeout-ms":
+                        options.helloTimeoutMs = Long.parseLong(value);
+                        break;
+                    case "--turn-timeout-ms":
+                        options.turnTimeoutMs = Long.parseLong(value);
+                        break;
+                    case "--interval":
+                        options.intervalMs = RampProfile.parseDuration(value);
+                        break;
+                    case "--seed":
+                        options.seed = Long.parseLong(value);
+                        break;
+                    case "--out":
+                        options.out = value;
+                        break;
+                    default:
+                        if (!probe.apply(arg)) {
+                            throw new IllegalArgumentException("Unknown option: " + arg + "\n" + USAGE);
+                        }
+                }
+            }
+            return options;
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Options options = Options.parse(args);
+
+        FakeXiaozhiServer server = null;
+        if (options.embedded) {
+            ServerOptions serverOptions = ServerOptions.parse(args, true);
+            serverOptions.httpPort = 0;
+            serverOptions.wsPort = 0;
+            serverOptions.host = "127.0.0.1";
+            server = new FakeXiaozhiServer(serverOptions);
+            server.start();
+            options.otaUrl = server.getOtaUrl();
+        }
+        if (options.otaUrl == null && options.webSocketUrl == null) {
+            System.err.println(USAGE);
+            System.exit(2);
+        }
+
+        JSONObject report;
+        try {
+            report = new LoadGenerator(options).run();
+            report.put("target", options.otaUrl != null ? options.otaUrl : options.webSocketUrl);
+            report.put("ramp", options.ramp);
+            if (server != null) {
+                report.put("server", server.getStats());
+            }
+        } finally {
+            if (server != null) {
+                server.stop();
+            }
+        }
+
+        String json = report.toString(2);
+        System.out.println(json);
+        if (options.out != null) {
+            OutputStream file = new FileOutputStream(options.out);
+            try {
+                file.write(json.getBytes(CryptoUtils.UTF_8));
+            } finally {
+                file.close();
+            }
+        }
+        System.exit(0);
+    }
+}
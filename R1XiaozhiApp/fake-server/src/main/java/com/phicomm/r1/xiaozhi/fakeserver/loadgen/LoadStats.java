@@ -0,0 +1,168 @@
+package com.phicomm.r1.xiaozhi.fakeserver.loadgen;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counter toàn cục (atomic, đọc được lúc đang chạy) + histogram theo từng EventLoop
+ */
+final class LoadStats {
+
+    final AtomicInteger devices = new AtomicInteger();
+    final AtomicInteger connected = new AtomicInteger();
+
+    final AtomicLong provisioned = new AtomicLong();
+    final AtomicLong provisionFailures = new AtomicLong();
+    final AtomicLong connectAttempts = new AtomicLong();
+    final AtomicLong connectFailures = new AtomicLong();
+    /** Server đóng connection khi device chưa bị ramp down */
+    final AtomicLong drops = new AtomicLong();
+    final AtomicLong helloTimeouts = new AtomicLong();
+
+    final AtomicLong turnsStarted = new AtomicLong();
+    final AtomicLong turnsCompleted = new AtomicLong();
+    final AtomicLong turnTimeouts = new AtomicLong();
+
+    final AtomicLong messagesOut = new AtomicLong();
+    final AtomicLong messagesIn = new AtomicLong();
+    final AtomicLong bytesOut = new AtomicLong();
+    final AtomicLong bytesIn = new AtomicLong();
+    final AtomicLong audioBytesOut = new AtomicLong();
+
+    /**
+     * Latency của một EventLoop (chỉ loop thread ghi)
+     */
+    static final class Local {
+        final LatencyHistogram provision = new LatencyHistogram();
+        final LatencyHistogram connect = new LatencyHistogram();
+        final LatencyHistogram hello = new LatencyHistogram();
+        final LatencyHistogram stt = new LatencyHistogram();
+        final LatencyHistogram firstTts = new LatencyHistogram();
+        final LatencyHistogram turn = new LatencyHistogram();
+        long errors;
+
+        void merge(Local other) {
+            provision.merge(other.provision);
+            connect.merge(other.connect);
+            hello.merge(other.hello);
+            stt.merge(other.stt);
+            firstTts.merge(other.firstTts);
+            turn.merge(other.turn);
+            errors += other.errors;
+        }
+    }
+
+    /**
+     * Snapshot counter - dùng cho timeline / throughput theo khoảng
+     */
+    static final class Snapshot {
+        final long atMs;
+        final int devices;
+        final int connected;
+        final long turnsCompleted;
+        final long messagesOut;
+        final long messagesIn;
+        final long bytesOut;
+        final long bytesIn;
+        final long errors;
+
+        Snapshot(LoadStats stats, long atMs) {
+            this.atMs = atMs;
+            this.devices = stats.devices.get();
+            this.connected = stats.connected.get();
+            this.turnsCompleted = stats.turnsCompleted.get();
+            this.messagesOut = stats.messagesOut.get();
+            this.messagesIn = stats.messagesIn.get();
+            this.bytesOut = stats.bytesOut.get();
+            this.bytesIn = stats.bytesIn.get();
+            this.errors = stats.connectFailures.get() + stats.drops.get() + stats.turnTimeouts.get()
+                + stats.provisionFailures.get();
+        }
+
+        /**
+         * Throughput trong khoảng (previous, this]
+         */
+        JSONObject since(Snapshot previous) throws JSONException {
+            double seconds = Math.max(1, atMs - previous.atMs) / 1000.0;
+            JSONObject json = new JSONObject();
+            json.put("t_s", round(atMs / 1000.0));
+            json.put("devices", devices);
+            json.put("connected", connected);
+            json.put("turns_per_s", round((turnsCompleted - previous.turnsCompleted) / seconds));
+            json.put("msgs_out_per_s", round((messagesOut - previous.messagesOut) / seconds));
+            json.put("msgs_in_per_s", round((messagesIn - previous.messagesIn) / seconds));
+            json.put("mbps_out", round((bytesOut - previous.bytesOut) * 8 / seconds / 1e6));
+            json.put("mbps_in", round((bytesIn - previous.bytesIn) * 8 / seconds / 1e6));
+            json.put("errors", errors - previous.errors);
+            return json;
+        }
+
+        String format(Snapshot previous) {
+            double seconds = Math.max(1, atMs - previous.atMs) / 1000.0;
+            return String.format(Locale.US,
+                "t=%5.1fs devices=%d connected=%d turns/s=%.1f msgs/s out=%.0f in=%.0f out=%.2fMbps errors=%d",
+                atMs / 1000.0, devices, connected,
+                (turnsCompleted - previous.turnsCompleted) / seconds,
+                (messagesOut - previous.messagesOut) / seconds,
+                (messagesIn - previous.messagesIn) / seconds,
+                (bytesOut - previous.bytesOut) * 8 / seconds / 1e6,
+                errors - previous.errors);
+        }
+    }
+
+    JSONObject toJson(List<Local> locals, long elapsedMs) throws JSONException {
+        Local total = new Local();
+        for (Local local : locals) {
+            total.merge(local);
+        }
+        double seconds = Math.max(1, elapsedMs) / 1000.0;
+
+        JSONObject counters = new JSONObject();
+        counters.put("provisioned", provisioned.get());
+        counters.put("provision_failures", provisionFailures.get());
+        counters.put("connect_attempts", connectAttempts.get());
+        counters.put("connect_failures", connectFailures.get());
+        counters.put("drops", drops.get());
+        counters.put("hello_timeouts", helloTimeouts.get());
+        counters.put("turns_started", turnsStarted.get());
+        counters.put("turns_completed", turnsCompleted.get());
+        counters.put("turn_timeouts", turnTimeouts.get());
+        counters.put("messages_out", messagesOut.get());
+        counters.put("messages_in", messagesIn.get());
+        counters.put("bytes_out", bytesOut.get());
+        counters.put("bytes_in", bytesIn.get());
+        counters.put("audio_bytes_out", audioBytesOut.get());
+        counters.put("loop_errors", total.errors);
+
+        JSONObject throughput = new JSONObject();
+        throughput.put("turns_per_s", round(turnsCompleted.get() / seconds));
+        throughput.put("msgs_out_per_s", round(messagesOut.get() / seconds));
+        throughput.put("msgs_in_per_s", round(messagesIn.get() / seconds));
+        throughput.put("mbps_out", round(bytesOut.get() * 8 / seconds / 1e6));
+        throughput.put("mbps_in", round(bytesIn.get() * 8 / seconds / 1e6));
+
+        JSONObject latency = new JSONObject();
+        latency.put("provision", total.provision.toJson());
+        latency.put("connect", total.connect.toJson());
+        latency.put("hello", total.hello.toJson());
+        latency.put("stt", total.stt.toJson());
+        latency.put("first_tts", total.firstTts.toJson());
+        latency.put("turn", total.turn.toJson());
+
+        JSONObject json = new JSONObject();
+        json.put("elapsed_s", round(seconds));
+        json.put("counters", counters);
+        json.put("throughput", throughput);
+        json.put("latency", latency);
+        return json;
+    }
+
+    private static double round(double value) {
+        return Math.round(value * 100) / 100.0;
+    }
+}
@@ -0,0 +1,467 @@
+package com.phicomm.r1.xiaozhi.fakeserver.loadgen;
+
+import com.phicomm.r1.xiaozhi.util.Base64Codec;
+import com.phicomm.r1.xiaozhi.util.CryptoUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * WebSocket client (RFC 6455) non-blocking trên một EventLoop
+ *
+ * Đủ cho giao thức Xiaozhi: text / binary, ping -> pong, close, fragment.
+ * Không hỗ trợ wss:// và extension (permessage-deflate) - server self-hosted dùng ws://.
+ * Mọi method chỉ gọi từ loop thread.
+ */
+final class NioWebSocket {
+
+    private static final String GUID = "258EAFA5-E914-47DA-95CA-C5AB0DC85B11";
+    private static final int MAX_FRAME_BYTES = 16 * 1024 * 1024;
+
+    private static final int OP_CONTINUATION = 0x0;
+    private static final int OP_TEXT = 0x1;
+    private static final int OP_BINARY = 0x2;
+    private static final int OP_CLOSE = 0x8;
+    private static final int OP_PING = 0x9;
+    private static final int OP_PONG = 0xA;
+
+    interface Listener {
+        void onOpen();
+
+        void onText(String text);
+
+        /**
+         * @param remote true nếu server đóng / connection lỗi, false nếu do close() phía client
+         */
+        void onClose(int code, String reason, boolean remote);
+    }
+
+    private enum State {
+        CONNECTING, HANDSHAKE, OPEN, CLOSING, CLOSED
+    }
+
+    private final EventLoop loop;
+    private final URI uri;
+    private final Map<String, String> headers;
+    private final Listener listener;
+    private final LoadStats stats;
+    private final Random random;
+
+    private SocketChannel channel;
+    private SelectionKey key;
+    private State state = State.CONNECTING;
+    private String expectedAccept;
+    private ByteBuffer in = ByteBuffer.allocate(4096);
+    private final ArrayDeque<ByteBuffer> out = new ArrayDeque<ByteBuffer>();
+    private ByteArrayOutputStream fragments;
+    private int fragmentOpcode;
+
+    NioWebSocket(EventLoop loop, URI uri, Map<String, String> headers, Listener listener, LoadStats stats,
+                 Random random) {
+        this.loop = loop;
+        this.uri = uri;
+        this.headers = headers;
+        this.listener = listener;
+        this.stats = stats;
+        this.random = random;
+    }
+
+    boolean isOpen() {
+        return state == State.OPEN;
+    }
+
+    void connect() throws IOException {
+        if (!"ws".equals(uri.getScheme())) {
+            throw new IOException("Only ws:// is supported: " + uri);
+        }
+        int port = uri.getPort() > 0 ? uri.getPort() : 80;
+        channel = SocketChannel.open();
+        channel.configureBlocking(false);
+        channel.socket().setTcpNoDelay(true);
+        key = channel.register(loop.selector(), SelectionKey.OP_CONNECT, this);
+        if (channel.connect(new InetSocketAddress(uri.getHost(), port))) {
+            onConnected();
+        }
+    }
+
+    void sendText(String text) {
+        sendFrame(OP_TEXT, text.getBytes(CryptoUtils.UTF_8));
+    }
+
+    /**
+     * Text đã encode UTF-8 (MessageEncoder) - payload được copy + mask ngay, buffer dùng lại được
+     */
+    void sendText(ByteBuffer utf8) {
+        sendFrame(OP_TEXT, utf8.array(), utf8.arrayOffset() + utf8.position(), utf8.remaining());
+    }
+
+    void sendBinary(byte[] data) {
+        sendFrame(OP_BINARY, data);
+    }
+
+    /**
+     * Close handshake; onClose(remote=false) khi server trả close hoặc đóng TCP
+     */
+    void close(int code, String reason) {
+        if (state == State.OPEN) {
+            byte[] text = reason.getBytes(CryptoUtils.UTF_8);
+            byte[] payload = new byte[2 + text.length];
+            payload[0] = (byte) (code >> 8);
+            payload[1] = (byte) code;
+            System.arraycopy(text, 0, payload, 2, text.length);
+            sendFrame(OP_CLOSE, payload);
+            state = State.CLOSING;
+        } else if (state != State.CLOSING) {
+            finish(1006, "closed before open", false);
+        }
+    }
+
+    /**
+     * Đóng ngay, không báo listener (loop shutdown)
+     */
+    void abort() {
+        state = State.CLOSED;
+        closeChannel();
+    }
+
+    void onReady(SelectionKey readyKey) {
+        try {
+            if (!readyKey.isValid()) {
+                return;
+            }
+            if (readyKey.isConnectable()) {
+                if (channel.finishConnect()) {
+                    onConnected();
+                }
+                return;
+            }
+            if (readyKey.isWritable()) {
+                flush();
+            }
+            if (readyKey.isValid() && readyKey.isReadable()) {
+                read();
+            }
+        } catch (IOException e) {
+            finish(1006, String.valueOf(e.getMessage()), state != State.CLOSING);
+        }
+    }
+
+    private void onConnected() throws IOException {
+        state = State.HANDSHAKE;
+        byte[] nonce = new byte[16];
+        random.nextBytes(nonce);
+        String secKey = Base64Codec.encode(nonce);
+        expectedAccept = accept(secKey);
+
+        String path = uri.getRawPath() == null || uri.getRawPath().isEmpty() ? "/" : uri.getRawPath();
+        if (uri.getRawQuery() != null) {
+            path += "?" + uri.getRawQuery();
+        }
+        StringBuilder request = new StringBuilder();
+        request.append("GET ").append(path).append(" HTTP/1.1\r\n");
+        request.append("Host: ").append(uri.getHost());
+        if (uri.getPort() > 0) {
+            request.append(':').append(uri.getPort());
+        }
+        request.append("\r\n");
+        request.append("Upgrade: websocket\r\n");
+        request.append("Connection: Upgrade\r\n");
+        request.append("Sec-WebSocket-Key: ").append(secKey).append("\r\n");
+        request.append("Sec-WebSocket-Version: 13\r\n");
+        for (Map.Entry<String, String> header : headers.entrySet()) {
+            request.append(header.getKey()).append(": ").append(header.getValue()).append("\r\n");
+        }
+        request.append("\r\n");
+        enqueue(ByteBuffer.wrap(request.toString().getBytes(CryptoUtils.UTF_8)));
+        key.interestOps(SelectionKey.OP_READ | (out.isEmpty() ? 0 : SelectionKey.OP_WRITE));
+    }
+
+    private void read() throws IOException {
+        while (true) {
+            if (!in.hasRemaining()) {
+                grow(in.capacity() * 2);
+            }
+            int n = channel.read(in);
+            if (n < 0) {
+                finish(1006, "connection closed", state != State.CLOSING);
+                return;
+            }
+            if (n == 0) {
+                return;
+            }
+            stats.bytesIn.addAndGet(n);
+            in.flip();
+            if (state == State.HANDSHAKE && !readHandshake()) {
+                in.compact();
+                continue;
+            }
+            while (state == State.OPEN || state == State.CLOSING) {
+                if (!readFrame()) {
+                    break;
+                }
+            }
+            in.compact();
+            if (state == State.CLOSED) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * @return false nếu header HTTP chưa đủ
+     */
+    private boolean readHandshake() throws IOException {
+        int end = -1;
+        for (int i = in.position(); i + 3 < in.limit(); i++) {
+            if (in.get(i) == '\r' && in.get(i + 1) == '\n' && in.get(i + 2) == '\r' && in.get(i + 3) == '\n') {
+                end = i + 4;
+                break;
+            }
+        }
+        if (end < 0) {
+            return false;
+        }
+        byte[] head = new byte[end - in.position()];
+        in.get(head);
+        String response = new String(head, CryptoUtils.UTF_8);
+        String[] lines = response.split("\r\n");
+        if (lines.length == 0 || !lines[0].contains(" 101 ")) {
+            throw new IOException("Handshake rejected: " + (lines.length > 0 ? lines[0] : "<empty>"));
+        }
+        String accept = null;
+        for (String line : lines) {
+            int colon = line.indexOf(':');
+            if (colon > 0 && "sec-websocket-accept".equalsIgnoreCase(line.substring(0, colon).trim())) {
+                accept = line.substring(colon + 1).trim();
+            }
+        }
+        if (!expectedAccept.equals(accept)) {
+            throw new IOException("Invalid Sec-WebSocket-Accept");
+        }
+        state = State.OPEN;
+        listener.onOpen();
+        return true;
+    }
+
+    /**
+     * Parse một frame từ in (đang ở chế độ đọc)
+     *
+     * @return false nếu frame chưa đủ byte
+     */
+    private boolean readFrame() throws IOException {
+        int start = in.position();
+        if (in.remaining() < 2) {
+            return false;
+        }
+        int b0 = in.get(start) & 0xff;
+        int b1 = in.get(start + 1) & 0xff;
+        boolean fin = (b0 & 0x80) != 0;
+        int opcode = b0 & 0x0f;
+        boolean masked = (b1 & 0x80) != 0;
+        long length = b1 & 0x7f;
+        int headerLength = 2;
+        if (length == 126) {
+            if (in.remaining() < 4) {
+                return false;
+            }
+            length = in.getShort(start + 2) & 0xffff;
+            headerLength = 4;
+        } else if (length == 127) {
+            if (in.remaining() < 10) {
+                return false;
+            }
+            length = in.getLong(start + 2);
+            headerLength = 10;
+        }
+        if (length < 0 || length > MAX_FRAME_BYTES) {
+            throw new IOException("Frame too large: " + length);
+        }
+        int maskOffset = start + headerLength;
+        if (masked) {
+            headerLength += 4;
+        }
+        int total = headerLength + (int) length;
+        if (in.remaining() < total) {
+            if (total > in.capacity()) {
+                // Frame lớn hơn buffer: nới buffer rồi đọc tiếp
+                in.compact();
+                grow(total);
+                in.flip();
+            }
+            return false;
+        }
+
+        byte[] payload = new byte[(int) length];
+        in.position(start + headerLength);
+        in.get(payload);
+        if (masked) {
+            for (int i = 0; i < payload.length; i++) {
+                payload[i] ^= in.get(maskOffset + (i & 3));
+            }
+        }
+        onFrame(fin, opcode, payload);
+        return true;
+    }
+
+    private void onFrame(boolean fin, int opcode, byte[] payload) throws IOException {
+        switch (opcode) {
+            case OP_PING:
+                sendFrame(OP_PONG, payload);
+                return;
+            case OP_PONG:
+                return;
+            case OP_CLOSE:
+                int code = payload.length >= 2 ? (payload[0] & 0xff) << 8 | (payload[1] & 0xff) : 1005;
+                String reason = payload.length > 2
+                    ? new String(payload, 2, payload.length - 2, CryptoUtils.UTF_8) : "";
+                boolean remote = state != State.CLOSING;
+                if (remote) {
+                    sendFrame(OP_CLOSE, payload.length >= 2 ? new byte[] {payload[0], payload[1]} : new byte[0]);
+                    flush();
+                }
+                finish(code, reason, remote);
+                return;
+            case OP_CONTINUATION:
+                if (fragments == null) {
+                    throw new IOException("Unexpected continuation frame");
+                }
+                fragments.write(payload);
+                if (fin) {
+                    byte[] message = fragments.toByteArray();
+                    fragments = null;
+                    deliver(fragmentOpcode, message);
+                }
+                return;
+            default:
+                if (!fin) {
+                    fragments = new ByteArrayOutputStream();
+                    fragments.write(payload);
+                    fragmentOpcode = opcode;
+                    return;
+                }
+                deliver(opcode, payload);
+        }
+    }
+
+    private void deliver(int opcode, byte[] payload) {
+        stats.messagesIn.incrementAndGet();
+        if (opcode == OP_TEXT && state == State.OPEN) {
+            listener.onText(new String(payload, CryptoUtils.UTF_8));
+        }
+        // Binary (audio TTS opus) chỉ được đếm
+    }
+
+    /**
+     * Frame client luôn có mask (RFC 6455 5.3)
+     */
+    private void sendFrame(int opcode, byte[] payload) {
+        sendFrame(opcode, payload, 0, payload.length);
+    }
+
+    private void sendFrame(int opcode, byte[] payload, int offset, int length) {
+        if (state == State.CLOSED || channel == null) {
+            return;
+        }
+        int headerLength = length < 126 ? 2 : length < 65536 ? 4 : 10;
+        ByteBuffer frame = ByteBuffer.allocate(headerLength + 4 + length);
+        frame.put((byte) (0x80 | opcode));
+        if (length < 126) {
+            frame.put((byte) (0x80 | length));
+        } else if (length < 65536) {
+            frame.put((byte) (0x80 | 126));
+            frame.putShort((short) length);
+        } else {
+            frame.put((byte) (0x80 | 127));
+            frame.putLong(length);
+        }
+        int mask = random.nextInt();
+        frame.putInt(mask);
+        byte[] maskBytes = {(byte) (mask >>> 24), (byte) (mask >>> 16), (byte) (mask >>> 8), (byte) mask};
+        for (int i = 0; i < length; i++) {
+            frame.put((byte) (payload[offset + i] ^ maskBytes[i & 3]));
+        }
+        frame.flip();
+        if (opcode == OP_TEXT || opcode == OP_BINARY) {
+            stats.messagesOut.incrementAndGet();
+        }
+        enqueue(frame);
+        try {
+            flush();
+        } catch (IOException e) {
+            finish(1006, String.valueOf(e.getMessage()), true);
+        }
+    }
+
+    private void enqueue(ByteBuffer buffer) {
+        out.add(buffer);
+    }
+
+    private void flush() throws IOException {
+        if (state == State.CONNECTING || state == State.CLOSED) {
+            return;
+        }
+        while (!out.isEmpty()) {
+            ByteBuffer head = out.peek();
+            int n = channel.write(head);
+            stats.bytesOut.addAndGet(n);
+            if (head.hasRemaining()) {
+                // Socket buffer đầy -> chờ OP_WRITE
+                key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                return;
+            }
+            out.poll();
+        }
+        if (key.isValid()) {
+            key.interestOps(SelectionKey.OP_READ);
+        }
+    }
+
+    private void grow(int capacity) {
+        ByteBuffer bigger = ByteBuffer.allocate(Math.max(capacity, in.capacity()));
+        in.flip();
+        bigger.put(in);
+        in = bigger;
+    }
+
+    private void finish(int code, String reason, boolean remote) {
+        if (state == State.CLOSED) {
+            return;
+        }
+        state = State.CLOSED;
+        closeChannel();
+        out.clear();
+        listener.onClose(code, reason, remote);
+    }
+
+    private void closeChannel() {
+        if (key != null) {
+            key.cancel();
+        }
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                // ignore
+            }
+        }
+    }
+
+    static String accept(String secKey) {
+        try {
+            MessageDigest sha1 = MessageDigest.getInstance("SHA-1");
+            return Base64Codec.encode(sha1.digest((secKey + GUID).getBytes(CryptoUtils.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
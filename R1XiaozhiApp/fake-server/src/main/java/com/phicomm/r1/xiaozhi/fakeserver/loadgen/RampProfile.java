@@ -0,0 +1,84 @@
+package com.phicomm.r1.xiaozhi.fakeserver.loadgen;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Số thiết bị mục tiêu theo thời gian, tuyến tính trong từng stage
+ *
+ * "30s:100,2m:100,30s:0" = tăng 0 -> 100 trong 30s, giữ 100 trong 2 phút, giảm về 0 trong 30s
+ */
+final class RampProfile {
+
+    private final List<long[]> stages = new ArrayList<long[]>(); // {durationMs, target}
+    private final long totalMs;
+
+    private RampProfile(List<long[]> stages) {
+        this.stages.addAll(stages);
+        long total = 0;
+        for (long[] stage : stages) {
+            total += stage[0];
+        }
+        this.totalMs = total;
+    }
+
+    static RampProfile parse(String spec) {
+        List<long[]> stages = new ArrayList<long[]>();
+        for (String part : spec.split(",")) {
+            int colon = part.indexOf(':');
+            if (colon < 0) {
+                throw new IllegalArgumentException("Ramp stage must be <duration>:<devices>: " + part);
+            }
+            stages.add(new long[] {parseDuration(part.substring(0, colon).trim()),
+                Long.parseLong(part.substring(colon + 1).trim())});
+        }
+        if (stages.isEmpty()) {
+            throw new IllegalArgumentException("Empty ramp profile");
+        }
+        return new RampProfile(stages);
+    }
+
+    /**
+     * "500ms", "30s", "2m" hoặc số giây
+     */
+    static long parseDuration(String text) {
+        if (text.endsWith("ms")) {
+            return Long.parseLong(text.substring(0, text.length() - 2));
+        }
+        if (text.endsWith("s")) {
+            return Long.parseLong(text.substring(0, text.length() - 1)) * 1000;
+        }
+        if (text.endsWith("m")) {
+            return Long.parseLong(text.substring(0, text.length() - 1)) * 60000;
+        }
+        return Long.parseLong(text) * 1000;
+    }
+
+    long getTotalMs() {
+        return totalMs;
+    }
+
+    int getPeak() {
+        long peak = 0;
+        for (long[] stage : stages) {
+            peak = Math.max(peak, stage[1]);
+        }
+        return (int) peak;
+    }
+
+    int targetAt(long elapsedMs) {
+        long from = 0;
+        long stageStart = 0;
+        for (long[] stage : stages) {
+            long duration = stage[0];
+            long to = stage[1];
+            if (elapsedMs < stageStart + duration) {
+                double progress = duration > 0 ? (double) (elapsedMs - stageStart) / duration : 1;
+                return (int) Math.round(from + (to - from) * progress);
+            }
+            stageStart += duration;
+            from = to;
+        }
+        return (int) from;
+    }
+}
@@ -0,0 +1,329 @@
+package com.phicomm.r1.xiaozhi.fakeserver.loadgen;
+
+import com.phicomm.r1.xiaozhi.core.ListeningMode;
+import com.phicomm.r1.xiaozhi.fakeserver.DeviceProvisioner;
+import com.phicomm.r1.xiaozhi.platform.Log;
+import com.phicomm.r1.xiaozhi.protocol.MessageEncoder;
+import com.phicomm.r1.xiaozhi.protocol.XiaozhiProtocol;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Một R1 ảo: connect -> hello -> lặp kịch bản hội thoại, reconnect khi bị drop
+ *
+ * Mọi state chỉ được truy cập trên thread của EventLoop (start/stop chuyển sang loop),
+ * nên không cần lock dù hàng nghìn device chia nhau vài thread.
+ */
+final class VirtualDevice implements NioWebSocket.Listener {
+
+    private static final String TAG = "VirtualDevice";
+
+    private static final long RECONNECT_BASE_MS = 1000;
+    private static final long RECONNECT_MAX_MS = 30000;
+
+    interface StopListener {
+        void onStopped(VirtualDevice device);
+    }
+
+    final DeviceProvisioner.Device identity;
+    private final EventLoop loop;
+    private final ConversationScript script;
+    private final LoadStats stats;
+    private final Random random;
+    private final long helloTimeoutMs;
+    private final long turnTimeoutMs;
+    private final StopListener stopListener;
+
+    private NioWebSocket socket;
+    /** Mỗi connection một encoder như app; chỉ dùng trên thread của loop nên không cần lock */
+    private MessageEncoder encoder;
+    private boolean opened;
+    private boolean stopping;
+    private int reconnects;
+    private long retryAfterMs = -1;
+
+    private long connectStartNanos;
+    private long helloSentNanos;
+    private boolean awaitingHello;
+
+    private int turnIndex;
+    private ConversationScript.Turn turn;
+    private long turnStartNanos;
+    private boolean sttPending;
+    private boolean ttsPending;
+
+    private EventLoop.Timer helloTimer;
+    private EventLoop.Timer thinkTimer;
+    private EventLoop.Timer turnTimer;
+    private EventLoop.Timer abortTimer;
+    private EventLoop.Timer reconnectTimer;
+
+    VirtualDevice(DeviceProvisioner.Device identity, EventLoop loop, ConversationScript script, LoadStats stats,
+                  Random random, long helloTimeoutMs, long turnTimeoutMs, StopListener stopListener) {
+        this.identity = identity;
+        this.loop = loop;
+        this.script = script;
+        this.stats = stats;
+        this.random = random;
+        this.helloTimeoutMs = helloTimeoutMs;
+        this.turnTimeoutMs = turnTimeoutMs;
+        this.stopListener = stopListener;
+    }
+
+    /**
+     * Gọi từ mọi thread (sau khi identity đã có websocket URL + token)
+     */
+    void start() {
+        loop.execute(new Runnable() {
+            @Override
+            public void run() {
+                connect();
+            }
+        });
+    }
+
+    /**
+     * Ramp down: đóng connection, không reconnect; StopListener được gọi khi đã đóng xong
+     */
+    void stop() {
+        loop.execute(new Runnable() {
+            @Override
+            public void run() {
+                stopping = true;
+                cancelTimers();
+                if (reconnectTimer != null) {
+                    reconnectTimer.cancel();
+                }
+                if (socket != null) {
+                    socket.close(1000, "ramp down");
+                } else {
+                    stopListener.onStopped(VirtualDevice.this);
+                }
+            }
+        });
+    }
+
+    private void connect() {
+        if (stopping) {
+            return;
+        }
+        Map<String, String> headers = new LinkedHashMap<String, String>();
+        headers.put("Authorization", "Bearer " + identity.token);
+        headers.put("Protocol-Version", "1");
+        headers.put("Device-Id", identity.deviceId);
+        headers.put("Client-Id", identity.serialNumber);
+
+        stats.connectAttempts.incrementAndGet();
+        opened = false;
+        connectStartNanos = System.nanoTime();
+        try {
+            encoder = new MessageEncoder(random.nextLong());
+            socket = new NioWebSocket(loop, new URI(identity.webSocketUrl), headers, this, stats, random);
+            socket.connect();
+        } catch (IOException | URISyntaxException e) {
+            Log.w(TAG, identity.deviceId + " connect failed: " + e.getMessage());
+            socket = null;
+            stats.connectFailures.incrementAndGet();
+            scheduleReconnect();
+        }
+    }
+
+    @Override
+    public void onOpen() {
+        opened = true;
+        reconnects = 0;
+        stats.connected.incrementAndGet();
+        loop.stats().connect.recordNanos(System.nanoTime() - connectStartNanos);
+
+        socket.sendText(encoder.hello(identity.deviceId, identity.serialNumber, "loadgen"));
+        helloSentNanos = System.nanoTime();
+        awaitingHello = true;
+        // Server không trả hello vẫn chạy kịch bản, nhưng được đếm
+        helloTimer = loop.schedule(new Runnable() {
+            @Override
+            public void run() {
+                stats.helloTimeouts.incrementAndGet();
+                awaitingHello = false;
+                beginConversation();
+            }
+        }, helloTimeoutMs);
+    }
+
+    @Override
+    public void onText(String text) {
+        JSONObject json;
+        try {
+            json = XiaozhiProtocol.parse(text);
+        } catch (JSONException e) {
+            return;
+        }
+        long retryAfter = XiaozhiProtocol.getRetryAfterMs(json);
+        if (retryAfter >= 0) {
+            retryAfterMs = retryAfter;
+        }
+
+        String type = XiaozhiProtocol.getType(json);
+        long now = System.nanoTime();
+        if (XiaozhiProtocol.HELLO.equals(type)) {
+            if (awaitingHello) {
+                awaitingHello = false;
+                helloTimer.cancel();
+                loop.stats().hello.recordNanos(now - helloSentNanos);
+                beginConversation();
+            }
+        } else if ("stt".equals(type)) {
+            if (sttPending) {
+                sttPending = false;
+                loop.stats().stt.recordNanos(now - turnStartNanos);
+            }
+        } else if (XiaozhiProtocol.TYPE_TTS.equals(type) && turn != null) {
+            String state = XiaozhiProtocol.getTtsState(json);
+            if (XiaozhiProtocol.TTS_START.equals(state) && ttsPending) {
+                ttsPending = false;
+                loop.stats().firstTts.recordNanos(now - turnStartNanos);
+                if (turn.abortAfterMs >= 0) {
+                    abortTimer = loop.schedule(new Runnable() {
+                        @Override
+                        public void run() {
+                            send(encoder.abortSpeaking("user_interruption"));
+                        }
+                    }, turn.abortAfterMs);
+                }
+            } else if (XiaozhiProtocol.TTS_STOP.equals(state)) {
+                loop.stats().turn.recordNanos(now - turnStartNanos);
+                stats.turnsCompleted.incrementAndGet();
+                finishTurn();
+            }
+        }
+    }
+
+    @Override
+    public void onClose(int code, String reason, boolean remote) {
+        socket = null;
+        cancelTimers();
+        if (opened) {
+            stats.connected.decrementAndGet();
+        } else if (!stopping) {
+            stats.connectFailures.incrementAndGet();
+        }
+        if (stopping) {
+            stopListener.onStopped(this);
+            return;
+        }
+        if (opened) {
+            stats.drops.incrementAndGet();
+        }
+        scheduleReconnect();
+    }
+
+    private void beginConversation() {
+        turnIndex = 0;
+        scheduleTurn();
+    }
+
+    private void scheduleTurn() {
+        if (turnIndex >= script.turns.size()) {
+            if (!script.repeat) {
+                return; // hết kịch bản: giữ connection idle
+            }
+            turnIndex = 0;
+        }
+        final ConversationScript.Turn next = script.turns.get(turnIndex++);
+        // +/-25% để các device không gửi đồng loạt
+        long thinkMs = next.thinkMs * (75 + random.nextInt(51)) / 100;
+        thinkTimer = loop.schedule(new Runnable() {
+            @Override
+            public void run() {
+                startTurn(next);
+            }
+        }, thinkMs);
+    }
+
+    private void startTurn(ConversationScript.Turn next) {
+        if (socket == null || !socket.isOpen()) {
+            return;
+        }
+        turn = next;
+        sttPending = true;
+        ttsPending = true;
+        turnStartNanos = System.nanoTime();
+        stats.turnsStarted.incrementAndGet();
+
+        // Như app: StartListening rồi toàn bộ câu lệnh trong một Recognize
+        send(encoder.startListening(ListeningMode.AUTO_STOP.getValue()));
+        if (next.text != null) {
+            send(encoder.recognizeText(next.text));
+        } else {
+            send(encoder.recognizeAudio(next.pcm, 0, next.pcm.length, ConversationScript.SAMPLE_RATE, 1));
+            stats.audioBytesOut.addAndGet(next.pcm.length);
+        }
+
+        turnTimer = loop.schedule(new Runnable() {
+            @Override
+            public void run() {
+                stats.turnTimeouts.incrementAndGet();
+                finishTurn();
+            }
+        }, turnTimeoutMs);
+    }
+
+    private void finishTurn() {
+        turn = null;
+        sttPending = false;
+        ttsPending = false;
+        if (turnTimer != null) {
+            turnTimer.cancel();
+        }
+        if (abortTimer != null) {
+            abortTimer.cancel();
+        }
+        scheduleTurn();
+    }
+
+    private void send(ByteBuffer message) {
+        if (socket != null) {
+            socket.sendText(message);
+        }
+    }
+
+    /**
+     * Exponential backoff + jitter như ReconnectScheduler của app, ưu tiên retry_after của server
+     */
+    private void scheduleReconnect() {
+        long delayMs;
+        if (retryAfterMs >= 0) {
+            delayMs = retryAfterMs;
+            retryAfterMs = -1;
+        } else {
+            long backoff = Math.min(RECONNECT_MAX_MS, RECONNECT_BASE_MS << Math.min(reconnects, 5));
+            delayMs = backoff / 2 + (long) (random.nextDouble() * backoff / 2);
+        }
+        reconnects++;
+        reconnectTimer = loop.schedule(new Runnable() {
+            @Override
+            public void run() {
+                connect();
+            }
+        }, delayMs);
+    }
+
+    private void cancelTimers() {
+        EventLoop.Timer[] timers = {helloTimer, thinkTimer, turnTimer, abortTimer};
+        for (EventLoop.Timer timer : timers) {
+            if (timer != null) {
+                timer.cancel();
+            }
+        }
+        awaitingHello = false;
+        turn = null;
+    }
+}
@@ -0,0 +1,91 @@
+package com.phicomm.r1.xiaozhi.audio;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Chuỗi DSP xử lý mic frame trước khi detect / upload
+ *
+ * short -> float -> DC removal + high-pass -> noise suppression -> AGC -> short
+ *
+ * Frame kích thước cố định; mọi buffer allocate sẵn. Frame sai kích thước
+ * được bỏ qua nguyên trạng (không nên xảy ra với AudioRecord.read blocking).
+ *
+ * Không thread-safe: chỉ gọi từ recording thread (trừ getStats)
+ */
+public class AudioConditioner implements AudioStage {
+
+    private static final float HIGH_PASS_HZ = 100f;
+
+    private final int frameSize;
+    private final float[] work;
+    private final HighPassFilter highPass;
+    private final NoiseSuppressor noiseSuppressor;
+    private final AutomaticGainControl agc = new AutomaticGainControl();
+
+    private long frames = 0;
+    private long processNanos = 0;
+
+    public AudioConditioner(int sampleRate, int frameSize) {
+        this.frameSize = frameSize;
+        this.work = new float[frameSize];
+        this.highPass = new HighPassFilter(sampleRate, HIGH_PASS_HZ);
+        this.noiseSuppressor = new NoiseSuppressor(frameSize);
+    }
+
+    public void reset() {
+        highPass.reset();
+        noiseSuppressor.reset();
+        agc.reset();
+    }
+
+    @Override
+    public String getName() {
+        return "conditioner";
+    }
+
+    @Override
+    public void process(AudioFrame frame) {
+        process(frame.samples, frame.length);
+    }
+
+    /**
+     * Xử lý in-place một frame frameSize sample
+     */
+    public void process(short[] frame, int length) {
+        if (length != frameSize) {
+            return;
+        }
+        long start = System.nanoTime();
+
+        for (int i = 0; i < length; i++) {
+            work[i] = frame[i];
+        }
+        highPass.process(work, length);
+        noiseSuppressor.process(work, length);
+        agc.process(work, length);
+        for (int i = 0; i < length; i++) {
+            float x = work[i];
+            if (x > Short.MAX_VALUE) {
+                x = Short.MAX_VALUE;
+            } else if (x < Short.MIN_VALUE) {
+                x = Short.MIN_VALUE;
+            }
+            frame[i] = (short) x;
+        }
+
+        synchronized (this) {
+            frames++;
+            processNanos += System.nanoTime() - start;
+        }
+    }
+
+    public synchronized JSONObject getStats() throws JSONException {
+        JSONObject json = new JSONObject();
+        json.put("frames", frames);
+        json.put("avg_frame_us", frames > 0 ? processNanos / frames / 1000 : 0);
+        json.put("noise_floor_dbfs", Math.round(noiseSuppressor.getNoiseFloorDb() * 10) / 10.0);
+        json.put("agc_gain_db", Math.round(agc.getGainDb() * 10) / 10.0);
+        return json;
+    }
+}
@@ -0,0 +1,48 @@
+package com.phicomm.r1.xiaozhi.audio;
+
+/**
+ * Một frame audio đi qua AudioPipeline
+ *
+ * Được tái sử dụng cho mọi frame (không allocate trên audio thread):
+ * stage sửa samples in-place, sink chỉ đọc và phải copy nếu muốn giữ lại.
+ */
+public final class AudioFrame {
+
+    public final short[] samples;
+    public final int sampleRate;
+
+    /** Số sample hợp lệ trong samples */
+    public int length;
+
+    /** System.nanoTime() lúc sample cuối được capture */
+    public long captureNanos;
+
+    /** Số thứ tự frame, tăng dần - AudioPipeline gán */
+    public long sequence;
+
+    /** Số frame capture còn chờ sau frame này - > 0 nghĩa là processing đang chậm */
+    public int backlog;
+
+    // Feature - DspKernels.analyze() tính một lần mỗi frame, các consumer dùng chung
+    public int rms;
+    public int peak;
+    public int zeroCrossings;
+    /** Log energy (dBFS, Q8) */
+    public int logEnergyQ8;
+
+    public AudioFrame(int sampleRate, int capacity) {
+        this.sampleRate = sampleRate;
+        this.samples = new short[capacity];
+    }
+
+    /**
+     * Capture time của sample đầu tiên
+     */
+    public long getStartNanos() {
+        return captureNanos - length * 1000000000L / sampleRate;
+    }
+
+    public int getDurationMs() {
+        return length * 1000 / sampleRate;
+    }
+}
@@ -0,0 +1,132 @@
+package com.phicomm.r1.xiaozhi.audio;
+
+import com.phicomm.r1.xiaozhi.platform.Log;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Chuỗi xử lý audio theo frame
+ *
+ * capture -> stage 1 -> stage 2 -> ... -> fan-out tới mọi sink
+ *
+ * - Stage được thêm lúc setup (trước khi bắt đầu capture), chạy tuần tự
+ * - Sink có thể add/remove từ thread bất kỳ trong lúc đang chạy
+ * - Đo thời gian từng stage/sink (avg, max) để biết DSP nào tốn CPU
+ *
+ * process() chỉ gọi từ recording thread
+ */
+public class AudioPipeline {
+
+    private static final String TAG = "AudioPipeline";
+
+    private final List<Timed<AudioStage>> stages = new ArrayList<Timed<AudioStage>>();
+    private final List<Timed<AudioSink>> sinks = new CopyOnWriteArrayList<Timed<AudioSink>>();
+
+    private long sequence = 0;
+    private volatile long frames = 0;
+
+    /**
+     * Thêm stage vào cuối chain (chỉ gọi lúc setup)
+     */
+    public AudioPipeline addStage(AudioStage stage) {
+        stages.add(new Timed<AudioStage>(stage, stage.getName()));
+        return this;
+    }
+
+    public void addSink(AudioSink sink) {
+        sinks.add(new Timed<AudioSink>(sink, sink.getName()));
+        Log.d(TAG, "Sink added: " + sink.getName());
+    }
+
+    public void removeSink(AudioSink sink) {
+        for (Timed<AudioSink> timed : sinks) {
+            if (timed.target == sink) {
+                sinks.remove(timed);
+                Log.d(TAG, "Sink removed: " + sink.getName());
+                return;
+            }
+        }
+    }
+
+    /**
+     * Chạy một frame qua toàn bộ stage rồi fan-out tới sink
+     */
+    public void process(AudioFrame frame) {
+        frame.sequence = sequence++;
+
+        for (int i = 0; i < stages.size(); i++) {
+            Timed<AudioStage> timed = stages.get(i);
+            long start = System.nanoTime();
+            timed.target.process(frame);
+            timed.record(System.nanoTime() - start);
+        }
+
+        for (Timed<AudioSink> timed : sinks) {
+            long start = System.nanoTime();
+            try {
+                timed.target.onFrame(frame);
+            } catch (RuntimeException e) {
+                // Một sink lỗi không được làm dừng capture
+                Log.e(TAG, "Sink " + timed.name + " failed", e);
+            }
+            timed.record(System.nanoTime() - start);
+        }
+
+        frames++;
+    }
+
+    public JSONObject getStats() throws JSONException {
+        JSONObject json = new JSONObject();
+        json.put("frames", frames);
+
+        JSONObject stageStats = new JSONObject();
+        for (Timed<AudioStage> timed : stages) {
+            stageStats.put(timed.name, timed.toJson());
+        }
+        json.put("stages", stageStats);
+
+        JSONObject sinkStats = new JSONObject();
+        for (Timed<AudioSink> timed : sinks) {
+            sinkStats.put(timed.name, timed.toJson());
+        }
+        json.put("sinks", sinkStats);
+        return json;
+    }
+
+    /**
+     * Stage/sink kèm thống kê thời gian
+     */
+    private static class Timed<T> {
+        final T target;
+        final String name;
+        private long count = 0;
+        private long totalNanos = 0;
+        private long maxNanos = 0;
+
+        Timed(T target, String name) {
+            this.target = target;
+            this.name = name;
+        }
+
+        synchronized void record(long nanos) {
+            count++;
+            totalNanos += nanos;
+            if (nanos > maxNanos) {
+                maxNanos = nanos;
+            }
+        }
+
+        synchronized JSONObject toJson() throws JSONException {
+            JSONObject json = new JSONObject();
+            json.put("frames", count);
+            json.put("avg_us", count > 0 ? totalNanos / count / 1000 : 0);
+            json.put("max_us", maxNanos / 1000);
+            return json;
+        }
+    }
+}
@@ -0,0 +1,14 @@
+package com.phicomm.r1.xiaozhi.audio;
+
+/**
+ * Consumer cuối pipeline (uplink, LED meter, debug recorder...)
+ *
+ * Mọi sink nhận cùng một AudioFrame sau khi tất cả stage đã chạy - không copy.
+ * Sink chỉ được đọc frame, và phải copy nếu cần giữ dữ liệu sau khi onFrame trả về.
+ */
+public interface AudioSink {
+
+    String getName();
+
+    void onFrame(AudioFrame frame);
+}
@@ -0,0 +1,36 @@
+package com.phicomm.r1.xiaozhi.audio;
+
+import java.io.IOException;
+
+/**
+ * Nguồn PCM 16-bit cho capture loop
+ *
+ * Android: MicAudioSource (AudioRecord); JVM: WavFileSource (replay corpus)
+ */
+public interface AudioSource {
+
+    /** read() trả về giá trị này khi hết dữ liệu (file) */
+    int END_OF_STREAM = Integer.MIN_VALUE;
+
+    int getSampleRate();
+
+    /** Số kênh - sample được trả về interleaved */
+    int getChannels();
+
+    void start() throws IOException;
+
+    /**
+     * Đọc tối đa length short (block tới khi đủ với nguồn realtime)
+     *
+     * @return số short đã đọc, END_OF_STREAM, hoặc mã lỗi âm khác
+     */
+    int read(short[] buffer, int offset, int length);
+
+    /**
+     * Thời điểm (System.nanoTime() hoặc clock ảo khi replay) sample cuối
+     * của lần read() gần nhất được capture
+     */
+    long getCaptureNanos();
+
+    void release();
+}
@@ -0,0 +1,16 @@
+package com.phicomm.r1.xiaozhi.audio;
+
+/**
+ * Một bước xử lý trong AudioPipeline (AEC, gain, VAD, KWS...)
+ *
+ * Chạy tuần tự trên recording thread, được phép sửa frame in-place
+ */
+public interface AudioStage {
+
+    /**
+     * Tên ngắn, dùng làm key trong pipeline stats
+     */
+    String getName();
+
+    void process(AudioFrame frame);
+}
@@ -0,0 +1,67 @@
+package com.phicomm.r1.xiaozhi.audio;
+
+/**
+ * Automatic gain control về loudness mục tiêu
+ *
+ * Mic R1 far-field, level chênh ~30dB giữa các phòng:
+ * - Gain mục tiêu = TARGET_RMS / rms của frame (chỉ khi frame là speech - vượt noise gate)
+ * - Attack nhanh khi cần giảm gain, release chậm khi tăng -> không "bơm" noise giữa các câu
+ * - Gain ramp tuyến tính trong frame (không có bước nhảy) và peak limiter chống clip
+ *
+ * Không thread-safe
+ */
+public class AutomaticGainControl {
+
+    private static final float TARGET_RMS = 3277f;       // -20 dBFS
+    private static final float GATE_RMS = 200f;          // dưới mức này giữ nguyên gain
+    private static final float MAX_GAIN = 31.6f;         // +30dB
+    private static final float MIN_GAIN = 0.316f;        // -10dB
+    private static final float ATTACK = 0.5f;
+    private static final float RELEASE = 0.05f;
+    private static final float PEAK_LIMIT = 32000f;
+
+    private float gain = 1f;
+
+    public void reset() {
+        gain = 1f;
+    }
+
+    public float getGainDb() {
+        return (float) (20 * Math.log10(gain));
+    }
+
+    public void process(float[] frame, int length) {
+        if (length == 0) {
+            return;
+        }
+        float sum = 0f;
+        float peak = 0f;
+        for (int i = 0; i < length; i++) {
+            float x = frame[i];
+            sum += x * x;
+            float abs = x < 0 ? -x : x;
+            if (abs > peak) {
+                peak = abs;
+            }
+        }
+        float rms = (float) Math.sqrt(sum / length);
+
+        float target = gain;
+        if (rms > GATE_RMS) {
+            float desired = Math.max(MIN_GAIN, Math.min(MAX_GAIN, TARGET_RMS / rms));
+            target = gain + (desired < gain ? ATTACK : RELEASE) * (desired - gain);
+        }
+        // Limiter: không để peak của frame vượt PEAK_LIMIT
+        if (peak * target > PEAK_LIMIT) {
+            target = PEAK_LIMIT / peak;
+        }
+
+        float step = (target - gain) / length;
+        float g = gain;
+        for (int i = 0; i < length; i++) {
+            g += step;
+            frame[i] *= g;
+        }
+        gain = target;
+    }
+}
@@ -0,0 +1,152 @@
+package com.phicomm.r1.xiaozhi.audio;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Phát hiện user nói chen vào (barge-in) trong lúc TTS đang phát
+ *
+ * Mic nghe thấy cả loa, nên không dùng threshold cố định:
+ * - Có reference (PCM qua PcmPlayer -> EchoReference): echo dự đoán = coupling * RMS của reference
+ *   cùng thời điểm (max với frame trước để chịu lệch align). coupling (mic / reference, đo sau AEC
+ *   nếu AEC bật) được học trong khoảng đầu playback và khi không có speech -> đoạn TTS to sau phần
+ *   mở đầu nhỏ không tự ngắt chính nó
+ * - Không có reference (MediaPlayer) hoặc reference gần im lặng: học noise/echo floor (EWMA)
+ * - Trigger khi ONSET_FRAMES frame liên tiếp vượt echo dự đoán * ONSET_RATIO
+ *   (và vượt min threshold tuyệt đối)
+ * - Onset time = thời điểm capture của frame đầu tiên trong chuỗi, dùng để đo
+ *   latency từ lúc user bắt đầu nói tới lúc loa im
+ *
+ * Không thread-safe: chỉ gọi từ recording thread (trừ getStats)
+ */
+public class BargeInDetector {
+
+    private static final int ONSET_FRAMES = 3;           // 3 x 20ms
+    private static final int LEARNING_FRAMES = 10;       // 200ms đầu playback chỉ học floor
+    private static final double ONSET_RATIO = 2.5;
+    private static final double MIN_THRESHOLD = 1000.0;
+    private static final double FLOOR_ALPHA = 0.05;
+    private static final double INITIAL_FLOOR = 300.0;
+    private static final double MIN_REFERENCE_RMS = 100.0;  // Reference nhỏ hơn -> coi như loa im
+    private static final double MAX_COUPLING = 8.0;
+
+    /** Không có reference cho frame này */
+    public static final double NO_REFERENCE = -1;
+
+    private double floor = INITIAL_FLOOR;
+    private double coupling = -1;          // mic RMS / reference RMS, -1 = chưa học
+    private double previousReferenceRms = 0;
+    private int framesSeen = 0;
+    private int aboveCount = 0;
+    private long onsetNanos = 0;
+
+    // Latency stats (onset -> playback silenced)
+    private final Object statsLock = new Object();
+    private int triggers = 0;
+    private long lastLatencyMs = -1;
+    private long maxLatencyMs = 0;
+    private long totalLatencyMs = 0;
+
+    /**
+     * Reset khi bắt đầu một lượt playback mới
+     */
+    public void reset() {
+        floor = INITIAL_FLOOR;
+        coupling = -1;
+        previousReferenceRms = 0;
+        framesSeen = 0;
+        aboveCount = 0;
+        onsetNanos = 0;
+    }
+
+    /**
+     * Xử lý một frame không có reference
+     */
+    public boolean process(double rms, long captureNanos) {
+        return process(rms, NO_REFERENCE, captureNanos);
+    }
+
+    /**
+     * Xử lý một frame (nên ~20ms)
+     *
+     * @param rms RMS energy của frame
+     * @param referenceRms RMS của audio đang ra loa ứng với frame này, hoặc NO_REFERENCE
+     * @param captureNanos System.nanoTime() ước lượng lúc frame được capture
+     * @return true nếu phát hiện barge-in
+     */
+    public boolean process(double rms, double referenceRms, long captureNanos) {
+        framesSeen++;
+        double reference = referenceRms < 0 ? NO_REFERENCE : Math.max(referenceRms, previousReferenceRms);
+        previousReferenceRms = Math.max(0, referenceRms);
+        boolean audible = reference >= MIN_REFERENCE_RMS;
+
+        if (framesSeen <= LEARNING_FRAMES) {
+            learn(rms, reference, audible, FLOOR_ALPHA * 4);
+            return false;
+        }
+
+        double expected = audible && coupling >= 0 ? Math.max(floor, coupling * reference) : floor;
+        double threshold = Math.max(MIN_THRESHOLD, expected * ONSET_RATIO);
+        if (rms > threshold) {
+            if (aboveCount == 0) {
+                onsetNanos = captureNanos;
+            }
+            aboveCount++;
+            if (aboveCount >= ONSET_FRAMES) {
+                aboveCount = 0;
+                return true;
+            }
+        } else {
+            aboveCount = 0;
+            // Chỉ học khi không có speech để không "học" luôn giọng user
+            learn(rms, reference, audible, FLOOR_ALPHA);
+        }
+        return false;
+    }
+
+    /**
+     * Loa đang phát (có reference): học coupling; ngược lại học floor
+     */
+    private void learn(double rms, double reference, boolean audible, double alpha) {
+        if (audible) {
+            double ratio = Math.min(MAX_COUPLING, rms / reference);
+            coupling = coupling < 0 ? ratio : coupling + alpha * (ratio - coupling);
+        } else if (framesSeen == 1) {
+            floor = rms;
+        } else {
+            floor += alpha * (rms - floor);
+        }
+    }
+
+    /**
+     * Capture time của frame đầu tiên trong chuỗi trigger gần nhất
+     */
+    public long getOnsetNanos() {
+        return onsetNanos;
+    }
+
+    /**
+     * Ghi nhận thời điểm playback đã im lặng (sau stop + flush)
+     */
+    public long recordSilenced(long silencedNanos) {
+        long latencyMs = (silencedNanos - onsetNanos) / 1000000L;
+        synchronized (statsLock) {
+            triggers++;
+            lastLatencyMs = latencyMs;
+            maxLatencyMs = Math.max(maxLatencyMs, latencyMs);
+            totalLatencyMs += latencyMs;
+        }
+        return latencyMs;
+    }
+
+    public JSONObject getStats() throws JSONException {
+        JSONObject json = new JSONObject();
+        synchronized (statsLock) {
+            json.put("triggers", triggers);
+            json.put("last_latency_ms", lastLatencyMs);
+            json.put("max_latency_ms", maxLatencyMs);
+            json.put("avg_latency_ms", triggers > 0 ? totalLatencyMs / triggers : -1);
+        }
+        return json;
+    }
+}
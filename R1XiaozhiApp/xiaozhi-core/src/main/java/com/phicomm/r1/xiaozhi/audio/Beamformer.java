@@ -0,0 +1,216 @@
+package com.phicomm.r1.xiaozhi.audio;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Delay-and-sum beamformer cho mic array, steer bằng GCC-PHAT
+ *
+ * Input: frame interleaved N kênh -> output: một kênh mono đã tăng cường
+ * - Mỗi frame (khi có đủ năng lượng) ước lượng TDOA của kênh k so với kênh 0
+ *   bằng GCC-PHAT trên block 512 sample (Hann window, FFT dựng sẵn)
+ * - Đỉnh tương quan được nội suy parabol -> delay lẻ (sub-sample)
+ * - Chỉ cập nhật hướng khi đỉnh đủ rõ (coherent), delay được làm mượt
+ *   -> không bị noise / echo kéo hướng lung tung giữa các câu
+ * - Delay-and-sum với nội suy tuyến tính; độ trễ cố định maxLag sample
+ *
+ * DoA (góc tới) tính từ TDOA giữa kênh 0 và kênh 1 và khoảng cách mic.
+ *
+ * Không thread-safe: chỉ gọi từ recording thread (trừ getStats)
+ */
+public class Beamformer {
+
+    private static final int BLOCK = 512;
+    private static final float SPEED_OF_SOUND = 343f;
+    private static final float MIN_PEAK = 0.15f;         // PHAT peak tối thiểu để tin hướng
+    private static final float MIN_RMS = 300f;           // frame yếu -> giữ hướng cũ
+    private static final float DELAY_SMOOTHING = 0.3f;
+
+    private final int channels;
+    private final int sampleRate;
+    private final float micSpacing;
+    private final int maxLag;
+    private final int historySize;
+
+    private final Fft fft = new Fft(BLOCK);
+    private final float[] window = new float[BLOCK];
+    private final float[][] history;
+    private final float[] refRe = new float[BLOCK];
+    private final float[] refIm = new float[BLOCK];
+    private final float[] re = new float[BLOCK];
+    private final float[] im = new float[BLOCK];
+    private final float[] delays;          // delay của kênh k so với kênh 0 (sample)
+
+    // Stats
+    private long frames = 0;
+    private long steerUpdates = 0;
+    private long processNanos = 0;
+    private float lastPeak = 0f;
+
+    /**
+     * @param channels Số kênh mic (>= 2)
+     * @param frameSize Số sample mỗi kênh trong một frame
+     * @param micSpacingMeters Khoảng cách giữa hai mic liền kề
+     */
+    public Beamformer(int channels, int sampleRate, int frameSize, float micSpacingMeters) {
+        this.channels = channels;
+        this.sampleRate = sampleRate;
+        this.micSpacing = micSpacingMeters;
+        // Delay vật lý tối đa giữa kênh 0 và kênh xa nhất, + biên cho nội suy
+        float maxDelay = micSpacingMeters * (channels - 1) / SPEED_OF_SOUND * sampleRate;
+        this.maxLag = (int) Math.ceil(maxDelay) + 1;
+        this.historySize = Math.max(BLOCK, frameSize + 2 * maxLag + 2);
+        this.history = new float[channels][historySize];
+        this.delays = new float[channels];
+        for (int i = 0; i < BLOCK; i++) {
+            window[i] = (float) (0.5 - 0.5 * Math.cos(2 * Math.PI * i / BLOCK));
+        }
+    }
+
+    public int getChannels() {
+        return channels;
+    }
+
+    /**
+     * @param interleaved frames * channels sample (L R L R ...)
+     * @param frameCount Số sample mỗi kênh
+     * @param out Mono output (frameCount sample)
+     */
+    public void process(short[] interleaved, int frameCount, short[] out) {
+        long start = System.nanoTime();
+
+        // Dịch history và thêm frame mới (sample mới nhất ở cuối)
+        long sumSquares = 0;
+        for (int c = 0; c < channels; c++) {
+            float[] h = history[c];
+            System.arraycopy(h, frameCount, h, 0, historySize - frameCount);
+            int base = historySize - frameCount;
+            for (int i = 0; i < frameCount; i++) {
+                int x = interleaved[i * channels + c];
+                h[base + i] = x;
+                if (c == 0) {
+                    sumSquares += x * x;
+                }
+            }
+        }
+
+        if (frameCount > 0 && Math.sqrt((double) sumSquares / frameCount) > MIN_RMS) {
+            updateSteering();
+        }
+
+        // Delay-and-sum: đọc chậm maxLag sample để delay của mọi kênh luôn nằm trong history
+        float scale = 1f / channels;
+        int base = historySize - frameCount - maxLag;
+        for (int i = 0; i < frameCount; i++) {
+            float sum = 0f;
+            for (int c = 0; c < channels; c++) {
+                float position = base + i + delays[c];
+                int index = (int) position;
+                float frac = position - index;
+                float[] h = history[c];
+                sum += h[index] + (h[index + 1] - h[index]) * frac;
+            }
+            float y = sum * scale;
+            if (y > Short.MAX_VALUE) {
+                y = Short.MAX_VALUE;
+            } else if (y < Short.MIN_VALUE) {
+                y = Short.MIN_VALUE;
+            }
+            out[i] = (short) y;
+        }
+
+        synchronized (this) {
+            frames++;
+            processNanos += System.nanoTime() - start;
+        }
+    }
+
+    /**
+     * GCC-PHAT giữa kênh 0 và từng kênh còn lại trên BLOCK sample gần nhất
+     */
+    private void updateSteering() {
+        int offset = historySize - BLOCK;
+        float[] ref = history[0];
+        for (int i = 0; i < BLOCK; i++) {
+            refRe[i] = ref[offset + i] * window[i];
+            refIm[i] = 0f;
+        }
+        fft.forward(refRe, refIm);
+
+        float minPeak = Float.MAX_VALUE;
+        for (int c = 1; c < channels; c++) {
+            float[] h = history[c];
+            for (int i = 0; i < BLOCK; i++) {
+                re[i] = h[offset + i] * window[i];
+                im[i] = 0f;
+            }
+            fft.forward(re, im);
+
+            // Cross spectrum Xc * conj(X0), chuẩn hóa biên độ (PHAT)
+            for (int k = 0; k < BLOCK; k++) {
+                float cr = re[k] * refRe[k] + im[k] * refIm[k];
+                float ci = im[k] * refRe[k] - re[k] * refIm[k];
+                float magnitude = (float) Math.sqrt(cr * cr + ci * ci) + 1e-9f;
+                re[k] = cr / magnitude;
+                im[k] = ci / magnitude;
+            }
+            fft.inverse(re, im);
+
+            // Đỉnh trong [-maxLag, maxLag]: lag d > 0 = kênh c chậm hơn kênh 0 d sample
+            int bestLag = 0;
+            float best = -Float.MAX_VALUE;
+            for (int lag = -maxLag; lag <= maxLag; lag++) {
+                float value = re[(lag + BLOCK) % BLOCK];
+                if (value > best) {
+                    best = value;
+                    bestLag = lag;
+                }
+            }
+            minPeak = Math.min(minPeak, best);
+            if (best < MIN_PEAK) {
+                continue;
+            }
+
+            // Nội suy parabol quanh đỉnh
+            float left = re[(bestLag - 1 + BLOCK) % BLOCK];
+            float right = re[(bestLag + 1 + BLOCK) % BLOCK];
+            float denominator = left - 2 * best + right;
+            float fractional = denominator != 0f ? 0.5f * (left - right) / denominator : 0f;
+            float delay = bestLag + Math.max(-0.5f, Math.min(0.5f, fractional));
+            delay = Math.max(-maxLag + 1, Math.min(maxLag - 1, delay));
+
+            delays[c] += DELAY_SMOOTHING * (delay - delays[c]);
+        }
+
+        synchronized (this) {
+            lastPeak = minPeak;
+            if (minPeak >= MIN_PEAK) {
+                steerUpdates++;
+            }
+        }
+    }
+
+    /**
+     * Góc tới (độ) so với pháp tuyến của cặp mic 0-1
+     */
+    public synchronized double getDirectionDegrees() {
+        if (channels < 2 || micSpacing <= 0) {
+            return 0;
+        }
+        double sine = delays[1] * SPEED_OF_SOUND / sampleRate / micSpacing;
+        sine = Math.max(-1, Math.min(1, sine));
+        return Math.toDegrees(Math.asin(sine));
+    }
+
+    public synchronized JSONObject getStats() throws JSONException {
+        JSONObject json = new JSONObject();
+        json.put("channels", channels);
+        json.put("frames", frames);
+        json.put("steer_updates", steerUpdates);
+        json.put("direction_deg", Math.round(getDirectionDegrees()));
+        json.put("delay_samples", Math.round(delays[channels > 1 ? 1 : 0] * 100) / 100.0);
+        json.put("last_peak", Math.round(lastPeak * 100) / 100.0);
+        json.put("avg_frame_us", frames > 0 ? processNanos / frames / 1000 : 0);
+        return json;
+    }
+}
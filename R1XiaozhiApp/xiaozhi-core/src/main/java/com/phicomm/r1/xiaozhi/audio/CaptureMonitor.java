@@ -0,0 +1,121 @@
+package com.phicomm.r1.xiaozhi.audio;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Theo dõi sức khỏe của capture: mất sample, stall, lỗi đọc, degrade
+ *
+ * Gap detection: lag = wall time đã trôi - thời lượng sample đã nhận.
+ * Capture thread chỉ đọc nên lag dao động quanh một baseline; khi AudioRecord
+ * overflow (sample bị HAL bỏ) lag nhảy lên vĩnh viễn.
+ * - Một read() trễ (scheduling jitter) làm lag vọt lên rồi các read sau trả nhanh kéo về ->
+ *   chỉ tính gap khi lag cao hơn baseline GAP_CONFIRM_FRAMES frame liên tiếp; số ms mất là
+ *   mức vượt nhỏ nhất trong các frame đó (phần bền vững), baseline nâng lên đúng mức này
+ * - Clock của mic và System.nanoTime() lệch nhau (drift) -> baseline tăng chậm theo lag,
+ *   tối đa frameNanos / DRIFT_DIVISOR mỗi frame, giảm ngay khi lag thấp hơn
+ */
+public class CaptureMonitor {
+
+    private static final int GAP_CONFIRM_FRAMES = 5;
+    private static final long DRIFT_DIVISOR = 1000;  // ~1000 ppm
+
+    private final int sampleRate;
+    private final long frameNanos;
+    private final long driftStepNanos;
+
+    // Capture thread
+    private long startNanos = -1;
+    private long samplesCaptured = 0;
+    private long baselineLag = Long.MAX_VALUE;
+    private int highFrames = 0;
+    private long minJump = 0;
+
+    // Counters (đọc từ thread khác qua getStats)
+    private volatile long frames = 0;
+    private volatile long gaps = 0;
+    private volatile long lostMs = 0;
+    private volatile long readErrors = 0;
+    private volatile long stalls = 0;
+    private volatile long kwsSkipped = 0;
+    private volatile long degradedFrames = 0;
+
+    public CaptureMonitor(int sampleRate, int frameSamples) {
+        this.sampleRate = sampleRate;
+        this.frameNanos = frameSamples * 1000000000L / sampleRate;
+        this.driftStepNanos = Math.max(1, frameNanos / DRIFT_DIVISOR);
+    }
+
+    /**
+     * Capture thread: một frame vừa đọc xong
+     *
+     * @return true nếu gap (mất sample) vừa được xác nhận ở frame này
+     */
+    public boolean onCaptured(int samples, long captureNanos) {
+        frames++;
+        if (startNanos < 0) {
+            startNanos = captureNanos - samples * 1000000000L / sampleRate;
+        }
+        samplesCaptured += samples;
+
+        long lag = (captureNanos - startNanos) - samplesCaptured * 1000000000L / sampleRate;
+        if (lag < baselineLag) {
+            baselineLag = lag;
+            highFrames = 0;
+            return false;
+        }
+        long jump = lag - baselineLag;
+        if (jump <= frameNanos) {
+            highFrames = 0;
+            baselineLag += Math.min(jump, driftStepNanos);
+            return false;
+        }
+        minJump = highFrames == 0 ? jump : Math.min(minJump, jump);
+        if (++highFrames < GAP_CONFIRM_FRAMES) {
+            return false;
+        }
+        gaps++;
+        lostMs += minJump / 1000000L;
+        baselineLag += minJump;
+        highFrames = 0;
+        return true;
+    }
+
+    public void onReadError() {
+        readErrors++;
+    }
+
+    /**
+     * Processing thread: chờ quá lâu không có frame (capture bị kẹt)
+     */
+    public void onStall() {
+        stalls++;
+    }
+
+    public void onDegraded() {
+        degradedFrames++;
+    }
+
+    public void onKwsSkipped() {
+        kwsSkipped++;
+    }
+
+    public long getGaps() {
+        return gaps;
+    }
+
+    public JSONObject getStats(CaptureRing ring) throws JSONException {
+        JSONObject json = new JSONObject();
+        json.put("frames", frames);
+        json.put("overruns", ring != null ? ring.getOverruns() : 0);
+        json.put("backlog", ring != null ? ring.size() : 0);
+        json.put("max_backlog", ring != null ? ring.getMaxBacklog() : 0);
+        json.put("gaps", gaps);
+        json.put("lost_ms", lostMs);
+        json.put("stalls", stalls);
+        json.put("read_errors", readErrors);
+        json.put("degraded_frames", degradedFrames);
+        json.put("kws_skipped", kwsSkipped);
+        return json;
+    }
+}
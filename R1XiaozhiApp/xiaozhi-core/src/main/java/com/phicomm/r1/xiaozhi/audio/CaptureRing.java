@@ -0,0 +1,144 @@
+package com.phicomm.r1.xiaozhi.audio;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Ring buffer lock-free một producer / một consumer giữa capture và processing
+ *
+ * - Slot được allocate sẵn: capture thread đọc AudioRecord thẳng vào slot.data
+ * - Producer không bao giờ block: ring đầy -> claim() trả về null (overrun),
+ *   caller đọc vào slot tạm và bỏ frame đó
+ * - head/tail là AtomicLong, publish bằng lazySet (release) - không lock, không CAS
+ * - Consumer park khi rỗng, producer unpark sau mỗi publish
+ */
+public class CaptureRing {
+
+    /**
+     * Một frame capture thô (interleaved nếu nhiều kênh)
+     */
+    public static final class Slot {
+        public final short[] data;
+        public int length;
+        public long captureNanos;
+
+        Slot(int capacity) {
+            this.data = new short[capacity];
+        }
+    }
+
+    private final Slot[] slots;
+    private final int mask;
+    private final Slot scratch;
+
+    private final AtomicLong head = new AtomicLong();   // slot tiếp theo producer ghi
+    private final AtomicLong tail = new AtomicLong();   // slot tiếp theo consumer đọc
+    private volatile Thread consumer;
+
+    private final AtomicLong overruns = new AtomicLong();
+    private volatile int maxBacklog = 0;
+
+    /**
+     * @param slotCount Số slot (lũy thừa của 2)
+     * @param slotCapacity Số short mỗi slot
+     */
+    public CaptureRing(int slotCount, int slotCapacity) {
+        if (slotCount < 2 || (slotCount & (slotCount - 1)) != 0) {
+            throw new IllegalArgumentException("slotCount must be a power of 2: " + slotCount);
+        }
+        slots = new Slot[slotCount];
+        for (int i = 0; i < slotCount; i++) {
+            slots[i] = new Slot(slotCapacity);
+        }
+        mask = slotCount - 1;
+        scratch = new Slot(slotCapacity);
+    }
+
+    // ===== Producer (capture thread) =====
+
+    /**
+     * Slot để ghi frame tiếp theo, hoặc null nếu ring đầy
+     */
+    public Slot claim() {
+        long h = head.get();
+        if (h - tail.get() >= slots.length) {
+            return null;
+        }
+        return slots[(int) (h & mask)];
+    }
+
+    /**
+     * Slot tạm để vẫn drain AudioRecord khi ring đầy (frame sẽ bị bỏ)
+     */
+    public Slot scratch() {
+        overruns.incrementAndGet();
+        return scratch;
+    }
+
+    public void publish() {
+        long h = head.get() + 1;
+        head.lazySet(h);
+        int backlog = (int) (h - tail.get());
+        if (backlog > maxBacklog) {
+            maxBacklog = backlog;
+        }
+        Thread waiting = consumer;
+        if (waiting != null) {
+            LockSupport.unpark(waiting);
+        }
+    }
+
+    // ===== Consumer (processing thread) =====
+
+    /**
+     * Chờ frame tiếp theo
+     *
+     * @return null nếu hết timeout hoặc thread bị interrupt
+     */
+    public Slot take(long timeout, TimeUnit unit) {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        consumer = Thread.currentThread();
+        while (tail.get() == head.get()) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0 || Thread.currentThread().isInterrupted()) {
+                return null;
+            }
+            LockSupport.parkNanos(this, remaining);
+        }
+        return slots[(int) (tail.get() & mask)];
+    }
+
+    /**
+     * Trả slot vừa xử lý xong cho producer
+     */
+    public void release() {
+        tail.lazySet(tail.get() + 1);
+    }
+
+    /**
+     * Số frame đang chờ xử lý
+     */
+    public int size() {
+        return (int) (head.get() - tail.get());
+    }
+
+    public int capacity() {
+        return slots.length;
+    }
+
+    public long getOverruns() {
+        return overruns.get();
+    }
+
+    public int getMaxBacklog() {
+        return maxBacklog;
+    }
+
+    /**
+     * Bỏ mọi frame đang chờ (chỉ gọi từ consumer)
+     */
+    public void clear() {
+        tail.lazySet(head.get());
+    }
+}
@@ -0,0 +1,145 @@
+package com.phicomm.r1.xiaozhi.audio;
+
+/**
+ * Kernel tính feature cho frame PCM 16-bit - số nguyên / fixed-point
+ *
+ * R1 là ARMv7 nhiều softfloat: double MAC + Math.sqrt cho từng frame rất đắt.
+ * analyze() tính RMS, peak, zero-crossing và log energy trong MỘT vòng lặp
+ * chỉ dùng int/long, không nhánh trong thân vòng (dễ cho JIT/AOT unroll):
+ * - x*x luôn vừa int (32768² = 2^30), tổng tích lũy bằng long
+ * - zero crossing = bit dấu của (prev ^ x)
+ * - sqrt / log2 bằng integer sqrt và bảng mantissa 32 phần tử
+ *
+ * Pure Java, không phụ thuộc Android
+ */
+public final class DspKernels {
+
+    /** Log energy khi frame hoàn toàn im lặng (dBFS, Q8) */
+    public static final int SILENCE_DB_Q8 = -120 << 8;
+
+    private static final int LOG2_FRACTION_BITS = 5;
+    private static final int[] LOG2_MANTISSA_Q16 = new int[1 << LOG2_FRACTION_BITS];
+
+    // 10 * log10(2) trong Q8
+    private static final int DB_PER_OCTAVE_Q8 = 771;
+
+    // Full scale power = 32768² = 2^30
+    private static final int FULL_SCALE_LOG2 = 30;
+
+    static {
+        for (int i = 0; i < LOG2_MANTISSA_Q16.length; i++) {
+            // Giữa mỗi khoảng -> sai số tối đa ~0.02 bit (~0.07dB)
+            double mantissa = 1.0 + (i + 0.5) / LOG2_MANTISSA_Q16.length;
+            LOG2_MANTISSA_Q16[i] = (int) Math.round(Math.log(mantissa) / Math.log(2) * 65536);
+        }
+    }
+
+    private DspKernels() {
+    }
+
+    /**
+     * Tính toàn bộ feature của frame trong một pass, ghi vào frame
+     */
+    public static void analyze(AudioFrame frame) {
+        short[] samples = frame.samples;
+        int length = frame.length;
+        if (length <= 0) {
+            frame.rms = 0;
+            frame.peak = 0;
+            frame.zeroCrossings = 0;
+            frame.logEnergyQ8 = SILENCE_DB_Q8;
+            return;
+        }
+
+        long sumSquares = 0;
+        int peak = 0;
+        int crossings = 0;
+        int prev = samples[0];
+
+        for (int i = 0; i < length; i++) {
+            int x = samples[i];
+            sumSquares += x * x;
+            int abs = (x ^ (x >> 31)) - (x >> 31);
+            peak = Math.max(peak, abs);
+            crossings += (prev ^ x) >>> 31;
+            prev = x;
+        }
+
+        long meanPower = sumSquares / length;
+        frame.rms = isqrt(meanPower);
+        frame.peak = peak;
+        frame.zeroCrossings = crossings;
+        frame.logEnergyQ8 = powerToDbfsQ8(sumSquares, length);
+    }
+
+    /**
+     * RMS (integer) của một đoạn sample
+     */
+    public static int rms(short[] samples, int offset, int length) {
+        if (length <= 0) {
+            return 0;
+        }
+        long sumSquares = 0;
+        for (int i = offset; i < offset + length; i++) {
+            int x = samples[i];
+            sumSquares += x * x;
+        }
+        return isqrt(sumSquares / length);
+    }
+
+    /**
+     * floor(sqrt(value)) - thuần số nguyên (bit-by-bit)
+     */
+    public static int isqrt(long value) {
+        if (value <= 0) {
+            return 0;
+        }
+        long result = 0;
+        long bit = 1L << ((63 - Long.numberOfLeadingZeros(value)) & ~1);
+        while (bit != 0) {
+            if (value >= result + bit) {
+                value -= result + bit;
+                result = (result >> 1) + bit;
+            } else {
+                result >>= 1;
+            }
+            bit >>= 2;
+        }
+        return (int) result;
+    }
+
+    /**
+     * log2(value) trong Q16 (value > 0)
+     */
+    public static int log2Q16(long value) {
+        if (value <= 0) {
+            return Integer.MIN_VALUE;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        long normalized = exponent >= LOG2_FRACTION_BITS
+            ? value >>> (exponent - LOG2_FRACTION_BITS)
+            : value << (LOG2_FRACTION_BITS - exponent);
+        int index = (int) (normalized & ((1 << LOG2_FRACTION_BITS) - 1));
+        return (exponent << 16) + LOG2_MANTISSA_Q16[index];
+    }
+
+    /**
+     * Mean power (sumSquares / count) -> dBFS trong Q8
+     * Chia trong miền log để frame rất nhỏ không bị làm tròn về 0
+     */
+    public static int powerToDbfsQ8(long sumSquares, int count) {
+        if (sumSquares <= 0 || count <= 0) {
+            return SILENCE_DB_Q8;
+        }
+        long log2Relative = (long) log2Q16(sumSquares) - log2Q16(count) - ((long) FULL_SCALE_LOG2 << 16);
+        int db = (int) ((log2Relative * DB_PER_OCTAVE_Q8) >> 16);
+        return Math.max(SILENCE_DB_Q8, db);
+    }
+
+    /**
+     * Q8 -> float (cho log / metrics)
+     */
+    public static float q8ToFloat(int q8) {
+        return q8 / 256f;
+    }
+}
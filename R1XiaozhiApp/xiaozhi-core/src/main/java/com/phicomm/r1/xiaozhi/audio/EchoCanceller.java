@@ -0,0 +1,170 @@
+package com.phicomm.r1.xiaozhi.audio;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Acoustic echo canceller - NLMS adaptive FIR filter
+ *
+ * e[n] = d[n] - w · x[n]          (d: mic, x: playback reference)
+ * w   += mu * e[n] * x[n] / (|x|² + delta)
+ *
+ * - 256 taps @ 16kHz = 16ms echo tail sau khi đã align bằng EchoReference
+ *   (~8M MAC/s - dư sức trên một core ARMv7)
+ * - History được lưu hai lần liên tiếp (buffer 2L) nên dot product luôn contiguous
+ * - Geigel double-talk detector: freeze adaptation khi user nói để filter không
+ *   học giọng user thành echo
+ * - ERLE (echo return loss enhancement) được tính để theo dõi hiệu quả
+ *
+ * Không thread-safe: chỉ gọi từ recording thread (trừ getStats)
+ */
+public class EchoCanceller {
+
+    public static final int DEFAULT_TAPS = 256;
+
+    private static final float MU = 0.3f;
+    private static final float DELTA = 1e4f;
+    private static final float GEIGEL_THRESHOLD = 1.2f;  // |mic| > 1.2 * max|ref| -> double-talk
+    private static final int HANGOVER_SAMPLES = 480;     // 30ms giữ freeze sau double-talk
+    private static final double ERLE_ALPHA = 0.02;
+
+    private final int taps;
+    private final float[] weights;
+    private final float[] history;   // 2 * taps
+    private int pos = 0;
+    private float historyEnergy = 0f;
+    private int hangover = 0;
+
+    // Stats
+    private double micPower = 0;
+    private double residualPower = 0;
+    private long framesProcessed = 0;
+    private long framesFrozen = 0;
+    private long processNanos = 0;
+
+    public EchoCanceller() {
+        this(DEFAULT_TAPS);
+    }
+
+    public EchoCanceller(int taps) {
+        this.taps = taps;
+        this.weights = new float[taps];
+        this.history = new float[taps * 2];
+    }
+
+    public void reset() {
+        for (int i = 0; i < taps; i++) {
+            weights[i] = 0f;
+        }
+        for (int i = 0; i < history.length; i++) {
+            history[i] = 0f;
+        }
+        pos = 0;
+        historyEnergy = 0f;
+        hangover = 0;
+    }
+
+    /**
+     * Xử lý một frame in-place
+     *
+     * @param mic Mic samples (bị ghi đè bằng residual)
+     * @param ref Reference samples đã align (cùng độ dài)
+     * @param count Số sample
+     */
+    public void process(short[] mic, short[] ref, int count) {
+        long start = System.nanoTime();
+        boolean frozen = false;
+        double frameMic = 0;
+        double frameOut = 0;
+
+        for (int n = 0; n < count; n++) {
+            float x = ref[n];
+
+            // Cập nhật history (ghi đôi) và năng lượng trượt
+            float old = history[pos];
+            historyEnergy += x * x - old * old;
+            if (historyEnergy < 0f) {
+                historyEnergy = 0f;
+            }
+            history[pos] = x;
+            history[pos + taps] = x;
+
+            // Window x[n], x[n-1], ... nằm ở history[pos + taps - k] -> dùng đoạn contiguous
+            int base = pos + 1;     // history[base .. base + taps - 1] = x[n - taps + 1 .. n]
+            float y = 0f;
+            float maxRef = 0f;
+            for (int k = 0; k < taps; k++) {
+                float h = history[base + k];
+                y += weights[k] * h;
+                float abs = h < 0 ? -h : h;
+                if (abs > maxRef) {
+                    maxRef = abs;
+                }
+            }
+
+            float d = mic[n];
+            float e = d - y;
+
+            // Geigel: |d| lớn hơn nhiều so với echo có thể có -> đang double-talk
+            float absD = d < 0 ? -d : d;
+            if (maxRef > 0f && absD > GEIGEL_THRESHOLD * maxRef) {
+                hangover = HANGOVER_SAMPLES;
+            }
+
+            if (hangover > 0) {
+                hangover--;
+                frozen = true;
+            } else if (maxRef > 0f) {
+                float g = MU * e / (historyEnergy + DELTA);
+                for (int k = 0; k < taps; k++) {
+                    weights[k] += g * history[base + k];
+                }
+            }
+
+            if (e > Short.MAX_VALUE) {
+                e = Short.MAX_VALUE;
+            } else if (e < Short.MIN_VALUE) {
+                e = Short.MIN_VALUE;
+            }
+            mic[n] = (short) e;
+
+            frameMic += d * d;
+            frameOut += e * e;
+
+            pos++;
+            if (pos == taps) {
+                pos = 0;
+            }
+        }
+
+        synchronized (this) {
+            micPower += ERLE_ALPHA * (frameMic / count - micPower);
+            residualPower += ERLE_ALPHA * (frameOut / count - residualPower);
+            framesProcessed++;
+            if (frozen) {
+                framesFrozen++;
+            }
+            processNanos += System.nanoTime() - start;
+        }
+    }
+
+    /**
+     * ERLE (dB) - càng cao càng triệt echo tốt
+     */
+    public synchronized double getErleDb() {
+        if (residualPower <= 0 || micPower <= 0) {
+            return 0;
+        }
+        return 10 * Math.log10(micPower / residualPower);
+    }
+
+    public synchronized JSONObject getStats() throws JSONException {
+        JSONObject json = new JSONObject();
+        json.put("taps", taps);
+        json.put("erle_db", Math.round(getErleDb() * 10) / 10.0);
+        json.put("frames", framesProcessed);
+        json.put("frames_double_talk", framesFrozen);
+        json.put("avg_frame_us", framesProcessed > 0 ? processNanos / framesProcessed / 1000 : 0);
+        return json;
+    }
+}
@@ -0,0 +1,148 @@
+package com.phicomm.r1.xiaozhi.audio;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Playback reference cho echo canceller
+ *
+ * PcmPlayer ghi mọi sample đưa vào AudioTrack (downmix mono), đánh index theo
+ * frame position của AudioTrack. Kèm theo là cặp (framePosition, nanoTime) từ
+ * AudioTrack.getTimestamp() (hoặc playback head) - cho biết frame nào đang ra loa
+ * tại thời điểm nào.
+ *
+ * Mic side chỉ cần capture time -> read() trả về đúng đoạn reference
+ * đã phát ra loa trong khoảng thời gian đó (resample về mic rate nếu cần).
+ */
+public class EchoReference {
+
+    private static final int CAPACITY_MS = 1000;
+
+    private static EchoReference instance;
+
+    private short[] ring = new short[0];
+    private int sampleRate = 16000;
+    private long writeFrame = 0;     // frame position của sample tiếp theo
+    private boolean active = false;
+
+    // Anchor: frame tại thời điểm (ns)
+    private long anchorFrame = -1;
+    private long anchorNanos = 0;
+
+    // Bulk delay cố định thêm vào (capture latency của mic, acoustic path không đáng kể), ms
+    private int extraDelayMs = 0;
+
+    public static synchronized EchoReference getInstance() {
+        if (instance == null) {
+            instance = new EchoReference();
+        }
+        return instance;
+    }
+
+    /**
+     * Bắt đầu một lượt playback
+     *
+     * @param startFrame Playback head position của sample đầu tiên sẽ được ghi
+     */
+    public synchronized void start(int sampleRate, long startFrame) {
+        int capacity = sampleRate * CAPACITY_MS / 1000;
+        if (ring.length != capacity) {
+            ring = new short[capacity];
+        }
+        this.sampleRate = sampleRate;
+        this.writeFrame = startFrame;
+        this.anchorFrame = -1;
+        this.active = true;
+    }
+
+    /**
+     * Playback dừng (stop / flush) - reference không còn hợp lệ
+     */
+    public synchronized void stop() {
+        active = false;
+        anchorFrame = -1;
+    }
+
+    public synchronized boolean isActive() {
+        return active && anchorFrame >= 0;
+    }
+
+    /**
+     * Mic stamp captureNanos sau khi read() trả về -> reference phải lùi thêm đúng độ trễ đó
+     * (VoiceRecognitionService set từ MicAudioSource.getCaptureLatencyMs())
+     */
+    public synchronized void setExtraDelayMs(int delayMs) {
+        extraDelayMs = Math.max(0, delayMs);
+    }
+
+    /**
+     * Ghi chunk PCM 16-bit LE vừa đưa vào AudioTrack (position -> limit)
+     */
+    public synchronized void write(ByteBuffer chunk, int channels) {
+        if (!active) {
+            return;
+        }
+        ByteBuffer pcm = chunk.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        int frameBytes = 2 * channels;
+        while (pcm.remaining() >= frameBytes) {
+            int sample;
+            if (channels == 2) {
+                sample = (pcm.getShort() + pcm.getShort()) >> 1;
+            } else {
+                sample = pcm.getShort();
+            }
+            ring[(int) (writeFrame % ring.length)] = (short) sample;
+            writeFrame++;
+        }
+    }
+
+    /**
+     * Cập nhật anchor: frame đang ra loa tại thời điểm nanoTime
+     */
+    public synchronized void updateTimestamp(long framePosition, long nanoTime) {
+        if (!active) {
+            return;
+        }
+        anchorFrame = framePosition;
+        anchorNanos = nanoTime;
+    }
+
+    /**
+     * Lấy reference tương ứng với một mic frame
+     *
+     * @param captureEndNanos System.nanoTime() lúc sample cuối của mic frame được capture
+     * @param out Output buffer (mic rate)
+     * @param count Số sample
+     * @param micRate Sample rate của mic
+     * @return false nếu không có playback (out được điền 0)
+     */
+    public synchronized boolean read(long captureEndNanos, short[] out, int count, int micRate) {
+        if (!active || anchorFrame < 0) {
+            for (int i = 0; i < count; i++) {
+                out[i] = 0;
+            }
+            return false;
+        }
+
+        double step = (double) sampleRate / micRate;
+        double endFrame = anchorFrame
+            + (captureEndNanos - anchorNanos) * (double) sampleRate / 1e9
+            - (double) sampleRate * extraDelayMs / 1000;
+        long oldest = Math.max(0, writeFrame - ring.length);
+
+        for (int i = 0; i < count; i++) {
+            double position = endFrame - (count - i) * step;
+            long frame = (long) Math.floor(position);
+            if (frame < oldest || frame + 1 >= writeFrame) {
+                out[i] = 0;
+                continue;
+            }
+            // Linear interpolation (resample playback rate -> mic rate)
+            double frac = position - frame;
+            int a = ring[(int) (frame % ring.length)];
+            int b = ring[(int) ((frame + 1) % ring.length)];
+            out[i] = (short) (a + (b - a) * frac);
+        }
+        return true;
+    }
+}
@@ -0,0 +1,96 @@
+package com.phicomm.r1.xiaozhi.audio;
+
+/**
+ * Radix-2 complex FFT in-place, kích thước cố định
+ *
+ * Twiddle factors và bảng bit-reversal được tính sẵn trong constructor -
+ * forward()/inverse() không allocate, an toàn để gọi mỗi frame trên audio thread.
+ *
+ * Không thread-safe
+ */
+public class Fft {
+
+    private final int size;
+    private final float[] cos;
+    private final float[] sin;
+    private final int[] reversed;
+
+    /**
+     * @param size Kích thước FFT (lũy thừa của 2)
+     */
+    public Fft(int size) {
+        if (size < 2 || (size & (size - 1)) != 0) {
+            throw new IllegalArgumentException("FFT size must be a power of 2: " + size);
+        }
+        this.size = size;
+        this.cos = new float[size / 2];
+        this.sin = new float[size / 2];
+        for (int i = 0; i < size / 2; i++) {
+            double angle = -2 * Math.PI * i / size;
+            cos[i] = (float) Math.cos(angle);
+            sin[i] = (float) Math.sin(angle);
+        }
+
+        this.reversed = new int[size];
+        int bits = Integer.numberOfTrailingZeros(size);
+        for (int i = 0; i < size; i++) {
+            reversed[i] = Integer.reverse(i) >>> (32 - bits);
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Forward FFT: (re, im) bị ghi đè bằng spectrum
+     */
+    public void forward(float[] re, float[] im) {
+        transform(re, im, false);
+    }
+
+    /**
+     * Inverse FFT (đã chia cho N)
+     */
+    public void inverse(float[] re, float[] im) {
+        transform(re, im, true);
+        float scale = 1f / size;
+        for (int i = 0; i < size; i++) {
+            re[i] *= scale;
+            im[i] *= scale;
+        }
+    }
+
+    private void transform(float[] re, float[] im, boolean inverse) {
+        for (int i = 0; i < size; i++) {
+            int j = reversed[i];
+            if (j > i) {
+                float t = re[i];
+                re[i] = re[j];
+                re[j] = t;
+                t = im[i];
+                im[i] = im[j];
+                im[j] = t;
+            }
+        }
+
+        for (int len = 2; len <= size; len <<= 1) {
+            int half = len >> 1;
+            int step = size / len;
+            for (int start = 0; start < size; start += len) {
+                for (int k = 0; k < half; k++) {
+                    float wr = cos[k * step];
+                    float wi = inverse ? -sin[k * step] : sin[k * step];
+                    int a = start + k;
+                    int b = a + half;
+                    float tr = re[b] * wr - im[b] * wi;
+                    float ti = re[b] * wi + im[b] * wr;
+                    re[b] = re[a] - tr;
+                    im[b] = im[a] - ti;
+                    re[a] += tr;
+                    im[a] += ti;
+                }
+            }
+        }
+    }
+}
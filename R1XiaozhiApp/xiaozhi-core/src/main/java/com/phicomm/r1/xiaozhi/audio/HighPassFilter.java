@@ -0,0 +1,68 @@
+package com.phicomm.r1.xiaozhi.audio;
+
+/**
+ * DC removal + high-pass biquad (Butterworth bậc 2)
+ *
+ * - DC blocker một cực: y = x - x[n-1] + R * y[n-1] (R = 0.995 ~ 13Hz @ 16kHz)
+ * - Biquad high-pass cắt tiếng ù/rung (quạt, điều hòa, rung loa qua vỏ R1) dưới cutoff
+ *
+ * Không thread-safe
+ */
+public class HighPassFilter {
+
+    private static final float DC_POLE = 0.995f;
+
+    private final float b0;
+    private final float b1;
+    private final float b2;
+    private final float a1;
+    private final float a2;
+
+    private float dcX1 = 0f;
+    private float dcY1 = 0f;
+    private float x1 = 0f;
+    private float x2 = 0f;
+    private float y1 = 0f;
+    private float y2 = 0f;
+
+    public HighPassFilter(int sampleRate, float cutoffHz) {
+        // RBJ cookbook, Q = 1/sqrt(2)
+        double w0 = 2 * Math.PI * cutoffHz / sampleRate;
+        double alpha = Math.sin(w0) / (2 * Math.sqrt(0.5));
+        double cosW0 = Math.cos(w0);
+        double a0 = 1 + alpha;
+        b0 = (float) ((1 + cosW0) / 2 / a0);
+        b1 = (float) (-(1 + cosW0) / a0);
+        b2 = b0;
+        a1 = (float) (-2 * cosW0 / a0);
+        a2 = (float) ((1 - alpha) / a0);
+    }
+
+    public void reset() {
+        dcX1 = dcY1 = 0f;
+        x1 = x2 = y1 = y2 = 0f;
+    }
+
+    public void process(float[] frame, int length) {
+        for (int i = 0; i < length; i++) {
+            float x = frame[i];
+
+            float dc = x - dcX1 + DC_POLE * dcY1;
+            dcX1 = x;
+            dcY1 = dc;
+
+            float y = b0 * dc + b1 * x1 + b2 * x2 - a1 * y1 - a2 * y2;
+            x2 = x1;
+            x1 = dc;
+            y2 = y1;
+            y1 = y;
+            frame[i] = y;
+        }
+        // Tránh denormal khi input im lặng kéo dài
+        if (Math.abs(y1) < 1e-6f) {
+            y1 = 0f;
+            y2 = 0f;
+            dcY1 = 0f;
+        }
+    }
+}
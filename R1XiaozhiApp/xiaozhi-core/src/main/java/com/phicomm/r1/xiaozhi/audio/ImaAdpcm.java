@@ -0,0 +1,160 @@
+package com.phicomm.r1.xiaozhi.audio;
+
+/**
+ * IMA ADPCM 4 bit / sample (nén 4:1 so với PCM 16-bit), định dạng block của WAV (format 0x11)
+ *
+ * Mỗi block mono: header 4 byte (sample đầu int16 LE, step index, 0) + các nibble, nibble thấp
+ * trước. File WAV tạo ra mở được bằng Audacity / ffmpeg / sox mà không cần tool riêng.
+ *
+ * Encoder giữ state giữa các frame, không cấp phát - dùng được trên capture thread.
+ */
+public final class ImaAdpcm {
+
+    private static final int[] INDEX_TABLE = {
+        -1, -1, -1, -1, 2, 4, 6, 8,
+        -1, -1, -1, -1, 2, 4, 6, 8
+    };
+
+    private static final int[] STEP_TABLE = {
+        7, 8, 9, 10, 11, 12, 13, 14, 16, 17,
+        19, 21, 23, 25, 28, 31, 34, 37, 41, 45,
+        50, 55, 60, 66, 73, 80, 88, 97, 107, 118,
+        130, 143, 157, 173, 190, 209, 230, 253, 279, 307,
+        337, 371, 408, 449, 494, 544, 598, 658, 724, 796,
+        876, 963, 1060, 1166, 1282, 1411, 1552, 1707, 1878, 2066,
+        2272, 2499, 2749, 3024, 3327, 3660, 4026, 4428, 4871, 5358,
+        5894, 6484, 7132, 7845, 8630, 9493, 10442, 11487, 12635, 13899,
+        15289, 16818, 18500, 20350, 22385, 24623, 27086, 29794, 32767
+    };
+
+    public static final int BLOCK_HEADER_BYTES = 4;
+
+    private ImaAdpcm() {
+    }
+
+    /**
+     * Số sample trong một block mono blockBytes byte (header chứa sample đầu tiên)
+     */
+    public static int samplesPerBlock(int blockBytes) {
+        return (blockBytes - BLOCK_HEADER_BYTES) * 2 + 1;
+    }
+
+    /**
+     * State encode / decode của một kênh
+     */
+    public static final class State {
+        int predictor;
+        int index;
+
+        public void reset() {
+            predictor = 0;
+            index = 0;
+        }
+
+        /**
+         * Bắt đầu block: sample đầu được lưu nguyên trong header
+         */
+        public void startBlock(int sample) {
+            predictor = sample;
+        }
+
+        public int getPredictor() {
+            return predictor;
+        }
+
+        public int getIndex() {
+            return index;
+        }
+
+        public void set(int predictor, int index) {
+            this.predictor = predictor;
+            this.index = index;
+        }
+
+        /**
+         * @return nibble 4 bit
+         */
+        public int encode(int sample) {
+            int step = STEP_TABLE[index];
+            int diff = sample - predictor;
+            int nibble = 0;
+            if (diff < 0) {
+                nibble = 8;
+                diff = -diff;
+            }
+            // Dựng lại đúng giá trị decoder sẽ thấy để predictor hai bên không lệch
+            int delta = step >> 3;
+            if (diff >= step) {
+                nibble |= 4;
+                diff -= step;
+                delta += step;
+            }
+            step >>= 1;
+            if (diff >= step) {
+                nibble |= 2;
+                diff -= step;
+                delta += step;
+            }
+            step >>= 1;
+            if (diff >= step) {
+                nibble |= 1;
+                delta += step;
+            }
+            update(nibble, delta);
+            return nibble;
+        }
+
+        /**
+         * @return sample 16-bit
+         */
+        public int decode(int nibble) {
+            int step = STEP_TABLE[index];
+            int delta = step >> 3;
+            if ((nibble & 4) != 0) {
+                delta += step;
+            }
+            if ((nibble & 2) != 0) {
+                delta += step >> 1;
+            }
+            if ((nibble & 1) != 0) {
+                delta += step >> 2;
+            }
+            update(nibble, delta);
+            return predictor;
+        }
+
+        private void update(int nibble, int delta) {
+            predictor += (nibble & 8) != 0 ? -delta : delta;
+            if (predictor > Short.MAX_VALUE) {
+                predictor = Short.MAX_VALUE;
+            } else if (predictor < Short.MIN_VALUE) {
+                predictor = Short.MIN_VALUE;
+            }
+            index += INDEX_TABLE[nibble];
+            if (index < 0) {
+                index = 0;
+            } else if (index > 88) {
+                index = 88;
+            }
+        }
+    }
+
+    /**
+     * Giải mã một block mono (để kiểm tra / replay)
+     *
+     * @return số sample đã ghi vào out
+     */
+    public static int decodeBlock(byte[] block, int offset, int blockBytes, short[] out, int outOffset) {
+        State state = new State();
+        int first = (short) ((block[offset] & 0xff) | (block[offset + 1] << 8));
+        state.set(first, Math.min(88, block[offset + 2] & 0xff));
+        int o = outOffset;
+        out[o++] = (short) first;
+        for (int i = offset + BLOCK_HEADER_BYTES; i < offset + blockBytes; i++) {
+            int b = block[i] & 0xff;
+            out[o++] = (short) state.decode(b & 0x0f);
+            out[o++] = (short) state.decode(b >> 4);
+        }
+        return o - outOffset;
+    }
+}
@@ -0,0 +1,180 @@
+package com.phicomm.r1.xiaozhi.audio;
+
+/**
+ * Noise suppression bằng spectral subtraction
+ *
+ * - Block 512 sample, hop 256 (50% overlap), sqrt-Hann cho cả analysis và synthesis
+ *   -> overlap-add tái tạo hoàn hảo khi gain = 1
+ * - Noise PSD mỗi bin: track trên power đã làm mượt theo thời gian - giảm nhanh khi
+ *   thấp hơn, tăng rất chậm khi cao hơn (minimum tracking đơn giản - không cần VAD
+ *   riêng), nhân NOISE_BIAS bù cho việc minimum nằm dưới mean
+ * - Gain = max(floor, 1 - OVER_SUBTRACTION * noise / power), làm mượt theo thời gian
+ *   để giảm "musical noise"
+ *
+ * Frame vào/ra có độ dài cố định (vd 320 = 20ms); độ trễ = HOP + priming
+ * (320 -> 256 + 192 = 448 sample, 28ms). Mọi buffer được allocate trong constructor.
+ *
+ * Không thread-safe
+ */
+public class NoiseSuppressor {
+
+    private static final int BLOCK = 512;
+    private static final int HOP = BLOCK / 2;
+    private static final int BINS = BLOCK / 2 + 1;
+
+    private static final float OVER_SUBTRACTION = 2.0f;
+    private static final float GAIN_FLOOR = 0.1f;        // -20dB
+    private static final float GAIN_SMOOTHING = 0.6f;
+    private static final float PSD_SMOOTHING = 0.7f;
+    private static final float NOISE_DOWN = 0.1f;
+    private static final float NOISE_UP = 0.004f;
+    private static final float NOISE_BIAS = 1.5f;
+    private static final int WARMUP_BLOCKS = 8;          // ~128ms đầu chỉ học noise
+
+    private final Fft fft = new Fft(BLOCK);
+    private final float[] window = new float[BLOCK];
+    private final float[] re = new float[BLOCK];
+    private final float[] im = new float[BLOCK];
+    private final float[] psd = new float[BINS];
+    private final float[] noise = new float[BINS];
+    private final float[] gain = new float[BINS];
+
+    // Input: BLOCK sample gần nhất (nửa đầu = hop trước)
+    private final float[] inputBlock = new float[BLOCK];
+    private int inputFill = HOP;
+
+    // Overlap-add tail và FIFO output
+    private final float[] overlap = new float[HOP];
+    private final float[] outFifo;
+    private final int priming;
+    private int outRead = 0;
+    private int outCount = 0;
+
+    private int blocks = 0;
+
+    /**
+     * @param frameLength Độ dài frame truyền vào process()
+     */
+    public NoiseSuppressor(int frameLength) {
+        for (int i = 0; i < BLOCK; i++) {
+            window[i] = (float) Math.sqrt(0.5 - 0.5 * Math.cos(2 * Math.PI * i / BLOCK));
+        }
+        outFifo = new float[frameLength + BLOCK * 2];
+        // Số sample còn thiếu lớn nhất khi frame không chia hết cho HOP = HOP - gcd(frame, HOP)
+        priming = HOP - gcd(frameLength, HOP);
+        reset();
+    }
+
+    public void reset() {
+        for (int i = 0; i < BLOCK; i++) {
+            inputBlock[i] = 0f;
+        }
+        for (int i = 0; i < HOP; i++) {
+            overlap[i] = 0f;
+        }
+        for (int k = 0; k < BINS; k++) {
+            psd[k] = 0f;
+            noise[k] = 0f;
+            gain[k] = 1f;
+        }
+        inputFill = HOP;
+        blocks = 0;
+        // Priming bằng im lặng -> output luôn đủ cho mỗi frame
+        outRead = 0;
+        outCount = priming;
+        for (int i = 0; i < priming; i++) {
+            outFifo[i] = 0f;
+        }
+    }
+
+    public void process(float[] frame, int length) {
+        for (int i = 0; i < length; i++) {
+            inputBlock[inputFill++] = frame[i];
+            if (inputFill == BLOCK) {
+                processBlock();
+                System.arraycopy(inputBlock, HOP, inputBlock, 0, HOP);
+                inputFill = HOP;
+            }
+        }
+
+        for (int i = 0; i < length; i++) {
+            frame[i] = outFifo[(outRead + i) % outFifo.length];
+        }
+        outRead = (outRead + length) % outFifo.length;
+        outCount -= length;
+    }
+
+    /**
+     * Noise floor trung bình (dBFS) - cho metrics
+     */
+    public double getNoiseFloorDb() {
+        double sum = 0;
+        for (int k = 0; k < BINS; k++) {
+            sum += noise[k];
+        }
+        double meanPower = sum / BINS / (BLOCK * BLOCK / 4.0);
+        return meanPower > 0 ? 10 * Math.log10(meanPower / (32768.0 * 32768.0)) : -120;
+    }
+
+    private static int gcd(int a, int b) {
+        while (b != 0) {
+            int t = a % b;
+            a = b;
+            b = t;
+        }
+        return a;
+    }
+
+    private void processBlock() {
+        for (int i = 0; i < BLOCK; i++) {
+            re[i] = inputBlock[i] * window[i];
+            im[i] = 0f;
+        }
+        fft.forward(re, im);
+
+        boolean warmup = blocks < WARMUP_BLOCKS;
+        for (int k = 0; k < BINS; k++) {
+            float power = re[k] * re[k] + im[k] * im[k];
+            float smoothed = blocks == 0 ? power : PSD_SMOOTHING * psd[k] + (1f - PSD_SMOOTHING) * power;
+            psd[k] = smoothed;
+
+            float n = noise[k];
+            if (blocks == 0) {
+                n = smoothed;
+            } else if (smoothed < n) {
+                n += NOISE_DOWN * (smoothed - n);
+            } else {
+                n += (warmup ? NOISE_DOWN : NOISE_UP) * (smoothed - n);
+            }
+            noise[k] = n;
+
+            float g = power > 0f ? 1f - OVER_SUBTRACTION * NOISE_BIAS * n / power : 0f;
+            if (g < GAIN_FLOOR) {
+                g = GAIN_FLOOR;
+            }
+            g = GAIN_SMOOTHING * gain[k] + (1f - GAIN_SMOOTHING) * g;
+            gain[k] = g;
+        }
+        blocks++;
+
+        // Áp gain đối xứng cho spectrum thực
+        for (int k = 0; k < BINS; k++) {
+            float g = warmup ? 1f : gain[k];
+            re[k] *= g;
+            im[k] *= g;
+            if (k > 0 && k < BLOCK / 2) {
+                re[BLOCK - k] *= g;
+                im[BLOCK - k] *= g;
+            }
+        }
+        fft.inverse(re, im);
+
+        // Overlap-add: nửa đầu + tail block trước -> HOP sample hoàn chỉnh
+        int write = (outRead + outCount) % outFifo.length;
+        for (int i = 0; i < HOP; i++) {
+            outFifo[(write + i) % outFifo.length] = overlap[i] + re[i] * window[i];
+            overlap[i] = re[i + HOP] * window[i + HOP];
+        }
+        outCount += HOP;
+    }
+}
@@ -0,0 +1,44 @@
+package com.phicomm.r1.xiaozhi.audio;
+
+/**
+ * Chuyển PCM 16-bit giữa short[] và byte[] little-endian (định dạng gửi lên server)
+ *
+ * Ghi vào buffer có sẵn để audio thread không allocate mỗi frame
+ */
+public final class PcmCodec {
+
+    private PcmCodec() {
+    }
+
+    /**
+     * @return Số byte đã ghi (count * 2)
+     */
+    public static int toBytes(short[] src, int offset, int count, byte[] dst, int dstOffset) {
+        int o = dstOffset;
+        for (int i = offset; i < offset + count; i++) {
+            short s = src[i];
+            dst[o++] = (byte) s;
+            dst[o++] = (byte) (s >> 8);
+        }
+        return count * 2;
+    }
+
+    public static byte[] toBytes(short[] src, int offset, int count) {
+        byte[] dst = new byte[count * 2];
+        toBytes(src, offset, count, dst, 0);
+        return dst;
+    }
+
+    /**
+     * @return Số sample đã ghi (byteCount / 2)
+     */
+    public static int toShorts(byte[] src, int offset, int byteCount, short[] dst, int dstOffset) {
+        int count = byteCount / 2;
+        int b = offset;
+        for (int i = dstOffset; i < dstOffset + count; i++) {
+            dst[i] = (short) ((src[b] & 0xff) | (src[b + 1] << 8));
+            b += 2;
+        }
+        return count;
+    }
+}
@@ -0,0 +1,115 @@
+package com.phicomm.r1.xiaozhi.audio;
+
+import com.phicomm.r1.xiaozhi.util.PooledBuffer;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Hàng đợi chunk PCM 16-bit từ network tới PcmPlayer (TTS đang stream về)
+ *
+ * - Producer (WebSocket thread) write() từng frame nhận được, finish() khi hết câu
+ * - Consumer (write loop của PcmPlayer) take() -> AudioTrack.write(ByteBuffer)
+ * - close() (stop / barge-in / mất kết nối) trả mọi chunk còn lại về pool và đánh thức consumer
+ *
+ * Chunk là PooledBuffer: write() tự retain(), caller vẫn release() phần của mình;
+ * chunk lấy ra từ take() thuộc về consumer (phải release()).
+ */
+public final class PcmStream {
+
+    // Sentinel kết thúc, không bao giờ release
+    private static final PooledBuffer END = PooledBuffer.wrap(ByteBuffer.allocate(0));
+
+    private final LinkedBlockingQueue<PooledBuffer> chunks = new LinkedBlockingQueue<PooledBuffer>();
+    private boolean finished;
+    private boolean closed;
+    private long writtenBytes;
+    private volatile boolean ended;
+
+    /**
+     * Stream một chunk đã có đủ dữ liệu (buffer heap / mmap / pool)
+     */
+    public static PcmStream of(PooledBuffer pcm) {
+        PcmStream stream = new PcmStream();
+        stream.write(pcm);
+        stream.finish();
+        return stream;
+    }
+
+    /**
+     * @return false nếu stream đã finish / close (chunk không được giữ lại)
+     */
+    public synchronized boolean write(PooledBuffer chunk) {
+        if (finished || closed) {
+            return false;
+        }
+        writtenBytes += chunk.buffer().remaining();
+        chunks.add(chunk.retain());
+        return true;
+    }
+
+    /**
+     * Producer hết dữ liệu - consumer phát nốt phần đã nhận rồi kết thúc
+     */
+    public synchronized void finish() {
+        if (!finished && !closed) {
+            finished = true;
+            chunks.add(END);
+        }
+    }
+
+    /**
+     * Bỏ phần chưa phát; take() đang chờ trả về null ngay
+     */
+    public void close() {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        }
+        PooledBuffer chunk;
+        while ((chunk = chunks.poll()) != null) {
+            if (chunk != END) {
+                chunk.release();
+            }
+        }
+        chunks.add(END);
+    }
+
+    /**
+     * Chunk tiếp theo (position..limit), thuộc về caller
+     *
+     * @return null khi hết stream, bị close, hoặc không có dữ liệu trong timeoutMs (network stall) -
+     *         phân biệt bằng isEnded()
+     */
+    public PooledBuffer take(long timeoutMs) throws InterruptedException {
+        PooledBuffer chunk = chunks.poll(timeoutMs, TimeUnit.MILLISECONDS);
+        if (chunk == END) {
+            ended = true;
+            chunks.add(END); // take() sau đó cũng thấy kết thúc
+            return null;
+        }
+        return chunk;
+    }
+
+    /**
+     * Consumer đã lấy hết stream (finish và đã take mọi chunk, hoặc close) - take() null không phải stall
+     */
+    public boolean isEnded() {
+        return ended;
+    }
+
+    public synchronized boolean isFinished() {
+        return finished;
+    }
+
+    public synchronized boolean isClosed() {
+        return closed;
+    }
+
+    public synchronized long getWrittenBytes() {
+        return writtenBytes;
+    }
+}
@@ -0,0 +1,54 @@
+package com.phicomm.r1.xiaozhi.audio;
+
+import java.nio.ShortBuffer;
+
+/**
+ * Ring buffer giữ vài trăm ms audio gần nhất
+ *
+ * Khi barge-in trigger, speech đã bắt đầu từ vài frame trước -
+ * pre-roll được ghép vào đầu command audio để không mất âm tiết đầu.
+ *
+ * Chỉ dùng từ recording thread
+ */
+public class PreRollBuffer {
+
+    private final short[] ring;
+    private int writePos = 0;
+    private int size = 0;
+
+    /**
+     * @param capacitySamples Số sample giữ lại (vd: 16000 * 0.3 = 300ms)
+     */
+    public PreRollBuffer(int capacitySamples) {
+        this.ring = new short[capacitySamples];
+    }
+
+    public void write(short[] samples, int length) {
+        for (int i = 0; i < length; i++) {
+            ring[writePos] = samples[i];
+            writePos = (writePos + 1) % ring.length;
+        }
+        size = Math.min(ring.length, size + length);
+    }
+
+    /**
+     * Ghi toàn bộ nội dung (cũ -> mới) vào out rồi clear
+     * (view của buffer LITTLE_ENDIAN -> PCM 16-bit little-endian)
+     */
+    public void drainTo(ShortBuffer out) {
+        int start = (writePos - size + ring.length) % ring.length;
+        int first = Math.min(size, ring.length - start);
+        out.put(ring, start, first);
+        out.put(ring, 0, size - first);
+        clear();
+    }
+
+    public void clear() {
+        size = 0;
+        writePos = 0;
+    }
+
+    public int size() {
+        return size;
+    }
+}
@@ -0,0 +1,216 @@
+package com.phicomm.r1.xiaozhi.audio;
+
+import com.phicomm.r1.xiaozhi.util.BufferPool;
+import com.phicomm.r1.xiaozhi.util.PooledBuffer;
+
+import java.nio.ShortBuffer;
+
+/**
+ * Wake word (energy) + ghi command + endpointing theo silence
+ *
+ * Tách khỏi VoiceRecognitionService để replay harness chạy đúng logic này trên JVM.
+ * - preRollStage(): giữ 300ms gần nhất (ghép vào đầu command khi barge-in)
+ * - detectWakeWord(): RMS > energyThreshold * wakeFactor
+ * - uplinkSink(): ghi các frame SAU frame trigger, kết thúc command sau
+ *   silenceFrames frame liên tiếp dưới energyThreshold hoặc khi quá maxCommandMs
+ * - Command ghi thẳng vào một direct buffer từ BufferPool (cấp một lần mỗi command, đủ cho
+ *   pre-roll + maxCommandMs + 1 frame) - không copy lại khi gửi lên WebSocket
+ *
+ * Chỉ gọi từ processing thread (trừ setListening / getter)
+ */
+public class VoiceCommandDetector {
+
+    /**
+     * Tham số tuning - replay harness sweep các giá trị này
+     */
+    public static final class Params {
+        /** RMS dưới ngưỡng = silence */
+        public int energyThreshold = 500;
+        /** Wake word khi RMS > energyThreshold * wakeFactor */
+        public int wakeFactor = 3;
+        /** Số frame silence liên tiếp để kết thúc command (20 frame = 0.4s ở 50fps) */
+        public int silenceFrames = 20;
+        public int maxCommandMs = 10000;
+        public int preRollMs = 300;
+    }
+
+    public interface Listener {
+        void onVoiceActivity(AudioFrame frame);
+
+        /**
+         * @param pcm Command audio (PCM 16-bit little-endian, position 0 .. limit), có thể kèm pre-roll.
+         *            Detector release() sau khi callback trả về - giữ lại thì phải retain()
+         * @param frame Frame kết thúc command
+         * @param timedOut true nếu bị cắt vì quá maxCommandMs
+         */
+        void onCommandCompleted(PooledBuffer pcm, AudioFrame frame, boolean timedOut);
+    }
+
+    private final Params params;
+    private final Listener listener;
+    private final int maxCommandBytes;
+    private final int commandCapacity;
+    private final PreRollBuffer preRoll;
+    private final BufferPool pool;
+
+    private volatile boolean listeningForWakeWord = true;
+    private volatile boolean recordingCommand = false;
+    private PooledBuffer command;
+    private ShortBuffer commandSamples;
+    private long commandStartSequence = Long.MAX_VALUE;
+    private int silenceCounter = 0;
+
+    public VoiceCommandDetector(int sampleRate, int frameSamples, Params params, Listener listener) {
+        this(sampleRate, frameSamples, params, listener, BufferPool.getInstance());
+    }
+
+    public VoiceCommandDetector(int sampleRate, int frameSamples, Params params, Listener listener,
+                                BufferPool pool) {
+        this.params = params;
+        this.listener = listener;
+        this.pool = pool;
+        this.maxCommandBytes = (int) ((long) sampleRate * 2 * params.maxCommandMs / 1000);
+        int preRollSamples = sampleRate * params.preRollMs / 1000;
+        this.preRoll = new PreRollBuffer(preRollSamples);
+        // Timeout được kiểm tra sau mỗi frame -> có thể vượt maxCommandBytes tối đa 1 frame
+        this.commandCapacity = maxCommandBytes + (preRollSamples + frameSamples) * 2;
+    }
+
+    public Params getParams() {
+        return params;
+    }
+
+    public boolean isListeningForWakeWord() {
+        return listeningForWakeWord;
+    }
+
+    /**
+     * Pause / resume wake word detection
+     */
+    public void setListening(boolean listening) {
+        listeningForWakeWord = listening;
+    }
+
+    public boolean isRecordingCommand() {
+        return recordingCommand;
+    }
+
+    /**
+     * Phát hiện wake word đơn giản dựa trên energy
+     * TODO: Tích hợp thư viện wake word detection chuyên dụng như Porcupine
+     */
+    public boolean detectWakeWord(AudioFrame frame) {
+        return listeningForWakeWord && frame.rms > params.energyThreshold * params.wakeFactor;
+    }
+
+    /**
+     * Bắt đầu ghi command
+     *
+     * @param withPreRoll true: ghép audio ngay trước trigger vào đầu command (barge-in)
+     * @param triggerSequence Frame trigger - uplink chỉ ghi từ frame sau
+     */
+    public void startCommand(boolean withPreRoll, long triggerSequence) {
+        listeningForWakeWord = false;
+        recordingCommand = true;
+        silenceCounter = 0;
+        commandStartSequence = triggerSequence;
+
+        releaseCommand();
+        command = pool.acquire(commandCapacity);
+        commandSamples = command.buffer().asShortBuffer();
+        if (withPreRoll) {
+            preRoll.drainTo(commandSamples);
+        } else {
+            preRoll.clear();
+        }
+    }
+
+    /**
+     * Bỏ command đang ghi dở (dừng recording) - trả buffer về pool.
+     * Chỉ gọi khi processing thread đã dừng
+     */
+    public void cancelCommand() {
+        recordingCommand = false;
+        listeningForWakeWord = true;
+        commandStartSequence = Long.MAX_VALUE;
+        releaseCommand();
+    }
+
+    private void releaseCommand() {
+        if (command != null) {
+            command.release();
+            command = null;
+            commandSamples = null;
+        }
+    }
+
+    public AudioStage preRollStage() {
+        return new AudioStage() {
+            @Override
+            public String getName() {
+                return "pre_roll";
+            }
+
+            @Override
+            public void process(AudioFrame frame) {
+                preRoll.write(frame.samples, frame.length);
+            }
+        };
+    }
+
+    /**
+     * Uplink: chỉ các frame SAU frame trigger (frame trigger của barge-in đã nằm trong pre-roll)
+     */
+    public AudioSink uplinkSink() {
+        return new AudioSink() {
+            @Override
+            public String getName() {
+                return "uplink";
+            }
+
+            @Override
+            public void onFrame(AudioFrame frame) {
+                if (recordingCommand && frame.sequence > commandStartSequence) {
+                    record(frame);
+                }
+            }
+        };
+    }
+
+    private void record(AudioFrame frame) {
+        commandSamples.put(frame.samples, 0, frame.length);
+
+        // Phát hiện kết thúc câu lệnh (silence detection)
+        if (frame.rms < params.energyThreshold) {
+            silenceCounter++;
+            if (silenceCounter >= params.silenceFrames) {
+                complete(frame, false);
+                return;
+            }
+        } else {
+            silenceCounter = 0;
+            listener.onVoiceActivity(frame);
+        }
+
+        if (commandSamples.position() * 2 > maxCommandBytes) {
+            complete(frame, true);
+        }
+    }
+
+    private void complete(AudioFrame frame, boolean timedOut) {
+        recordingCommand = false;
+        listeningForWakeWord = true;
+        commandStartSequence = Long.MAX_VALUE;
+        PooledBuffer pcm = command;
+        pcm.buffer().limit(commandSamples.position() * 2);
+        command = null;
+        commandSamples = null;
+        try {
+            if (pcm.buffer().hasRemaining()) {
+                listener.onCommandCompleted(pcm, frame, timedOut);
+            }
+        } finally {
+            pcm.release();
+        }
+    }
+}
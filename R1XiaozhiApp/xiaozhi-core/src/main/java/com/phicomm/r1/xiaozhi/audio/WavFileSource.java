@@ -0,0 +1,184 @@
+package com.phicomm.r1.xiaozhi.audio;
+
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * AudioSource đọc file WAV PCM 16-bit - replay nhanh hơn thời gian thực
+ *
+ * Capture time là clock ảo (bắt đầu từ 0): số sample đã đọc / sampleRate,
+ * nên mọi logic dựa trên captureNanos chạy như lúc thu thật.
+ * Có thể nối thêm tailMs im lặng để endpointing kịp kết thúc câu ở cuối file.
+ */
+public class WavFileSource implements AudioSource {
+
+    private final File file;
+    private final int tailSamples;
+
+    private InputStream in;
+    private int sampleRate;
+    private int channels;
+    private long dataRemaining;
+    private long framesRead;
+    private long tailRemaining;
+    private final byte[] buffer = new byte[8192];
+
+    /**
+     * @param tailMs Im lặng thêm vào cuối file (ms)
+     */
+    public WavFileSource(File file, int tailMs) throws IOException {
+        this.file = file;
+        readHeader();
+        this.tailSamples = (int) ((long) tailMs * sampleRate / 1000) * channels;
+    }
+
+    private void readHeader() throws IOException {
+        in = new BufferedInputStream(new FileInputStream(file));
+        byte[] header = new byte[12];
+        readFully(header, 12);
+        if (!"RIFF".equals(new String(header, 0, 4, "US-ASCII"))
+            || !"WAVE".equals(new String(header, 8, 4, "US-ASCII"))) {
+            throw new IOException(file + ": not a RIFF/WAVE file");
+        }
+
+        byte[] chunk = new byte[8];
+        boolean haveFormat = false;
+        while (true) {
+            readFully(chunk, 8);
+            String id = new String(chunk, 0, 4, "US-ASCII");
+            long size = le32(chunk, 4) & 0xffffffffL;
+            if ("fmt ".equals(id)) {
+                byte[] format = new byte[(int) size];
+                readFully(format, format.length);
+                int encoding = le16(format, 0);
+                channels = le16(format, 2);
+                sampleRate = le32(format, 4);
+                int bits = le16(format, 14);
+                if (encoding != 1 || bits != 16) {
+                    throw new IOException(file + ": only 16-bit PCM is supported (format "
+                        + encoding + ", " + bits + " bit)");
+                }
+                haveFormat = true;
+            } else if ("data".equals(id)) {
+                if (!haveFormat) {
+                    throw new IOException(file + ": data chunk before fmt");
+                }
+                // Header chưa finalize (size 0 / 0xFFFFFFFF) -> đọc tới hết file
+                dataRemaining = size == 0 || size == 0xffffffffL ? Long.MAX_VALUE : size;
+                return;
+            } else {
+                skipFully(size + (size & 1));
+            }
+        }
+    }
+
+    @Override
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    @Override
+    public int getChannels() {
+        return channels;
+    }
+
+    /**
+     * Thời lượng audio đã đọc (ms), không tính phần im lặng thêm vào
+     */
+    public long getPositionMs() {
+        return framesRead * 1000 / sampleRate;
+    }
+
+    @Override
+    public void start() {
+        tailRemaining = tailSamples;
+    }
+
+    @Override
+    public int read(short[] out, int offset, int length) {
+        int count = 0;
+        try {
+            while (count < length && dataRemaining > 0) {
+                int want = (int) Math.min(Math.min(buffer.length, (length - count) * 2L), dataRemaining);
+                int n = in.read(buffer, 0, want & ~1);
+                if (n <= 0) {
+                    dataRemaining = 0;
+                    break;
+                }
+                if ((n & 1) != 0) {
+                    // Byte lẻ: đọc thêm một byte cho đủ sample
+                    int next = in.read();
+                    if (next < 0) {
+                        dataRemaining = 0;
+                        break;
+                    }
+                    buffer[n++] = (byte) next;
+                }
+                dataRemaining -= n;
+                count += PcmCodec.toShorts(buffer, 0, n, out, offset + count);
+            }
+        } catch (IOException e) {
+            dataRemaining = 0;
+        }
+        framesRead += count / channels;
+
+        // Hết data -> im lặng ở cuối
+        while (count < length && tailRemaining > 0) {
+            out[offset + count++] = 0;
+            tailRemaining--;
+        }
+        if (count == 0) {
+            return END_OF_STREAM;
+        }
+        return count;
+    }
+
+    @Override
+    public long getCaptureNanos() {
+        long totalFrames = framesRead + (tailSamples - tailRemaining) / Math.max(1, channels);
+        return totalFrames * 1000000000L / sampleRate;
+    }
+
+    @Override
+    public void release() {
+        try {
+            in.close();
+        } catch (IOException e) {
+            // ignore
+        }
+    }
+
+    private void readFully(byte[] target, int length) throws IOException {
+        int offset = 0;
+        while (offset < length) {
+            int n = in.read(target, offset, length - offset);
+            if (n < 0) {
+                throw new EOFException(file + ": truncated header");
+            }
+            offset += n;
+        }
+    }
+
+    private void skipFully(long count) throws IOException {
+        while (count > 0) {
+            long n = in.skip(count);
+            if (n <= 0) {
+                throw new EOFException(file + ": truncated chunk");
+            }
+            count -= n;
+        }
+    }
+
+    private static int le16(byte[] b, int offset) {
+        return (b[offset] & 0xff) | (b[offset + 1] & 0xff) << 8;
+    }
+
+    private static int le32(byte[] b, int offset) {
+        return (b[offset] & 0xff) | (b[offset + 1] & 0xff) << 8
+            | (b[offset + 2] & 0xff) << 16 | (b[offset + 3] & 0xff) << 24;
+    }
+}
@@ -0,0 +1,124 @@
+package com.phicomm.r1.xiaozhi.audio;
+
+import com.phicomm.r1.xiaozhi.platform.Log;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+
+/**
+ * Debug recorder: ghi frame (sau DSP) ra file WAV 16-bit mono
+ *
+ * Dùng để nghe lại đúng những gì detector và server nhận được.
+ * Tự dừng ghi khi đạt maxSeconds; header được sửa lại khi close().
+ */
+public class WavRecorderSink implements AudioSink {
+
+    private static final String TAG = "WavRecorder";
+    private static final int HEADER_SIZE = 44;
+
+    private final File file;
+    private final long maxBytes;
+    private OutputStream out;
+    private int sampleRate = 16000;
+    private long dataBytes = 0;
+    private boolean closed = false;
+
+    public WavRecorderSink(File file, int maxSeconds) throws IOException {
+        this.file = file;
+        this.maxBytes = (long) maxSeconds * 16000 * 2;
+        this.out = new BufferedOutputStream(new FileOutputStream(file), 16 * 1024);
+        out.write(new byte[HEADER_SIZE]);
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    @Override
+    public String getName() {
+        return "debug_recorder";
+    }
+
+    @Override
+    public synchronized void onFrame(AudioFrame frame) {
+        if (closed || dataBytes >= maxBytes) {
+            return;
+        }
+        sampleRate = frame.sampleRate;
+        try {
+            for (int i = 0; i < frame.length; i++) {
+                short sample = frame.samples[i];
+                out.write(sample & 0xFF);
+                out.write((sample >> 8) & 0xFF);
+            }
+            dataBytes += frame.length * 2;
+        } catch (IOException e) {
+            Log.e(TAG, "Write failed, stopping recorder", e);
+            closed = true;
+        }
+    }
+
+    /**
+     * Đóng file và ghi WAV header
+     */
+    public synchronized void close() {
+        if (out == null) {
+            return;
+        }
+        closed = true;
+        try {
+            out.close();
+            RandomAccessFile raf = new RandomAccessFile(file, "rw");
+            try {
+                raf.write(buildHeader(sampleRate, dataBytes));
+            } finally {
+                raf.close();
+            }
+            Log.i(TAG, "Recorded " + dataBytes + " bytes to " + file.getAbsolutePath());
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to finalize WAV", e);
+        }
+        out = null;
+    }
+
+    private static byte[] buildHeader(int sampleRate, long dataBytes) {
+        byte[] header = new byte[HEADER_SIZE];
+        int byteRate = sampleRate * 2;
+        writeAscii(header, 0, "RIFF");
+        writeInt(header, 4, (int) (dataBytes + 36));
+        writeAscii(header, 8, "WAVE");
+        writeAscii(header, 12, "fmt ");
+        writeInt(header, 16, 16);
+        writeShort(header, 20, 1);            // PCM
+        writeShort(header, 22, 1);            // mono
+        writeInt(header, 24, sampleRate);
+        writeInt(header, 28, byteRate);
+        writeShort(header, 32, 2);            // block align
+        writeShort(header, 34, 16);           // bits per sample
+        writeAscii(header, 36, "data");
+        writeInt(header, 40, (int) dataBytes);
+        return header;
+    }
+
+    private static void writeAscii(byte[] buffer, int offset, String value) {
+        for (int i = 0; i < value.length(); i++) {
+            buffer[offset + i] = (byte) value.charAt(i);
+        }
+    }
+
+    private static void writeInt(byte[] buffer, int offset, int value) {
+        buffer[offset] = (byte) value;
+        buffer[offset + 1] = (byte) (value >> 8);
+        buffer[offset + 2] = (byte) (value >> 16);
+        buffer[offset + 3] = (byte) (value >> 24);
+    }
+
+    private static void writeShort(byte[] buffer, int offset, int value) {
+        buffer[offset] = (byte) value;
+        buffer[offset + 1] = (byte) (value >> 8);
+    }
+}
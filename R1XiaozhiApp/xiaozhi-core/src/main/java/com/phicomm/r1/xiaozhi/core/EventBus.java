@@ -1,8 +1,9 @@
 package com.phicomm.r1.xiaozhi.core;
 
-import android.os.Handler;
-import android.os.Looper;
-import android.util.Log;
+import com.phicomm.r1.xiaozhi.platform.Dispatcher;
+import com.phicomm.r1.xiaozhi.platform.Log;
+import com.phicomm.r1.xiaozhi.platform.Platform;
+import com.phicomm.r1.xiaozhi.platform.XLog;
 
 import java.util.List;
 import java.util.Map;
@@ -11,7 +12,8 @@ import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
  * Event broadcasting system theo mô hình py-xiaozhi
- * Thread-safe và post events trên main thread
+ * Thread-safe và post events trên main thread (Platform dispatcher:
+ * main Looper trên Android, thread event loop trên JVM)
  * 
  * Usage:
  * // Register listener
@@ -26,9 +28,21 @@ public class EventBus {
     
     private static final String TAG = "EventBus";
     
-    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final Dispatcher dispatcher;
     private final Map<Class<?>, List<EventListener<?>>> listeners = new ConcurrentHashMap<>();
+    private volatile EventTap tap;
     
+    /**
+     * Dùng dispatcher của Platform (lấy lúc post, nên tạo trước Platform.install() vẫn đúng)
+     */
+    public EventBus() {
+        this(null);
+    }
+
+    public EventBus(Dispatcher dispatcher) {
+        this.dispatcher = dispatcher;
+    }
+
     /**
      * Register một listener cho event type cụ thể
      * Thread-safe: có thể gọi từ bất kỳ thread nào
@@ -63,6 +77,13 @@ public class EventBus {
         }
     }
     
+    /**
+     * Quan sát mọi event được post (vd: flight recorder), null để bỏ
+     */
+    public void setTap(EventTap tap) {
+        this.tap = tap;
+    }
+
     /**
      * Post event tới tất cả listeners (trên main thread)
      * Thread-safe: có thể gọi từ bất kỳ thread nào
@@ -75,27 +96,32 @@ public class EventBus {
             return;
         }
         
+        EventTap currentTap = tap;
+        if (currentTap != null) {
+            currentTap.onPost(event);
+        }
+        
         Class<?> eventType = event.getClass();
         List<EventListener<?>> eventListeners = listeners.get(eventType);
         
         if (eventListeners == null || eventListeners.isEmpty()) {
-            Log.d(TAG, "No listeners for " + eventType.getSimpleName());
+            XLog.d(TAG, "No listeners for {}", eventType);
             return;
         }
         
-        Log.d(TAG, "Broadcasting " + eventType.getSimpleName() + " to " + 
-              eventListeners.size() + " listeners");
+        // Mọi event đi qua đây (cả từ audio / WebSocket thread) - log có tham số, format ở drain thread
+        XLog.d(TAG, "Broadcasting {} to {} listeners", eventType, eventListeners.size());
         
         // Post tất cả listeners trên main thread
+        Dispatcher target = dispatcher != null ? dispatcher : Platform.dispatcher();
         for (final EventListener listener : eventListeners) {
-            mainHandler.post(new Runnable() {
+            target.post(new Runnable() {
                 @Override
                 public void run() {
                     try {
                         listener.onEvent(event);
                     } catch (Exception e) {
-                        Log.e(TAG, "Error in event listener for " + 
-                              event.getClass().getSimpleName(), e);
+                        XLog.e(TAG, "Error in event listener for {}", event.getClass(), e);
                     }
                 }
             });
@@ -114,6 +140,11 @@ public class EventBus {
             return;
         }
         
+        EventTap currentTap = tap;
+        if (currentTap != null) {
+            currentTap.onPost(event);
+        }
+        
         Class<?> eventType = event.getClass();
         List<EventListener<?>> eventListeners = listeners.get(eventType);
         
@@ -121,15 +152,13 @@ public class EventBus {
             return;
         }
         
-        Log.d(TAG, "Broadcasting (sync) " + eventType.getSimpleName() + " to " + 
-              eventListeners.size() + " listeners");
+        XLog.d(TAG, "Broadcasting (sync) {} to {} listeners", eventType, eventListeners.size());
         
         for (final EventListener listener : eventListeners) {
             try {
                 listener.onEvent(event);
             } catch (Exception e) {
-                Log.e(TAG, "Error in event listener for " + 
-                      event.getClass().getSimpleName(), e);
+                XLog.e(TAG, "Error in event listener for {}", event.getClass(), e);
             }
         }
     }
@@ -169,4 +198,12 @@ public class EventBus {
          */
         void onEvent(T event);
     }
-}
\ No newline at end of file
+    
+    /**
+     * Thấy mọi event ngay trên thread gọi post() / postSync(), trước khi dispatch.
+     * Phải nhanh và không throw - chạy cả trên audio / WebSocket thread.
+     */
+    public interface EventTap {
+        void onPost(Object event);
+    }
+}
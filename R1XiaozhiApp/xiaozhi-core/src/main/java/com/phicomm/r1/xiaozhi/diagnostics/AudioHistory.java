@@ -0,0 +1,125 @@
+package com.phicomm.r1.xiaozhi.diagnostics;
+
+import com.phicomm.r1.xiaozhi.audio.ImaAdpcm;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Ring N giây audio mono gần nhất, nén IMA ADPCM, nằm trong direct ByteBuffer cấp một lần
+ *
+ * write() chạy trên capture thread: encode thẳng vào block hiện tại của ring, không cấp phát.
+ * Block chỉ được "commit" khi đầy, reader (dump) chỉ thấy block đã commit.
+ */
+final class AudioHistory {
+
+    static final int BLOCK_BYTES = 256;
+    static final int SAMPLES_PER_BLOCK = ImaAdpcm.samplesPerBlock(BLOCK_BYTES);
+
+    private final int sampleRate;
+    private final int blockCount;
+    private final ByteBuffer blocks;
+    /** Thời điểm (nanoTime) của sample đầu mỗi block */
+    private final ByteBuffer blockNanos;
+    private final ImaAdpcm.State state = new ImaAdpcm.State();
+
+    /** Tổng số block đã commit; block đang ghi = committed % blockCount */
+    private long committed;
+    /** Vị trí sample trong block đang ghi (0 = chưa ghi header) */
+    private int blockSample;
+    private int pendingNibble = -1;
+
+    AudioHistory(int sampleRate, int seconds) {
+        this.sampleRate = sampleRate;
+        this.blockCount = Math.max(2, (int) ((long) seconds * sampleRate / SAMPLES_PER_BLOCK) + 1);
+        this.blocks = ByteBuffer.allocateDirect(blockCount * BLOCK_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        this.blockNanos = ByteBuffer.allocateDirect(blockCount * 8);
+    }
+
+    int getSampleRate() {
+        return sampleRate;
+    }
+
+    int getCapacityBytes() {
+        return blocks.capacity() + blockNanos.capacity();
+    }
+
+    /**
+     * @param samples  PCM interleaved, chỉ lấy kênh 0
+     * @param frames   số frame (sample mỗi kênh)
+     * @param endNanos thời điểm cuối frame (AudioSource.getCaptureNanos())
+     */
+    synchronized void write(short[] samples, int offset, int frames, int channels, long endNanos) {
+        long nanosPerSample = 1000000000L / sampleRate;
+        int slot = (int) (committed % blockCount);
+        int base = slot * BLOCK_BYTES;
+        for (int i = 0; i < frames; i++) {
+            int sample = samples[offset + i * channels];
+            if (blockSample == 0) {
+                state.startBlock(sample);
+                blocks.putShort(base, (short) sample);
+                blocks.put(base + 2, (byte) state.getIndex());
+                blocks.put(base + 3, (byte) 0);
+                blockNanos.putLong(slot * 8, endNanos - (frames - i) * nanosPerSample);
+                blockSample = 1;
+                continue;
+            }
+            int nibble = state.encode(sample);
+            if (pendingNibble < 0) {
+                pendingNibble = nibble;
+            } else {
+                int at = base + ImaAdpcm.BLOCK_HEADER_BYTES + (blockSample - 2) / 2;
+                blocks.put(at, (byte) (pendingNibble | (nibble << 4)));
+                pendingNibble = -1;
+            }
+            if (++blockSample == SAMPLES_PER_BLOCK) {
+                committed++;
+                blockSample = 0;
+                slot = (int) (committed % blockCount);
+                base = slot * BLOCK_BYTES;
+            }
+        }
+    }
+
+    /**
+     * Bản copy các block đã commit, cũ trước
+     */
+    static final class Snapshot {
+        byte[] data;
+        int blocks;
+        long firstBlockNanos;
+        int sampleRate;
+
+        int getSamples() {
+            return blocks * SAMPLES_PER_BLOCK;
+        }
+    }
+
+    synchronized Snapshot snapshot() {
+        int available = (int) Math.min(committed, blockCount - 1);
+        Snapshot snapshot = new Snapshot();
+        snapshot.sampleRate = sampleRate;
+        snapshot.blocks = available;
+        snapshot.data = new byte[available * BLOCK_BYTES];
+        if (available == 0) {
+            return snapshot;
+        }
+        // Block đang ghi dở (slot = committed % blockCount) không nằm trong snapshot
+        long first = committed - available;
+        int firstSlot = (int) (first % blockCount);
+        snapshot.firstBlockNanos = blockNanos.getLong(firstSlot * 8);
+        ByteBuffer source = blocks.duplicate();
+        int head = Math.min(available, blockCount - firstSlot);
+        source.position(firstSlot * BLOCK_BYTES);
+        source.get(snapshot.data, 0, head * BLOCK_BYTES);
+        if (head < available) {
+            source.position(0);
+            source.get(snapshot.data, head * BLOCK_BYTES, (available - head) * BLOCK_BYTES);
+        }
+        return snapshot;
+    }
+
+    synchronized long getCommittedBlocks() {
+        return committed;
+    }
+}
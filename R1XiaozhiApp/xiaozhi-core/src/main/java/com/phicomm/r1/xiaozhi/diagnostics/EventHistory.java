@@ -0,0 +1,154 @@
+package com.phicomm.r1.xiaozhi.diagnostics;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+/**
+ * Ring các event gần nhất, record 64 byte cố định trong direct ByteBuffer
+ *
+ * Record: nanoTime (8) | wall ms (8) | kind (2) | độ dài text (2) | text ASCII (44, cắt bớt)
+ * Text được chép từng char thẳng vào buffer (ký tự ngoài ASCII -> '?'), số được ghi bằng
+ * chữ số - không tạo String, không cấp phát, gọi được từ capture thread.
+ */
+final class EventHistory {
+
+    static final int RECORD_BYTES = 64;
+    static final int TEXT_BYTES = RECORD_BYTES - 20;
+    private static final Charset ASCII = Charset.forName("US-ASCII");
+
+    private final ByteBuffer records;
+    private final int capacity;
+    private long written;
+
+    /** Record đang ghi (giữa begin() và end()) */
+    private int base;
+    private int length;
+
+    EventHistory(int capacity) {
+        this.capacity = capacity;
+        this.records = ByteBuffer.allocateDirect(capacity * RECORD_BYTES);
+    }
+
+    int getCapacityBytes() {
+        return records.capacity();
+    }
+
+    synchronized long getWritten() {
+        return written;
+    }
+
+    /**
+     * label + " " + detail (detail null -> chỉ label)
+     */
+    synchronized void add(int kind, String label, String detail) {
+        begin(kind);
+        append(label);
+        if (detail != null) {
+            append(' ');
+            append(detail);
+        }
+        end();
+    }
+
+    synchronized void add(int kind, String label, long value) {
+        begin(kind);
+        append(label);
+        append(' ');
+        appendNumber(value);
+        end();
+    }
+
+    /**
+     * Tên class không kèm package (Class.getName() đã được cache, không cấp phát)
+     */
+    synchronized void addClassName(int kind, String prefix, Class<?> type) {
+        begin(kind);
+        append(prefix);
+        append(' ');
+        String name = type.getName();
+        int start = Math.max(name.lastIndexOf('.'), name.lastIndexOf('$')) + 1;
+        for (int i = start; i < name.length(); i++) {
+            append(name.charAt(i));
+        }
+        end();
+    }
+
+    private void begin(int kind) {
+        base = (int) (written % capacity) * RECORD_BYTES;
+        length = 0;
+        records.putLong(base, System.nanoTime());
+        records.putLong(base + 8, System.currentTimeMillis());
+        records.putShort(base + 16, (short) kind);
+    }
+
+    private void end() {
+        records.putShort(base + 18, (short) length);
+        written++;
+    }
+
+    private void append(String text) {
+        if (text == null) {
+            text = "null";
+        }
+        for (int i = 0; i < text.length() && length < TEXT_BYTES; i++) {
+            append(text.charAt(i));
+        }
+    }
+
+    private void append(char c) {
+        if (length < TEXT_BYTES) {
+            records.put(base + 20 + length++, (byte) (c >= 0x20 && c < 0x7f ? c : '?'));
+        }
+    }
+
+    private void appendNumber(long value) {
+        if (value == Long.MIN_VALUE) {
+            append("-9223372036854775808");
+            return;
+        }
+        if (value < 0) {
+            append('-');
+            value = -value;
+        }
+        long divisor = 1;
+        while (value / divisor >= 10) {
+            divisor *= 10;
+        }
+        for (; divisor > 0; divisor /= 10) {
+            append((char) ('0' + (value / divisor) % 10));
+        }
+    }
+
+    /**
+     * Bản copy một record
+     */
+    static final class Record {
+        long nanos;
+        long wallMillis;
+        int kind;
+        String text;
+    }
+
+    /**
+     * Các record còn trong ring, cũ trước
+     */
+    synchronized Record[] snapshot() {
+        int count = (int) Math.min(written, capacity);
+        Record[] result = new Record[count];
+        byte[] text = new byte[TEXT_BYTES];
+        for (int i = 0; i < count; i++) {
+            int at = (int) ((written - count + i) % capacity) * RECORD_BYTES;
+            Record record = new Record();
+            record.nanos = records.getLong(at);
+            record.wallMillis = records.getLong(at + 8);
+            record.kind = records.getShort(at + 16);
+            int length = records.getShort(at + 18);
+            for (int j = 0; j < length; j++) {
+                text[j] = records.get(at + 20 + j);
+            }
+            record.text = new String(text, 0, length, ASCII);
+            result[i] = record;
+        }
+        return result;
+    }
+}
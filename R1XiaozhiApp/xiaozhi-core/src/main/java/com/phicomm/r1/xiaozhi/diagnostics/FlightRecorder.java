@@ -0,0 +1,298 @@
+package com.phicomm.r1.xiaozhi.diagnostics;
+
+import com.phicomm.r1.xiaozhi.core.EventBus;
+import com.phicomm.r1.xiaozhi.platform.Log;
+import com.phicomm.r1.xiaozhi.util.CryptoUtils;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Locale;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Flight recorder: luôn ghi 60s audio mic gần nhất + timeline event/state/connection
+ *
+ * Khi người dùng báo "nó không nghe thấy tôi", dump ra:
+ *   flight-<time>.wav   audio IMA ADPCM (mở được bằng Audacity / ffmpeg)
+ *   flight-<time>.json  event kèm offset (ms) so với sample đầu của file WAV
+ *
+ * Bộ nhớ cố định, cấp một lần ngoài heap (direct ByteBuffer): ~0.5MB audio + 256KB event.
+ * recordAudio() / recordEvent() không cấp phát -> gọi được từ capture thread.
+ * Dump theo yêu cầu (HTTP POST /debug/flight/dump) hoặc tự động khi lỗi (autoDump, tối đa
+ * mỗi 5 phút một lần, giữ MAX_DUMPS bộ gần nhất).
+ */
+public final class FlightRecorder {
+
+    private static final String TAG = "FlightRecorder";
+
+    public static final int DEFAULT_SAMPLE_RATE = 16000;
+    public static final int DEFAULT_AUDIO_SECONDS = 60;
+    public static final int DEFAULT_EVENT_CAPACITY = 4096;
+
+    private static final long AUTO_DUMP_MIN_INTERVAL_MS = 5 * 60 * 1000L;
+    private static final int MAX_DUMPS = 5;
+
+    // Loại event
+    public static final int KIND_EVENT = 1;
+    public static final int KIND_STATE = 2;
+    public static final int KIND_CONNECTION = 3;
+    public static final int KIND_MESSAGE_IN = 4;
+    public static final int KIND_MESSAGE_OUT = 5;
+    public static final int KIND_AUDIO = 6;
+    public static final int KIND_ERROR = 7;
+    public static final int KIND_DUMP = 8;
+
+    private static final String[] KIND_NAMES = {
+        "?", "event", "state", "connection", "message_in", "message_out", "audio", "error", "dump"
+    };
+
+    private static volatile FlightRecorder instance;
+
+    private final AudioHistory audio;
+    private final EventHistory events;
+
+    private volatile File dumpDirectory;
+    private volatile Executor dumpExecutor;
+    private volatile long lastAutoDumpMillis = Long.MIN_VALUE / 2;
+    private volatile int dumps;
+
+    public FlightRecorder(int sampleRate, int audioSeconds, int eventCapacity) {
+        this.audio = new AudioHistory(sampleRate, audioSeconds);
+        this.events = new EventHistory(eventCapacity);
+    }
+
+    public static FlightRecorder getInstance() {
+        if (instance == null) {
+            synchronized (FlightRecorder.class) {
+                if (instance == null) {
+                    instance = new FlightRecorder(DEFAULT_SAMPLE_RATE, DEFAULT_AUDIO_SECONDS,
+                        DEFAULT_EVENT_CAPACITY);
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * Thư mục dump (app: cacheDir/flight); null -> dump bị bỏ qua
+     */
+    public void setDumpDirectory(File directory) {
+        this.dumpDirectory = directory;
+    }
+
+    /**
+     * Executor cho autoDump (app: tier background); null -> thread riêng mỗi lần
+     */
+    public void setDumpExecutor(Executor executor) {
+        this.dumpExecutor = executor;
+    }
+
+    // ==================== Ghi (không cấp phát) ====================
+
+    /**
+     * Capture thread: PCM interleaved, chỉ giữ kênh 0
+     *
+     * @param endNanos thời điểm cuối frame (AudioSource.getCaptureNanos())
+     */
+    public void recordAudio(short[] samples, int offset, int frames, int channels, long endNanos) {
+        audio.write(samples, offset, frames, channels, endNanos);
+    }
+
+    public void recordEvent(int kind, String label, String detail) {
+        events.add(kind, label, detail);
+    }
+
+    public void recordEvent(int kind, String label, long value) {
+        events.add(kind, label, value);
+    }
+
+    /**
+     * Ghi mọi event post qua EventBus (trên thread post, chỉ ghi tên class)
+     */
+    public void attach(EventBus eventBus) {
+        eventBus.setTap(new EventBus.EventTap() {
+            @Override
+            public void onPost(Object event) {
+                events.addClassName(KIND_EVENT, "post", event.getClass());
+            }
+        });
+    }
+
+    // ==================== Dump ====================
+
+    /**
+     * Dump tự động khi lỗi - chạy nền, bỏ qua nếu vừa dump trong 5 phút
+     */
+    public void autoDump(final String reason) {
+        long now = System.currentTimeMillis();
+        if (dumpDirectory == null || now - lastAutoDumpMillis < AUTO_DUMP_MIN_INTERVAL_MS) {
+            return;
+        }
+        lastAutoDumpMillis = now;
+        recordEvent(KIND_DUMP, "auto", reason);
+        Runnable task = new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    dump(reason);
+                } catch (IOException e) {
+                    Log.w(TAG, "Auto dump failed: " + e.getMessage());
+                }
+            }
+        };
+        Executor executor = dumpExecutor;
+        if (executor != null) {
+            try {
+                executor.execute(task);
+            } catch (RejectedExecutionException e) {
+                Log.w(TAG, "Auto dump skipped: " + e.getMessage());
+            }
+            return;
+        }
+        Thread thread = new Thread(task, "flight-dump");
+        thread.setPriority(Thread.MIN_PRIORITY);
+        thread.start();
+    }
+
+    /**
+     * Ghi WAV + JSON vào dumpDirectory
+     *
+     * @return {wav, json}
+     */
+    public File[] dump(String reason) throws IOException {
+        File directory = dumpDirectory;
+        if (directory == null) {
+            throw new IOException("Dump directory not set");
+        }
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create " + directory);
+        }
+        long start = System.nanoTime();
+        AudioHistory.Snapshot audioSnapshot = audio.snapshot();
+        EventHistory.Record[] eventSnapshot = events.snapshot();
+
+        String name = "flight-" + new SimpleDateFormat("yyyyMMdd-HHmmss-SSS", Locale.US).format(new Date());
+        File wav = new File(directory, name + ".wav");
+        File json = new File(directory, name + ".json");
+        writeWav(wav, audioSnapshot);
+        try {
+            writeJson(json, reason, wav, audioSnapshot, eventSnapshot);
+        } catch (JSONException e) {
+            throw new IOException("Cannot build event JSON", e);
+        }
+        dumps++;
+        prune(directory);
+        Log.i(TAG, "Dumped " + audioSnapshot.getSamples() * 1000L / audioSnapshot.sampleRate + "ms audio, "
+            + eventSnapshot.length + " events (" + reason + ") in "
+            + (System.nanoTime() - start) / 1000000L + "ms -> " + wav.getName());
+        return new File[] {wav, json};
+    }
+
+    public JSONObject getStats() throws JSONException {
+        JSONObject stats = new JSONObject();
+        stats.put("audio_blocks", audio.getCommittedBlocks());
+        stats.put("events", events.getWritten());
+        stats.put("off_heap_bytes", audio.getCapacityBytes() + events.getCapacityBytes());
+        stats.put("dumps", dumps);
+        return stats;
+    }
+
+    private static void writeWav(File file, AudioHistory.Snapshot snapshot) throws IOException {
+        int samplesPerBlock = AudioHistory.SAMPLES_PER_BLOCK;
+        int blockAlign = AudioHistory.BLOCK_BYTES;
+        ByteBuffer header = ByteBuffer.allocate(60).order(ByteOrder.LITTLE_ENDIAN);
+        header.put(ascii("RIFF")).putInt(52 + snapshot.data.length).put(ascii("WAVE"));
+        // fmt: WAVE_FORMAT_IMA_ADPCM, cbSize = 2 (samplesPerBlock)
+        header.put(ascii("fmt ")).putInt(20)
+            .putShort((short) 0x11).putShort((short) 1)
+            .putInt(snapshot.sampleRate)
+            .putInt(snapshot.sampleRate * blockAlign / samplesPerBlock)
+            .putShort((short) blockAlign).putShort((short) 4)
+            .putShort((short) 2).putShort((short) samplesPerBlock);
+        // fact: tổng số sample (bắt buộc với format nén)
+        header.put(ascii("fact")).putInt(4).putInt(snapshot.getSamples());
+        header.put(ascii("data")).putInt(snapshot.data.length);
+
+        OutputStream out = new BufferedOutputStream(new FileOutputStream(file));
+        try {
+            out.write(header.array(), 0, header.position());
+            out.write(snapshot.data);
+        } finally {
+            out.close();
+        }
+    }
+
+    private static void writeJson(File file, String reason, File wav, AudioHistory.Snapshot audio,
+                                  EventHistory.Record[] records) throws IOException, JSONException {
+        JSONObject root = new JSONObject();
+        root.put("reason", reason);
+        root.put("dumped_at", System.currentTimeMillis());
+        root.put("audio_file", wav.getName());
+        root.put("audio_ms", audio.getSamples() * 1000L / audio.sampleRate);
+        root.put("audio_format", "ima_adpcm");
+
+        JSONArray list = new JSONArray();
+        for (EventHistory.Record record : records) {
+            JSONObject event = new JSONObject();
+            // Offset so với sample đầu của WAV (âm: trước khi audio trong file bắt đầu)
+            if (audio.blocks > 0) {
+                event.put("audio_ms", (record.nanos - audio.firstBlockNanos) / 1000000L);
+            }
+            event.put("time", record.wallMillis);
+            event.put("kind", record.kind > 0 && record.kind < KIND_NAMES.length ? KIND_NAMES[record.kind] : "?");
+            event.put("text", record.text);
+            list.put(event);
+        }
+        root.put("events", list);
+
+        OutputStream out = new FileOutputStream(file);
+        try {
+            out.write(root.toString(2).getBytes(CryptoUtils.UTF_8));
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Giữ MAX_DUMPS bộ gần nhất (tên file có timestamp -> sort theo tên)
+     */
+    private static void prune(File directory) {
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+        Arrays.sort(files);
+        int keep = MAX_DUMPS * 2;
+        int flightFiles = 0;
+        for (File file : files) {
+            if (file.getName().startsWith("flight-")) {
+                flightFiles++;
+            }
+        }
+        for (File file : files) {
+            if (flightFiles <= keep) {
+                break;
+            }
+            if (file.getName().startsWith("flight-") && file.delete()) {
+                flightFiles--;
+            }
+        }
+    }
+
+    private static byte[] ascii(String text) {
+        return text.getBytes(CryptoUtils.UTF_8);
+    }
+}
@@ -0,0 +1,20 @@
+package com.phicomm.r1.xiaozhi.platform;
+
+/**
+ * Nguồn thời gian cho code trong xiaozhi-core
+ *
+ * Android: SystemClock (elapsedRealtime không nhảy khi đổi giờ hệ thống);
+ * test có thể thay bằng clock giả để chạy nhanh hơn thời gian thực.
+ */
+public interface Clock {
+
+    /**
+     * Millisecond đơn điệu kể từ một mốc bất kỳ
+     */
+    long elapsedMillis();
+
+    /**
+     * Nanosecond đơn điệu - cùng gốc với System.nanoTime() trên cả hai nền
+     */
+    long nanoTime();
+}
@@ -0,0 +1,18 @@
+package com.phicomm.r1.xiaozhi.platform;
+
+/**
+ * Thread "chính" mà listener / callback chạy trên đó
+ *
+ * Android: Handler của main Looper; JVM: một thread event loop riêng
+ */
+public interface Dispatcher {
+
+    void post(Runnable task);
+
+    void postDelayed(Runnable task, long delayMillis);
+
+    /**
+     * true nếu thread hiện tại là thread của dispatcher
+     */
+    boolean isCurrentThread();
+}
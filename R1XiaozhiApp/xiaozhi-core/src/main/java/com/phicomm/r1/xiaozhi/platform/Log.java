@@ -0,0 +1,39 @@
+package com.phicomm.r1.xiaozhi.platform;
+
+/**
+ * Thay cho android.util.Log trong xiaozhi-core - cùng chữ ký nên code
+ * chuyển từ app sang chỉ cần đổi import
+ *
+ * Đi qua XLog (ring + drain thread) nên không còn ghi log đồng bộ trên thread gọi.
+ * Code mới trên hot path nên gọi thẳng XLog với message có tham số.
+ */
+public final class Log {
+
+    private Log() {
+    }
+
+    public static void d(String tag, String message) {
+        XLog.d(tag, message);
+    }
+
+    public static void i(String tag, String message) {
+        XLog.i(tag, message);
+    }
+
+    public static void w(String tag, String message) {
+        XLog.w(tag, message);
+    }
+
+    public static void w(String tag, String message, Throwable error) {
+        // "{}" để message có sẵn dấu ngoặc (JSON) không bị hiểu là placeholder
+        XLog.w(tag, "{}", message, error);
+    }
+
+    public static void e(String tag, String message) {
+        XLog.e(tag, message);
+    }
+
+    public static void e(String tag, String message, Throwable error) {
+        XLog.e(tag, "{}", message, error);
+    }
+}
@@ -0,0 +1,51 @@
+package com.phicomm.r1.xiaozhi.platform;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Giới hạn số log của một call site: tối đa maxPerWindow record mỗi windowMs
+ *
+ * Khai báo static final cạnh call site rồi bọc lời gọi log:
+ *
+ *   private static final LogRateLimiter RECEIVE_LOG = new LogRateLimiter(5, 1000);
+ *   ...
+ *   if (RECEIVE_LOG.tryAcquire()) {
+ *       XLog.d(TAG, "Message received ({} chars, {} suppressed)", length, RECEIVE_LOG.drainSuppressed());
+ *   }
+ *
+ * Lock-free; đếm số lần bị chặn để record tiếp theo báo lại.
+ */
+public final class LogRateLimiter {
+
+    private final int maxPerWindow;
+    private final long windowMs;
+    private final AtomicLong windowStart = new AtomicLong(Long.MIN_VALUE / 2);
+    private final AtomicInteger used = new AtomicInteger();
+    private final AtomicInteger suppressed = new AtomicInteger();
+
+    public LogRateLimiter(int maxPerWindow, long windowMs) {
+        this.maxPerWindow = maxPerWindow;
+        this.windowMs = windowMs;
+    }
+
+    public boolean tryAcquire() {
+        long now = Platform.clock().elapsedMillis();
+        long start = windowStart.get();
+        if (now - start >= windowMs && windowStart.compareAndSet(start, now)) {
+            used.set(0);
+        }
+        if (used.incrementAndGet() <= maxPerWindow) {
+            return true;
+        }
+        suppressed.incrementAndGet();
+        return false;
+    }
+
+    /**
+     * Số lần bị chặn kể từ lần gọi trước (và reset về 0)
+     */
+    public int drainSuppressed() {
+        return suppressed.getAndSet(0);
+    }
+}
@@ -0,0 +1,157 @@
+package com.phicomm.r1.xiaozhi.platform;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Ring buffer log record nhiều producer, không lock, không cấp phát khi ghi
+ *
+ * Producer giành một sequence bằng getAndIncrement(), ghi field vào slot đã cấp sẵn rồi
+ * publish bằng volatile write của sequence. Khi vòng lại, record cũ nhất bị ghi đè - ring
+ * vừa là hàng đợi cho drain thread vừa là lịch sử N record gần nhất cho /logs.
+ *
+ * Reader (drain, snapshot) copy slot rồi kiểm tra lại sequence; slot bị ghi đè giữa chừng
+ * thì bỏ qua. Message được format ở reader, không ở thread gọi log.
+ */
+final class LogRing {
+
+    static final class Slot {
+        /** Sequence của record đang nằm trong slot, -1 khi producer đang ghi */
+        volatile long sequence = -1;
+        long wallMillis;
+        int level;
+        String tag;
+        String threadName;
+        String format;
+        int argCount;
+        Object arg0;
+        Object arg1;
+        Object arg2;
+        Object[] args;
+        /** Message đã format (drain thread điền vào, snapshot dùng lại) */
+        String message;
+        Throwable error;
+    }
+
+    /**
+     * Bản copy ổn định của một record
+     */
+    static final class Record {
+        long sequence;
+        long wallMillis;
+        int level;
+        String tag;
+        String threadName;
+        String message;
+        Throwable error;
+    }
+
+    private final Slot[] slots;
+    private final int mask;
+    private final AtomicLong head = new AtomicLong();
+
+    LogRing(int capacity) {
+        if (Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("capacity must be a power of two: " + capacity);
+        }
+        slots = new Slot[capacity];
+        for (int i = 0; i < capacity; i++) {
+            slots[i] = new Slot();
+        }
+        mask = capacity - 1;
+    }
+
+    int capacity() {
+        return slots.length;
+    }
+
+    /**
+     * Sequence của record tiếp theo (= tổng số record đã ghi)
+     */
+    long head() {
+        return head.get();
+    }
+
+    void publish(int level, String tag, String format, int argCount,
+                 Object arg0, Object arg1, Object arg2, Object[] args) {
+        long sequence = head.getAndIncrement();
+        Slot slot = slots[(int) sequence & mask];
+        slot.sequence = -1;
+        slot.wallMillis = System.currentTimeMillis();
+        slot.level = level;
+        slot.tag = tag;
+        slot.threadName = Thread.currentThread().getName();
+        slot.format = format;
+        slot.argCount = argCount;
+        slot.arg0 = arg0;
+        slot.arg1 = arg1;
+        slot.arg2 = arg2;
+        slot.args = args;
+        slot.message = null;
+        slot.error = null;
+        slot.sequence = sequence;
+    }
+
+    /**
+     * Copy record có sequence cho trước vào out
+     *
+     * @return false nếu record chưa publish xong hoặc đã bị ghi đè
+     */
+    boolean read(long sequence, Record out) {
+        Slot slot = slots[(int) sequence & mask];
+        if (slot.sequence != sequence) {
+            return false;
+        }
+        int level = slot.level;
+        String tag = slot.tag;
+        String threadName = slot.threadName;
+        long wallMillis = slot.wallMillis;
+        String message = slot.message;
+        if (message != null) {
+            out.message = message;
+            out.error = slot.error;
+        } else {
+            XLog.format(slot.format, slot.argCount, slot.arg0, slot.arg1, slot.arg2, slot.args, out);
+        }
+        if (slot.sequence != sequence) {
+            return false;
+        }
+        out.sequence = sequence;
+        out.wallMillis = wallMillis;
+        out.level = level;
+        out.tag = tag;
+        out.threadName = threadName;
+        return true;
+    }
+
+    /**
+     * Drain thread: lưu message đã format để snapshot không phải format lại
+     */
+    void retain(long sequence, Record record) {
+        Slot slot = slots[(int) sequence & mask];
+        if (slot.sequence != sequence) {
+            return;
+        }
+        slot.error = record.error;
+        slot.message = record.message;
+    }
+
+    /**
+     * Tối đa limit record gần nhất có level >= minLevel, cũ trước
+     */
+    List<Record> snapshot(int limit, int minLevel) {
+        long end = head.get();
+        long start = Math.max(0, end - slots.length);
+        List<Record> records = new ArrayList<Record>();
+        for (long sequence = end - 1; sequence >= start && records.size() < limit; sequence--) {
+            Record record = new Record();
+            if (read(sequence, record) && record.level >= minLevel) {
+                records.add(record);
+            }
+        }
+        Collections.reverse(records);
+        return records;
+    }
+}
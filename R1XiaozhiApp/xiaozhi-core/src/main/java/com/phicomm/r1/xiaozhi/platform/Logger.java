@@ -0,0 +1,17 @@
+package com.phicomm.r1.xiaozhi.platform;
+
+/**
+ * Backend log cho code trong xiaozhi-core
+ *
+ * Android: android.util.Log; JVM (test, benchmark, fake server): stderr
+ */
+public interface Logger {
+
+    void d(String tag, String message);
+
+    void i(String tag, String message);
+
+    void w(String tag, String message, Throwable error);
+
+    void e(String tag, String message, Throwable error);
+}
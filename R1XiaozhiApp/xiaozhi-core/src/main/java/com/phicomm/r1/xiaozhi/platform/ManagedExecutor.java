@@ -0,0 +1,250 @@
+package com.phicomm.r1.xiaozhi.platform;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Thread pool có tên, giới hạn hàng đợi và đo đạc (một tier của TaskScheduler)
+ *
+ * - Hàng đợi giới hạn mềm queueCapacity task (kể cả task hẹn giờ); vượt quá ->
+ *   RejectedExecutionException thay vì để backlog phình vô hạn.
+ * - Queue latency: từ lúc task đáng lẽ được chạy (submit + delay) tới lúc thực sự chạy.
+ * - Utilisation: thời gian bận (wall clock, tính cả task đang chạy dở như vòng lặp capture)
+ *   / (số thread x thời gian), tính từ lần getStats() trước.
+ * - Task có tên -> thread được đổi tên trong lúc chạy (systrace / ANR dump / log thấy "mic-capture").
+ * - Exception của task được log (ThreadPoolExecutor mặc định nuốt vào Future).
+ */
+public final class ManagedExecutor implements Executor {
+
+    private static final String TAG = "ManagedExecutor";
+
+    private final String name;
+    private final int threads;
+    private final int queueCapacity;
+    private final ScheduledThreadPoolExecutor executor;
+    private final LogRateLimiter rejectLog = new LogRateLimiter(3, 10000);
+
+    private final AtomicLong submitted = new AtomicLong();
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong queueNanosTotal = new AtomicLong();
+    private final AtomicLong queueNanosMax = new AtomicLong();
+
+    // Bận = busyNanos (task đã xong) + running * now - runningStartSum (task đang chạy)
+    private final AtomicInteger running = new AtomicInteger();
+    private final AtomicLong runningStartSum = new AtomicLong();
+    private final AtomicLong busyNanos = new AtomicLong();
+
+    private long windowStartNanos;
+    private long windowBusyNanos;
+
+    public ManagedExecutor(final String name, int threads, final int priority, int queueCapacity) {
+        this.name = name;
+        this.threads = threads;
+        this.queueCapacity = queueCapacity;
+        this.executor = new ScheduledThreadPoolExecutor(threads, new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, name + "-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                thread.setPriority(priority);
+                return thread;
+            }
+        });
+        // Task huỷ (Future.cancel) rời hàng đợi ngay, không chiếm chỗ tới hạn
+        executor.setRemoveOnCancelPolicy(true);
+        executor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+        executor.setContinueExistingPeriodicTasksAfterShutdownPolicy(false);
+        this.windowStartNanos = System.nanoTime();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    // ==================== Submit ====================
+
+    @Override
+    public void execute(Runnable task) {
+        submit(null, task);
+    }
+
+    public void execute(String taskName, Runnable task) {
+        submit(taskName, task);
+    }
+
+    public Future<?> submit(String taskName, Runnable task) {
+        return schedule(taskName, task, 0, TimeUnit.NANOSECONDS);
+    }
+
+    public ScheduledFuture<?> schedule(String taskName, Runnable task, long delay, TimeUnit unit) {
+        admit();
+        try {
+            return executor.schedule(new MeteredTask(taskName, task, unit.toNanos(delay), 0), delay, unit);
+        } catch (RejectedExecutionException e) {
+            onRejected("shut down");
+            throw e;
+        }
+    }
+
+    /**
+     * Chạy lặp, mỗi lần cách lần trước delay (tính từ lúc kết thúc)
+     */
+    public ScheduledFuture<?> scheduleWithFixedDelay(String taskName, Runnable task, long initialDelay,
+                                                     long delay, TimeUnit unit) {
+        admit();
+        try {
+            return executor.scheduleWithFixedDelay(
+                new MeteredTask(taskName, task, unit.toNanos(initialDelay), unit.toNanos(delay)),
+                initialDelay, delay, unit);
+        } catch (RejectedExecutionException e) {
+            onRejected("shut down");
+            throw e;
+        }
+    }
+
+    /**
+     * Giới hạn mềm: đếm hàng đợi rồi mới thêm, vài submit đồng thời có thể vượt một chút
+     */
+    private void admit() {
+        if (executor.getQueue().size() >= queueCapacity) {
+            onRejected("queue full");
+            throw new RejectedExecutionException(name + " queue full (" + queueCapacity + ")");
+        }
+        submitted.incrementAndGet();
+    }
+
+    private void onRejected(String reason) {
+        rejected.incrementAndGet();
+        if (rejectLog.tryAcquire()) {
+            XLog.w(TAG, "{}: task rejected, {} ({} suppressed)", name, reason, rejectLog.drainSuppressed());
+        }
+    }
+
+    /**
+     * Bọc task: đo queue latency / thời gian bận, đổi tên thread, log exception
+     */
+    private final class MeteredTask implements Runnable {
+
+        private final String taskName;
+        private final Runnable task;
+        private final long periodNanos;
+        private long readyNanos;
+
+        MeteredTask(String taskName, Runnable task, long delayNanos, long periodNanos) {
+            this.taskName = taskName;
+            this.task = task;
+            this.periodNanos = periodNanos;
+            this.readyNanos = System.nanoTime() + delayNanos;
+        }
+
+        @Override
+        public void run() {
+            long start = System.nanoTime();
+            recordQueueLatency(Math.max(0, start - readyNanos));
+            running.incrementAndGet();
+            runningStartSum.addAndGet(start);
+
+            Thread thread = Thread.currentThread();
+            String threadName = null;
+            if (taskName != null) {
+                threadName = thread.getName();
+                thread.setName(taskName);
+            }
+            try {
+                task.run();
+                completed.incrementAndGet();
+            } catch (RuntimeException | Error e) {
+                failed.incrementAndGet();
+                XLog.e(TAG, "{}: task {} failed", name, taskName != null ? taskName : task.getClass(), e);
+                throw e;
+            } finally {
+                if (threadName != null) {
+                    thread.setName(threadName);
+                }
+                long end = System.nanoTime();
+                busyNanos.addAndGet(end - start);
+                runningStartSum.addAndGet(-start);
+                running.decrementAndGet();
+                readyNanos = end + periodNanos;
+            }
+        }
+    }
+
+    private void recordQueueLatency(long nanos) {
+        queueNanosTotal.addAndGet(nanos);
+        long max = queueNanosMax.get();
+        while (nanos > max && !queueNanosMax.compareAndSet(max, nanos)) {
+            max = queueNanosMax.get();
+        }
+    }
+
+    // ==================== Stats / shutdown ====================
+
+    /**
+     * queue_latency_max_us và utilisation tính từ lần gọi trước
+     */
+    public synchronized JSONObject getStats() throws JSONException {
+        long now = System.nanoTime();
+        long busy = busyNanos.get() + running.get() * now - runningStartSum.get();
+        long windowNanos = now - windowStartNanos;
+        double utilisation = windowNanos > 0
+            ? (double) (busy - windowBusyNanos) / ((double) windowNanos * threads) : 0;
+        windowStartNanos = now;
+        windowBusyNanos = busy;
+
+        long started = completed.get() + failed.get() + running.get();
+        JSONObject stats = new JSONObject();
+        stats.put("threads", threads);
+        stats.put("pool_size", executor.getPoolSize());
+        stats.put("active", running.get());
+        stats.put("queued", executor.getQueue().size());
+        stats.put("queue_capacity", queueCapacity);
+        stats.put("submitted", submitted.get());
+        stats.put("completed", completed.get());
+        stats.put("failed", failed.get());
+        stats.put("rejected", rejected.get());
+        stats.put("queue_latency_avg_us", started > 0 ? queueNanosTotal.get() / started / 1000L : 0);
+        stats.put("queue_latency_max_us", queueNanosMax.getAndSet(0) / 1000L);
+        stats.put("busy_ms", busy / 1000000L);
+        stats.put("utilisation", Math.round(Math.max(0, Math.min(1, utilisation)) * 1000) / 1000.0);
+        return stats;
+    }
+
+    public boolean isShutdown() {
+        return executor.isShutdown();
+    }
+
+    /**
+     * Không nhận task mới; task đang chạy / đã tới hạn chạy nốt, task hẹn giờ bị bỏ
+     */
+    void shutdown() {
+        executor.shutdown();
+    }
+
+    boolean awaitTermination(long timeoutNanos) throws InterruptedException {
+        return executor.awaitTermination(timeoutNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Interrupt các thread còn chạy
+     *
+     * @return số task chưa chạy bị bỏ
+     */
+    int shutdownNow() {
+        return executor.shutdownNow().size();
+    }
+}
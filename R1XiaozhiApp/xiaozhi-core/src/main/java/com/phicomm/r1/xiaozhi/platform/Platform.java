@@ -0,0 +1,142 @@
+package com.phicomm.r1.xiaozhi.platform;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Các dịch vụ nền mà xiaozhi-core cần: log, clock, main-thread dispatcher
+ *
+ * Mặc định là bản JVM thuần (stderr, System.nanoTime, một thread event loop)
+ * để test / benchmark / fake server chạy không cần Android.
+ * App gọi install() trong Application.onCreate() với bản Android.
+ */
+public final class Platform {
+
+    private static volatile Logger logger = new StderrLogger();
+    private static volatile Clock clock = new SystemClock();
+    private static volatile Dispatcher dispatcher;
+
+    private Platform() {
+    }
+
+    public static void install(Logger logger, Clock clock, Dispatcher dispatcher) {
+        if (logger != null) {
+            Platform.logger = logger;
+        }
+        if (clock != null) {
+            Platform.clock = clock;
+        }
+        if (dispatcher != null) {
+            Platform.dispatcher = dispatcher;
+        }
+    }
+
+    public static Logger logger() {
+        return logger;
+    }
+
+    public static Clock clock() {
+        return clock;
+    }
+
+    public static Dispatcher dispatcher() {
+        Dispatcher current = dispatcher;
+        if (current == null) {
+            synchronized (Platform.class) {
+                if (dispatcher == null) {
+                    dispatcher = new ExecutorDispatcher("xiaozhi-main");
+                }
+                current = dispatcher;
+            }
+        }
+        return current;
+    }
+
+    /**
+     * Log ra stderr - dùng khi chạy trên JVM
+     */
+    public static final class StderrLogger implements Logger {
+
+        @Override
+        public void d(String tag, String message) {
+            print("D", tag, message, null);
+        }
+
+        @Override
+        public void i(String tag, String message) {
+            print("I", tag, message, null);
+        }
+
+        @Override
+        public void w(String tag, String message, Throwable error) {
+            print("W", tag, message, error);
+        }
+
+        @Override
+        public void e(String tag, String message, Throwable error) {
+            print("E", tag, message, error);
+        }
+
+        private static void print(String level, String tag, String message, Throwable error) {
+            System.err.println(level + "/" + tag + ": " + message);
+            if (error != null) {
+                error.printStackTrace();
+            }
+        }
+    }
+
+    public static final class SystemClock implements Clock {
+
+        @Override
+        public long elapsedMillis() {
+            return System.nanoTime() / 1000000L;
+        }
+
+        @Override
+        public long nanoTime() {
+            return System.nanoTime();
+        }
+    }
+
+    /**
+     * Dispatcher trên một thread daemon riêng (tương đương main Looper)
+     */
+    public static final class ExecutorDispatcher implements Dispatcher {
+
+        private final ScheduledExecutorService executor;
+        private volatile Thread thread;
+
+        public ExecutorDispatcher(final String name) {
+            executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread t = new Thread(runnable, name);
+                    t.setDaemon(true);
+                    thread = t;
+                    return t;
+                }
+            });
+        }
+
+        @Override
+        public void post(Runnable task) {
+            executor.execute(task);
+        }
+
+        @Override
+        public void postDelayed(Runnable task, long delayMillis) {
+            executor.schedule(task, delayMillis, TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public boolean isCurrentThread() {
+            return Thread.currentThread() == thread;
+        }
+
+        public void shutdown() {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package com.phicomm.r1.xiaozhi.platform;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Scheduler trung tâm: mọi thread nền của app đi qua 3 tier có tên
+ *
+ *   audio       vòng lặp capture / processing / PCM playback (task tự set THREAD_PRIORITY_*AUDIO)
+ *   network     HTTP server, OTA, activation poll, probe endpoint, tải TTS
+ *   background  ghi cache, flight recorder dump, su / setenforce
+ *
+ * Tổng tối đa 10 thread cho R1 (4 nhân A7), mỗi tier có hàng đợi giới hạn và metrics riêng
+ * (GET /metrics -> "scheduler") để thấy tier nào đang tranh CPU.
+ * Thread của WebSocket client do thư viện tự tạo, không đi qua đây.
+ */
+public final class TaskScheduler {
+
+    private static final String TAG = "TaskScheduler";
+
+    public enum Tier {
+        // Vòng lặp chạy dài chiếm thread suốt phiên: capture + processing + playback + 1 dự phòng
+        AUDIO("audio", 4, Thread.MAX_PRIORITY, 8),
+        NETWORK("net", 4, Thread.NORM_PRIORITY, 64),
+        BACKGROUND("bg", 2, Thread.MIN_PRIORITY, 128);
+
+        final String label;
+        final int threads;
+        final int priority;
+        final int queueCapacity;
+
+        Tier(String label, int threads, int priority, int queueCapacity) {
+            this.label = label;
+            this.threads = threads;
+            this.priority = priority;
+            this.queueCapacity = queueCapacity;
+        }
+    }
+
+    private final ManagedExecutor[] executors;
+
+    public TaskScheduler() {
+        Tier[] tiers = Tier.values();
+        executors = new ManagedExecutor[tiers.length];
+        for (Tier tier : tiers) {
+            executors[tier.ordinal()] = new ManagedExecutor(tier.label, tier.threads, tier.priority,
+                tier.queueCapacity);
+        }
+    }
+
+    public ManagedExecutor get(Tier tier) {
+        return executors[tier.ordinal()];
+    }
+
+    public ManagedExecutor audio() {
+        return get(Tier.AUDIO);
+    }
+
+    public ManagedExecutor network() {
+        return get(Tier.NETWORK);
+    }
+
+    public ManagedExecutor background() {
+        return get(Tier.BACKGROUND);
+    }
+
+    public JSONObject getStats() throws JSONException {
+        JSONObject stats = new JSONObject();
+        for (ManagedExecutor executor : executors) {
+            stats.put(executor.getName(), executor.getStats());
+        }
+        return stats;
+    }
+
+    /**
+     * Dừng mọi tier: chờ task đang chạy tối đa timeoutMs (chung), sau đó interrupt phần còn lại
+     *
+     * @return true nếu mọi thread kết thúc trong thời hạn
+     */
+    public boolean shutdown(long timeoutMs) {
+        for (ManagedExecutor executor : executors) {
+            executor.shutdown();
+        }
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+        boolean clean = true;
+        for (ManagedExecutor executor : executors) {
+            try {
+                if (!executor.awaitTermination(Math.max(0, deadline - System.nanoTime()))) {
+                    int dropped = executor.shutdownNow();
+                    Log.w(TAG, executor.getName() + " did not stop in " + timeoutMs + "ms, interrupted ("
+                        + dropped + " queued tasks dropped)");
+                    clean = false;
+                }
+            } catch (InterruptedException e) {
+                executor.shutdownNow();
+                Thread.currentThread().interrupt();
+                clean = false;
+            }
+        }
+        Log.i(TAG, "Scheduler shut down" + (clean ? "" : " (forced)"));
+        return clean;
+    }
+}
@@ -0,0 +1,415 @@
+package com.phicomm.r1.xiaozhi.platform;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Log facade rẻ cho hot path (audio thread, WebSocket thread, EventBus)
+ *
+ * - Message có tham số kiểu "{}" (như slf4j): thread gọi log chỉ ghi tham chiếu format +
+ *   args vào LogRing, việc nối chuỗi / format làm trên thread "xlog-drain".
+ *   Args được format muộn nên chỉ truyền giá trị không đổi (String, số, enum, Class...).
+ * - Tham số cuối là Throwable và không có "{}" tương ứng -> được coi là exception của record.
+ * - Level: kiểm tra minLevel trước mọi thứ; bản release còn xoá hẳn XLog.d(...) bằng
+ *   -assumenosideeffects (proguard-rules.pro).
+ * - Drain thread đẩy record sang Platform.logger() (Android: Timber, JVM: stderr);
+ *   ring giữ RING_CAPACITY record gần nhất cho HTTP /logs. Ring đầy thì record cũ bị ghi đè,
+ *   caller không bao giờ bị chặn.
+ *
+ * Kết hợp LogRateLimiter cho log lặp lại theo từng message / frame.
+ */
+public final class XLog {
+
+    public static final int DEBUG = 3;
+    public static final int INFO = 4;
+    public static final int WARN = 5;
+    public static final int ERROR = 6;
+
+    public static final int RING_CAPACITY = 8192;
+
+    /** Drain thread ngủ tối đa ngần này khi ring rỗng (caller không unpark, trừ WARN/ERROR) */
+    private static final long IDLE_PARK_NANOS = 50 * 1000000L;
+
+    private static final LogRing RING = new LogRing(RING_CAPACITY);
+    private static final Drainer DRAINER = new Drainer();
+
+    private static volatile int minLevel = DEBUG;
+
+    static {
+        DRAINER.start();
+        try {
+            // JVM (fake server, benchmark): in nốt record còn trong ring trước khi thoát
+            Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    flush();
+                }
+            }, "xlog-flush"));
+        } catch (IllegalStateException | SecurityException e) {
+            // Đang shutdown / không được phép - bỏ qua
+        }
+    }
+
+    private XLog() {
+    }
+
+    // ==================== Level ====================
+
+    public static void setMinLevel(int level) {
+        minLevel = level;
+    }
+
+    public static int getMinLevel() {
+        return minLevel;
+    }
+
+    public static boolean isLoggable(int level) {
+        return level >= minLevel;
+    }
+
+    // ==================== DEBUG ====================
+
+    public static void d(String tag, String message) {
+        if (DEBUG >= minLevel) {
+            RING.publish(DEBUG, tag, message, 0, null, null, null, null);
+        }
+    }
+
+    public static void d(String tag, String format, Object arg0) {
+        if (DEBUG >= minLevel) {
+            RING.publish(DEBUG, tag, format, 1, arg0, null, null, null);
+        }
+    }
+
+    public static void d(String tag, String format, Object arg0, Object arg1) {
+        if (DEBUG >= minLevel) {
+            RING.publish(DEBUG, tag, format, 2, arg0, arg1, null, null);
+        }
+    }
+
+    public static void d(String tag, String format, Object arg0, Object arg1, Object arg2) {
+        if (DEBUG >= minLevel) {
+            RING.publish(DEBUG, tag, format, 3, arg0, arg1, arg2, null);
+        }
+    }
+
+    public static void d(String tag, String format, Object... args) {
+        if (DEBUG >= minLevel) {
+            RING.publish(DEBUG, tag, format, -1, null, null, null, args);
+        }
+    }
+
+    // ==================== INFO ====================
+
+    public static void i(String tag, String message) {
+        if (INFO >= minLevel) {
+            RING.publish(INFO, tag, message, 0, null, null, null, null);
+        }
+    }
+
+    public static void i(String tag, String format, Object arg0) {
+        if (INFO >= minLevel) {
+            RING.publish(INFO, tag, format, 1, arg0, null, null, null);
+        }
+    }
+
+    public static void i(String tag, String format, Object arg0, Object arg1) {
+        if (INFO >= minLevel) {
+            RING.publish(INFO, tag, format, 2, arg0, arg1, null, null);
+        }
+    }
+
+    public static void i(String tag, String format, Object arg0, Object arg1, Object arg2) {
+        if (INFO >= minLevel) {
+            RING.publish(INFO, tag, format, 3, arg0, arg1, arg2, null);
+        }
+    }
+
+    public static void i(String tag, String format, Object... args) {
+        if (INFO >= minLevel) {
+            RING.publish(INFO, tag, format, -1, null, null, null, args);
+        }
+    }
+
+    // ==================== WARN / ERROR (đánh thức drain thread ngay) ====================
+
+    public static void w(String tag, String message) {
+        urgent(WARN, tag, message, 0, null, null, null, null);
+    }
+
+    public static void w(String tag, String format, Object arg0) {
+        urgent(WARN, tag, format, 1, arg0, null, null, null);
+    }
+
+    public static void w(String tag, String format, Object arg0, Object arg1) {
+        urgent(WARN, tag, format, 2, arg0, arg1, null, null);
+    }
+
+    public static void w(String tag, String format, Object... args) {
+        urgent(WARN, tag, format, -1, null, null, null, args);
+    }
+
+    public static void e(String tag, String message) {
+        urgent(ERROR, tag, message, 0, null, null, null, null);
+    }
+
+    public static void e(String tag, String format, Object arg0) {
+        urgent(ERROR, tag, format, 1, arg0, null, null, null);
+    }
+
+    public static void e(String tag, String format, Object arg0, Object arg1) {
+        urgent(ERROR, tag, format, 2, arg0, arg1, null, null);
+    }
+
+    public static void e(String tag, String format, Object... args) {
+        urgent(ERROR, tag, format, -1, null, null, null, args);
+    }
+
+    private static void urgent(int level, String tag, String format, int argCount,
+                               Object arg0, Object arg1, Object arg2, Object[] args) {
+        if (level >= minLevel) {
+            RING.publish(level, tag, format, argCount, arg0, arg1, arg2, args);
+            LockSupport.unpark(DRAINER);
+        }
+    }
+
+    // ==================== Ring ====================
+
+    /**
+     * Tối đa limit record gần nhất (cũ trước), level >= minLevel
+     */
+    public static List<Entry> recent(int limit, int minLevel) {
+        List<LogRing.Record> records = RING.snapshot(Math.min(limit, RING_CAPACITY), minLevel);
+        List<Entry> entries = new ArrayList<Entry>(records.size());
+        for (LogRing.Record record : records) {
+            entries.add(new Entry(record));
+        }
+        return entries;
+    }
+
+    /**
+     * Tổng số record đã ghi / bị ghi đè trước khi drain kịp đẩy sang backend
+     */
+    public static long getWrittenCount() {
+        return RING.head();
+    }
+
+    public static long getDroppedCount() {
+        return DRAINER.dropped;
+    }
+
+    /**
+     * Chờ drain thread đẩy hết record hiện có sang backend (tối đa 1s)
+     */
+    public static void flush() {
+        long target = RING.head();
+        long deadline = System.nanoTime() + 1000 * 1000000L;
+        while (DRAINER.cursor < target && System.nanoTime() < deadline) {
+            LockSupport.unpark(DRAINER);
+            Thread.yield();
+        }
+    }
+
+    /**
+     * Record đọc từ ring (cho /logs)
+     */
+    public static final class Entry {
+        public final long sequence;
+        public final long wallMillis;
+        public final int level;
+        public final String tag;
+        public final String threadName;
+        public final String message;
+        public final Throwable error;
+
+        Entry(LogRing.Record record) {
+            this.sequence = record.sequence;
+            this.wallMillis = record.wallMillis;
+            this.level = record.level;
+            this.tag = record.tag;
+            this.threadName = record.threadName;
+            this.message = record.message;
+            this.error = record.error;
+        }
+    }
+
+    public static char levelChar(int level) {
+        switch (level) {
+            case DEBUG:
+                return 'D';
+            case INFO:
+                return 'I';
+            case WARN:
+                return 'W';
+            default:
+                return 'E';
+        }
+    }
+
+    public static int parseLevel(String value, int fallback) {
+        if (value == null || value.isEmpty()) {
+            return fallback;
+        }
+        switch (Character.toUpperCase(value.charAt(0))) {
+            case 'D':
+            case 'V':
+                return DEBUG;
+            case 'I':
+                return INFO;
+            case 'W':
+                return WARN;
+            case 'E':
+                return ERROR;
+            default:
+                return fallback;
+        }
+    }
+
+    // ==================== Format ====================
+
+    /**
+     * Thay lần lượt "{}" bằng args; Throwable thừa ở cuối -> out.error
+     */
+    static void format(String format, int argCount, Object arg0, Object arg1, Object arg2,
+                       Object[] args, LogRing.Record out) {
+        int count = argCount >= 0 ? argCount : (args != null ? args.length : 0);
+        out.error = null;
+        if (format == null) {
+            out.message = "null";
+            return;
+        }
+        if (count == 0) {
+            out.message = format;
+            return;
+        }
+        StringBuilder builder = new StringBuilder(format.length() + 16 * count);
+        int used = 0;
+        int from = 0;
+        while (used < count) {
+            int at = format.indexOf("{}", from);
+            if (at < 0) {
+                break;
+            }
+            builder.append(format, from, at);
+            appendValue(builder, arg(used++, argCount, arg0, arg1, arg2, args));
+            from = at + 2;
+        }
+        builder.append(format, from, format.length());
+        if (used < count) {
+            Object last = arg(count - 1, argCount, arg0, arg1, arg2, args);
+            if (last instanceof Throwable) {
+                out.error = (Throwable) last;
+            }
+        }
+        out.message = builder.toString();
+    }
+
+    private static Object arg(int index, int argCount, Object arg0, Object arg1, Object arg2, Object[] args) {
+        if (argCount < 0) {
+            return args[index];
+        }
+        return index == 0 ? arg0 : index == 1 ? arg1 : arg2;
+    }
+
+    /**
+     * Class -> getSimpleName() (tính trên drain thread, caller chỉ truyền Class)
+     */
+    private static void appendValue(StringBuilder builder, Object value) {
+        try {
+            if (value instanceof Class) {
+                builder.append(((Class<?>) value).getSimpleName());
+            } else {
+                builder.append(value);
+            }
+        } catch (RuntimeException e) {
+            // toString() của caller lỗi không được làm chết drain thread
+            builder.append("[toString failed: ").append(e.getClass().getSimpleName()).append(']');
+        }
+    }
+
+    /**
+     * Đẩy record từ ring sang Platform.logger() theo thứ tự sequence
+     */
+    private static final class Drainer extends Thread {
+
+        /** Sequence tiếp theo cần đẩy sang backend */
+        volatile long cursor;
+        volatile long dropped;
+
+        Drainer() {
+            super("xlog-drain");
+            setDaemon(true);
+            setPriority(Thread.MIN_PRIORITY);
+        }
+
+        @Override
+        public void run() {
+            LogRing.Record record = new LogRing.Record();
+            while (true) {
+                long head = RING.head();
+                long next = cursor;
+                if (next >= head) {
+                    LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+                    continue;
+                }
+                // Producer vượt trước cả vòng ring -> bỏ phần đã bị ghi đè
+                long oldest = head - RING.capacity();
+                if (next < oldest) {
+                    dropped += oldest - next;
+                    next = oldest;
+                }
+                if (!RING.read(next, record)) {
+                    if (!waitForPublish(next)) {
+                        dropped++; // producer chưa publish xong quá lâu hoặc slot đã bị ghi đè
+                    }
+                    cursor = next + 1;
+                    continue;
+                }
+                RING.retain(next, record);
+                deliver(record);
+                cursor = next + 1;
+            }
+        }
+
+        /**
+         * Producer đã giành sequence nhưng chưa ghi xong slot (thường chỉ vài chục ns)
+         */
+        private boolean waitForPublish(long sequence) {
+            LogRing.Record record = new LogRing.Record();
+            for (int i = 0; i < 100; i++) {
+                if (RING.read(sequence, record)) {
+                    RING.retain(sequence, record);
+                    deliver(record);
+                    return true;
+                }
+                if (RING.head() - RING.capacity() > sequence) {
+                    return false;
+                }
+                LockSupport.parkNanos(this, 10000L);
+            }
+            return false;
+        }
+
+        private static void deliver(LogRing.Record record) {
+            Logger logger = Platform.logger();
+            try {
+                switch (record.level) {
+                    case DEBUG:
+                        logger.d(record.tag, record.message);
+                        break;
+                    case INFO:
+                        logger.i(record.tag, record.message);
+                        break;
+                    case WARN:
+                        logger.w(record.tag, record.message, record.error);
+                        break;
+                    default:
+                        logger.e(record.tag, record.message, record.error);
+                }
+            } catch (RuntimeException e) {
+                // Backend lỗi: bỏ record, drain tiếp
+            }
+        }
+    }
+}
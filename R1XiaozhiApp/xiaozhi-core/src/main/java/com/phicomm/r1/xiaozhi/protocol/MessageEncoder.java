@@ -0,0 +1,357 @@
+package com.phicomm.r1.xiaozhi.protocol;
+
+import com.phicomm.r1.xiaozhi.util.Base64Codec;
+import com.phicomm.r1.xiaozhi.util.CryptoUtils;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+/**
+ * Encoder message gửi đi của XiaozhiProtocol, ghi thẳng UTF-8 vào một buffer dùng lại
+ *
+ * Phần cố định của mỗi message ({"header":{"name":..,"namespace":..,"message_id":") được
+ * tính sẵn thành byte[], chỉ message_id và field của payload được ghi lúc encode - không
+ * tạo JSONObject, không toString(), không UUID.randomUUID() (SecureRandom có lock).
+ *
+ * message_id vẫn có dạng UUID (36 ký tự) để server không phân biệt: 64 bit cao là prefix
+ * ngẫu nhiên của connection, 64 bit thấp là bộ đếm tăng dần -> duy nhất trong connection
+ * và gần như chắc chắn duy nhất giữa các connection.
+ *
+ * Field String null bị bỏ qua như JSONObject.put(key, null).
+ *
+ * Không thread-safe: mỗi connection một encoder, caller tự synchronized. ByteBuffer trả về
+ * là view của buffer nội bộ, chỉ hợp lệ tới lần encode tiếp theo.
+ */
+public final class MessageEncoder {
+
+    private static final byte[] HEX = {
+        '0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'a', 'b', 'c', 'd', 'e', 'f'
+    };
+
+    private static final byte[] HELLO = header(XiaozhiProtocol.HELLO, XiaozhiProtocol.NS_COMMON);
+    private static final byte[] START_LISTENING =
+        header(XiaozhiProtocol.START_LISTENING, XiaozhiProtocol.NS_RECOGNIZER);
+    private static final byte[] STOP_LISTENING =
+        header(XiaozhiProtocol.STOP_LISTENING, XiaozhiProtocol.NS_RECOGNIZER);
+    private static final byte[] ABORT_SPEAKING = header(XiaozhiProtocol.ABORT_SPEAKING, XiaozhiProtocol.NS_TTS);
+    private static final byte[] RECOGNIZE = header(XiaozhiProtocol.RECOGNIZE, XiaozhiProtocol.NS_RECOGNIZER);
+
+    /** Giữa message_id và payload */
+    private static final byte[] PAYLOAD_OPEN = ascii("\"},\"payload\":{");
+    private static final byte[] MESSAGE_CLOSE = ascii("}}");
+
+    private static final byte[] DEVICE_ID = field("device_id");
+    private static final byte[] SERIAL_NUMBER = field("serial_number");
+    private static final byte[] DEVICE_TYPE =
+        ascii("\"device_type\":\"" + XiaozhiProtocol.DEVICE_TYPE + "\"");
+    private static final byte[] OS_VERSION = field("os_version");
+    private static final byte[] APP_VERSION =
+        ascii("\"app_version\":\"" + XiaozhiProtocol.APP_VERSION + "\"");
+    private static final byte[] AUDIO_PARAMS = ascii("\"audio_params\":{\"format\":\""
+        + XiaozhiProtocol.AUDIO_FORMAT_PCM + "\",\"sample_rate\":" + XiaozhiProtocol.AUDIO_SAMPLE_RATE
+        + ",\"channels\":" + XiaozhiProtocol.AUDIO_CHANNELS + "}");
+    private static final byte[] MODE = field("mode");
+    private static final byte[] REASON = field("reason");
+    private static final byte[] TEXT = field("text");
+    private static final byte[] AUDIO = field("audio");
+    private static final byte[] AUDIO_FORMAT = ascii("\",\"format\":\"pcm\",\"sample_rate\":");
+    private static final byte[] CHANNELS = ascii(",\"channels\":");
+    private static final byte[] BITS_PER_SAMPLE = ascii(",\"bits_per_sample\":16");
+
+    private final long idPrefix;
+    private long sequence;
+
+    private byte[] buffer;
+    private ByteBuffer view;
+    private int position;
+    private boolean firstField;
+
+    /** Vị trí message_id trong buffer của message vừa encode (cho log) */
+    private int idOffset = -1;
+
+    public MessageEncoder() {
+        // Random thường là đủ: prefix chỉ để tách connection, không cần bảo mật
+        this(new Random().nextLong());
+    }
+
+    public MessageEncoder(long idPrefix) {
+        this.idPrefix = idPrefix;
+        this.buffer = new byte[512];
+        this.view = ByteBuffer.wrap(buffer);
+    }
+
+    // ==================== Messages ====================
+
+    public ByteBuffer hello(String deviceId, String serialNumber, String osVersion) {
+        begin(HELLO);
+        writeField(DEVICE_ID, deviceId);
+        writeField(SERIAL_NUMBER, serialNumber);
+        writeLiteral(DEVICE_TYPE);
+        writeField(OS_VERSION, osVersion);
+        writeLiteral(APP_VERSION);
+        writeLiteral(AUDIO_PARAMS);
+        return end();
+    }
+
+    /**
+     * @param mode ListeningMode.getValue()
+     */
+    public ByteBuffer startListening(String mode) {
+        begin(START_LISTENING);
+        writeField(MODE, mode);
+        return end();
+    }
+
+    public ByteBuffer stopListening() {
+        begin(STOP_LISTENING);
+        return end();
+    }
+
+    /**
+     * @param reason null -> payload rỗng
+     */
+    public ByteBuffer abortSpeaking(String reason) {
+        begin(ABORT_SPEAKING);
+        writeField(REASON, reason);
+        return end();
+    }
+
+    public ByteBuffer recognizeText(String text) {
+        begin(RECOGNIZE);
+        writeField(TEXT, text);
+        return end();
+    }
+
+    /**
+     * Recognize với audio PCM 16-bit, base64 ghi thẳng vào buffer
+     */
+    public ByteBuffer recognizeAudio(byte[] pcm, int offset, int length, int sampleRate, int channels) {
+        begin(RECOGNIZE);
+        writeLiteral(AUDIO);
+        ensure(Base64Codec.encodedLength(length));
+        position += Base64Codec.encode(pcm, offset, length, buffer, position);
+        write(AUDIO_FORMAT);
+        writeInt(sampleRate);
+        write(CHANNELS);
+        writeInt(channels);
+        write(BITS_PER_SAMPLE);
+        return end();
+    }
+
+    /**
+     * Như trên, PCM lấy từ position..limit của ByteBuffer (buffer pool) - không đổi position
+     */
+    public ByteBuffer recognizeAudio(ByteBuffer pcm, int sampleRate, int channels) {
+        begin(RECOGNIZE);
+        writeLiteral(AUDIO);
+        ensure(Base64Codec.encodedLength(pcm.remaining()));
+        position += Base64Codec.encode(pcm, buffer, position);
+        write(AUDIO_FORMAT);
+        writeInt(sampleRate);
+        write(CHANNELS);
+        writeInt(channels);
+        write(BITS_PER_SAMPLE);
+        return end();
+    }
+
+    // ==================== Accessors ====================
+
+    /**
+     * message_id của message vừa encode - tạo String, chỉ dùng khi log
+     */
+    public String getLastMessageId() {
+        return idOffset < 0 ? null : new String(buffer, idOffset, 36, CryptoUtils.UTF_8);
+    }
+
+    /**
+     * Số message đã encode (cũng là phần đếm của message_id tiếp theo)
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
+    // ==================== Writers ====================
+
+    private void begin(byte[] header) {
+        position = 0;
+        write(header);
+        idOffset = position;
+        writeMessageId();
+        write(PAYLOAD_OPEN);
+        firstField = true;
+    }
+
+    private ByteBuffer end() {
+        write(MESSAGE_CLOSE);
+        view.clear();
+        view.limit(position);
+        return view;
+    }
+
+    /**
+     * "key":"value" (value escape), bỏ qua nếu value null
+     */
+    private void writeField(byte[] key, String value) {
+        if (value == null) {
+            return;
+        }
+        writeLiteral(key);
+        writeEscaped(value);
+        writeByte('"');
+    }
+
+    /**
+     * Template của payload, thêm dấu phẩy nếu không phải field đầu tiên
+     */
+    private void writeLiteral(byte[] bytes) {
+        if (!firstField) {
+            writeByte(',');
+        }
+        firstField = false;
+        write(bytes);
+    }
+
+    /**
+     * 8-4-4-4-12 như UUID.toString()
+     */
+    private void writeMessageId() {
+        ensure(36);
+        long low = sequence++;
+        writeHex(idPrefix >>> 32, 8);
+        writeByte('-');
+        writeHex(idPrefix >>> 16, 4);
+        writeByte('-');
+        writeHex(idPrefix, 4);
+        writeByte('-');
+        writeHex(low >>> 48, 4);
+        writeByte('-');
+        writeHex(low, 12);
+    }
+
+    private void writeHex(long value, int digits) {
+        for (int i = digits - 1; i >= 0; i--) {
+            buffer[position + i] = HEX[(int) (value & 0xf)];
+            value >>>= 4;
+        }
+        position += digits;
+    }
+
+    private void writeInt(int number) {
+        ensure(11);
+        long value = number;
+        if (value < 0) {
+            buffer[position++] = '-';
+            value = -value;
+        }
+        int start = position;
+        do {
+            buffer[position++] = (byte) ('0' + value % 10);
+            value /= 10;
+        } while (value > 0);
+        for (int i = start, j = position - 1; i < j; i++, j--) {
+            byte tmp = buffer[i];
+            buffer[i] = buffer[j];
+            buffer[j] = tmp;
+        }
+    }
+
+    /**
+     * Chuỗi JSON (không gồm dấu nháy), escape " \ và ký tự điều khiển, encode UTF-8 trực tiếp
+     */
+    private void writeEscaped(String value) {
+        int length = value.length();
+        // Tối đa 6 byte / char (\\uXXXX), cặp surrogate 4 byte / 2 char
+        ensure(length * 6);
+        byte[] out = buffer;
+        int p = position;
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (c >= 0x20 && c < 0x80) {
+                if (c == '"' || c == '\\') {
+                    out[p++] = '\\';
+                }
+                out[p++] = (byte) c;
+            } else if (c < 0x20) {
+                switch (c) {
+                    case '\n':
+                        out[p++] = '\\';
+                        out[p++] = 'n';
+                        break;
+                    case '\r':
+                        out[p++] = '\\';
+                        out[p++] = 'r';
+                        break;
+                    case '\t':
+                        out[p++] = '\\';
+                        out[p++] = 't';
+                        break;
+                    default:
+                        out[p++] = '\\';
+                        out[p++] = 'u';
+                        out[p++] = '0';
+                        out[p++] = '0';
+                        out[p++] = HEX[c >> 4];
+                        out[p++] = HEX[c & 0xf];
+                }
+            } else if (c < 0x800) {
+                out[p++] = (byte) (0xc0 | (c >> 6));
+                out[p++] = (byte) (0x80 | (c & 0x3f));
+            } else if (Character.isHighSurrogate(c) && i + 1 < length
+                && Character.isLowSurrogate(value.charAt(i + 1))) {
+                int cp = Character.toCodePoint(c, value.charAt(++i));
+                out[p++] = (byte) (0xf0 | (cp >> 18));
+                out[p++] = (byte) (0x80 | ((cp >> 12) & 0x3f));
+                out[p++] = (byte) (0x80 | ((cp >> 6) & 0x3f));
+                out[p++] = (byte) (0x80 | (cp & 0x3f));
+            } else if (Character.isSurrogate(c)) {
+                // Surrogate lẻ: '?' như String.getBytes(UTF-8)
+                out[p++] = '?';
+            } else {
+                out[p++] = (byte) (0xe0 | (c >> 12));
+                out[p++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+                out[p++] = (byte) (0x80 | (c & 0x3f));
+            }
+        }
+        position = p;
+    }
+
+    private void write(byte[] bytes) {
+        ensure(bytes.length);
+        System.arraycopy(bytes, 0, buffer, position, bytes.length);
+        position += bytes.length;
+    }
+
+    private void writeByte(char c) {
+        ensure(1);
+        buffer[position++] = (byte) c;
+    }
+
+    private void ensure(int extra) {
+        int required = position + extra;
+        if (required <= buffer.length) {
+            return;
+        }
+        byte[] grown = new byte[Math.max(required, buffer.length * 2)];
+        System.arraycopy(buffer, 0, grown, 0, position);
+        buffer = grown;
+        view = ByteBuffer.wrap(buffer);
+    }
+
+    // ==================== Templates ====================
+
+    private static byte[] header(String name, String namespace) {
+        return ascii("{\"header\":{\"name\":\"" + name + "\",\"namespace\":\"" + namespace
+            + "\",\"message_id\":\"");
+    }
+
+    /**
+     * "key":" - writeField() ghi value + dấu nháy đóng
+     */
+    private static byte[] field(String key) {
+        return ascii("\"" + key + "\":\"");
+    }
+
+    private static byte[] ascii(String template) {
+        return template.getBytes(CryptoUtils.UTF_8);
+    }
+}
@@ -0,0 +1,183 @@
+package com.phicomm.r1.xiaozhi.protocol;
+
+import com.phicomm.r1.xiaozhi.util.CryptoUtils;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.nio.ByteBuffer;
+import java.util.Locale;
+import java.util.UUID;
+
+/**
+ * Codec cho message WebSocket của Xiaozhi (theo py-xiaozhi)
+ *
+ * Mọi message gửi đi có dạng:
+ * {"header": {"name", "namespace", "message_id"}, "payload": {...}}
+ *
+ * Pure Java - XiaozhiConnectionService, fake server và benchmark dùng chung.
+ */
+public final class XiaozhiProtocol {
+
+    public static final String NS_COMMON = "ai.xiaoai.common";
+    public static final String NS_RECOGNIZER = "ai.xiaoai.recognizer";
+    public static final String NS_TTS = "ai.xiaoai.tts";
+
+    public static final String HELLO = "hello";
+    public static final String START_LISTENING = "StartListening";
+    public static final String STOP_LISTENING = "StopListening";
+    public static final String ABORT_SPEAKING = "AbortSpeaking";
+    public static final String RECOGNIZE = "Recognize";
+
+    public static final String TYPE_TTS = "tts";
+    public static final String TTS_START = "start";
+    public static final String TTS_STOP = "stop";
+    public static final String TTS_SENTENCE_START = "sentence_start";
+    public static final String TTS_SENTENCE_END = "sentence_end";
+
+    public static final String DEVICE_TYPE = "android";
+    public static final String APP_VERSION = "1.0.0";
+
+    // audio_params client đề nghị trong hello: TTS xuống là PCM 16-bit mono (app không có Opus decoder)
+    public static final String AUDIO_FORMAT_PCM = "pcm";
+    public static final int AUDIO_SAMPLE_RATE = 16000;
+    public static final int AUDIO_CHANNELS = 1;
+
+    private XiaozhiProtocol() {
+    }
+
+    // ==================== Encode ====================
+
+    /**
+     * Encoder dùng chung cho các builder String bên dưới (fake server, benchmark, test tay).
+     * Đường gửi thật của app dùng MessageEncoder riêng mỗi connection, không qua String.
+     */
+    private static final MessageEncoder SHARED_ENCODER = new MessageEncoder();
+
+    public static String hello(String deviceId, String serialNumber, String osVersion) throws JSONException {
+        synchronized (SHARED_ENCODER) {
+            return decode(SHARED_ENCODER.hello(deviceId, serialNumber, osVersion));
+        }
+    }
+
+    /**
+     * @param mode ListeningMode.getValue()
+     */
+    public static String startListening(String mode) throws JSONException {
+        synchronized (SHARED_ENCODER) {
+            return decode(SHARED_ENCODER.startListening(mode));
+        }
+    }
+
+    public static String stopListening() throws JSONException {
+        synchronized (SHARED_ENCODER) {
+            return decode(SHARED_ENCODER.stopListening());
+        }
+    }
+
+    public static String abortSpeaking(String reason) throws JSONException {
+        synchronized (SHARED_ENCODER) {
+            return decode(SHARED_ENCODER.abortSpeaking(reason));
+        }
+    }
+
+    public static String recognizeText(String text) throws JSONException {
+        synchronized (SHARED_ENCODER) {
+            return decode(SHARED_ENCODER.recognizeText(text));
+        }
+    }
+
+    /**
+     * Recognize với audio PCM 16-bit (base64 trong JSON)
+     */
+    public static String recognizeAudio(byte[] pcm, int sampleRate, int channels) throws JSONException {
+        synchronized (SHARED_ENCODER) {
+            return decode(SHARED_ENCODER.recognizeAudio(pcm, 0, pcm.length, sampleRate, channels));
+        }
+    }
+
+    /**
+     * Message tuỳ ý (payload là JSONObject) - chậm hơn MessageEncoder, dùng cho message hiếm
+     */
+    public static String message(String name, String namespace, JSONObject payload) throws JSONException {
+        JSONObject header = new JSONObject();
+        header.put("name", name);
+        header.put("namespace", namespace);
+        header.put("message_id", UUID.randomUUID().toString());
+
+        JSONObject message = new JSONObject();
+        message.put("header", header);
+        message.put("payload", payload);
+        return message.toString();
+    }
+
+    private static String decode(ByteBuffer utf8) {
+        return new String(utf8.array(), 0, utf8.limit(), CryptoUtils.UTF_8);
+    }
+
+    // ==================== Decode ====================
+
+    public static JSONObject parse(String text) throws JSONException {
+        return new JSONObject(text);
+    }
+
+    /**
+     * Type của message server gửi về ("tts", "stt", "llm", ...), "" nếu không có
+     */
+    public static String getType(JSONObject message) {
+        return message.optString("type");
+    }
+
+    /**
+     * Header name của message dạng header/payload (message client gửi đi)
+     */
+    public static String getName(JSONObject message) {
+        JSONObject header = message.optJSONObject("header");
+        return header != null ? header.optString("name") : "";
+    }
+
+    /**
+     * Server-driven reconnect hint, vd: {"type":"goodbye","retry_after":30}
+     *
+     * @return ms, hoặc -1 nếu message không có hint
+     */
+    public static long getRetryAfterMs(JSONObject message) {
+        return message.has("retry_after") ? message.optLong("retry_after", 0) * 1000 : -1;
+    }
+
+    /**
+     * Format audio server gửi xuống, vd: {"type":"hello","audio_params":{"format":"pcm",...}}
+     *
+     * @return format (lowercase), hoặc null nếu message không có audio_params.format
+     */
+    public static String getAudioFormat(JSONObject message) {
+        JSONObject params = message.optJSONObject("audio_params");
+        String format = params != null ? params.optString("format", null) : null;
+        return format != null ? format.toLowerCase(Locale.US) : null;
+    }
+
+    /**
+     * Sample rate audio server gửi xuống, chỉ đọc audio_params.sample_rate
+     *
+     * @return Hz, hoặc defaultRate nếu message không có
+     */
+    public static int getAudioSampleRate(JSONObject message, int defaultRate) {
+        JSONObject params = message.optJSONObject("audio_params");
+        return params != null ? params.optInt("sample_rate", defaultRate) : defaultRate;
+    }
+
+    /**
+     * State của message tts ("start" / "stop" / "sentence_start" ...)
+     */
+    public static String getTtsState(JSONObject message) {
+        return message.optString("state");
+    }
+
+    /**
+     * Text của câu TTS (sentence_start), null nếu không có
+     */
+    public static String getTtsText(JSONObject message) {
+        String text = message.optString("text", null);
+        return text == null || text.trim().isEmpty() ? null : text;
+    }
+}
@@ -0,0 +1,158 @@
+package com.phicomm.r1.xiaozhi.util;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Base64 chuẩn (RFC 4648, có padding, không xuống dòng)
+ *
+ * Tương đương android.util.Base64 với NO_WRAP, nhưng chạy được trên JVM
+ * (java.util.Base64 chỉ có từ Java 8 / API 26).
+ */
+public final class Base64Codec {
+
+    private static final char[] ALPHABET =
+        "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/".toCharArray();
+    private static final byte[] ALPHABET_BYTES = new byte[64];
+    private static final int[] DECODE = new int[128];
+
+    static {
+        java.util.Arrays.fill(DECODE, -1);
+        for (int i = 0; i < ALPHABET.length; i++) {
+            DECODE[ALPHABET[i]] = i;
+            ALPHABET_BYTES[i] = (byte) ALPHABET[i];
+        }
+    }
+
+    private Base64Codec() {
+    }
+
+    public static int encodedLength(int length) {
+        return (length + 2) / 3 * 4;
+    }
+
+    public static String encode(byte[] data) {
+        return encode(data, 0, data.length);
+    }
+
+    public static String encode(byte[] data, int offset, int length) {
+        char[] out = new char[encodedLength(length)];
+        encode(data, offset, length, out, 0);
+        return new String(out);
+    }
+
+    /**
+     * Encode vào mảng char có sẵn
+     *
+     * @return Số char đã ghi
+     */
+    public static int encode(byte[] data, int offset, int length, char[] out, int outOffset) {
+        int o = outOffset;
+        int end = offset + length;
+        int i = offset;
+        for (; i + 2 < end; i += 3) {
+            int bits = (data[i] & 0xff) << 16 | (data[i + 1] & 0xff) << 8 | (data[i + 2] & 0xff);
+            out[o++] = ALPHABET[bits >>> 18];
+            out[o++] = ALPHABET[(bits >>> 12) & 0x3f];
+            out[o++] = ALPHABET[(bits >>> 6) & 0x3f];
+            out[o++] = ALPHABET[bits & 0x3f];
+        }
+        int remaining = end - i;
+        if (remaining > 0) {
+            int bits = (data[i] & 0xff) << 16 | (remaining == 2 ? (data[i + 1] & 0xff) << 8 : 0);
+            out[o++] = ALPHABET[bits >>> 18];
+            out[o++] = ALPHABET[(bits >>> 12) & 0x3f];
+            out[o++] = remaining == 2 ? ALPHABET[(bits >>> 6) & 0x3f] : '=';
+            out[o++] = '=';
+        }
+        return o - outOffset;
+    }
+
+    /**
+     * Encode thẳng vào buffer byte (ASCII = UTF-8) - dùng cho MessageEncoder
+     *
+     * @return Số byte đã ghi
+     */
+    public static int encode(byte[] data, int offset, int length, byte[] out, int outOffset) {
+        int o = outOffset;
+        int end = offset + length;
+        int i = offset;
+        for (; i + 2 < end; i += 3) {
+            int bits = (data[i] & 0xff) << 16 | (data[i + 1] & 0xff) << 8 | (data[i + 2] & 0xff);
+            out[o++] = ALPHABET_BYTES[bits >>> 18];
+            out[o++] = ALPHABET_BYTES[(bits >>> 12) & 0x3f];
+            out[o++] = ALPHABET_BYTES[(bits >>> 6) & 0x3f];
+            out[o++] = ALPHABET_BYTES[bits & 0x3f];
+        }
+        int remaining = end - i;
+        if (remaining > 0) {
+            int bits = (data[i] & 0xff) << 16 | (remaining == 2 ? (data[i + 1] & 0xff) << 8 : 0);
+            out[o++] = ALPHABET_BYTES[bits >>> 18];
+            out[o++] = ALPHABET_BYTES[(bits >>> 12) & 0x3f];
+            out[o++] = remaining == 2 ? ALPHABET_BYTES[(bits >>> 6) & 0x3f] : (byte) '=';
+            out[o++] = '=';
+        }
+        return o - outOffset;
+    }
+
+    /**
+     * Encode phần position..limit của ByteBuffer (direct, từ BufferPool) vào buffer byte;
+     * không đổi position của src
+     *
+     * @return Số byte đã ghi
+     */
+    public static int encode(ByteBuffer src, byte[] out, int outOffset) {
+        if (src.hasArray()) {
+            return encode(src.array(), src.arrayOffset() + src.position(), src.remaining(), out, outOffset);
+        }
+        int o = outOffset;
+        int end = src.limit();
+        int i = src.position();
+        for (; i + 2 < end; i += 3) {
+            int bits = (src.get(i) & 0xff) << 16 | (src.get(i + 1) & 0xff) << 8 | (src.get(i + 2) & 0xff);
+            out[o++] = ALPHABET_BYTES[bits >>> 18];
+            out[o++] = ALPHABET_BYTES[(bits >>> 12) & 0x3f];
+            out[o++] = ALPHABET_BYTES[(bits >>> 6) & 0x3f];
+            out[o++] = ALPHABET_BYTES[bits & 0x3f];
+        }
+        int remaining = end - i;
+        if (remaining > 0) {
+            int bits = (src.get(i) & 0xff) << 16 | (remaining == 2 ? (src.get(i + 1) & 0xff) << 8 : 0);
+            out[o++] = ALPHABET_BYTES[bits >>> 18];
+            out[o++] = ALPHABET_BYTES[(bits >>> 12) & 0x3f];
+            out[o++] = remaining == 2 ? ALPHABET_BYTES[(bits >>> 6) & 0x3f] : (byte) '=';
+            out[o++] = '=';
+        }
+        return o - outOffset;
+    }
+
+    /**
+     * @throws IllegalArgumentException nếu chuỗi không phải base64 hợp lệ
+     */
+    public static byte[] decode(String text) {
+        int length = text.length();
+        while (length > 0 && text.charAt(length - 1) == '=') {
+            length--;
+        }
+        if (length % 4 == 1) {
+            throw new IllegalArgumentException("Invalid base64 length: " + text.length());
+        }
+        byte[] out = new byte[length * 3 / 4];
+        int bits = 0;
+        int count = 0;
+        int o = 0;
+        for (int i = 0; i < length; i++) {
+            char c = text.charAt(i);
+            int value = c < 128 ? DECODE[c] : -1;
+            if (value < 0) {
+                throw new IllegalArgumentException("Invalid base64 character at " + i);
+            }
+            bits = bits << 6 | value;
+            count += 6;
+            if (count >= 8) {
+                count -= 8;
+                out[o++] = (byte) (bits >>> count);
+            }
+        }
+        return out;
+    }
+}
@@ -0,0 +1,232 @@
+package com.phicomm.r1.xiaozhi.util;
+
+import com.phicomm.r1.xiaozhi.platform.LogRateLimiter;
+import com.phicomm.r1.xiaozhi.platform.XLog;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Pool direct ByteBuffer theo size class, dùng chung cho capture, network và playback
+ *
+ * - Size class lũy thừa 2 từ 4KB tới 1MB; yêu cầu lớn hơn -> cấp riêng, không giữ lại.
+ * - Buffer trả về (PooledBuffer.release() cuối) được giữ lại tối đa maxRetainedBytes,
+ *   vượt quá thì bỏ cho GC.
+ * - Buffer đưa ra: position 0, limit = kích thước yêu cầu, byte order LITTLE_ENDIAN (PCM).
+ * - Leak detection (bật ở debug build): mỗi acquire ghi lại stack; PooledBuffer bị GC khi chưa
+ *   release -> log stack chỗ acquire. Tốn một Throwable mỗi acquire nên tắt ở release build.
+ */
+public final class BufferPool {
+
+    private static final String TAG = "BufferPool";
+
+    public static final int MIN_CLASS_BYTES = 4 * 1024;
+    public static final int MAX_CLASS_BYTES = 1024 * 1024;
+    public static final long DEFAULT_RETAINED_BYTES = 2 * 1024 * 1024;
+
+    private static volatile BufferPool instance;
+
+    private final SizeClass[] classes;
+    private final long maxRetainedBytes;
+    private final AtomicLong retainedBytes = new AtomicLong();
+
+    private final AtomicLong acquired = new AtomicLong();
+    private final AtomicLong released = new AtomicLong();
+    private final AtomicLong allocated = new AtomicLong();
+    private final AtomicLong oversize = new AtomicLong();
+    private final AtomicLong discarded = new AtomicLong();
+    private final AtomicLong leaks = new AtomicLong();
+
+    private volatile boolean leakDetection;
+    private final ReferenceQueue<PooledBuffer> leakQueue = new ReferenceQueue<PooledBuffer>();
+    private final Set<LeakRecord> tracked =
+        Collections.newSetFromMap(new ConcurrentHashMap<LeakRecord, Boolean>());
+    private final LogRateLimiter leakLog = new LogRateLimiter(5, 60000);
+
+    public BufferPool(long maxRetainedBytes) {
+        this.maxRetainedBytes = maxRetainedBytes;
+        int count = Integer.numberOfTrailingZeros(MAX_CLASS_BYTES / MIN_CLASS_BYTES) + 1;
+        classes = new SizeClass[count];
+        for (int i = 0; i < count; i++) {
+            classes[i] = new SizeClass(MIN_CLASS_BYTES << i);
+        }
+    }
+
+    public static BufferPool getInstance() {
+        if (instance == null) {
+            synchronized (BufferPool.class) {
+                if (instance == null) {
+                    instance = new BufferPool(DEFAULT_RETAINED_BYTES);
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * App bật khi build debuggable (ApplicationInfo.FLAG_DEBUGGABLE)
+     */
+    public void setLeakDetection(boolean enabled) {
+        leakDetection = enabled;
+    }
+
+    /**
+     * Buffer có ít nhất minCapacity byte, refCount = 1
+     */
+    public PooledBuffer acquire(int minCapacity) {
+        if (minCapacity < 0) {
+            throw new IllegalArgumentException("Negative capacity: " + minCapacity);
+        }
+        pollLeaks();
+        acquired.incrementAndGet();
+
+        ByteBuffer buffer = null;
+        SizeClass sizeClass = classFor(minCapacity);
+        if (sizeClass != null) {
+            synchronized (sizeClass) {
+                buffer = sizeClass.free.pollLast();
+            }
+            if (buffer != null) {
+                retainedBytes.addAndGet(-buffer.capacity());
+            } else {
+                allocated.incrementAndGet();
+                buffer = ByteBuffer.allocateDirect(sizeClass.bytes);
+            }
+        } else {
+            oversize.incrementAndGet();
+            buffer = ByteBuffer.allocateDirect(minCapacity);
+        }
+        buffer.clear();
+        buffer.limit(minCapacity);
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+
+        if (!leakDetection) {
+            return new PooledBuffer(this, buffer, null);
+        }
+        LeakRecord record = new LeakRecord(new Throwable("Buffer (" + minCapacity + " bytes) acquired here"));
+        PooledBuffer pooled = new PooledBuffer(this, buffer, record);
+        record.track(pooled, leakQueue);
+        tracked.add(record);
+        return pooled;
+    }
+
+    /**
+     * Gọi từ PooledBuffer.release() khi hết reference
+     */
+    void recycle(PooledBuffer owner, ByteBuffer buffer) {
+        released.incrementAndGet();
+        if (owner.leak != null) {
+            tracked.remove(owner.leak);
+            owner.leak.clear();
+        }
+        SizeClass sizeClass = classFor(buffer.capacity());
+        if (sizeClass == null || sizeClass.bytes != buffer.capacity()) {
+            return; // oversize
+        }
+        if (retainedBytes.addAndGet(buffer.capacity()) > maxRetainedBytes) {
+            retainedBytes.addAndGet(-buffer.capacity());
+            discarded.incrementAndGet();
+            return;
+        }
+        synchronized (sizeClass) {
+            sizeClass.free.addLast(buffer);
+        }
+    }
+
+    private SizeClass classFor(int capacity) {
+        if (capacity > MAX_CLASS_BYTES) {
+            return null;
+        }
+        int index = 0;
+        while (classes[index].bytes < capacity) {
+            index++;
+        }
+        return classes[index];
+    }
+
+    /**
+     * PooledBuffer bị GC mà chưa release -> leak
+     */
+    private void pollLeaks() {
+        Reference<? extends PooledBuffer> reference;
+        while ((reference = leakQueue.poll()) != null) {
+            LeakRecord record = ((TrackedReference) reference).record;
+            if (tracked.remove(record)) {
+                leaks.incrementAndGet();
+                if (leakLog.tryAcquire()) {
+                    XLog.e(TAG, "LEAK: PooledBuffer garbage-collected without release() ({} suppressed)",
+                        leakLog.drainSuppressed(), record.site);
+                }
+            }
+        }
+    }
+
+    public JSONObject getStats() throws JSONException {
+        pollLeaks();
+        JSONObject stats = new JSONObject();
+        stats.put("acquired", acquired.get());
+        stats.put("released", released.get());
+        stats.put("outstanding", acquired.get() - released.get());
+        stats.put("allocated", allocated.get());
+        stats.put("oversize", oversize.get());
+        stats.put("discarded", discarded.get());
+        stats.put("retained_bytes", retainedBytes.get());
+        stats.put("leaks", leaks.get());
+        stats.put("leak_detection", leakDetection);
+        return stats;
+    }
+
+    public long getLeakCount() {
+        pollLeaks();
+        return leaks.get();
+    }
+
+    private static final class SizeClass {
+        final int bytes;
+        final ArrayDeque<ByteBuffer> free = new ArrayDeque<ByteBuffer>();
+
+        SizeClass(int bytes) {
+            this.bytes = bytes;
+        }
+    }
+
+    /**
+     * Weak reference tới PooledBuffer + stack lúc acquire
+     */
+    static final class LeakRecord {
+        final Throwable site;
+        private WeakReference<PooledBuffer> reference;
+
+        LeakRecord(Throwable site) {
+            this.site = site;
+        }
+
+        void track(PooledBuffer owner, ReferenceQueue<PooledBuffer> queue) {
+            reference = new TrackedReference(owner, queue, this);
+        }
+
+        void clear() {
+            reference.clear();
+        }
+    }
+
+    private static final class TrackedReference extends WeakReference<PooledBuffer> {
+        final LeakRecord record;
+
+        TrackedReference(PooledBuffer owner, ReferenceQueue<PooledBuffer> queue, LeakRecord record) {
+            super(owner, queue);
+            this.record = record;
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package com.phicomm.r1.xiaozhi.util;
+
+import java.nio.charset.Charset;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Crypto helpers dùng cho device identity và activation
+ *
+ * - MessageDigest / Mac được giữ theo thread (ThreadLocal), không lookup provider mỗi lần gọi
+ * - Mac được init sẵn với key (HmacSigner), chỉ cần doFinal
+ * - Hex encode qua lookup table thay vì String.format("%02x") cho từng byte
+ * - Luôn encode UTF-8, không phụ thuộc platform default charset
+ *
+ * Không dùng Android API để có thể chạy trên JVM (benchmark)
+ */
+public final class CryptoUtils {
+
+    public static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    public static final String HMAC_SHA256 = "HmacSHA256";
+
+    private static final char[] HEX_LOWER = "0123456789abcdef".toCharArray();
+    private static final char[] HEX_UPPER = "0123456789ABCDEF".toCharArray();
+
+    private static final ThreadLocal<MessageDigest> MD5 = digestLocal("MD5");
+    private static final ThreadLocal<MessageDigest> SHA256 = digestLocal("SHA-256");
+
+    private CryptoUtils() {
+    }
+
+    /**
+     * MD5 của chuỗi UTF-8
+     */
+    public static byte[] md5(String input) {
+        MessageDigest digest = MD5.get();
+        digest.reset();
+        return digest.digest(input.getBytes(UTF_8));
+    }
+
+    /**
+     * SHA-256 của chuỗi UTF-8
+     */
+    public static byte[] sha256(String input) {
+        return sha256(input.getBytes(UTF_8));
+    }
+
+    public static byte[] sha256(byte[] input) {
+        MessageDigest digest = SHA256.get();
+        digest.reset();
+        return digest.digest(input);
+    }
+
+    /**
+     * SHA-256 dạng hex (lowercase)
+     */
+    public static String sha256Hex(String input) {
+        return toHex(sha256(input));
+    }
+
+    public static String toHex(byte[] bytes) {
+        return toHex(bytes, 0, bytes.length, false);
+    }
+
+    /**
+     * Hex encode qua lookup table
+     *
+     * @param upperCase true để dùng "A-F" (vd: serial number)
+     */
+    public static String toHex(byte[] bytes, int offset, int length, boolean upperCase) {
+        char[] table = upperCase ? HEX_UPPER : HEX_LOWER;
+        char[] out = new char[length * 2];
+        for (int i = 0; i < length; i++) {
+            int v = bytes[offset + i] & 0xFF;
+            out[i * 2] = table[v >>> 4];
+            out[i * 2 + 1] = table[v & 0x0F];
+        }
+        return new String(out);
+    }
+
+    /**
+     * Pre-keyed HMAC engine
+     *
+     * Key được decode một lần; mỗi thread có một Mac đã init sẵn.
+     * doFinal() tự reset Mac nên instance dùng lại được ngay.
+     */
+    public static final class HmacSigner {
+
+        private final String algorithm;
+        private final SecretKeySpec keySpec;
+        private final ThreadLocal<Mac> mac = new ThreadLocal<Mac>() {
+            @Override
+            protected Mac initialValue() {
+                try {
+                    Mac instance = Mac.getInstance(algorithm);
+                    instance.init(keySpec);
+                    return instance;
+                } catch (GeneralSecurityException e) {
+                    throw new IllegalStateException(algorithm + " not available", e);
+                }
+            }
+        };
+
+        public HmacSigner(String key) {
+            this(HMAC_SHA256, key.getBytes(UTF_8));
+        }
+
+        public HmacSigner(String algorithm, byte[] key) {
+            this.algorithm = algorithm;
+            this.keySpec = new SecretKeySpec(key, algorithm);
+        }
+
+        public byte[] sign(byte[] data) {
+            return mac.get().doFinal(data);
+        }
+
+        /**
+         * HMAC của chuỗi UTF-8, trả về hex lowercase
+         */
+        public String signHex(String data) {
+            return toHex(sign(data.getBytes(UTF_8)));
+        }
+    }
+
+    private static ThreadLocal<MessageDigest> digestLocal(final String algorithm) {
+        return new ThreadLocal<MessageDigest>() {
+            @Override
+            protected MessageDigest initialValue() {
+                try {
+                    return MessageDigest.getInstance(algorithm);
+                } catch (NoSuchAlgorithmException e) {
+                    throw new IllegalStateException(algorithm + " not available", e);
+                }
+            }
+        };
+    }
+}
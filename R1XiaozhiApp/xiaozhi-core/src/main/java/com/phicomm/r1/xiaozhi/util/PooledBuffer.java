@@ -0,0 +1,83 @@
+package com.phicomm.r1.xiaozhi.util;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Direct ByteBuffer có reference count, lấy từ BufferPool
+ *
+ * Quy ước (giống Netty): ai acquire() / retain() thì phải release() đúng một lần.
+ * Giữ buffer qua thread khác (queue, executor) -> retain() trước khi chuyển, bên nhận release().
+ * Hết reference -> buffer về pool; dùng buffer() sau đó -> IllegalStateException.
+ */
+public final class PooledBuffer {
+
+    private final BufferPool pool;
+    private final ByteBuffer buffer;
+    private final AtomicInteger refCount = new AtomicInteger(1);
+    final BufferPool.LeakRecord leak;
+
+    PooledBuffer(BufferPool pool, ByteBuffer buffer, BufferPool.LeakRecord leak) {
+        this.pool = pool;
+        this.buffer = buffer;
+        this.leak = leak;
+    }
+
+    /**
+     * Bọc một ByteBuffer sẵn có (heap / mmap) - không thuộc pool, release() chỉ đếm reference
+     */
+    public static PooledBuffer wrap(ByteBuffer buffer) {
+        return new PooledBuffer(null, buffer, null);
+    }
+
+    /**
+     * ByteBuffer bên dưới (position / limit do người đang giữ quản lý)
+     */
+    public ByteBuffer buffer() {
+        if (refCount.get() <= 0) {
+            throw new IllegalStateException("Buffer already released");
+        }
+        return buffer;
+    }
+
+    public int capacity() {
+        return buffer.capacity();
+    }
+
+    public int refCount() {
+        return refCount.get();
+    }
+
+    public PooledBuffer retain() {
+        while (true) {
+            int count = refCount.get();
+            if (count <= 0) {
+                throw new IllegalStateException("Retain after release");
+            }
+            if (refCount.compareAndSet(count, count + 1)) {
+                return this;
+            }
+        }
+    }
+
+    /**
+     * @return true nếu đây là reference cuối (buffer đã về pool)
+     */
+    public boolean release() {
+        while (true) {
+            int count = refCount.get();
+            if (count <= 0) {
+                throw new IllegalStateException("Buffer released twice");
+            }
+            if (refCount.compareAndSet(count, count - 1)) {
+                if (count == 1) {
+                    if (pool != null) {
+                        pool.recycle(this, buffer);
+                    }
+                    return true;
+                }
+                return false;
+            }
+        }
+    }
+}
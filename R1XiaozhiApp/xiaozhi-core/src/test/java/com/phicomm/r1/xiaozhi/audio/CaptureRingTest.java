@@ -0,0 +1,133 @@
+package com.phicomm.r1.xiaozhi.audio;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class CaptureRingTest {
+
+    @Test
+    public void framesComeOutInOrderAcrossWrap() {
+        CaptureRing ring = new CaptureRing(4, 8);
+        for (int i = 0; i < 25; i++) {
+            produce(ring, i);
+            produce(ring, 1000 + i);
+
+            assertEquals(2, ring.size());
+            assertEquals(i, consume(ring));
+            assertEquals(1000 + i, consume(ring));
+            assertEquals(0, ring.size());
+        }
+        assertEquals(0, ring.getOverruns());
+        assertEquals(2, ring.getMaxBacklog());
+    }
+
+    @Test
+    public void fullRingRejectsClaimUntilConsumerReleases() {
+        CaptureRing ring = new CaptureRing(4, 8);
+        for (int i = 0; i < 4; i++) {
+            produce(ring, i);
+        }
+        assertNull(ring.claim());
+
+        // Overrun: producer vẫn đọc vào slot tạm, frame bị bỏ
+        CaptureRing.Slot scratch = ring.scratch();
+        assertNotNull(scratch);
+        scratch.data[0] = 99;
+        assertEquals(1, ring.getOverruns());
+        assertEquals(4, ring.size());
+        assertEquals(4, ring.getMaxBacklog());
+
+        assertEquals(0, consume(ring));
+        assertNotNull(ring.claim());
+        produce(ring, 4);
+
+        for (int expected = 1; expected <= 4; expected++) {
+            assertEquals(expected, consume(ring));
+        }
+    }
+
+    @Test
+    public void scratchIsNeverARingSlot() {
+        CaptureRing ring = new CaptureRing(2, 4);
+        CaptureRing.Slot scratch = ring.scratch();
+        for (int i = 0; i < 2; i++) {
+            CaptureRing.Slot slot = ring.claim();
+            assertNotSame(scratch, slot);
+            ring.publish();
+        }
+        assertSame(scratch, ring.scratch());
+        assertEquals(2, ring.getOverruns());
+    }
+
+    @Test
+    public void takeTimesOutWhenEmpty() {
+        CaptureRing ring = new CaptureRing(4, 8);
+        long start = System.nanoTime();
+        assertNull(ring.take(20, TimeUnit.MILLISECONDS));
+        assertEquals(true, System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(20));
+    }
+
+    @Test
+    public void takeWakesWhenProducerPublishes() throws Exception {
+        final CaptureRing ring = new CaptureRing(4, 8);
+        Thread producer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(20);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                produce(ring, 7);
+            }
+        });
+        producer.start();
+
+        CaptureRing.Slot slot = ring.take(5, TimeUnit.SECONDS);
+        assertNotNull(slot);
+        assertEquals(7, slot.data[0]);
+        ring.release();
+        producer.join();
+    }
+
+    @Test
+    public void clearDropsPendingFrames() {
+        CaptureRing ring = new CaptureRing(4, 8);
+        produce(ring, 1);
+        produce(ring, 2);
+        ring.clear();
+        assertEquals(0, ring.size());
+        produce(ring, 3);
+        assertEquals(3, consume(ring));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void slotCountMustBePowerOfTwo() {
+        new CaptureRing(6, 8);
+    }
+
+    private static void produce(CaptureRing ring, int value) {
+        CaptureRing.Slot slot = ring.claim();
+        assertNotNull("ring full", slot);
+        slot.data[0] = (short) value;
+        slot.length = 1;
+        slot.captureNanos = value;
+        ring.publish();
+    }
+
+    private static int consume(CaptureRing ring) {
+        CaptureRing.Slot slot = ring.take(0, TimeUnit.MILLISECONDS);
+        assertNotNull("ring empty", slot);
+        int value = slot.data[0];
+        assertEquals(value, slot.captureNanos);
+        ring.release();
+        return value;
+    }
+}
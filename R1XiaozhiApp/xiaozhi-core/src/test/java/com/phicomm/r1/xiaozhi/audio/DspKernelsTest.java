@@ -0,0 +1,129 @@
+package com.phicomm.r1.xiaozhi.audio;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Kernel fixed-point so với công thức double
+ */
+public class DspKernelsTest {
+
+    // Bảng mantissa sai tối đa ~0.07dB cho mỗi log2 (sumSquares và count) + làm tròn Q8
+    private static final double DB_TOLERANCE = 0.15;
+
+    private final Random random = new Random(35);
+
+    @Test
+    public void isqrtIsFloorOfSqrtForSmallValues() {
+        for (long value = 0; value <= 200000; value++) {
+            assertIsqrt(value);
+        }
+    }
+
+    @Test
+    public void isqrtAroundPerfectSquaresAndLargeValues() {
+        for (long root = 1; root < (1L << 31); root += 1 + root / 7) {
+            assertIsqrt(root * root - 1);
+            assertIsqrt(root * root);
+            assertIsqrt(root * root + 1);
+        }
+        for (int i = 0; i < 100000; i++) {
+            assertIsqrt(random.nextLong() >>> 2);
+        }
+        assertIsqrt((long) Integer.MAX_VALUE * Integer.MAX_VALUE);
+        assertEquals(0, DspKernels.isqrt(-5));
+    }
+
+    @Test
+    public void dbfsOfFullScaleAndScaledSquareWaves() {
+        assertEquals(0.0, dbfs(squareWave(32768, 320)), DB_TOLERANCE);
+        assertEquals(-6.02, dbfs(squareWave(16384, 320)), DB_TOLERANCE);
+        assertEquals(-20.0, dbfs(squareWave(3277, 320)), DB_TOLERANCE);
+        assertEquals(-60.0, dbfs(squareWave(33, 320)), DB_TOLERANCE);
+        assertEquals(-90.31, dbfs(squareWave(1, 320)), DB_TOLERANCE);
+    }
+
+    @Test
+    public void dbfsMatchesDoubleFormulaForRandomPower() {
+        for (int i = 0; i < 100000; i++) {
+            int count = 1 + random.nextInt(4096);
+            long sumSquares = 1 + (long) (random.nextDouble() * count * (1L << 30));
+            double expected = 10 * Math.log10((double) sumSquares / count / (1L << 30));
+            if (expected < -120) {
+                continue;
+            }
+            assertEquals(sumSquares + "/" + count, expected,
+                DspKernels.q8ToFloat(DspKernels.powerToDbfsQ8(sumSquares, count)), DB_TOLERANCE);
+        }
+    }
+
+    @Test
+    public void silenceIsClamped() {
+        assertEquals(DspKernels.SILENCE_DB_Q8, DspKernels.powerToDbfsQ8(0, 320));
+        assertEquals(DspKernels.SILENCE_DB_Q8, DspKernels.powerToDbfsQ8(100, 0));
+        assertEquals(DspKernels.SILENCE_DB_Q8, DspKernels.powerToDbfsQ8(1, Integer.MAX_VALUE));
+    }
+
+    @Test
+    public void analyzeMatchesDoubleReference() {
+        short[] samples = new short[320];
+        for (int i = 0; i < samples.length; i++) {
+            samples[i] = (short) (10000 * Math.sin(2 * Math.PI * 440 * i / 16000) + random.nextGaussian() * 300);
+        }
+        AudioFrame frame = new AudioFrame(16000, samples.length);
+        System.arraycopy(samples, 0, frame.samples, 0, samples.length);
+        frame.length = samples.length;
+
+        DspKernels.analyze(frame);
+
+        double sumSquares = 0;
+        int peak = 0;
+        for (short x : samples) {
+            sumSquares += (double) x * x;
+            peak = Math.max(peak, Math.abs(x));
+        }
+        double rms = Math.sqrt(sumSquares / samples.length);
+        assertEquals(rms, frame.rms, 1.0);
+        assertEquals((int) Math.floor(rms), DspKernels.rms(samples, 0, samples.length));
+        assertEquals(peak, frame.peak);
+        assertTrue("zero crossings " + frame.zeroCrossings, frame.zeroCrossings >= 16);
+        assertEquals(10 * Math.log10(sumSquares / samples.length / (1L << 30)),
+            DspKernels.q8ToFloat(frame.logEnergyQ8), DB_TOLERANCE);
+    }
+
+    @Test
+    public void analyzeEmptyFrameIsSilent() {
+        AudioFrame frame = new AudioFrame(16000, 320);
+        frame.length = 0;
+        DspKernels.analyze(frame);
+        assertEquals(0, frame.rms);
+        assertEquals(DspKernels.SILENCE_DB_Q8, frame.logEnergyQ8);
+    }
+
+    private static void assertIsqrt(long value) {
+        long root = DspKernels.isqrt(value);
+        assertTrue("isqrt(" + value + ") = " + root, root * root <= value);
+        assertTrue("isqrt(" + value + ") = " + root, (root + 1) * (root + 1) > value);
+    }
+
+    private static short[] squareWave(int amplitude, int length) {
+        short[] samples = new short[length];
+        for (int i = 0; i < length; i++) {
+            int value = (i & 1) == 0 ? amplitude : -amplitude;
+            samples[i] = (short) Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, value));
+        }
+        return samples;
+    }
+
+    private static double dbfs(short[] samples) {
+        long sumSquares = 0;
+        for (short x : samples) {
+            sumSquares += x * x;
+        }
+        return DspKernels.q8ToFloat(DspKernels.powerToDbfsQ8(sumSquares, samples.length));
+    }
+}
@@ -0,0 +1,147 @@
+package com.phicomm.r1.xiaozhi.audio;
+
+import com.phicomm.r1.xiaozhi.util.BufferPool;
+import com.phicomm.r1.xiaozhi.util.PooledBuffer;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class PcmStreamTest {
+
+    private final BufferPool pool = new BufferPool(BufferPool.DEFAULT_RETAINED_BYTES);
+
+    @Test
+    public void writeRetainsAndTakeHandsOverOwnership() throws Exception {
+        PcmStream stream = new PcmStream();
+        PooledBuffer chunk = chunk(640);
+
+        assertTrue(stream.write(chunk));
+        assertEquals(2, chunk.refCount());
+        chunk.release();
+
+        PooledBuffer taken = stream.take(0);
+        assertSame(chunk, taken);
+        assertEquals(1, taken.refCount());
+        assertTrue(taken.release());
+        assertEquals(640, stream.getWrittenBytes());
+    }
+
+    @Test
+    public void finishDrainsRemainingChunksThenEnds() throws Exception {
+        PcmStream stream = new PcmStream();
+        PooledBuffer first = chunk(10);
+        PooledBuffer second = chunk(20);
+        stream.write(first);
+        stream.write(second);
+        first.release();
+        second.release();
+        stream.finish();
+
+        assertTrue(stream.isFinished());
+        assertSame(first, stream.take(0));
+        assertSame(second, stream.take(0));
+        assertFalse(stream.isEnded());
+        assertNull(stream.take(0));
+        assertTrue(stream.isEnded());
+        // Kết thúc là "dính": take() lần sau cũng trả null ngay
+        assertNull(stream.take(1000));
+        assertEquals(30, stream.getWrittenBytes());
+
+        assertTrue(first.release());
+        assertTrue(second.release());
+    }
+
+    @Test
+    public void writeAfterFinishDoesNotRetain() {
+        PcmStream stream = new PcmStream();
+        stream.finish();
+        PooledBuffer chunk = chunk(10);
+
+        assertFalse(stream.write(chunk));
+        assertEquals(1, chunk.refCount());
+        chunk.release();
+    }
+
+    @Test
+    public void closeReleasesQueuedChunksAndWakesConsumer() throws Exception {
+        final PcmStream stream = new PcmStream();
+        PooledBuffer queued = chunk(10);
+        stream.write(queued);
+        queued.release();
+
+        stream.close();
+
+        assertTrue(stream.isClosed());
+        assertEquals(0, queued.refCount());
+        assertNull(stream.take(0));
+        assertTrue(stream.isEnded());
+        PooledBuffer late = chunk(10);
+        assertFalse(stream.write(late));
+        assertEquals(1, late.refCount());
+        late.release();
+        // close() sau finish() / close() lần hai không lỗi
+        stream.close();
+        stream.finish();
+        assertFalse(stream.isFinished());
+    }
+
+    @Test
+    public void closeWakesBlockedTake() throws Exception {
+        final PcmStream stream = new PcmStream();
+        Thread closer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(20);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                stream.close();
+            }
+        });
+        closer.start();
+
+        long start = System.nanoTime();
+        assertNull(stream.take(5000));
+        assertTrue(System.nanoTime() - start < 4000000000L);
+        closer.join();
+    }
+
+    @Test
+    public void takeTimesOutWhileProducerIsSilent() throws Exception {
+        PcmStream stream = new PcmStream();
+        assertNull(stream.take(10));
+        assertFalse(stream.isEnded());
+        assertFalse(stream.isFinished());
+        assertFalse(stream.isClosed());
+
+        // Stream vẫn dùng được sau timeout
+        PooledBuffer late = chunk(10);
+        stream.write(late);
+        late.release();
+        assertSame(late, stream.take(0));
+        late.release();
+    }
+
+    @Test
+    public void ofWrapsSingleFinishedChunk() throws Exception {
+        ByteBuffer pcm = ByteBuffer.allocate(8);
+        PcmStream stream = PcmStream.of(PooledBuffer.wrap(pcm));
+
+        assertTrue(stream.isFinished());
+        PooledBuffer only = stream.take(0);
+        assertSame(pcm, only.buffer());
+        assertNull(stream.take(0));
+    }
+
+    private PooledBuffer chunk(int bytes) {
+        return pool.acquire(bytes);
+    }
+}
@@ -0,0 +1,201 @@
+package com.phicomm.r1.xiaozhi.protocol;
+
+import com.phicomm.r1.xiaozhi.util.Base64Codec;
+import com.phicomm.r1.xiaozhi.util.CryptoUtils;
+
+import org.json.JSONObject;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * So sánh MessageEncoder với message dựng bằng JSONObject (cách XiaozhiProtocol encode trước đây)
+ */
+public class MessageEncoderTest {
+
+    private static final String UUID_PATTERN = "[0-9a-f]{8}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{12}";
+
+    private final MessageEncoder encoder = new MessageEncoder(0x0123456789abcdefL);
+
+    @Test
+    public void helloMatchesJsonObject() throws Exception {
+        JSONObject expected = new JSONObject();
+        expected.put("device_id", "aa:bb:cc:dd:ee:ff");
+        expected.put("serial_number", "R1-0001");
+        expected.put("device_type", XiaozhiProtocol.DEVICE_TYPE);
+        expected.put("os_version", "5.1.1");
+        expected.put("app_version", XiaozhiProtocol.APP_VERSION);
+        expected.put("audio_params", audioParams());
+
+        JSONObject message = parse(encoder.hello("aa:bb:cc:dd:ee:ff", "R1-0001", "5.1.1"));
+
+        assertHeader(message, XiaozhiProtocol.HELLO, XiaozhiProtocol.NS_COMMON);
+        assertSimilar(expected, message.getJSONObject("payload"));
+    }
+
+    @Test
+    public void nullFieldsAreOmittedLikeJsonObject() throws Exception {
+        JSONObject expected = new JSONObject();
+        expected.put("device_id", (Object) null);
+        expected.put("serial_number", "R1-0001");
+        expected.put("device_type", XiaozhiProtocol.DEVICE_TYPE);
+        expected.put("os_version", (Object) null);
+        expected.put("app_version", XiaozhiProtocol.APP_VERSION);
+        expected.put("audio_params", audioParams());
+
+        assertSimilar(expected, parse(encoder.hello(null, "R1-0001", null)).getJSONObject("payload"));
+        assertEquals(0, parse(encoder.abortSpeaking(null)).getJSONObject("payload").length());
+        assertEquals(0, parse(encoder.recognizeText(null)).getJSONObject("payload").length());
+        assertEquals(0, parse(encoder.startListening(null)).getJSONObject("payload").length());
+    }
+
+    @Test
+    public void escapesQuotesBackslashAndControlCharacters() throws Exception {
+        String text = "say \"hi\" \\ path\n\r\t\u0000\u0001\u001f\u007f end";
+        assertRoundTrip(text);
+    }
+
+    @Test
+    public void encodesMultiByteUtf8AndSurrogatePairs() throws Exception {
+        assertRoundTrip("Xin chào, bật đèn phòng khách");
+        assertRoundTrip("你好小智");
+        assertRoundTrip("emoji 😀 and 𝄞");
+        assertRoundTrip("\u00a0\u07ff\u0800\uffff\u0080");
+    }
+
+    @Test
+    public void loneSurrogatesBecomeQuestionMarkLikeGetBytes() throws Exception {
+        String text = "a\uD800b\uDC00c\uD83D";
+        String expected = new String(text.getBytes(CryptoUtils.UTF_8), CryptoUtils.UTF_8);
+
+        JSONObject message = parse(encoder.recognizeText(text));
+
+        assertEquals(expected, message.getJSONObject("payload").getString("text"));
+    }
+
+    @Test
+    public void growsBufferForLongText() throws Exception {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 5000; i++) {
+            text.append("tiếng \"việt\" ");
+        }
+        assertRoundTrip(text.toString());
+        // Message nhỏ sau message lớn vẫn đúng
+        assertRoundTrip("ok");
+    }
+
+    @Test
+    public void recognizeAudioMatchesJsonObject() throws Exception {
+        byte[] pcm = new byte[641];
+        for (int i = 0; i < pcm.length; i++) {
+            pcm[i] = (byte) (i * 31);
+        }
+        JSONObject expected = new JSONObject();
+        expected.put("audio", Base64Codec.encode(pcm, 1, 640));
+        expected.put("format", "pcm");
+        expected.put("sample_rate", 16000);
+        expected.put("channels", 1);
+        expected.put("bits_per_sample", 16);
+
+        JSONObject fromArray = parse(encoder.recognizeAudio(pcm, 1, 640, 16000, 1));
+        assertHeader(fromArray, XiaozhiProtocol.RECOGNIZE, XiaozhiProtocol.NS_RECOGNIZER);
+        assertSimilar(expected, fromArray.getJSONObject("payload"));
+
+        ByteBuffer direct = ByteBuffer.allocateDirect(pcm.length);
+        direct.put(pcm);
+        direct.position(1);
+        assertSimilar(expected, parse(encoder.recognizeAudio(direct, 16000, 1)).getJSONObject("payload"));
+        assertEquals(1, direct.position());
+    }
+
+    @Test
+    public void negativeAndLargeIntegers() throws Exception {
+        JSONObject payload = parse(encoder.recognizeAudio(new byte[0], 0, 0, Integer.MIN_VALUE, Integer.MAX_VALUE))
+            .getJSONObject("payload");
+        assertEquals(Integer.MIN_VALUE, payload.getInt("sample_rate"));
+        assertEquals(Integer.MAX_VALUE, payload.getInt("channels"));
+        assertEquals("", payload.getString("audio"));
+    }
+
+    @Test
+    public void messageIdsLookLikeUuidsAndAreUnique() throws Exception {
+        Set<String> ids = new HashSet<String>();
+        for (int i = 0; i < 1000; i++) {
+            String id = parse(encoder.stopListening()).getJSONObject("header").getString("message_id");
+            assertTrue(id, id.matches(UUID_PATTERN));
+            assertEquals(id, encoder.getLastMessageId());
+            assertTrue(ids.add(id));
+        }
+        assertEquals(1000, encoder.getSequence());
+    }
+
+    @Test
+    public void sharedStringBuildersProduceValidJson() throws Exception {
+        JSONObject message = XiaozhiProtocol.parse(XiaozhiProtocol.startListening("auto"));
+        assertEquals(XiaozhiProtocol.START_LISTENING, XiaozhiProtocol.getName(message));
+        assertEquals("auto", message.getJSONObject("payload").getString("mode"));
+        assertFalse(message.getJSONObject("header").getString("message_id").isEmpty());
+    }
+
+    @Test
+    public void audioParamsAreReadOnlyFromAudioParamsObject() throws Exception {
+        JSONObject hello = new JSONObject("{\"type\":\"hello\",\"audio_params\":{\"format\":\"PCM\","
+            + "\"sample_rate\":24000}}");
+        assertEquals(XiaozhiProtocol.AUDIO_FORMAT_PCM, XiaozhiProtocol.getAudioFormat(hello));
+        assertEquals(24000, XiaozhiProtocol.getAudioSampleRate(hello, 16000));
+
+        JSONObject opus = new JSONObject("{\"type\":\"hello\",\"audio_params\":{\"format\":\"opus\"}}");
+        assertEquals("opus", XiaozhiProtocol.getAudioFormat(opus));
+        assertEquals(16000, XiaozhiProtocol.getAudioSampleRate(opus, 16000));
+
+        JSONObject topLevel = new JSONObject("{\"type\":\"stt\",\"sample_rate\":8000,\"format\":\"pcm\"}");
+        assertEquals(null, XiaozhiProtocol.getAudioFormat(topLevel));
+        assertEquals(16000, XiaozhiProtocol.getAudioSampleRate(topLevel, 16000));
+    }
+
+    private static JSONObject audioParams() throws Exception {
+        JSONObject params = new JSONObject();
+        params.put("format", XiaozhiProtocol.AUDIO_FORMAT_PCM);
+        params.put("sample_rate", XiaozhiProtocol.AUDIO_SAMPLE_RATE);
+        params.put("channels", XiaozhiProtocol.AUDIO_CHANNELS);
+        return params;
+    }
+
+    private void assertRoundTrip(String text) throws Exception {
+        ByteBuffer encoded = encoder.recognizeText(text);
+        String json = decode(encoded);
+
+        JSONObject expected = new JSONObject();
+        expected.put("text", text);
+        JSONObject message = new JSONObject(json);
+        assertHeader(message, XiaozhiProtocol.RECOGNIZE, XiaozhiProtocol.NS_RECOGNIZER);
+        assertSimilar(expected, message.getJSONObject("payload"));
+        // UTF-8 hợp lệ: decode rồi encode lại ra đúng các byte đã gửi
+        assertEquals(encoded.limit(), json.getBytes(CryptoUtils.UTF_8).length);
+    }
+
+    private static void assertHeader(JSONObject message, String name, String namespace) throws Exception {
+        JSONObject header = message.getJSONObject("header");
+        assertEquals(name, header.getString("name"));
+        assertEquals(namespace, header.getString("namespace"));
+        assertTrue(header.getString("message_id").matches(UUID_PATTERN));
+    }
+
+    private static void assertSimilar(JSONObject expected, JSONObject actual) {
+        assertTrue("expected " + expected + " but was " + actual, expected.similar(actual));
+    }
+
+    private static JSONObject parse(ByteBuffer utf8) throws Exception {
+        return new JSONObject(decode(utf8));
+    }
+
+    private static String decode(ByteBuffer utf8) {
+        return new String(utf8.array(), 0, utf8.limit(), CryptoUtils.UTF_8);
+    }
+}
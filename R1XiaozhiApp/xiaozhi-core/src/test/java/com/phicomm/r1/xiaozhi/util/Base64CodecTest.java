@@ -0,0 +1,106 @@
+package com.phicomm.r1.xiaozhi.util;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Base64Codec phải cho kết quả y hệt java.util.Base64 (chỉ dùng được trong test - JVM 8)
+ */
+public class Base64CodecTest {
+
+    private final Random random = new Random(46);
+
+    @Test
+    public void encodeMatchesJdkForAllTailLengths() {
+        for (int length = 0; length < 200; length++) {
+            byte[] data = randomBytes(length);
+            String expected = Base64.getEncoder().encodeToString(data);
+            assertEquals("length " + length, expected, Base64Codec.encode(data));
+            assertEquals(expected.length(), Base64Codec.encodedLength(length));
+        }
+    }
+
+    @Test
+    public void encodeRangeIntoCharsAndBytesAtOffset() {
+        byte[] data = randomBytes(101);
+        String expected = Base64.getEncoder().encodeToString(Arrays.copyOfRange(data, 7, 7 + 50));
+
+        assertEquals(expected, Base64Codec.encode(data, 7, 50));
+
+        char[] chars = new char[expected.length() + 3];
+        int written = Base64Codec.encode(data, 7, 50, chars, 3);
+        assertEquals(expected.length(), written);
+        assertEquals(expected, new String(chars, 3, written));
+
+        byte[] bytes = new byte[expected.length() + 5];
+        written = Base64Codec.encode(data, 7, 50, bytes, 5);
+        assertEquals(expected.length(), written);
+        assertEquals(expected, new String(bytes, 5, written, CryptoUtils.UTF_8));
+    }
+
+    @Test
+    public void encodeDirectBufferKeepsPosition() {
+        for (int length = 0; length < 10; length++) {
+            byte[] data = randomBytes(length + 4);
+            ByteBuffer direct = ByteBuffer.allocateDirect(data.length);
+            direct.put(data);
+            direct.position(2);
+            direct.limit(2 + length);
+
+            String expected = Base64.getEncoder().encodeToString(Arrays.copyOfRange(data, 2, 2 + length));
+            byte[] out = new byte[Base64Codec.encodedLength(length)];
+            int written = Base64Codec.encode(direct, out, 0);
+
+            assertEquals(expected, new String(out, 0, written, CryptoUtils.UTF_8));
+            assertEquals(2, direct.position());
+        }
+    }
+
+    @Test
+    public void encodeHeapBufferSliceUsesArrayOffset() {
+        byte[] data = randomBytes(30);
+        ByteBuffer slice = ByteBuffer.wrap(data, 4, 20).slice();
+        slice.position(3);
+
+        String expected = Base64.getEncoder().encodeToString(Arrays.copyOfRange(data, 7, 24));
+        byte[] out = new byte[Base64Codec.encodedLength(slice.remaining())];
+        int written = Base64Codec.encode(slice, out, 0);
+
+        assertEquals(expected, new String(out, 0, written, CryptoUtils.UTF_8));
+    }
+
+    @Test
+    public void decodeMatchesJdkWithAndWithoutPadding() {
+        for (int length = 0; length < 64; length++) {
+            byte[] data = randomBytes(length);
+            String padded = Base64.getEncoder().encodeToString(data);
+            String unpadded = Base64.getEncoder().withoutPadding().encodeToString(data);
+
+            assertArrayEquals(data, Base64Codec.decode(padded));
+            assertArrayEquals(data, Base64Codec.decode(unpadded));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void decodeRejectsInvalidCharacter() {
+        Base64Codec.decode("AB-D");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void decodeRejectsInvalidLength() {
+        Base64Codec.decode("ABCDE");
+    }
+
+    private byte[] randomBytes(int length) {
+        byte[] data = new byte[length];
+        random.nextBytes(data);
+        return data;
+    }
+}
@@ -0,0 +1,121 @@
+package com.phicomm.r1.xiaozhi.util;
+
+import org.json.JSONObject;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class PooledBufferTest {
+
+    private final BufferPool pool = new BufferPool(BufferPool.DEFAULT_RETAINED_BYTES);
+
+    @Test
+    public void acquireReturnsDirectLittleEndianBufferWithRequestedLimit() {
+        PooledBuffer pooled = pool.acquire(1000);
+        ByteBuffer buffer = pooled.buffer();
+
+        assertEquals(1, pooled.refCount());
+        assertTrue(buffer.isDirect());
+        assertEquals(ByteOrder.LITTLE_ENDIAN, buffer.order());
+        assertEquals(0, buffer.position());
+        assertEquals(1000, buffer.limit());
+        assertTrue(pooled.capacity() >= 1000);
+        pooled.release();
+    }
+
+    @Test
+    public void lastReleaseReturnsBufferToPool() throws Exception {
+        PooledBuffer pooled = pool.acquire(1000);
+        ByteBuffer buffer = pooled.buffer();
+
+        assertSame(pooled, pooled.retain());
+        assertEquals(2, pooled.refCount());
+        assertFalse(pooled.release());
+        assertEquals(1, pooled.refCount());
+        assertEquals(0, stats().getLong("released"));
+        assertTrue(pooled.release());
+        assertEquals(0, pooled.refCount());
+
+        PooledBuffer again = pool.acquire(900);
+        assertSame(buffer, again.buffer());
+        assertEquals(900, again.buffer().limit());
+        again.release();
+
+        JSONObject stats = stats();
+        assertEquals(2, stats.getLong("acquired"));
+        assertEquals(2, stats.getLong("released"));
+        assertEquals(0, stats.getLong("outstanding"));
+        assertEquals(1, stats.getLong("allocated"));
+    }
+
+    @Test
+    public void useAfterReleaseThrows() {
+        PooledBuffer pooled = pool.acquire(16);
+        pooled.release();
+
+        try {
+            pooled.buffer();
+            fail("buffer() after release");
+        } catch (IllegalStateException expected) {
+        }
+        try {
+            pooled.retain();
+            fail("retain() after release");
+        } catch (IllegalStateException expected) {
+        }
+        try {
+            pooled.release();
+            fail("double release");
+        } catch (IllegalStateException expected) {
+        }
+    }
+
+    @Test
+    public void oversizeBuffersAreNotRetained() throws Exception {
+        PooledBuffer big = pool.acquire(BufferPool.MAX_CLASS_BYTES + 1);
+        ByteBuffer buffer = big.buffer();
+        big.release();
+
+        PooledBuffer again = pool.acquire(BufferPool.MAX_CLASS_BYTES + 1);
+        assertNotSame(buffer, again.buffer());
+        again.release();
+        assertEquals(2, stats().getLong("oversize"));
+        assertEquals(0, stats().getLong("retained_bytes"));
+    }
+
+    @Test
+    public void poolDiscardsBeyondRetainedLimit() throws Exception {
+        BufferPool small = new BufferPool(BufferPool.MIN_CLASS_BYTES);
+        PooledBuffer first = small.acquire(BufferPool.MIN_CLASS_BYTES);
+        PooledBuffer second = small.acquire(BufferPool.MIN_CLASS_BYTES);
+        first.release();
+        second.release();
+
+        JSONObject stats = small.getStats();
+        assertEquals(1, stats.getLong("discarded"));
+        assertEquals(BufferPool.MIN_CLASS_BYTES, stats.getLong("retained_bytes"));
+    }
+
+    @Test
+    public void wrappedBufferOnlyCountsReferences() {
+        ByteBuffer heap = ByteBuffer.allocate(8);
+        PooledBuffer wrapped = PooledBuffer.wrap(heap);
+
+        wrapped.retain();
+        assertFalse(wrapped.release());
+        assertTrue(wrapped.release());
+        assertEquals(0, wrapped.refCount());
+    }
+
+    private JSONObject stats() throws Exception {
+        return pool.getStats();
+    }
+}